@@ -0,0 +1,227 @@
+package com.dpdearing.nlp.opennlp;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import opennlp.tools.coref.DiscourseEntity;
+import opennlp.tools.parser.Parse;
+import opennlp.tools.util.Span;
+
+import com.dpdearing.util.ContentHash;
+import com.dpdearing.util.RequestCoalescer;
+
+/**
+ * A thread-safe front to a pool of {@link OpenNlpToolkit}s that
+ * de-duplicates concurrent identical requests.
+ * <p>
+ * When several threads ask for the same stage on identical input (by content
+ * hash) at the same time, such as when the same syndicated article reaches
+ * several workers at once, only the first computes the result and the others
+ * wait for and share it.  Since the OpenNLP components are not thread-safe,
+ * each computation borrows a toolkit from the pool for its duration, so as
+ * many different requests are computed at once as there are toolkits.
+ * </p>
+ * <p>
+ * Array and list results are copied for each caller; {@link Parse} and
+ * {@link DiscourseEntity} results are shared between coalesced callers and
+ * must not be modified.
+ * </p>
+ */
+public class CoalescingToolkit {
+
+   /**
+    * The idle toolkits
+    */
+   final private BlockingQueue<OpenNlpToolkit> _toolkits;
+   final private int _size;
+   final private RequestCoalescer<String, Object> _coalescer =
+         new RequestCoalescer<String, Object>();
+
+   /**
+    * Create a pool of toolkits that share one {@link ModelManager}.
+    *
+    * @param resourceName
+    *           the OpenNLP properties resource
+    * @param size
+    *           the number of toolkits, i.e., of requests computed at once
+    * @throws IOException if the properties resource can't be loaded
+    */
+   public CoalescingToolkit(final String resourceName, final int size) throws IOException {
+      this(newToolkits(resourceName, size));
+   }
+
+   /**
+    * @param toolkits
+    *           the toolkits to compute results with; must not be used
+    *           directly by other threads while wrapped
+    */
+   public CoalescingToolkit(final OpenNlpToolkit... toolkits) {
+      if (toolkits.length == 0) {
+         throw new IllegalArgumentException("toolkits");
+      }
+      _size = toolkits.length;
+      _toolkits = new LinkedBlockingQueue<OpenNlpToolkit>();
+      for (final OpenNlpToolkit toolkit : toolkits) {
+         _toolkits.add(toolkit);
+      }
+   }
+
+   private static OpenNlpToolkit[] newToolkits(final String resourceName, final int size)
+         throws IOException {
+      if (size < 1) {
+         throw new IllegalArgumentException("size");
+      }
+      final OpenNlpToolkit[] toolkits = new OpenNlpToolkit[size];
+      toolkits[0] = new OpenNlpToolkit(resourceName);
+      for (int i = 1; i < size; i++) {
+         toolkits[i] = new OpenNlpToolkit(resourceName, toolkits[0].getModelManager());
+      }
+      return toolkits;
+   }
+
+   /**
+    * @see OpenNlpToolkit#detectSentences(String)
+    */
+   public String[] detectSentences(final String content) throws IOException {
+      return ((String[]) coalesce(key("sentences", content), new Request() {
+         Object compute(final OpenNlpToolkit toolkit) throws IOException {
+            return toolkit.detectSentences(content);
+         }
+      })).clone();
+   }
+
+   /**
+    * @see OpenNlpToolkit#tokenize(String)
+    */
+   public String[] tokenize(final String sentence) throws IOException {
+      return ((String[]) coalesce(key("tokens", sentence), new Request() {
+         Object compute(final OpenNlpToolkit toolkit) throws IOException {
+            return toolkit.tokenize(sentence);
+         }
+      })).clone();
+   }
+
+   /**
+    * @see OpenNlpToolkit#tagPartOfSpeech(String[])
+    */
+   public String[] tagPartOfSpeech(final String[] tokens) throws IOException {
+      return ((String[]) coalesce(key("pos", tokens), new Request() {
+         Object compute(final OpenNlpToolkit toolkit) throws IOException {
+            return toolkit.tagPartOfSpeech(tokens);
+         }
+      })).clone();
+   }
+
+   /**
+    * Find named entities in a tokenized sentence as a single document, i.e.,
+    * the named entity adaptive data is cleared after each computation.
+    *
+    * @see OpenNlpToolkit#findNamedEntities(String, String[])
+    */
+   @SuppressWarnings("unchecked")
+   public List<Span> findNamedEntities(final String sentence, final String[] tokens)
+         throws IOException {
+      final String[] values = new String[tokens.length + 1];
+      values[0] = sentence;
+      System.arraycopy(tokens, 0, values, 1, tokens.length);
+
+      return new ArrayList<Span>((List<Span>) coalesce(key("entities", values),
+            new Request() {
+               Object compute(final OpenNlpToolkit toolkit) throws IOException {
+                  try {
+                     return toolkit.findNamedEntities(sentence, tokens);
+                  } finally {
+                     toolkit.clearNamedEntityAdaptiveData();
+                  }
+               }
+            }));
+   }
+
+   /**
+    * @see OpenNlpToolkit#parseSentence(String)
+    */
+   public Parse parseSentence(final String text) throws IOException {
+      return (Parse) coalesce(key("parse", text), new Request() {
+         Object compute(final OpenNlpToolkit toolkit) throws IOException {
+            return toolkit.parseSentence(text);
+         }
+      });
+   }
+
+   /**
+    * @see OpenNlpToolkit#findEntityMentions(String[])
+    */
+   public DiscourseEntity[] findEntityMentions(final String[] sentences)
+         throws IOException {
+      return ((DiscourseEntity[]) coalesce(key("mentions", sentences), new Request() {
+         Object compute(final OpenNlpToolkit toolkit) throws IOException {
+            return toolkit.findEntityMentions(sentences);
+         }
+      })).clone();
+   }
+
+   /**
+    * @return the coalescing statistics, i.e., how many requests were made,
+    *         how many were computed and how much compute time was saved
+    */
+   public RequestCoalescer<String, Object> statistics() {
+      return _coalescer;
+   }
+
+   /**
+    * @return the number of toolkits in the pool
+    */
+   public int size() {
+      return _size;
+   }
+
+   /**
+    * A computation on a toolkit borrowed from the pool, timed without the
+    * wait for the toolkit
+    */
+   private abstract class Request implements Callable<Object>, RequestCoalescer.Timed {
+      private long _durationNanos;
+
+      public Object call() throws IOException, InterruptedException {
+         final OpenNlpToolkit toolkit = _toolkits.take();
+         final long start = System.nanoTime();
+         try {
+            return compute(toolkit);
+         } finally {
+            _durationNanos = System.nanoTime() - start;
+            _toolkits.add(toolkit);
+         }
+      }
+
+      public long durationNanos() {
+         return _durationNanos;
+      }
+
+      abstract Object compute(OpenNlpToolkit toolkit) throws IOException;
+   }
+
+   private Object coalesce(final String key, final Callable<Object> computation)
+         throws IOException {
+      try {
+         return _coalescer.get(key, computation);
+      } catch (final IOException e) {
+         throw e;
+      } catch (final RuntimeException e) {
+         throw e;
+      } catch (final InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new IOException("Interrupted while waiting for a toolkit", e);
+      } catch (final Exception e) {
+         throw new IOException(e.getMessage(), e);
+      }
+   }
+
+   private static String key(final String stage, final String... values) {
+      return stage + ':' + ContentHash.sha1(values);
+   }
+
+}
@@ -0,0 +1,458 @@
+package com.dpdearing.nlp.opennlp;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+
+import opennlp.model.AbstractModel;
+import opennlp.model.Context;
+import opennlp.model.IndexHashTable;
+import opennlp.tools.chunker.ChunkerModel;
+import opennlp.tools.namefind.TokenNameFinderModel;
+import opennlp.tools.parser.ParserModel;
+import opennlp.tools.postag.POSModel;
+import opennlp.tools.sentdetect.SentenceModel;
+import opennlp.tools.tokenize.TokenizerModel;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.dpdearing.util.RequestCoalescer;
+
+/**
+ * Keeps the loaded OpenNLP models within a memory budget.
+ * <p>
+ * Each model is loaded on demand and its approximate retained size is
+ * estimated from its maxent parameters.  When the resident models exceed the
+ * budget, the least-recently-used ones are unloaded; they are transparently
+ * reloaded the next time they are needed.  Concurrent requests for a model
+ * that is being loaded wait for that load rather than loading it again.
+ * </p>
+ * <p>
+ * Models are thread-safe and a manager may be shared by several
+ * {@link OpenNlpToolkit}s, each of which builds its own (non-thread-safe)
+ * components around the shared models and drops them when the model is
+ * unloaded.  Toolkits {@link #retain(String) retain} the models they use, so
+ * that a toolkit switching to other models only unloads the old ones that no
+ * other toolkit uses.
+ * </p>
+ */
+public class ModelManager {
+   static private final Logger logger = LoggerFactory.getLogger(ModelManager.class);
+
+   /**
+    * A budget that never unloads models
+    */
+   static final public long UNLIMITED = Long.MAX_VALUE;
+
+   /**
+    * Loads a model on demand.
+    */
+   static public abstract class Loader<T> {
+      /**
+       * @return the loaded model
+       * @throws IOException if the model can't be loaded
+       */
+      public abstract T load() throws IOException;
+
+      /**
+       * @param model
+       *           the loaded model
+       * @return the approximate retained size of the model, in bytes
+       */
+      public long estimateSize(final T model) {
+         return ModelManager.estimateSize(model);
+      }
+   }
+
+   /**
+    * Notified when a model is unloaded.
+    */
+   public interface UnloadListener {
+      /**
+       * @param key
+       *           the key of the unloaded model
+       */
+      void unloaded(String key);
+   }
+
+   /**
+    * A resident model and its estimated size
+    */
+   static private class Entry {
+      final Object model;
+      final long size;
+
+      Entry(final Object model, final long size) {
+         this.model = model;
+         this.size = size;
+      }
+   }
+
+   final private long _budget;
+
+   /**
+    * The resident models in least-recently-used order, guarded by this
+    */
+   final private LinkedHashMap<String, Entry> _resident =
+         new LinkedHashMap<String, Entry>(16, 0.75f, true);
+   private long _residentBytes = 0;
+
+   /**
+    * The number of users of each retained model, guarded by this
+    */
+   final private Map<String, Integer> _references = new HashMap<String, Integer>();
+
+   final private RequestCoalescer<String, Object> _loads =
+         new RequestCoalescer<String, Object>();
+
+   /**
+    * Weakly held so that discarded toolkits don't leak
+    */
+   final private Set<UnloadListener> _listeners =
+         Collections.newSetFromMap(new WeakHashMap<UnloadListener, Boolean>());
+
+   /**
+    * Statistics
+    */
+   final private AtomicLong _loadCount = new AtomicLong();
+   final private AtomicLong _unloadCount = new AtomicLong();
+
+   /**
+    * @param budget
+    *           the memory budget in bytes, or {@link #UNLIMITED}
+    */
+   public ModelManager(final long budget) {
+      if (budget <= 0) {
+         throw new IllegalArgumentException("budget");
+      }
+      _budget = budget;
+   }
+
+   /**
+    * Get the model, loading it if it isn't resident.
+    *
+    * @param key
+    *           identifies the model
+    * @param loader
+    *           loads the model if it isn't resident
+    * @return the model
+    * @throws IOException if the model can't be loaded
+    */
+   @SuppressWarnings("unchecked")
+   public <T> T get(final String key, final Loader<T> loader) throws IOException {
+      synchronized (this) {
+         final Entry entry = _resident.get(key);
+         if (entry != null) {
+            return (T) entry.model;
+         }
+      }
+
+      try {
+         return (T) _loads.get(key, new Callable<Object>() {
+            public Object call() throws IOException {
+               // a load that just finished may have made it resident
+               synchronized (ModelManager.this) {
+                  final Entry entry = _resident.get(key);
+                  if (entry != null) {
+                     return entry.model;
+                  }
+               }
+               final T model = loader.load();
+               final long size = loader.estimateSize(model);
+               _loadCount.incrementAndGet();
+               logger.info("Loaded {} (~{} KB)", key, size / 1024);
+               add(key, model, size);
+               return model;
+            }
+         });
+      } catch (final IOException e) {
+         throw e;
+      } catch (final RuntimeException e) {
+         throw e;
+      } catch (final Exception e) {
+         throw new IOException(e.getMessage(), e);
+      }
+   }
+
+   /**
+    * Unload the model if it is resident.
+    *
+    * @param key
+    *           identifies the model
+    */
+   public void unload(final String key) {
+      final boolean removed;
+      synchronized (this) {
+         removed = remove(key);
+      }
+      if (removed) {
+         unloaded(key);
+      }
+   }
+
+   /**
+    * Count a user of the model, such as the current models of a toolkit.  A
+    * retained model may still be unloaded to stay within the budget.
+    *
+    * @param key
+    *           identifies the model
+    */
+   public synchronized void retain(final String key) {
+      final Integer references = _references.get(key);
+      _references.put(key, references == null ? 1 : references + 1);
+   }
+
+   /**
+    * Uncount a user of the model, unloading it once it has no users left.
+    *
+    * @param key
+    *           identifies a model that was {@link #retain(String) retained}
+    */
+   public void release(final String key) {
+      final boolean removed;
+      synchronized (this) {
+         final Integer references = _references.get(key);
+         if (references == null) {
+            throw new IllegalStateException(key + " isn't retained");
+         } else if (references > 1) {
+            _references.put(key, references - 1);
+            return;
+         }
+         _references.remove(key);
+         removed = remove(key);
+      }
+      if (removed) {
+         unloaded(key);
+      }
+   }
+
+   /**
+    * Unload every resident model.
+    */
+   public void unloadAll() {
+      final String[] keys;
+      synchronized (this) {
+         keys = _resident.keySet().toArray(new String[_resident.size()]);
+      }
+      for (final String key : keys) {
+         unload(key);
+      }
+   }
+
+   /**
+    * @param listener
+    *           notified whenever a model is unloaded; held weakly
+    */
+   public void addUnloadListener(final UnloadListener listener) {
+      synchronized (_listeners) {
+         _listeners.add(listener);
+      }
+   }
+
+   /**
+    * @return the memory budget in bytes
+    */
+   public long getBudget() {
+      return _budget;
+   }
+
+   /**
+    * @return the estimated total size of the resident models in bytes
+    */
+   public synchronized long residentBytes() {
+      return _residentBytes;
+   }
+
+   /**
+    * @return the estimated size of each resident model in bytes, from least
+    *         to most recently used
+    */
+   public synchronized Map<String, Long> residency() {
+      final Map<String, Long> residency = new LinkedHashMap<String, Long>();
+      for (final Map.Entry<String, Entry> entry : _resident.entrySet()) {
+         residency.put(entry.getKey(), entry.getValue().size);
+      }
+      return residency;
+   }
+
+   /**
+    * @return the number of models loaded, including reloads
+    */
+   public long loadCount() {
+      return _loadCount.get();
+   }
+
+   /**
+    * @return the number of models unloaded
+    */
+   public long unloadCount() {
+      return _unloadCount.get();
+   }
+
+   @Override
+   public String toString() {
+      final StringBuilder buf = new StringBuilder();
+      buf.append(String.format("resident=%d KB budget=%s loads=%d unloads=%d",
+            residentBytes() / 1024,
+            _budget == UNLIMITED ? "unlimited" : (_budget / 1024) + " KB",
+            loadCount(), unloadCount()));
+      for (final Map.Entry<String, Long> entry : residency().entrySet()) {
+         buf.append(String.format("%n  %s ~%d KB", entry.getKey(), entry.getValue() / 1024));
+      }
+      return buf.toString();
+   }
+
+   /**
+    * Make the model resident and unload the least-recently-used models until
+    * the budget is met.  The newly added model is never unloaded, even if it
+    * exceeds the budget on its own.
+    */
+   private void add(final String key, final Object model, final long size) {
+      final Map<String, Entry> evicted = new LinkedHashMap<String, Entry>();
+      synchronized (this) {
+         _resident.put(key, new Entry(model, size));
+         _residentBytes += size;
+
+         final Iterator<Map.Entry<String, Entry>> lru = _resident.entrySet().iterator();
+         while (_residentBytes > _budget && lru.hasNext()) {
+            final Map.Entry<String, Entry> eldest = lru.next();
+            if (eldest.getKey().equals(key)) {
+               continue;
+            }
+            lru.remove();
+            _residentBytes -= eldest.getValue().size;
+            evicted.put(eldest.getKey(), eldest.getValue());
+         }
+         if (_residentBytes > _budget) {
+            logger.warn("{} (~{} KB) alone exceeds the model budget of {} KB",
+                  new Object[] { key, size / 1024, _budget / 1024 });
+         }
+      }
+
+      for (final String unloaded : evicted.keySet()) {
+         logger.info("Unloaded least-recently-used {} to stay within the model budget", unloaded);
+         unloaded(unloaded);
+      }
+   }
+
+   /**
+    * Remove the model from the resident models while holding the lock.
+    *
+    * @return <code>true</code> if it was resident
+    */
+   private boolean remove(final String key) {
+      final Entry entry = _resident.remove(key);
+      if (entry == null) {
+         return false;
+      }
+      _residentBytes -= entry.size;
+      return true;
+   }
+
+   private void unloaded(final String key) {
+      _unloadCount.incrementAndGet();
+      final UnloadListener[] listeners;
+      synchronized (_listeners) {
+         listeners = _listeners.toArray(new UnloadListener[_listeners.size()]);
+      }
+      for (final UnloadListener listener : listeners) {
+         listener.unloaded(key);
+      }
+   }
+
+   /**
+    * Estimate the retained size of an OpenNLP model from its maxent
+    * parameters, predicate and outcome labels.
+    *
+    * @param model
+    *           the model
+    * @return the approximate retained size in bytes, or 0 for unknown
+    *         model types
+    */
+   public static long estimateSize(final Object model) {
+      if (model instanceof SentenceModel) {
+         return estimateSize(((SentenceModel) model).getMaxentModel());
+      } else if (model instanceof TokenizerModel) {
+         return estimateSize(((TokenizerModel) model).getMaxentModel());
+      } else if (model instanceof POSModel) {
+         return estimateSize(((POSModel) model).getPosModel());
+      } else if (model instanceof TokenNameFinderModel) {
+         return estimateSize(((TokenNameFinderModel) model).getNameFinderModel());
+      } else if (model instanceof ChunkerModel) {
+         return estimateSize(((ChunkerModel) model).getChunkerModel());
+      } else if (model instanceof ParserModel) {
+         final ParserModel parser = (ParserModel) model;
+         return estimateSize(parser.getBuildModel())
+               + estimateSize(parser.getCheckModel())
+               + estimateSize(parser.getAttachModel())
+               + estimateSize(parser.getParserTaggerModel())
+               + estimateSize(parser.getParserChunkerModel());
+      } else if (model instanceof AbstractModel) {
+         return estimateSize((AbstractModel) model);
+      } else if (model != null) {
+         logger.warn("Unable to estimate the size of a {}", model.getClass().getName());
+      }
+      return 0;
+   }
+
+   /**
+    * Estimate the total size of the files in a model directory tree, e.g.,
+    * for the coreference models.
+    *
+    * @param dir
+    *           the directory
+    * @return the total size of the files in bytes
+    */
+   public static long estimateSize(final File dir) {
+      long size = 0;
+      final File[] files = dir.listFiles();
+      if (files != null) {
+         for (final File file : files) {
+            size += file.isDirectory() ? estimateSize(file) : file.length();
+         }
+      }
+      return size;
+   }
+
+   @SuppressWarnings("unchecked")
+   private static long estimateSize(final AbstractModel model) {
+      final Object[] data = model.getDataStructures();
+      final Context[] params = (Context[]) data[0];
+      final IndexHashTable<String> pmap = (IndexHashTable<String>) data[1];
+      final String[] outcomes = (String[]) data[2];
+
+      long size = array(params.length, 4);
+      for (final Context context : params) {
+         size += 16 + array(context.getOutcomes().length, 4)
+               + array(context.getParameters().length, 8);
+      }
+      // the predicate hash table: keys and values at a 0.7 load factor
+      final int slots = (int) (pmap.size() / 0.7) + 1;
+      size += array(slots, 4) + array(slots, 4);
+      for (final String predicate : pmap.toArray(new String[pmap.size()])) {
+         size += string(predicate);
+      }
+      for (final String outcome : outcomes) {
+         size += string(outcome);
+      }
+      return size;
+   }
+
+   private static long array(final int length, final int elementSize) {
+      return 16 + (long) length * elementSize;
+   }
+
+   private static long string(final String value) {
+      return value == null ? 0 : 24 + array(value.length(), 2);
+   }
+
+}
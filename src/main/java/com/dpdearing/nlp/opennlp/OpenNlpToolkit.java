@@ -4,15 +4,27 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import opennlp.model.MaxentModel;
 import opennlp.tools.coref.DefaultLinker;
 import opennlp.tools.coref.DiscourseEntity;
 import opennlp.tools.coref.Linker;
@@ -41,7 +53,16 @@ import opennlp.tools.util.Span;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.dpdearing.nlp.opennlp.fast.FastMaxentModel;
+import com.dpdearing.nlp.opennlp.fast.FastSentenceDetector;
+import com.dpdearing.nlp.opennlp.fast.FastTokenizer;
+import com.dpdearing.nlp.opennlp.fast.RuleTokenizer;
+import com.dpdearing.nlp.opennlp.gazetteer.Gazetteer;
 import com.dpdearing.util.FileUtilities;
+import com.dpdearing.util.MappedLineReader;
+import com.dpdearing.util.MappedLineReader.LineHandler;
+import com.dpdearing.util.MappedLineReader.Range;
+import com.dpdearing.util.StringPool;
 
 public class OpenNlpToolkit {
    static private final Logger logger = LoggerFactory.getLogger(OpenNlpToolkit.class);
@@ -50,37 +71,328 @@ public class OpenNlpToolkit {
     * The Open NLP system property key and default properties resource name
     */
    static final public  String OPENNLP_SYSTEM_PROPERTY = "opennlp.properties";
-   static final private String DEFAULT_PROPERTIES_RESOURCE = "opennlp-1.5-en.properties";
+   static final public  String DEFAULT_PROPERTIES_RESOURCE = "opennlp-1.5-en.properties";
 
    /**
-    * Properties containing the Open NLP binary paths
+    * The model property keys
     */
-   final private Properties _properties;
-   
+   static final private String SENTENCE = "opennlp.sentence";
+   static final private String TOKENIZER = "opennlp.tokenizer";
+   static final private String POS = "opennlp.pos";
+   static final private String NAME_FINDER = "opennlp.namefinder";
+   static final private String NAME_FINDER_FORMAT = "opennlp.namefinder.format";
+   static final private String NAME_FINDER_TYPES = "opennlp.namefinder.types";
+   static final private String PARSER = "opennlp.parser";
+   static final private String COREF = "opennlp.coref.dir";
+   static final private String GAZETTEER = "opennlp.gazetteer";
+   static final private String GAZETTEER_FORMAT = "opennlp.gazetteer.format";
+   static final private String GAZETTEER_TYPES = "opennlp.gazetteer.types";
+   static final private String GAZETTEER_MODE = "opennlp.gazetteer.mode";
+   static final private String GAZETTEER_IGNORE_CASE = "opennlp.gazetteer.ignorecase";
+
+   /**
+    * The gazetteer modes: add the dictionary names to those of the name
+    * finders, or also skip a type's name finder for sentences in which the
+    * gazetteer found a name of that type
+    */
+   static final public String GAZETTEER_MERGE = "merge";
+   static final public String GAZETTEER_SHORT_CIRCUIT = "shortcircuit";
+
+   /**
+    * The optional property limiting the memory used by the loaded models, in
+    * megabytes
+    */
+   static final public String MODEL_BUDGET_PROPERTY = "opennlp.models.budget.mb";
+
+   /**
+    * The optional property that, when <code>true</code>, detects sentences
+    * and tokenizes with the {@link FastSentenceDetector} and
+    * {@link FastTokenizer} rather than the OpenNLP implementations
+    */
+   static final public String FAST_MAXENT_PROPERTY = "opennlp.fast.maxent";
+
+   /**
+    * The optional property that, when <code>true</code>, tokenizes with a
+    * {@link RuleTokenizer}, which only consults the tokenizer model for
+    * ambiguous chunks
+    */
+   static final public String TOKENIZER_RULES_PROPERTY = "opennlp.tokenizer.rules";
+
+   /**
+    * The optional property that, when <code>true</code>, makes
+    * {@link #tokenize(String)} return the pooled instances of the tokens
+    */
+   static final public String INTERN_TOKENS_PROPERTY = "opennlp.intern.tokens";
+
+   /**
+    * The optional properties bounding the number of distinct tokens and
+    * labels in the pools, read when the toolkit is created
+    */
+   static final public String TOKEN_POOL_CAPACITY_PROPERTY = "opennlp.intern.tokens.capacity";
+   static final public String LABEL_POOL_CAPACITY_PROPERTY = "opennlp.intern.labels.capacity";
+   static final private int DEFAULT_TOKEN_POOL_CAPACITY = 1000000;
+   static final private int DEFAULT_LABEL_POOL_CAPACITY = 10000;
+
    /**
-    * OpenNLP components, each is lazily initialized.  Don't directly access, but use:
+    * Runs the chunks of {@link #detectSentences(File, Charset, int)} for every
+    * toolkit.  Idle threads are reused and expire after a minute, and they're
+    * daemons so that they don't keep the JVM alive.
+    */
+   static final private ExecutorService SENTENCE_WORKERS =
+         Executors.newCachedThreadPool(new ThreadFactory() {
+            final private AtomicInteger _count = new AtomicInteger();
+
+            public Thread newThread(final Runnable runnable) {
+               final Thread thread =
+                     new Thread(runnable, "sentence-detector-" + _count.incrementAndGet());
+               thread.setDaemon(true);
+               return thread;
+            }
+         });
+
+   /**
+    * The properties containing the Open NLP binary paths and the versions of
+    * the model resources they name.  Replaced atomically by
+    * {@link #reload(String)}; each call {@link #acquire() acquires} the
+    * current set once so that calls in progress finish on the models they
+    * started with.
+    */
+   private volatile ModelSet _modelSet;
+
+   /**
+    * Loads, and may unload, the models.  Don't directly access the models,
+    * but use:
     * <ul>
-    * <li>{@link #detectSentences(String)}</li>
-    * <li>{@link #tokenize(String)}</li>
+    * <li>{@link #sentenceModel()}</li>
+    * <li>{@link #tokenizer()}</li>
     * <li>{@link #nameFinders()}</li>
-    * <li>{@link #parse(Parse)}</li>
+    * <li>{@link #parser()}</li>
     * <li>{@link #linker()}</li>
     * </ul>
     */
-   private SentenceDetector _sentenceDetector = null;
-   private Tokenizer _tokenizer = null;
-   private POSTagger _posTagger = null;
-   final private Map<String, TokenNameFinder> _nameFinderMap =
-         new HashMap<String, TokenNameFinder>();
-   private Parser _parser = null;
-   private Linker _linker = null;
+   final private ModelManager _models;
+
+   /**
+    * Encode the tokens and the part-of-speech and named entity labels as
+    * integer ids.  Kept across reloads so that ids stay comparable.
+    */
+   final private StringPool _tokenPool;
+   final private StringPool _labelPool;
+
+   /**
+    * The lazily-initialized OpenNLP components, keyed by the model they were
+    * built from.  A component is dropped when its model is unloaded.
+    */
+   final private ConcurrentMap<String, Component> _components =
+         new ConcurrentHashMap<String, Component>();
+
+   /**
+    * Serializes reloads
+    */
+   final private Object _reloadLock = new Object();
+
+   /**
+    * Held here since the model manager only holds it weakly
+    */
+   final private ModelManager.UnloadListener _unloadListener =
+         new ModelManager.UnloadListener() {
+            public void unloaded(final String key) {
+               _components.remove(key);
+            }
+         };
 
    public OpenNlpToolkit() throws IOException {
       this(System.getProperty(OPENNLP_SYSTEM_PROPERTY, DEFAULT_PROPERTIES_RESOURCE));
    }
 
    public OpenNlpToolkit(final String resourceName) throws IOException {
-      _properties = loadProperties(resourceName);
+      this(resourceName, null);
+   }
+
+   /**
+    * @param resourceName
+    *           the properties resource
+    * @param models
+    *           the model manager to share with other toolkits, or
+    *           <code>null</code> to create one with the budget from the
+    *           properties
+    * @throws IOException if the properties resource can't be loaded
+    */
+   public OpenNlpToolkit(final String resourceName, final ModelManager models)
+         throws IOException {
+      _modelSet = new ModelSet(resourceName, loadProperties(resourceName));
+      _models = models != null ? models : new ModelManager(getModelBudget());
+      _models.addUnloadListener(_unloadListener);
+      _tokenPool = new StringPool(
+            getPoolCapacity(TOKEN_POOL_CAPACITY_PROPERTY, DEFAULT_TOKEN_POOL_CAPACITY));
+      _labelPool = new StringPool(
+            getPoolCapacity(LABEL_POOL_CAPACITY_PROPERTY, DEFAULT_LABEL_POOL_CAPACITY));
+   }
+
+   /**
+    * Reload the current properties resource, switching to any model files
+    * that have been replaced since they were loaded.
+    *
+    * @throws IOException if a replaced model can't be loaded
+    * @see #reload(String)
+    */
+   public void reload() throws IOException {
+      reload(_modelSet.resourceName);
+   }
+
+   /**
+    * Switch to a new properties resource, or to replaced model files, without
+    * interrupting calls in progress.
+    * <p>
+    * The models this toolkit currently uses are first loaded for the new
+    * properties in the calling thread, while other threads keep using the
+    * current models; models whose resource is unchanged are shared rather
+    * than loaded again.  The new set is then switched in atomically: calls
+    * already in progress finish on the old models and later calls use the new
+    * ones.  The old models that the new set doesn't use are unloaded as soon
+    * as the calls in progress finish, unless another toolkit sharing the
+    * model manager still uses them, so both versions of a model are only
+    * resident while it is being replaced.  If anything can't be loaded, the
+    * current models remain in use.
+    * </p>
+    * <p>
+    * Model resources loaded from the file system are considered replaced when
+    * their size or modification time changes; resources in jar files can only
+    * change with a new properties resource.  The model budget isn't changed.
+    * </p>
+    *
+    * @param resourceName
+    *           the new properties resource
+    * @throws IOException if the properties or a model can't be loaded
+    */
+   public void reload(final String resourceName) throws IOException {
+      synchronized (_reloadLock) {
+         final ModelSet current = _modelSet;
+         final ModelSet next = new ModelSet(resourceName, loadProperties(resourceName));
+         logger.info("Preparing to switch to the OpenNLP models of the '{}' resource", resourceName);
+
+         // warm the models (and components) in use before switching
+         boolean warmed = false;
+         try {
+            for (final String request : current.keys.keySet()) {
+               warm(next, request);
+            }
+            warmed = true;
+         } finally {
+            if (warmed) {
+               _modelSet = next;
+               current.retired = true;
+               if (current.users.get() == 0) {
+                  releaseModels(current);
+               }
+            } else {
+               // nothing uses the new set
+               releaseModels(next);
+            }
+         }
+         logger.info("Switched to the OpenNLP models of the '{}' resource", resourceName);
+      }
+   }
+
+   /**
+    * @return the current model set, which is in use until it is
+    *         {@link #release(ModelSet) released}
+    */
+   private ModelSet acquire() {
+      while (true) {
+         final ModelSet set = _modelSet;
+         set.users.incrementAndGet();
+         if (set == _modelSet) {
+            return set;
+         }
+         // switched in the meantime
+         release(set);
+      }
+   }
+
+   /**
+    * Release a model set, releasing its models once it has been replaced
+    * and the last call in progress on it finishes.
+    */
+   private void release(final ModelSet set) {
+      if (set.users.decrementAndGet() == 0 && set.retired) {
+         releaseModels(set);
+      }
+   }
+
+   /**
+    * Release the models of a set that is no longer used, which unloads those
+    * that no other set retains.
+    */
+   private void releaseModels(final ModelSet set) {
+      if (set.released.compareAndSet(false, true)) {
+         for (final String key : set.keys.values()) {
+            _models.release(key);
+         }
+      }
+   }
+
+   /**
+    * Load the model and build the component for a request of the previous
+    * model set, unless the set doesn't configure it.
+    */
+   private void warm(final ModelSet set, final String request) throws IOException {
+      if (request.startsWith(NAME_FINDER + ":")) {
+         final String type = request.substring(NAME_FINDER.length() + 1);
+         if (set.properties.getProperty(NAME_FINDER_FORMAT) != null
+               && set.properties.getProperty(NAME_FINDER_TYPES) != null
+               && getPropertyList(set, NAME_FINDER_TYPES).contains(type)) {
+            nameFinder(set, type);
+         }
+      } else if (set.properties.getProperty(
+            request.equals(GAZETTEER) ? GAZETTEER_TYPES : request) == null) {
+         // not configured
+         return;
+      } else if (request.equals(SENTENCE)) {
+         sentenceDetector(set);
+      } else if (request.equals(TOKENIZER)) {
+         tokenizer(set);
+      } else if (request.equals(POS)) {
+         posTagger(set);
+      } else if (request.equals(PARSER)) {
+         parser(set);
+      } else if (request.equals(COREF)) {
+         linker(set);
+      } else if (request.equals(GAZETTEER)) {
+         gazetteer(set);
+      }
+   }
+
+   /**
+    * @return a copy of the current properties
+    */
+   public Properties getProperties() {
+      final Properties properties = new Properties();
+      properties.putAll(_modelSet.properties);
+      return properties;
+   }
+
+   /**
+    * @return the model manager, e.g., to report model residency
+    */
+   public ModelManager getModelManager() {
+      return _models;
+   }
+
+   /**
+    * @return the pool of the token ids returned by {@link #tokenizeIds(String)}
+    */
+   public StringPool getTokenPool() {
+      return _tokenPool;
+   }
+
+   /**
+    * @return the pool of the label ids returned by
+    *         {@link #tagPartOfSpeechIds(String[])} and
+    *         {@link #namedEntityTypeIds(List)}
+    */
+   public StringPool getLabelPool() {
+      return _labelPool;
    }
 
    /**
@@ -99,25 +411,146 @@ public class OpenNlpToolkit {
       // reading individual lines instead of raw content because with news stories,
       // some sentence lines don't end in punctuation (especially headings, etc.)
       final List<String> lines = FileUtilities.loadLines(file, cs);
-      final ArrayList<String> sentences = new ArrayList<String>();
-      for (final String content : lines) {
-         final String[] detected = detectSentences(content);
-         for (int idx=0; idx < detected.length; idx++) {
-            final String sentence = detected[idx].trim();
-            // check for ending with punctuation
-            if (sentence.matches(".*\\p{P}$")) {
-               sentences.add(sentence);
-            } else {
-               logger.warn("Sentence #" + idx
-                     + " does not end with punctuation: [" + sentence + "]");
-               logger.warn("Appending a . (period)");
-               sentences.add(sentence + ".");
-            }
+      final ModelSet set = acquire();
+      try {
+         final SentenceDetector detector = sentenceDetector(set);
+         final ArrayList<String> sentences = new ArrayList<String>();
+         for (final String content : lines) {
+            addLineSentences(detector.sentDetect(content), sentences);
          }
+         return sentences.toArray(new String[sentences.size()]);
+      } finally {
+         release(set);
       }
+   }
+
+   /**
+    * Break a single line of a file into sentences, exactly as
+    * {@link #detectSentences(File, Charset)} does for each line, i.e., every
+    * sentence is terminated with punctuation.
+    * 
+    * @param line the line to break into sentences
+    * @return the detected sentences
+    * @throws IOException if an I/O error occurs while loading the sentence model resource
+    */
+   public String[] detectLineSentences(final String line) throws IOException {
+      final List<String> sentences = new ArrayList<String>();
+      addLineSentences(detectSentences(line), sentences);
       return sentences.toArray(new String[sentences.size()]);
    }
 
+   /**
+    * Read the content from the specified file and return a list of detected
+    * sentences, detecting sentences in parallel.
+    * <p>
+    * The file's lines are partitioned into one contiguous chunk per worker and
+    * each worker detects the sentences in its chunk with its own sentence
+    * detector, sharing the (thread-safe) sentence model.  The
+    * sentences are returned in their original order, exactly as from
+    * {@link #detectSentences(File, Charset)}.  Files in charsets that
+    * {@link MappedLineReader} cannot split are detected sequentially.
+    * </p>
+    * 
+    * @param file
+    *           the file to read
+    * @param cs
+    *           the file charset
+    * @param workers
+    *           the number of worker threads
+    * @return the detected sentences
+    * @throws IOException if an I/O error occurs while loading the file or the sentence model resource
+    */
+   public String[] detectSentences(final File file, final Charset cs, final int workers)
+         throws IOException {
+      if (workers < 1) {
+         throw new IllegalArgumentException("workers");
+      }
+      if (workers == 1 || !MappedLineReader.supports(cs)) {
+         return detectSentences(file, cs);
+      }
+
+      final ModelSet set = acquire();
+      try {
+         return detectSentences(set, file, cs, workers);
+      } finally {
+         release(set);
+      }
+   }
+
+   private String[] detectSentences(final ModelSet set, final File file, final Charset cs,
+         final int workers) throws IOException {
+      final SentenceModel model = sentenceModel(set);
+      final List<Range> ranges = MappedLineReader.split(file, workers);
+      if (ranges.isEmpty()) {
+         // an empty file
+         return new String[0];
+      }
+      final List<Future<List<String>>> chunks = new ArrayList<Future<List<String>>>();
+      try {
+         // one task per chunk, each with its own detector
+         for (final Range range : ranges) {
+            chunks.add(SENTENCE_WORKERS.submit(new Callable<List<String>>() {
+               public List<String> call() throws IOException {
+                  final SentenceDetector detector = newSentenceDetector(set, model);
+                  final List<String> sentences = new ArrayList<String>();
+                  new MappedLineReader(file, cs).read(range, new LineHandler() {
+                     public boolean handle(final String line) {
+                        addLineSentences(detector.sentDetect(line), sentences);
+                        return true;
+                     }
+                  });
+                  return sentences;
+               }
+            }));
+         }
+
+         // reassemble in the original order
+         final ArrayList<String> sentences = new ArrayList<String>();
+         for (final Future<List<String>> chunk : chunks) {
+            sentences.addAll(chunk.get());
+         }
+         return sentences.toArray(new String[sentences.size()]);
+      } catch (final InterruptedException e) {
+         Thread.currentThread().interrupt();
+         throw new IOException("Interrupted while detecting sentences in " + file, e);
+      } catch (final ExecutionException e) {
+         if (e.getCause() instanceof IOException) {
+            throw (IOException) e.getCause();
+         } else if (e.getCause() instanceof RuntimeException) {
+            throw (RuntimeException) e.getCause();
+         }
+         throw new IOException("Error detecting sentences in " + file, e.getCause());
+      } finally {
+         // stop the other chunks if one failed
+         for (final Future<List<String>> chunk : chunks) {
+            chunk.cancel(true);
+         }
+      }
+   }
+
+   /**
+    * Add the sentences detected in a single line, terminating each with a
+    * period if it doesn't already end with punctuation.
+    * 
+    * @param detected the sentences detected in the line
+    * @param sentences the list to add the sentences to
+    */
+   private static void addLineSentences(final String[] detected,
+         final List<String> sentences) {
+      for (int idx=0; idx < detected.length; idx++) {
+         final String sentence = detected[idx].trim();
+         // check for ending with punctuation
+         if (sentence.matches(".*\\p{P}$")) {
+            sentences.add(sentence);
+         } else {
+            logger.warn("Sentence #" + idx
+                  + " does not end with punctuation: [" + sentence + "]");
+            logger.warn("Appending a . (period)");
+            sentences.add(sentence + ".");
+         }
+      }
+   }
+
    /**
     * Break the given content into sentences.
     * <p>
@@ -129,29 +562,70 @@ public class OpenNlpToolkit {
     * @throws IOException if an I/O error occurs while loading the sentence model resource
     */
    public String[] detectSentences(final String content) throws IOException {
-      if (_sentenceDetector == null) {
+      final ModelSet set = acquire();
+      try {
+         // detect sentences
+         return sentenceDetector(set).sentDetect(content);
+      } finally {
+         release(set);
+      }
+   }
+
+   /**
+    * @return the lazily-initialized sentence detector
+    * @throws IOException if an I/O error occurs while loading the sentence model resource
+    */
+   private SentenceDetector sentenceDetector(final ModelSet set) throws IOException {
+      final SentenceModel model = sentenceModel(set);
+      final String key = modelKey(set, SENTENCE);
+      SentenceDetector detector = component(key, model);
+      if (detector == null) {
          // lazy initialize
-         InputStream modelIn = null;
+         detector = cache(key, model, newSentenceDetector(set, model));
+      }
+      return detector;
+   }
 
-         try {
-            // load model input stream
-            modelIn = getPropertyModelStream("opennlp.sentence");
+   /**
+    * @return a new {@link FastSentenceDetector} if enabled and the model
+    *         supports it, or else a {@link SentenceDetectorME}
+    */
+   private static SentenceDetector newSentenceDetector(final ModelSet set,
+         final SentenceModel model) {
+      if (isFastMaxent(set) && FastSentenceDetector.supports(model)) {
+         return new FastSentenceDetector(model);
+      }
+      return new SentenceDetectorME(model);
+   }
 
-            // sentence detector
-            final SentenceModel sentenceModel = new SentenceModel(modelIn);
-            _sentenceDetector = new SentenceDetectorME(sentenceModel);
-            logger.info("done.");
-         } finally {
-            if (modelIn != null) {
-               try {
-                  modelIn.close();
-               } catch (final IOException e) {}
-            }
-         }
+   /**
+    * @return the lazily-initialized sentence model, which may be shared by
+    * several sentence detectors
+    * @throws IOException if an I/O error occurs while loading the sentence model resource
+    */
+   protected SentenceModel sentenceModel() throws IOException {
+      final ModelSet set = acquire();
+      try {
+         return sentenceModel(set);
+      } finally {
+         release(set);
       }
+   }
 
-      // detect sentences
-      return _sentenceDetector.sentDetect(content);
+   private SentenceModel sentenceModel(final ModelSet set) throws IOException {
+      return _models.get(modelKey(set, SENTENCE), new ModelLoader<SentenceModel>(set, SENTENCE) {
+         @Override
+         protected SentenceModel read(final InputStream modelIn) throws IOException {
+            return new SentenceModel(modelIn);
+         }
+
+         @Override
+         public long estimateSize(final SentenceModel model) {
+            return super.estimateSize(model)
+                  + (isFastMaxent(set) && FastSentenceDetector.supports(model)
+                        ? compiledSize(model.getMaxentModel()) : 0);
+         }
+      });
    }
 
    /**
@@ -166,8 +640,61 @@ public class OpenNlpToolkit {
     * @throws IOException if an I/O error occurs while loading the tokenizer model resource
     */
    public String[] tokenize(final String sentence) throws IOException {
-      // tokenize
-      return tokenizer().tokenize(sentence);
+      final ModelSet set = acquire();
+      try {
+         // tokenize
+         final String[] tokens = tokenizer(set).tokenize(sentence);
+         if (set.internTokens) {
+            _tokenPool.internAll(tokens);
+         }
+         return tokens;
+      } finally {
+         release(set);
+      }
+   }
+
+   /**
+    * Tokenize the given sentence, returning the ids of the tokens in the
+    * {@link #getTokenPool() token pool}.
+    * <p>
+    * Equal tokens always have the same id, so the ids can be compared and
+    * grouped in place of the tokens.  Once the pool is full, tokens it
+    * doesn't hold are returned as {@link StringPool#NO_ID}.
+    * </p>
+    *
+    * @param sentence
+    *           a sentence to tokenize
+    * @return the token ids
+    * @throws IOException if an I/O error occurs while loading the tokenizer model resource
+    */
+   public int[] tokenizeIds(final String sentence) throws IOException {
+      final ModelSet set = acquire();
+      try {
+         return _tokenPool.encode(tokenizer(set).tokenize(sentence));
+      } finally {
+         release(set);
+      }
+   }
+
+   /**
+    * Tokenize the given sentence, returning the character offsets of the
+    * tokens.
+    * <p>
+    * The tokenizer is lazily initialized on first use.
+    * </p>
+    * 
+    * @param sentence
+    *           a sentence to tokenize
+    * @return the character offsets of the individual tokens
+    * @throws IOException if an I/O error occurs while loading the tokenizer model resource
+    */
+   public Span[] tokenizePos(final String sentence) throws IOException {
+      final ModelSet set = acquire();
+      try {
+         return tokenizer(set).tokenizePos(sentence);
+      } finally {
+         release(set);
+      }
    }
    
    /**
@@ -175,26 +702,71 @@ public class OpenNlpToolkit {
     * @throws IOException if an I/O error occurs while loading the tokenizer model resource
     */
    protected Tokenizer tokenizer() throws IOException {
-      if (_tokenizer == null) {
+      final ModelSet set = acquire();
+      try {
+         return tokenizer(set);
+      } finally {
+         release(set);
+      }
+   }
+
+   private Tokenizer tokenizer(final ModelSet set) throws IOException {
+      final String key = modelKey(set, TOKENIZER);
+      final TokenizerModel model = tokenizerModel(set);
+      Tokenizer tokenizer = component(key, model);
+      if (tokenizer == null) {
          // lazy initialize
-         InputStream modelIn = null;
-         try {
-            // load model input stream
-            modelIn = getPropertyModelStream("opennlp.tokenizer");
+         tokenizer = cache(key, model, newTokenizer(set, model));
+      }
+      return tokenizer;
+   }
 
-            // tokenizer
-            final TokenizerModel tokenModel = new TokenizerModel(modelIn);
-            _tokenizer = new TokenizerME(tokenModel);
-            logger.info("done.");
-         } finally {
-            if (modelIn != null) {
-               try {
-                  modelIn.close();
-               } catch (final IOException e) {}
-            }
-         }
+   private TokenizerModel tokenizerModel(final ModelSet set) throws IOException {
+      return _models.get(modelKey(set, TOKENIZER),
+            new ModelLoader<TokenizerModel>(set, TOKENIZER) {
+               @Override
+               protected TokenizerModel read(final InputStream modelIn) throws IOException {
+                  return new TokenizerModel(modelIn);
+               }
+
+               @Override
+               public long estimateSize(final TokenizerModel model) {
+                  return super.estimateSize(model)
+                        + (isFastMaxent(set) && FastTokenizer.supports(model)
+                              ? compiledSize(model.getMaxentModel()) : 0);
+               }
+            });
+   }
+
+   /**
+    * @return a new {@link FastTokenizer} if enabled and the model supports
+    *         it, or else a {@link TokenizerME}, wrapped in a
+    *         {@link RuleTokenizer} if enabled
+    */
+   private static Tokenizer newTokenizer(final ModelSet set, final TokenizerModel model) {
+      final Tokenizer tokenizer = isFastMaxent(set) && FastTokenizer.supports(model)
+            ? new FastTokenizer(model) : new TokenizerME(model);
+      if ("true".equalsIgnoreCase(
+            set.properties.getProperty(TOKENIZER_RULES_PROPERTY, "false").trim())) {
+         return new RuleTokenizer(tokenizer);
       }
-      return _tokenizer;
+      return tokenizer;
+   }
+
+   /**
+    * Compile the model for the fast implementations as it is loaded, so that
+    * the compiled arrays, which are held for as long as the model is, count
+    * towards the model budget with it.
+    *
+    * @return the estimated size of the compiled model
+    */
+   private static long compiledSize(final MaxentModel model) {
+      return FastMaxentModel.compile(model).estimateSize();
+   }
+
+   private static boolean isFastMaxent(final ModelSet set) {
+      return "true".equalsIgnoreCase(
+            set.properties.getProperty(FAST_MAXENT_PROPERTY, "false").trim());
    }
 
    /**
@@ -209,26 +781,46 @@ public class OpenNlpToolkit {
     * @throws IOException if an I/O error occurs while loading the part-of-speech model resource
     */
    public String[] tagPartOfSpeech(final String[] tokens) throws IOException {
-      if (_posTagger == null) {
-         // lazy initialize
-         InputStream modelIn = null;
-         try {
-            // load model input stream
-            modelIn = getPropertyModelStream("opennlp.pos");
+      final ModelSet set = acquire();
+      try {
+         return posTagger(set).tag(tokens);
+      } finally {
+         release(set);
+      }
+   }
 
-            // tagger
-            final POSModel posModel = new POSModel(modelIn);
-            _posTagger = new POSTaggerME(posModel);
-            logger.info("done.");
-         } finally {
-            if (modelIn != null) {
-               try {
-                  modelIn.close();
-               } catch (final IOException e) {}
-            }
+   /**
+    * Detect the part of speech tags for the given tokens in a sentence,
+    * returning the ids of the tags in the {@link #getLabelPool() label
+    * pool}.
+    *
+    * @param tokens
+    *           an array of sentence tokens to tag
+    * @return the part-of-speech tag ids
+    * @throws IOException if an I/O error occurs while loading the part-of-speech model resource
+    */
+   public int[] tagPartOfSpeechIds(final String[] tokens) throws IOException {
+      return _labelPool.encode(tagPartOfSpeech(tokens));
+   }
+
+   /**
+    * @return the lazily-initialized part-of-speech tagger
+    * @throws IOException if an I/O error occurs while loading the part-of-speech model resource
+    */
+   private POSTagger posTagger(final ModelSet set) throws IOException {
+      final String key = modelKey(set, POS);
+      final POSModel model = _models.get(key, new ModelLoader<POSModel>(set, POS) {
+         @Override
+         protected POSModel read(final InputStream modelIn) throws IOException {
+            return new POSModel(modelIn);
          }
+      });
+      POSTagger tagger = component(key, model);
+      if (tagger == null) {
+         // lazy initialize
+         tagger = cache(key, model, new POSTaggerME(model));
       }
-      return _posTagger.tag(tokens);
+      return tagger;
    }
    
    
@@ -238,7 +830,14 @@ public class OpenNlpToolkit {
     * Must call {@link #clearNamedEntityAdaptiveData()} after finding all named
     * entities in a single document.
     * </p>
-    *
+    * <p>
+    * If <code>opennlp.gazetteer.types</code> is set, the names of the
+    * dictionaries are found first, typed by their dictionary, and the
+    * entities of the name finders that overlap them are dropped.  In the
+    * <code>shortcircuit</code> <code>opennlp.gazetteer.mode</code>, the name
+    * finder of a type isn't run on a sentence in which the gazetteer found a
+    * name of that type.
+    * </p>
     *
     * @param sentence
     *           the sentence text
@@ -248,23 +847,134 @@ public class OpenNlpToolkit {
     * @throws IOException if an I/O error occurs while loading a named entity model resource
     */
    public List<Span> findNamedEntities(final String sentence, final String[] tokens) throws IOException {
+      final ModelSet set = acquire();
+      try {
+         return findNamedEntities(set, tokens);
+      } finally {
+         release(set);
+      }
+   }
+
+   private List<Span> findNamedEntities(final ModelSet set, final String[] tokens)
+         throws IOException {
       final List<Span> entities = new LinkedList<Span>();
-      
-      // use each type of finder to identify named entities 
-      for (final TokenNameFinder finder : nameFinders()) {
-         entities.addAll(Arrays.asList(finder.find(tokens)));
+      final Gazetteer gazetteer = gazetteer(set);
+      if (gazetteer == null) {
+         // use each type of finder to identify named entities 
+         for (final TokenNameFinder finder : nameFinders(set)) {
+            entities.addAll(Arrays.asList(finder.find(tokens)));
+         }
+         return entities;
+      }
+
+      // the dictionary names take precedence over overlapping found names
+      final List<Span> names = gazetteer.find(tokens);
+      entities.addAll(names);
+      for (final String type : getPropertyList(set, NAME_FINDER_TYPES)) {
+         if (set.gazetteerShortCircuit && containsType(names, type)) {
+            continue;
+         }
+         for (final Span entity : nameFinder(set, type).find(tokens)) {
+            if (!intersectsAny(entity, names)) {
+               entities.add(entity);
+            }
+         }
       }
-      
       return entities;
    }
+
+   private static boolean containsType(final List<Span> spans, final String type) {
+      for (final Span span : spans) {
+         if (type.equals(span.getType())) {
+            return true;
+         }
+      }
+      return false;
+   }
+
+   private static boolean intersectsAny(final Span span, final List<Span> spans) {
+      for (final Span other : spans) {
+         if (span.intersects(other)) {
+            return true;
+         }
+      }
+      return false;
+   }
+
+   /**
+    * @return the gazetteer compiled from the dictionaries of the
+    *         <code>opennlp.gazetteer.types</code>, or <code>null</code> if
+    *         none are configured
+    * @throws IOException if a dictionary or the tokenizer model can't be loaded
+    */
+   private Gazetteer gazetteer(final ModelSet set) throws IOException {
+      final String types = set.properties.getProperty(GAZETTEER_TYPES);
+      if (types == null || types.trim().isEmpty()) {
+         return null;
+      }
+
+      return _models.get(modelKey(set, GAZETTEER), new ModelManager.Loader<Gazetteer>() {
+         @Override
+         public Gazetteer load() throws IOException {
+            // tokenize the names as the sentences are
+            final Tokenizer tokenizer = newTokenizer(set, tokenizerModel(set));
+            final Gazetteer.Builder builder = new Gazetteer.Builder(Boolean.parseBoolean(
+                  set.properties.getProperty(GAZETTEER_IGNORE_CASE, "false").trim()));
+            for (final String type : getPropertyList(set, GAZETTEER_TYPES)) {
+               final String resourceName = gazetteerResource(set, type);
+               logger.info("Loading the {} gazetteer from '{}'", type, resourceName);
+               final InputStream in = getClass().getResourceAsStream(resourceName);
+               if (in == null) {
+                  throw new IOException(String.format(
+                        "Error loading the %s gazetteer resource. Does '%s' exist on the classpath?",
+                        type, resourceName));
+               }
+               try {
+                  builder.load(type, in, tokenizer);
+               } finally {
+                  in.close();
+               }
+            }
+            return builder.build();
+         }
+
+         @Override
+         public long estimateSize(final Gazetteer gazetteer) {
+            return gazetteer.estimateSize();
+         }
+      });
+   }
+
+   private String gazetteerResource(final ModelSet set, final String type) {
+      return String.format(getProperty(set, GAZETTEER_FORMAT), type);
+   }
    
+   /**
+    * @param entities
+    *           named entities, e.g., from
+    *           {@link #findNamedEntities(String, String[])}
+    * @return the ids of their types in the {@link #getLabelPool() label
+    *         pool}, in order; {@link StringPool#NO_ID} for untyped entities
+    */
+   public int[] namedEntityTypeIds(final List<Span> entities) {
+      final int[] ids = new int[entities.size()];
+      int i = 0;
+      for (final Span entity : entities) {
+         ids[i++] = entity.getType() == null
+               ? StringPool.NO_ID : _labelPool.id(entity.getType());
+      }
+      return ids;
+   }
+
    /**
     * Must be called between documents or can negatively impact detection rate.
     */
    public void clearNamedEntityAdaptiveData() throws IOException {
-      // only clear those name finders already created (in the map)
-      for (final TokenNameFinder finder : _nameFinderMap.values()) {
-         finder.clearAdaptiveData();
+      // only clear those name finders already created
+      for (final Component component : _components.values()) {
+         if (component.instance instanceof TokenNameFinder) {
+            ((TokenNameFinder) component.instance).clearAdaptiveData();
+         }
       }
    }
 
@@ -273,7 +983,16 @@ public class OpenNlpToolkit {
     * @throws IOException if an I/O error occurs while loading a named entity model resource
     */
    protected TokenNameFinder[] nameFinders() throws IOException {
-      List<String> activeTypes = getPropertyList("opennlp.namefinder.types");
+      final ModelSet set = acquire();
+      try {
+         return nameFinders(set);
+      } finally {
+         release(set);
+      }
+   }
+
+   private TokenNameFinder[] nameFinders(final ModelSet set) throws IOException {
+      List<String> activeTypes = getPropertyList(set, NAME_FINDER_TYPES);
       if (activeTypes.isEmpty()) {
          logger.warn("No active name entity types declared for the opennlp.namefinder.types property");
       }
@@ -281,7 +1000,7 @@ public class OpenNlpToolkit {
       final TokenNameFinder[] finders = new TokenNameFinder[activeTypes.size()];
       // one for each name type
       for (int i = 0; i < activeTypes.size(); i++) {
-         finders[i] = nameFinder(activeTypes.get(i));
+         finders[i] = nameFinder(set, activeTypes.get(i));
       }
       return finders;
    }
@@ -291,47 +1010,24 @@ public class OpenNlpToolkit {
     * @return the lazily-initialized name token finder
     * @throws IOException if an I/O error occurs while loading a named entity model resource
     */
-   private TokenNameFinder nameFinder(final String type) throws IOException {
-      if (!_nameFinderMap.containsKey(type)) {
-         final TokenNameFinder finder = createNameFinder(type);
-         _nameFinderMap.put(type, finder);
-      }
-      return _nameFinderMap.get(type);
-   }
+   private TokenNameFinder nameFinder(final ModelSet set, final String type) throws IOException {
+      final String request = NAME_FINDER + ":" + type;
+      final String key = modelKey(set, request);
 
-   /**
-    * @param type the name type recognizer to load
-    * @return the lazily-initialized name token finder
-    * @throws IOException if an I/O error occurs while loading a named entity model resource
-    */
-   private TokenNameFinder createNameFinder(final String type) throws IOException {
-      InputStream modelIn = null;
-      try {
+      final TokenNameFinderModel model = _models.get(key,
+            new ModelLoader<TokenNameFinderModel>(type + " named entity model",
+                  modelResource(set, request)) {
+               @Override
+               protected TokenNameFinderModel read(final InputStream modelIn) throws IOException {
+                  return new TokenNameFinderModel(modelIn);
+               }
+            });
+      TokenNameFinder finder = component(key, model);
+      if (finder == null) {
          logger.info("Creating {} named entity recognizer", type);
-
-         // construct the model filename
-         String modelFormat = getProperty("opennlp.namefinder.format");
-         String modelResourceName = String.format(modelFormat, type);
-         logger.info("Loading {} named entity model from '{}'", type, modelResourceName);
-         modelIn = getClass().getResourceAsStream(modelResourceName);
-
-         // verify stream was retrieved
-         if (modelIn == null) {
-            throw new IOException(String.format(
-                  "Error loading the %s named entity model resource. Does '%s' exist on the classpath (e.g., in /src/main/resources)?",
-                  type, modelResourceName));
-         }
-
-         // named entity recognizer
-         final TokenNameFinderModel nameFinderModel = new TokenNameFinderModel(modelIn);
-         return new NameFinderME(nameFinderModel);
-      } finally {
-         if (modelIn != null) {
-            try {
-               modelIn.close();
-            } catch (final IOException e) {}
-         }
+         finder = cache(key, model, new NameFinderME(model));
       }
+      return finder;
    }
 
    /**
@@ -344,15 +1040,33 @@ public class OpenNlpToolkit {
     */
    public DiscourseEntity[] findEntityMentions(final String[] sentences) throws IOException {
 
+      // use the same models for the whole document
+      final ModelSet set = acquire();
+      try {
+         final Tokenizer tokenizer = tokenizer(set);
+         final Parser parser = parser(set);
+         final Linker linker = linker(set);
+
+         // the linker may be shared with other toolkits and isn't thread-safe
+         synchronized (linker) {
+            return findEntityMentions(tokenizer, parser, linker, sentences);
+         }
+      } finally {
+         release(set);
+      }
+   }
+
+   private DiscourseEntity[] findEntityMentions(final Tokenizer tokenizer, final Parser parser,
+         final Linker linker, final String[] sentences) {
       // list of document mentions
       final List<Mention> document = new ArrayList<Mention>();
 
       for (int i=0; i < sentences.length; i++) {
          // generate the sentence parse tree
-         final Parse parse = parseSentence(sentences[i]);
+         final Parse parse = parseSentence(tokenizer, parser, sentences[i]);
          
          final DefaultParse parseWrapper = new DefaultParse(parse, i);
-         final Mention[] extents = linker().getMentionFinder().getMentions(parseWrapper);
+         final Mention[] extents = linker.getMentionFinder().getMentions(parseWrapper);
          
          //Note: taken from TreebankParser source...
          for (Mention mention : extents) {
@@ -371,7 +1085,7 @@ public class OpenNlpToolkit {
       if (!document.isEmpty()) {
          try
          {
-            return linker().getEntities(document.toArray(new Mention[document.size()]));
+            return linker.getEntities(document.toArray(new Mention[document.size()]));
          } catch (NullPointerException npe) {
             logger.error("This exception is usually thrown when you don't define '-DWNSEARCHDIR=...' " +
                   "in your VM args, or when a WordNet dictionary file is missing from that location", npe);
@@ -388,27 +1102,41 @@ public class OpenNlpToolkit {
     * @throws IOException if an I/O error occurs while initializing the coreference linker
     */
    protected Linker linker() throws IOException {
-      if (_linker == null) {
-         // get the coref directory
-         String corefDir = getProperty("opennlp.coref.dir");
-         logger.info("Creating the coreference linker from '{}'", corefDir);
+      final ModelSet set = acquire();
+      try {
+         return linker(set);
+      } finally {
+         release(set);
+      }
+   }
 
-         try {
-            // create the linker
-            _linker = new DefaultLinker(
-                  // LinkerMode should be TEST
-                  //Note: I tried EVAL for a long time before realizing that was the problem
-                  corefDir, LinkerMode.TEST);
-            
-         } catch (final FileNotFoundException fnfe) {
-            logger.error("This exception is usually thrown when the coreference data files " +
-                  "do not exist at the opennlp.coref.dir location '{}'", corefDir, fnfe);
-            // rethrow
-            throw fnfe;
+   private Linker linker(final ModelSet set) throws IOException {
+      // get the coref directory
+      final String corefDir = getProperty(set, COREF);
+      return _models.get(modelKey(set, COREF), new ModelManager.Loader<Linker>() {
+         @Override
+         public Linker load() throws IOException {
+            logger.info("Creating the coreference linker from '{}'", corefDir);
+            try {
+               // create the linker
+               return new DefaultLinker(
+                     // LinkerMode should be TEST
+                     //Note: I tried EVAL for a long time before realizing that was the problem
+                     corefDir, LinkerMode.TEST);
+
+            } catch (final FileNotFoundException fnfe) {
+               logger.error("This exception is usually thrown when the coreference data files " +
+                     "do not exist at the opennlp.coref.dir location '{}'", corefDir, fnfe);
+               // rethrow
+               throw fnfe;
+            }
          }
-      }
 
-      return _linker;
+         @Override
+         public long estimateSize(final Linker linker) {
+            return ModelManager.estimateSize(new File(corefDir));
+         }
+      });
    }
    
    /**
@@ -419,6 +1147,16 @@ public class OpenNlpToolkit {
     * @throws IOException if an I/O error occurs while loading the tokenizer or parser model resources
     */
    public Parse parseSentence(final String text) throws IOException {
+      final ModelSet set = acquire();
+      try {
+         return parseSentence(tokenizer(set), parser(set), text);
+      } finally {
+         release(set);
+      }
+   }
+
+   private static Parse parseSentence(final Tokenizer tokenizer, final Parser parser,
+         final String text) {
       
       final Parse p = new Parse(text,
             // a new span covering the entire text
@@ -430,7 +1168,7 @@ public class OpenNlpToolkit {
             // the token index of the head of this parse
             0);
 
-      final Span[] spans = tokenizer().tokenizePos(text);
+      final Span[] spans = tokenizer.tokenizePos(text);
 
       for (int idx=0; idx < spans.length; idx++) {
          final Span span = spans[idx];
@@ -441,21 +1179,7 @@ public class OpenNlpToolkit {
                idx));
       }
 
-      return parse(p);
-   }
-   
-   /**
-    * Parse the given parse object.
-    * <p>
-    * The parser is lazily initialized on first use.
-    * </p>
-    * 
-    * @param p the parse object
-    * @return the parsed parse
-    * @throws IOException if an I/O error occurs while loading the parser model resource
-    */
-   private Parse parse(final Parse p) throws IOException {
-      return parser().parse(p);
+      return parser.parse(p);
    }
 
    /**
@@ -463,48 +1187,359 @@ public class OpenNlpToolkit {
     * @throws IOException if an I/O error occurs while loading the parser model resource
     */
    protected Parser parser() throws IOException {
-      if (_parser == null) {
+      final ModelSet set = acquire();
+      try {
+         return parser(set);
+      } finally {
+         release(set);
+      }
+   }
+
+   private Parser parser(final ModelSet set) throws IOException {
+      final String key = modelKey(set, PARSER);
+      final ParserModel model = _models.get(key, new ModelLoader<ParserModel>(set, PARSER) {
+         @Override
+         protected ParserModel read(final InputStream modelIn) throws IOException {
+            return new ParserModel(modelIn);
+         }
+      });
+      Parser parser = component(key, model);
+      if (parser == null) {
          // lazily initialize the parser
-         InputStream modelIn = null;
+         parser = cache(key, model, ParserFactory.create(model));
+      }
+      return parser;
+   }
+
+   /**
+    * @return the properties resource and the versions of the model resources
+    *         it configures, e.g., to key annotations cached across runs; they
+    *         change whenever {@link #reload(String)} switches to different
+    *         models
+    */
+   public String getModelVersions() {
+      final ModelSet set = _modelSet;
+      String versions = set.versions;
+      if (versions == null) {
+         // resolved without recording the requests, so reload doesn't warm them
+         final StringBuilder buf = new StringBuilder(set.resourceName);
+         for (final String request : new String[] { SENTENCE, TOKENIZER, POS, PARSER }) {
+            final String resource = set.properties.getProperty(request);
+            if (resource != null) {
+               buf.append(';').append(resource).append('@').append(resourceVersion(resource.trim()));
+            }
+         }
+         if (set.properties.getProperty(NAME_FINDER_TYPES) != null
+               && set.properties.getProperty(NAME_FINDER_FORMAT) != null) {
+            for (final String type : getPropertyList(set, NAME_FINDER_TYPES)) {
+               final String resource = modelResource(set, NAME_FINDER + ":" + type);
+               buf.append(';').append(resource).append('@').append(resourceVersion(resource));
+            }
+         }
+         final String gazetteerTypes = set.properties.getProperty(GAZETTEER_TYPES);
+         if (gazetteerTypes != null && !gazetteerTypes.trim().isEmpty()) {
+            for (final String type : getPropertyList(set, GAZETTEER_TYPES)) {
+               final String resource = gazetteerResource(set, type);
+               buf.append(';').append(resource).append('@').append(resourceVersion(resource));
+            }
+         }
+         final String coref = set.properties.getProperty(COREF);
+         if (coref != null) {
+            buf.append(';').append(coref).append('@').append(directoryVersion(new File(coref.trim())));
+         }
+         versions = buf.toString();
+         set.versions = versions;
+      }
+      return versions;
+   }
+
+   /**
+    * @param set
+    *           the model set
+    * @param request
+    *           the property naming a model resource, or
+    *           <code>opennlp.namefinder:type</code> for a named entity model
+    * @return the key identifying the version of the model resource in the
+    *         model manager
+    * @throws IllegalArgumentException if no value exists for the property
+    */
+   private String modelKey(final ModelSet set, final String request) {
+      String key = set.keys.get(request);
+      if (key == null) {
+         // resolve the version once per model set
+         final String resource = modelResource(set, request);
+         final String version;
+         if (COREF.equals(request)) {
+            version = directoryVersion(new File(resource));
+         } else if (GAZETTEER.equals(request)) {
+            // the names are tokenized by the tokenizer model
+            final StringBuilder versions = new StringBuilder();
+            for (final String type : getPropertyList(set, GAZETTEER_TYPES)) {
+               versions.append(resourceVersion(gazetteerResource(set, type))).append(',');
+            }
+            version = versions.append(modelKey(set, TOKENIZER)).toString();
+         } else {
+            version = resourceVersion(resource);
+         }
+         key = request + "=" + resource + "@" + version;
+         final String resolved = set.keys.putIfAbsent(request, key);
+         if (resolved != null) {
+            // resolved concurrently
+            return resolved;
+         }
+         // the set uses the model until it is released
+         _models.retain(key);
+      }
+      return key;
+   }
+
+   /**
+    * @return the model resource name (or coreference directory) of the request
+    * @throws IllegalArgumentException if no value exists for the property
+    */
+   private String modelResource(final ModelSet set, final String request) {
+      if (request.startsWith(NAME_FINDER + ":")) {
+         // construct the model filename
+         final String modelFormat = getProperty(set, NAME_FINDER_FORMAT);
+         return String.format(modelFormat, request.substring(NAME_FINDER.length() + 1));
+      } else if (GAZETTEER.equals(request)) {
+         return getProperty(set, GAZETTEER_TYPES).replaceAll("\\s+", "");
+      }
+      return getProperty(set, request);
+   }
+
+   /**
+    * @return the size and modification time of a model resource in the file
+    *         system, or <code>0</code> if it is elsewhere (e.g., in a jar)
+    */
+   private String resourceVersion(final String resourceName) {
+      final URL url = getClass().getResource(resourceName);
+      if (url != null && "file".equals(url.getProtocol())) {
          try {
-            // load model input stream
-            modelIn = getPropertyModelStream("opennlp.parser");
+            final File file = new File(url.toURI());
+            return file.length() + "-" + file.lastModified();
+         } catch (final URISyntaxException e) {
+            logger.warn("Unable to determine the version of '{}'", url, e);
+         }
+      }
+      return "0";
+   }
 
-            // parser
-            final ParserModel parseModel = new ParserModel(modelIn);
-            _parser = ParserFactory.create(parseModel);
+   /**
+    * @return the total size and latest modification time of the files in a
+    *         model directory
+    */
+   private static String directoryVersion(final File dir) {
+      long lastModified = dir.lastModified();
+      final File[] files = dir.listFiles();
+      if (files != null) {
+         for (final File file : files) {
+            lastModified = Math.max(lastModified, file.lastModified());
+         }
+      }
+      return ModelManager.estimateSize(dir) + "-" + lastModified;
+   }
+
+   /**
+    * @param key
+    *           the component key
+    * @param model
+    *           the current model
+    * @return the component built from the current model, or
+    *         <code>null</code> if there is none
+    */
+   @SuppressWarnings("unchecked")
+   private <T> T component(final String key, final Object model) {
+      final Component component = _components.get(key);
+      return component != null && component.model == model ? (T) component.instance : null;
+   }
+
+   /**
+    * Cache the component built from the model until the model is unloaded.
+    *
+    * @return the component
+    */
+   private <T> T cache(final String key, final Object model, final T instance) {
+      _components.put(key, new Component(model, instance));
+      return instance;
+   }
+
+   /**
+    * An OpenNLP component and the model it was built from
+    */
+   static private class Component {
+      final Object model;
+      final Object instance;
+
+      Component(final Object model, final Object instance) {
+         this.model = model;
+         this.instance = instance;
+      }
+   }
+
+   /**
+    * Loads a model from a classpath resource.
+    */
+   private abstract class ModelLoader<T> extends ModelManager.Loader<T> {
+      final private String _description;
+      final private String _resourceName;
+
+      /**
+       * @param set
+       *           the model set
+       * @param property
+       *           the property naming the model resource
+       */
+      ModelLoader(final ModelSet set, final String property) {
+         this(property, getProperty(set, property));
+      }
+
+      ModelLoader(final String description, final String resourceName) {
+         _description = description;
+         _resourceName = resourceName;
+      }
+
+      @Override
+      public T load() throws IOException {
+         // load model input stream
+         logger.info("Loading {} from '{}'", _description, _resourceName);
+         final InputStream modelIn = getClass().getResourceAsStream(_resourceName);
+
+         // verify stream was retrieved
+         if (modelIn == null) {
+            throw new IOException(String.format(
+                  "Error loading the %s resource. Does '%s' exist on the classpath (e.g., in /src/main/resources)?",
+                  _description, _resourceName));
+         }
+
+         try {
+            final T model = read(modelIn);
+            logger.info("done.");
+            return model;
          } finally {
-            if (modelIn != null) {
-               try {
-                  modelIn.close();
-               } catch (final IOException e) {}
-            }
+            try {
+               modelIn.close();
+            } catch (final IOException e) {}
          }
       }
-      // return the parser
-      return _parser;
+
+      /**
+       * @param modelIn
+       *           the model resource stream
+       * @return the model
+       * @throws IOException if the model can't be read
+       */
+      protected abstract T read(InputStream modelIn) throws IOException;
    }
 
    /**
-    * Get the stream for the resource identified by the given property key.
-    * @param property
-    * @return
-    * @throws IOException if an I/O error occurs when reading the property file or the model resource
+    * A properties resource and the model versions resolved for it
     */
-   private InputStream getPropertyModelStream(final String property) throws IOException {
-      // load model input stream
-      String modelResourceName = getProperty(property);
-      logger.info("Loading {} model from '{}'", property, modelResourceName);
-      InputStream modelStream = getClass().getResourceAsStream(modelResourceName);
+   static private class ModelSet {
+      final String resourceName;
+      final Properties properties;
+
+      /**
+       * The model key of each model requested through this set, each of which
+       * it retains in the model manager
+       */
+      final ConcurrentMap<String, String> keys = new ConcurrentHashMap<String, String>();
+
+      /**
+       * The number of calls in progress on this set
+       */
+      final AtomicInteger users = new AtomicInteger();
+
+      /**
+       * Whether another set replaced this one
+       */
+      volatile boolean retired;
+
+      /**
+       * Whether the models have been released
+       */
+      final AtomicBoolean released = new AtomicBoolean();
+
+      /**
+       * The versions of the configured models, resolved when first asked for
+       */
+      volatile String versions;
+
+      /**
+       * Whether the gazetteer is in the
+       * {@link OpenNlpToolkit#GAZETTEER_SHORT_CIRCUIT} mode
+       */
+      final boolean gazetteerShortCircuit;
 
-      // verify stream was retrieved
-      if (modelStream == null) {
-         throw new IOException(String.format(
-               "Error loading the %s resource. Does '%s' exist on the classpath (e.g., in /src/main/resources)?",
-               property, modelResourceName));
+      /**
+       * Whether {@link OpenNlpToolkit#tokenize(String)} returns the pooled
+       * tokens
+       */
+      final boolean internTokens;
+
+      /**
+       * @throws IllegalArgumentException if the gazetteer mode is invalid
+       */
+      ModelSet(final String resourceName, final Properties properties) {
+         this.resourceName = resourceName;
+         this.properties = properties;
+         this.gazetteerShortCircuit = isGazetteerShortCircuit(properties);
+         this.internTokens = "true".equalsIgnoreCase(
+               properties.getProperty(INTERN_TOKENS_PROPERTY, "false").trim());
       }
+   }
+
+   /**
+    * @return <code>true</code> if the optional
+    *         <code>opennlp.gazetteer.mode</code> is
+    *         {@link #GAZETTEER_SHORT_CIRCUIT}, or <code>false</code> if it is
+    *         {@link #GAZETTEER_MERGE}, the default
+    * @throws IllegalArgumentException if the mode is neither
+    */
+   private static boolean isGazetteerShortCircuit(final Properties properties) {
+      final String mode = properties.getProperty(GAZETTEER_MODE, GAZETTEER_MERGE).trim();
+      if (GAZETTEER_SHORT_CIRCUIT.equalsIgnoreCase(mode)) {
+         return true;
+      } else if (GAZETTEER_MERGE.equalsIgnoreCase(mode)) {
+         return false;
+      }
+      throw new IllegalArgumentException(String.format(
+            "The '%s' property must be '%s' or '%s', not '%s'",
+            GAZETTEER_MODE, GAZETTEER_MERGE, GAZETTEER_SHORT_CIRCUIT, mode));
+   }
 
-      return modelStream;
+   /**
+    * @return the capacity of a string pool from an optional property
+    */
+   private int getPoolCapacity(final String property, final int defaultCapacity) {
+      final String value = _modelSet.properties.getProperty(property);
+      if (value == null || value.trim().isEmpty()) {
+         return defaultCapacity;
+      }
+      try {
+         return Integer.parseInt(value.trim());
+      } catch (final NumberFormatException e) {
+         throw new IllegalArgumentException(String.format(
+               "The '%s' property must be a number of strings, not '%s'", property, value));
+      }
+   }
+
+   /**
+    * @return the model budget in bytes from the optional
+    *         {@link #MODEL_BUDGET_PROPERTY} property
+    */
+   private long getModelBudget() {
+      final String value = _modelSet.properties.getProperty(MODEL_BUDGET_PROPERTY);
+      if (value == null || value.trim().isEmpty()) {
+         return ModelManager.UNLIMITED;
+      }
+      try {
+         return Long.parseLong(value.trim()) * 1024 * 1024;
+      } catch (final NumberFormatException e) {
+         throw new IllegalArgumentException(String.format(
+               "The '%s' property must be a number of megabytes, not '%s'",
+               MODEL_BUDGET_PROPERTY, value));
+      }
    }
 
    /**
@@ -514,10 +1549,9 @@ public class OpenNlpToolkit {
     *           property of interest
     * @return List containing the values of the specified property
     * @throws IllegalArgumentException if no value exists for the property
-    * @throws IOException if the property file does not exist
     */
-   private List<String> getPropertyList(final String property) throws IOException {
-      String[] values = getProperty(property).split(",");
+   private List<String> getPropertyList(final ModelSet set, final String property) {
+      String[] values = getProperty(set, property).split(",");
       ArrayList<String> list = new ArrayList<String>(values.length);
       for (String value : values) {
          String clean = value.trim();
@@ -533,10 +1567,9 @@ public class OpenNlpToolkit {
     *           property of interest
     * @return value of the specified property
     * @throws IllegalArgumentException if no value exists for the property
-    * @throws IOException if the property file does not exist
     */
-   private String getProperty(final String property) throws IOException {
-      String value = _properties.getProperty(property);
+   private String getProperty(final ModelSet set, final String property) {
+      String value = set.properties.getProperty(property);
       if (value == null) {
          throw new IllegalArgumentException(String.format(
                "No value for the '%s' model in the loaded properties file",
@@ -0,0 +1,246 @@
+package com.dpdearing.nlp.opennlp.corpus;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.dpdearing.util.ContentHash;
+import com.dpdearing.util.FileUtilities;
+
+/**
+ * A persistent record of the corpus files that have been completely
+ * processed, so an interrupted corpus run can resume where it left off.
+ * <p>
+ * Each completed file is recorded by its path relative to the corpus root,
+ * together with its size and either its last-modified time or its content
+ * hash.  A file is only considered complete if it is unchanged since it was
+ * recorded.  The checkpoint is a log of tab-separated
+ * <code>size, mtime, hash, path</code> lines, one per completed file: each
+ * save only appends the files completed since the previous one, so saving
+ * costs the same however large the corpus.  When the checkpoint is opened,
+ * the later lines for a path replace the earlier ones and lines torn by a
+ * crash while saving are ignored, and the log is compacted by writing its
+ * entries to a temporary file that then replaces it.
+ * </p>
+ */
+public class CorpusCheckpoint {
+   static private final Logger logger = LoggerFactory.getLogger(CorpusCheckpoint.class);
+
+   static final private Charset UTF8 = Charset.forName("UTF-8");
+   static final private String NO_HASH = "-";
+
+   /**
+    * The recorded state of a completed file
+    */
+   static private class Entry {
+      final long size;
+      final long lastModified;
+      final String hash;
+
+      Entry(final long size, final long lastModified, final String hash) {
+         this.size = size;
+         this.lastModified = lastModified;
+         this.hash = hash;
+      }
+   }
+
+   final private File _checkpointFile;
+   final private boolean _useContentHash;
+   final private Map<String, Entry> _completed = new ConcurrentHashMap<String, Entry>();
+
+   /**
+    * The lines of the files completed since the last save
+    */
+   final private Queue<String> _unsaved = new ConcurrentLinkedQueue<String>();
+
+   /**
+    * Open the checkpoint, loading the previously completed files if it
+    * exists.
+    *
+    * @param checkpointFile
+    *           where the checkpoint is saved
+    * @param useContentHash
+    *           <code>true</code> to compare files by content hash instead of
+    *           last-modified time; slower, but robust to files that are
+    *           touched or copied without changing
+    * @throws IOException if the existing checkpoint can't be read
+    */
+   public CorpusCheckpoint(final File checkpointFile, final boolean useContentHash)
+         throws IOException {
+      _checkpointFile = checkpointFile;
+      _useContentHash = useContentHash;
+      if (checkpointFile.isFile()) {
+         load();
+         compact();
+      }
+   }
+
+   /**
+    * @param key
+    *           the file path relative to the corpus root
+    * @param file
+    *           the file
+    * @return <code>true</code> if the file was completed and hasn't changed
+    * @throws IOException if the content hash can't be computed
+    */
+   public boolean isComplete(final String key, final File file) throws IOException {
+      final Entry entry = _completed.get(key);
+      if (entry == null || entry.size != file.length()) {
+         return false;
+      }
+      if (_useContentHash) {
+         return !NO_HASH.equals(entry.hash) && entry.hash.equals(hash(file));
+      }
+      return entry.lastModified == file.lastModified();
+   }
+
+   /**
+    * Record the file as completed.  The record is only persisted by the next
+    * {@link #save()}.
+    *
+    * @param key
+    *           the file path relative to the corpus root
+    * @param file
+    *           the file
+    * @throws IOException if the content hash can't be computed
+    */
+   public void complete(final String key, final File file) throws IOException {
+      final Entry entry = new Entry(file.length(), file.lastModified(),
+            _useContentHash ? hash(file) : NO_HASH);
+      _completed.put(key, entry);
+      _unsaved.add(line(key, entry));
+   }
+
+   /**
+    * @return the number of completed files
+    */
+   public int size() {
+      return _completed.size();
+   }
+
+   /**
+    * Persist the files completed since the last save by appending them to
+    * the checkpoint.
+    *
+    * @throws IOException if the checkpoint can't be written
+    */
+   public synchronized void save() throws IOException {
+      final List<String> lines = new ArrayList<String>();
+      String line;
+      while ((line = _unsaved.poll()) != null) {
+         lines.add(line);
+      }
+      if (lines.isEmpty()) {
+         return;
+      }
+
+      try {
+         createParent();
+         final Writer writer = new BufferedWriter(
+               new OutputStreamWriter(new FileOutputStream(_checkpointFile, true), UTF8));
+         try {
+            for (final String unsaved : lines) {
+               writer.write(unsaved);
+            }
+         } finally {
+            writer.close();
+         }
+      } catch (final IOException e) {
+         // retried by the next save
+         _unsaved.addAll(lines);
+         throw e;
+      }
+      logger.debug("Saved {} more completed files to {}", lines.size(), _checkpointFile);
+   }
+
+   /**
+    * Rewrite the checkpoint with one line per completed file, replacing the
+    * previous checkpoint only once the new one is complete.
+    */
+   private void compact() throws IOException {
+      createParent();
+      final File tmp = new File(_checkpointFile.getPath() + ".tmp");
+      final Writer writer = new BufferedWriter(
+            new OutputStreamWriter(new FileOutputStream(tmp), UTF8));
+      try {
+         for (final Map.Entry<String, Entry> e : _completed.entrySet()) {
+            writer.write(line(e.getKey(), e.getValue()));
+         }
+      } finally {
+         writer.close();
+      }
+
+      // replace the previous checkpoint
+      if (!tmp.renameTo(_checkpointFile)) {
+         if (!_checkpointFile.delete() || !tmp.renameTo(_checkpointFile)) {
+            throw new IOException("Unable to replace the checkpoint " + _checkpointFile);
+         }
+      }
+   }
+
+   private void createParent() throws IOException {
+      final File parent = _checkpointFile.getAbsoluteFile().getParentFile();
+      if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+         throw new IOException("Unable to create the checkpoint directory " + parent);
+      }
+   }
+
+   private void load() throws IOException {
+      final List<String> lines =
+            FileUtilities.loadLines(_checkpointFile, new ArrayList<String>(), UTF8);
+      for (final String line : lines) {
+         final String[] fields = line.split("\t", 4);
+         try {
+            if (fields.length == 4 && !fields[3].isEmpty()) {
+               _completed.put(fields[3], new Entry(
+                     Long.parseLong(fields[0]), Long.parseLong(fields[1]), fields[2]));
+               continue;
+            }
+         } catch (final NumberFormatException e) {
+            // malformed
+         }
+         logger.warn("Ignoring malformed checkpoint line [{}]", line);
+      }
+      logger.info("Loaded {} completed files from {} lines of {}",
+            new Object[] { _completed.size(), lines.size(), _checkpointFile });
+   }
+
+   /**
+    * @return the checkpoint line of a completed file
+    */
+   private static String line(final String key, final Entry entry) {
+      return entry.size + "\t" + entry.lastModified + "\t" + entry.hash + "\t" + key + "\n";
+   }
+
+   private static String hash(final File file) throws IOException {
+      final MessageDigest digest = ContentHash.newDigest();
+      final InputStream in = new FileInputStream(file);
+      try {
+         final byte[] buf = new byte[65536];
+         int n;
+         while ((n = in.read(buf)) != -1) {
+            digest.update(buf, 0, n);
+         }
+      } finally {
+         in.close();
+      }
+      return ContentHash.toHex(digest.digest());
+   }
+
+}
@@ -0,0 +1,507 @@
+package com.dpdearing.nlp.opennlp.corpus;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.dpdearing.nlp.opennlp.ModelManager;
+import com.dpdearing.nlp.opennlp.OpenNlpToolkit;
+import com.dpdearing.util.FileUtilities;
+import com.dpdearing.util.LatencyRecorder;
+
+/**
+ * Drives the whole annotation pipeline over a corpus at a fixed concurrency
+ * and reports its throughput, per-stage latency, allocation rate and GC
+ * time.
+ * <p>
+ * Usage: <code>CorpusLoadHarness [name=value...]</code>, where the optional
+ * settings are:
+ * </p>
+ * <ul>
+ * <li><code>corpus</code> - a file with one document per line, or a
+ * directory tree with one document per <code>.txt</code> file; if unset, a
+ * corpus is generated from the words of the <code>seed</code> file</li>
+ * <li><code>seed</code> - the text whose words the generated documents are
+ * made of, e.g., <code>src/test/resources/text_with_title.txt</code></li>
+ * <li><code>documents</code> - the number of documents to generate (1000)</li>
+ * <li><code>sentences</code>, <code>words</code> - the mean number of
+ * sentences per generated document (8) and of words per sentence (18)</li>
+ * <li><code>spread</code> - the spread of the log-normal document and
+ * sentence sizes (0.5)</li>
+ * <li><code>random</code> - the seed of the generator (1)</li>
+ * <li><code>stages</code> - the comma-separated stages to run (all): see
+ * {@link Stage}</li>
+ * <li><code>concurrency</code> - the number of threads (available processors)</li>
+ * <li><code>warmup</code> - the number of documents processed before measuring (100)</li>
+ * <li><code>properties</code> - the OpenNLP properties resource</li>
+ * <li><code>out</code> - the report file; standard output if unset</li>
+ * </ul>
+ * <p>
+ * The report is printed as tab-separated <code>name value</code> rows, the
+ * settings first, so that runs can be compared with a diff or loaded into a
+ * spreadsheet.  Each thread owns its own {@link OpenNlpToolkit}, since the
+ * OpenNLP components are not thread-safe, but they share one
+ * {@link ModelManager}.  The latency of a stage is measured per call: per
+ * document for the document-level stages, and per sentence for the others.
+ * Allocation is measured per thread where the JVM supports it, and GC time
+ * across the JVM.
+ * </p>
+ */
+public class CorpusLoadHarness {
+   static private final Logger logger = LoggerFactory.getLogger(CorpusLoadHarness.class);
+
+   static final private Charset UTF8 = Charset.forName("UTF-8");
+
+   /**
+    * The annotation stages, in pipeline order.  Sentence detection always
+    * runs, and tokenization runs whenever a stage needs the tokens.
+    */
+   public enum Stage {
+      /** {@link OpenNlpToolkit#detectSentences(String)}, per document */
+      SENTENCES,
+      /** {@link OpenNlpToolkit#tokenize(String)}, per sentence */
+      TOKENS,
+      /** {@link OpenNlpToolkit#tagPartOfSpeech(String[])}, per sentence */
+      POS,
+      /** {@link OpenNlpToolkit#findNamedEntities(String, String[])}, per sentence */
+      ENTITIES,
+      /** {@link OpenNlpToolkit#parseSentence(String)}, per sentence */
+      PARSE,
+      /** {@link OpenNlpToolkit#findEntityMentions(String[])}, per document */
+      MENTIONS
+   }
+
+   final private List<String> _documents;
+   final private Set<Stage> _stages;
+   final private OpenNlpToolkit[] _toolkits;
+
+   /**
+    * Measurements of the current phase
+    */
+   final private Map<Stage, LatencyRecorder> _latencies =
+         new EnumMap<Stage, LatencyRecorder>(Stage.class);
+   final private LatencyRecorder _documentLatency = new LatencyRecorder();
+   final private AtomicLong _sentences = new AtomicLong();
+   final private AtomicLong _tokens = new AtomicLong();
+   final private AtomicLong _errors = new AtomicLong();
+   final private AtomicLong _allocated = new AtomicLong();
+
+   /**
+    * @param documents
+    *           the corpus
+    * @param stages
+    *           the stages to run
+    * @param resourceName
+    *           the OpenNLP properties resource
+    * @param concurrency
+    *           the number of threads
+    * @throws IOException if the properties resource can't be loaded
+    */
+   public CorpusLoadHarness(final List<String> documents, final Set<Stage> stages,
+         final String resourceName, final int concurrency) throws IOException {
+      if (documents.isEmpty()) {
+         throw new IllegalArgumentException("documents");
+      }
+      if (concurrency < 1) {
+         throw new IllegalArgumentException("concurrency");
+      }
+      _documents = documents;
+      _stages = EnumSet.copyOf(stages);
+      _stages.add(Stage.SENTENCES);
+      if (_stages.contains(Stage.POS) || _stages.contains(Stage.ENTITIES)) {
+         _stages.add(Stage.TOKENS);
+      }
+      _toolkits = new OpenNlpToolkit[concurrency];
+      _toolkits[0] = new OpenNlpToolkit(resourceName);
+      final ModelManager models = _toolkits[0].getModelManager();
+      for (int t = 1; t < concurrency; t++) {
+         _toolkits[t] = new OpenNlpToolkit(resourceName, models);
+      }
+      for (final Stage stage : Stage.values()) {
+         _latencies.put(stage, new LatencyRecorder());
+      }
+   }
+
+   /**
+    * Process the warm-up documents, then every document of the corpus, and
+    * report the measurements of the latter.
+    *
+    * @param warmup
+    *           the number of documents to process before measuring, taken
+    *           from the start of the corpus
+    * @param report
+    *           receives the tab-separated report
+    * @throws InterruptedException if interrupted while waiting for the threads
+    */
+   public void run(final int warmup, final PrintWriter report) throws InterruptedException {
+      if (warmup > 0) {
+         logger.info("Warming up with {} documents", warmup);
+         phase(warmup);
+      }
+      for (final LatencyRecorder latency : _latencies.values()) {
+         latency.reset();
+      }
+      _documentLatency.reset();
+      _sentences.set(0);
+      _tokens.set(0);
+      _errors.set(0);
+      _allocated.set(0);
+
+      logger.info("Measuring {} documents on {} threads", _documents.size(), _toolkits.length);
+      final long gcCount = gcCount();
+      final long gcMillis = gcMillis();
+      final long start = System.nanoTime();
+      phase(_documents.size());
+      final long elapsed = System.nanoTime() - start;
+      final double seconds = elapsed / 1e9;
+      final long gcTime = gcMillis() - gcMillis;
+
+      final StringBuilder stages = new StringBuilder();
+      for (final Stage stage : _stages) {
+         stages.append(stages.length() == 0 ? "" : ",").append(name(stage));
+      }
+      row(report, "documents", _documents.size());
+      row(report, "stages", stages);
+      row(report, "concurrency", _toolkits.length);
+      row(report, "warmup_documents", warmup);
+      row(report, "elapsed_ms", Math.round(elapsed / 1e6));
+      row(report, "errors", _errors.get());
+      row(report, "sentences", _sentences.get());
+      row(report, "tokens", _tokens.get());
+      row(report, "docs_per_sec", format(_documents.size() / seconds));
+      row(report, "sentences_per_sec", format(_sentences.get() / seconds));
+      row(report, "tokens_per_sec", format(_tokens.get() / seconds));
+      latencyRows(report, "document", _documentLatency);
+      for (final Stage stage : _stages) {
+         latencyRows(report, "stage_" + name(stage), _latencies.get(stage));
+      }
+      if (isAllocationMeasured()) {
+         row(report, "allocated_mb", format(_allocated.get() / 1048576.0));
+         row(report, "allocation_mb_per_sec", format(_allocated.get() / 1048576.0 / seconds));
+      }
+      row(report, "gc_count", gcCount() - gcCount);
+      row(report, "gc_time_ms", gcTime);
+      row(report, "gc_time_share", format(elapsed == 0 ? 0.0 : gcTime / (elapsed / 1e6)));
+      report.flush();
+   }
+
+   /**
+    * Process documents on every thread, cycling through the corpus.
+    *
+    * @param count
+    *           the number of documents to process
+    */
+   private void phase(final int count) throws InterruptedException {
+      final AtomicInteger next = new AtomicInteger();
+      final CountDownLatch done = new CountDownLatch(_toolkits.length);
+      for (int t = 0; t < _toolkits.length; t++) {
+         final OpenNlpToolkit toolkit = _toolkits[t];
+         final Thread thread = new Thread(new Runnable() {
+            public void run() {
+               try {
+                  final long allocated = allocatedBytes();
+                  int i;
+                  while ((i = next.getAndIncrement()) < count) {
+                     process(toolkit, _documents.get(i % _documents.size()));
+                  }
+                  _allocated.addAndGet(allocatedBytes() - allocated);
+               } finally {
+                  done.countDown();
+               }
+            }
+         }, "load-harness-" + t);
+         thread.start();
+      }
+      done.await();
+   }
+
+   /**
+    * Run the stages on a document.
+    */
+   private void process(final OpenNlpToolkit toolkit, final String document) {
+      final long documentStart = System.nanoTime();
+      try {
+         long start = System.nanoTime();
+         final String[] sentences = toolkit.detectSentences(document);
+         _latencies.get(Stage.SENTENCES).record(System.nanoTime() - start);
+         _sentences.addAndGet(sentences.length);
+
+         for (final String sentence : sentences) {
+            if (!_stages.contains(Stage.TOKENS)) {
+               break;
+            }
+            start = System.nanoTime();
+            final String[] tokens = toolkit.tokenize(sentence);
+            _latencies.get(Stage.TOKENS).record(System.nanoTime() - start);
+            _tokens.addAndGet(tokens.length);
+
+            if (_stages.contains(Stage.POS)) {
+               start = System.nanoTime();
+               toolkit.tagPartOfSpeech(tokens);
+               _latencies.get(Stage.POS).record(System.nanoTime() - start);
+            }
+            if (_stages.contains(Stage.ENTITIES)) {
+               start = System.nanoTime();
+               toolkit.findNamedEntities(sentence, tokens);
+               _latencies.get(Stage.ENTITIES).record(System.nanoTime() - start);
+            }
+         }
+         if (_stages.contains(Stage.ENTITIES)) {
+            toolkit.clearNamedEntityAdaptiveData();
+         }
+
+         if (_stages.contains(Stage.PARSE)) {
+            for (final String sentence : sentences) {
+               start = System.nanoTime();
+               toolkit.parseSentence(sentence);
+               _latencies.get(Stage.PARSE).record(System.nanoTime() - start);
+            }
+         }
+         if (_stages.contains(Stage.MENTIONS)) {
+            start = System.nanoTime();
+            toolkit.findEntityMentions(sentences);
+            _latencies.get(Stage.MENTIONS).record(System.nanoTime() - start);
+         }
+         _documentLatency.record(System.nanoTime() - documentStart);
+      } catch (final Exception e) {
+         if (_errors.getAndIncrement() == 0) {
+            logger.warn("Failed to process a document", e);
+         }
+      }
+   }
+
+   /**
+    * Generate a corpus from the words of a seed text.  The documents and
+    * sentences have log-normally distributed sizes; the words are drawn in
+    * proportion to their frequency in the seed.
+    *
+    * @param seed
+    *           the seed text
+    * @param documents
+    *           the number of documents
+    * @param meanSentences
+    *           the mean number of sentences per document
+    * @param meanWords
+    *           the mean number of words per sentence
+    * @param spread
+    *           the standard deviation of the logarithm of the sizes
+    * @param random
+    *           the random number generator
+    * @return the documents
+    */
+   public static List<String> generate(final String seed, final int documents,
+         final double meanSentences, final double meanWords, final double spread,
+         final Random random) {
+      final List<String> words = new ArrayList<String>();
+      for (final String word : seed.split("\\s+")) {
+         final String bare = word.replaceAll("^\\p{Punct}+|\\p{Punct}+$", "");
+         if (!bare.isEmpty()) {
+            words.add(bare);
+         }
+      }
+      if (words.isEmpty()) {
+         throw new IllegalArgumentException("The seed text has no words");
+      }
+
+      final List<String> corpus = new ArrayList<String>(documents);
+      final StringBuilder document = new StringBuilder();
+      for (int d = 0; d < documents; d++) {
+         document.setLength(0);
+         final int sentences = size(meanSentences, spread, random);
+         for (int s = 0; s < sentences; s++) {
+            if (s > 0) {
+               document.append(' ');
+            }
+            final int length = size(meanWords, spread, random);
+            for (int w = 0; w < length; w++) {
+               final String word = words.get(random.nextInt(words.size()));
+               if (w == 0) {
+                  document.append(word.substring(0, 1).toUpperCase(Locale.ENGLISH))
+                        .append(word.substring(1));
+               } else {
+                  document.append(random.nextInt(10) == 0 ? ", " : " ").append(word);
+               }
+            }
+            document.append('.');
+         }
+         corpus.add(document.toString());
+      }
+      return corpus;
+   }
+
+   /**
+    * @return a log-normally distributed size with the given mean, at least 1
+    */
+   private static int size(final double mean, final double spread, final Random random) {
+      final double size = mean * Math.exp(spread * random.nextGaussian() - spread * spread / 2);
+      return Math.max(1, (int) Math.round(size));
+   }
+
+   /**
+    * Load a corpus: one document per line of a file, or one document per
+    * <code>.txt</code> file of a directory tree.
+    */
+   public static List<String> load(final File corpus, final Charset cs) throws IOException {
+      final List<String> documents = new ArrayList<String>();
+      if (corpus.isDirectory()) {
+         for (final File file : CorpusRunner.listFiles(corpus, null, new ArrayList<File>())) {
+            if (file.getName().endsWith(".txt")) {
+               final StringBuilder document = new StringBuilder();
+               for (final String line : FileUtilities.loadLines(file, cs)) {
+                  document.append(line).append('\n');
+               }
+               documents.add(document.toString());
+            }
+         }
+      } else {
+         for (final String line : FileUtilities.loadLines(corpus, cs)) {
+            if (!line.trim().isEmpty()) {
+               documents.add(line);
+            }
+         }
+      }
+      return documents;
+   }
+
+   private static void latencyRows(final PrintWriter report, final String name,
+         final LatencyRecorder latency) {
+      final long[] p = latency.percentiles(50, 99, 99.9);
+      row(report, name + "_calls", latency.count());
+      row(report, name + "_p50_ms", format(p[0] / 1e6));
+      row(report, name + "_p99_ms", format(p[1] / 1e6));
+      row(report, name + "_p999_ms", format(p[2] / 1e6));
+   }
+
+   private static void row(final PrintWriter report, final String name, final Object value) {
+      report.println(name + '\t' + value);
+   }
+
+   private static String format(final double value) {
+      return String.format(Locale.ENGLISH, "%.3f", value);
+   }
+
+   private static String name(final Stage stage) {
+      return stage.name().toLowerCase(Locale.ENGLISH);
+   }
+
+   private static boolean isAllocationMeasured() {
+      final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+      return threads instanceof com.sun.management.ThreadMXBean
+            && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported()
+            && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemoryEnabled();
+   }
+
+   /**
+    * @return the bytes allocated by the current thread so far, or 0 if the
+    *         JVM doesn't measure it
+    */
+   private static long allocatedBytes() {
+      if (!isAllocationMeasured()) {
+         return 0;
+      }
+      return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+            .getThreadAllocatedBytes(Thread.currentThread().getId());
+   }
+
+   private static long gcCount() {
+      long count = 0;
+      for (final GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+         count += Math.max(0, gc.getCollectionCount());
+      }
+      return count;
+   }
+
+   private static long gcMillis() {
+      long millis = 0;
+      for (final GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+         millis += Math.max(0, gc.getCollectionTime());
+      }
+      return millis;
+   }
+
+   public static void main(final String[] args) throws Exception {
+      final Map<String, String> settings = new HashMap<String, String>();
+      for (final String arg : args) {
+         final int equals = arg.indexOf('=');
+         if (equals < 1) {
+            System.err.println("Usage: CorpusLoadHarness [corpus=<file|dir>] [seed=<file>]"
+                  + " [documents=1000] [sentences=8] [words=18] [spread=0.5] [random=1]"
+                  + " [stages=sentences,tokens,pos,entities,parse,mentions]"
+                  + " [concurrency=<processors>] [warmup=100] [properties=<resource>]"
+                  + " [out=<file>]");
+            System.exit(1);
+         }
+         settings.put(arg.substring(0, equals), arg.substring(equals + 1));
+      }
+
+      final List<String> documents;
+      if (settings.containsKey("corpus")) {
+         documents = load(new File(settings.get("corpus")), UTF8);
+      } else if (settings.containsKey("seed")) {
+         final StringBuilder seed = new StringBuilder();
+         for (final String line : FileUtilities.loadLines(new File(settings.get("seed")), UTF8)) {
+            seed.append(line).append('\n');
+         }
+         documents = generate(seed.toString(),
+               Integer.parseInt(setting(settings, "documents", "1000")),
+               Double.parseDouble(setting(settings, "sentences", "8")),
+               Double.parseDouble(setting(settings, "words", "18")),
+               Double.parseDouble(setting(settings, "spread", "0.5")),
+               new Random(Long.parseLong(setting(settings, "random", "1"))));
+      } else {
+         System.err.println("Either a corpus or a seed file is required");
+         System.exit(1);
+         return;
+      }
+
+      final Set<Stage> stages = EnumSet.noneOf(Stage.class);
+      for (final String stage : setting(settings, "stages",
+            "sentences,tokens,pos,entities,parse,mentions").split(",")) {
+         stages.add(Stage.valueOf(stage.trim().toUpperCase(Locale.ENGLISH)));
+      }
+      final int concurrency = Integer.parseInt(setting(settings, "concurrency",
+            String.valueOf(Runtime.getRuntime().availableProcessors())));
+      final String resourceName = setting(settings, "properties", System.getProperty(
+            OpenNlpToolkit.OPENNLP_SYSTEM_PROPERTY, OpenNlpToolkit.DEFAULT_PROPERTIES_RESOURCE));
+
+      final CorpusLoadHarness harness =
+            new CorpusLoadHarness(documents, stages, resourceName, concurrency);
+      final PrintWriter report = settings.containsKey("out")
+            ? new PrintWriter(new OutputStreamWriter(
+                  new FileOutputStream(settings.get("out")), UTF8))
+            : new PrintWriter(new OutputStreamWriter(System.out, UTF8));
+      try {
+         harness.run(Integer.parseInt(setting(settings, "warmup", "100")), report);
+      } finally {
+         report.close();
+      }
+   }
+
+   private static String setting(final Map<String, String> settings, final String name,
+         final String defaultValue) {
+      final String value = settings.get(name);
+      return value != null ? value : defaultValue;
+   }
+
+}
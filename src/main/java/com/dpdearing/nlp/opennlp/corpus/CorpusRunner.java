@@ -0,0 +1,324 @@
+package com.dpdearing.nlp.opennlp.corpus;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.dpdearing.nlp.opennlp.ModelManager;
+import com.dpdearing.nlp.opennlp.OpenNlpToolkit;
+
+/**
+ * Processes every file in a directory tree in parallel, checkpointing the
+ * completed files so that a run that dies part way through resumes from the
+ * last checkpoint, skipping the files that were already processed.
+ * <p>
+ * Each worker thread owns its own {@link OpenNlpToolkit} since the OpenNLP
+ * components are not thread-safe, but the toolkits share one
+ * {@link ModelManager}, so each model is only loaded once.  A file is only
+ * checkpointed once its
+ * {@link DocumentProcessor} returns successfully; files that fail are logged
+ * and retried by the next run.
+ * </p>
+ */
+public class CorpusRunner {
+   static private final Logger logger = LoggerFactory.getLogger(CorpusRunner.class);
+
+   static final public int DEFAULT_CHECKPOINT_INTERVAL = 100;
+
+   /**
+    * Processes a single corpus file.
+    */
+   public interface DocumentProcessor {
+      /**
+       * @param toolkit
+       *           the calling worker's own toolkit
+       * @param file
+       *           the corpus file
+       * @param relativePath
+       *           the file path relative to the corpus root
+       * @throws IOException if the file can't be processed
+       */
+      void process(OpenNlpToolkit toolkit, File file, String relativePath)
+            throws IOException;
+   }
+
+   /**
+    * The result of a corpus run
+    */
+   static public class Summary {
+      final public int processed;
+      final public int skipped;
+      final public int failed;
+      final public long elapsedMillis;
+
+      Summary(final int processed, final int skipped, final int failed,
+            final long elapsedMillis) {
+         this.processed = processed;
+         this.skipped = skipped;
+         this.failed = failed;
+         this.elapsedMillis = elapsedMillis;
+      }
+
+      @Override
+      public String toString() {
+         return String.format("processed=%d skipped=%d failed=%d elapsed_ms=%d",
+               processed, skipped, failed, elapsedMillis);
+      }
+   }
+
+   final private File _root;
+   final private FileFilter _filter;
+   final private CorpusCheckpoint _checkpoint;
+   final private int _checkpointInterval;
+
+   /**
+    * @param root
+    *           the corpus root directory
+    * @param filter
+    *           selects the corpus files; directories are always descended
+    * @param checkpoint
+    *           the checkpoint to resume from and record progress in
+    * @param checkpointInterval
+    *           how many files to complete between checkpoint saves
+    */
+   public CorpusRunner(final File root, final FileFilter filter,
+         final CorpusCheckpoint checkpoint, final int checkpointInterval) {
+      if (!root.isDirectory()) {
+         throw new IllegalArgumentException("root");
+      }
+      if (checkpointInterval < 1) {
+         throw new IllegalArgumentException("checkpointInterval");
+      }
+      _root = root;
+      _filter = filter;
+      _checkpoint = checkpoint;
+      _checkpointInterval = checkpointInterval;
+   }
+
+   /**
+    * Process every unfinished corpus file.
+    *
+    * @param processor
+    *           processes each file
+    * @param workers
+    *           the number of worker threads
+    * @return a summary of the run
+    * @throws IOException if the corpus can't be listed, the toolkits can't
+    *            be created or the checkpoint can't be saved
+    * @throws InterruptedException if interrupted while waiting for the workers
+    */
+   public Summary run(final DocumentProcessor processor, final int workers)
+         throws IOException, InterruptedException {
+      if (workers < 1) {
+         throw new IllegalArgumentException("workers");
+      }
+      final long start = System.currentTimeMillis();
+
+      // one toolkit per worker, created up front so that failures surface
+      final String resourceName = System.getProperty(
+            OpenNlpToolkit.OPENNLP_SYSTEM_PROPERTY, OpenNlpToolkit.DEFAULT_PROPERTIES_RESOURCE);
+      final OpenNlpToolkit[] toolkits = new OpenNlpToolkit[workers];
+      toolkits[0] = new OpenNlpToolkit(resourceName);
+      final ModelManager models = toolkits[0].getModelManager();
+      for (int w = 1; w < workers; w++) {
+         toolkits[w] = new OpenNlpToolkit(resourceName, models);
+      }
+
+      // find the unfinished files
+      final Queue<File> pending = new ConcurrentLinkedQueue<File>();
+      int skipped = 0;
+      for (final File file : listFiles(_root, _filter, new ArrayList<File>())) {
+         if (_checkpoint.isComplete(relativePath(_root, file), file)) {
+            skipped++;
+         } else {
+            pending.add(file);
+         }
+      }
+      logger.info("{} files to process, {} already complete", pending.size(), skipped);
+
+      final AtomicInteger processed = new AtomicInteger();
+      final AtomicInteger failed = new AtomicInteger();
+      final List<Thread> threads = new ArrayList<Thread>(workers);
+
+      for (int w = 0; w < workers; w++) {
+         final OpenNlpToolkit toolkit = toolkits[w];
+         final Thread thread = new Thread(new Runnable() {
+            public void run() {
+               File file;
+               while ((file = pending.poll()) != null) {
+                  final String key = relativePath(_root, file);
+                  try {
+                     processor.process(toolkit, file, key);
+                     _checkpoint.complete(key, file);
+                  } catch (final Exception e) {
+                     failed.incrementAndGet();
+                     logger.warn("Failed to process " + file, e);
+                     continue;
+                  }
+
+                  if (processed.incrementAndGet() % _checkpointInterval == 0) {
+                     try {
+                        _checkpoint.save();
+                        logger.info("Checkpoint: {} processed, {} remaining",
+                              processed.get(), pending.size());
+                     } catch (final IOException e) {
+                        // keep going; the next checkpoint may succeed
+                        logger.error("Unable to save the checkpoint", e);
+                     }
+                  }
+               }
+            }
+         }, "corpus-worker-" + w);
+         threads.add(thread);
+         thread.start();
+      }
+
+      try {
+         for (final Thread thread : threads) {
+            thread.join();
+         }
+      } finally {
+         // always record what was completed
+         _checkpoint.save();
+      }
+
+      // files left by workers that died are retried by the next run
+      if (!pending.isEmpty()) {
+         logger.error("{} files were left unprocessed by failed workers", pending.size());
+         failed.addAndGet(pending.size());
+      }
+
+      final Summary summary = new Summary(processed.get(), skipped, failed.get(),
+            System.currentTimeMillis() - start);
+      logger.info("Corpus run complete: {}", summary);
+      return summary;
+   }
+
+   /**
+    * @return the path of the file relative to the corpus root, using
+    *         <code>/</code> separators
+    */
+   static String relativePath(final File rootDir, final File file) {
+      final String root = rootDir.getAbsolutePath();
+      final String path = file.getAbsolutePath();
+      final String relative = path.startsWith(root)
+            ? path.substring(root.length() + 1) : path;
+      return relative.replace(File.separatorChar, '/');
+   }
+
+   /**
+    * @return all matching files in the directory tree, in a stable order
+    */
+   static List<File> listFiles(final File dir, final FileFilter filter, final List<File> files)
+         throws IOException {
+      final File[] children = dir.listFiles();
+      if (children == null) {
+         throw new IOException("Unable to list " + dir);
+      }
+      Arrays.sort(children);
+      for (final File child : children) {
+         if (child.isDirectory()) {
+            listFiles(child, filter, files);
+         } else if (filter == null || filter.accept(child)) {
+            files.add(child);
+         }
+      }
+      return files;
+   }
+
+   /**
+    * Writes the sentences detected in each corpus file, one per line, to a
+    * mirrored path under an output directory.
+    */
+   static public class SentenceWriter implements DocumentProcessor {
+      final private File _outputDir;
+      final private Charset _cs;
+
+      /**
+       * @param outputDir
+       *           the output root directory
+       * @param cs
+       *           the charset of the corpus and output files
+       */
+      public SentenceWriter(final File outputDir, final Charset cs) {
+         _outputDir = outputDir;
+         _cs = cs;
+      }
+
+      /**
+       * Create a writer from the processor arguments of a
+       * {@link ShardWorker}.
+       *
+       * @param args
+       *           the output root directory and, optionally, the charset
+       *           name; UTF-8 by default
+       */
+      public SentenceWriter(final String[] args) {
+         this(new File(args[0]), Charset.forName(args.length > 1 ? args[1] : "UTF-8"));
+      }
+
+      public void process(final OpenNlpToolkit toolkit, final File file,
+            final String relativePath) throws IOException {
+         final String[] sentences = toolkit.detectSentences(file, _cs);
+
+         final File out = new File(_outputDir, relativePath + ".sentences");
+         final File parent = out.getParentFile();
+         if (!parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+            throw new IOException("Unable to create " + parent);
+         }
+         final Writer writer = new BufferedWriter(
+               new OutputStreamWriter(new FileOutputStream(out), _cs));
+         try {
+            for (final String sentence : sentences) {
+               writer.write(sentence);
+               writer.write('\n');
+            }
+         } finally {
+            writer.close();
+         }
+      }
+   }
+
+   /**
+    * Detect the sentences of every <code>.txt</code> file in a corpus.
+    * <p>
+    * Usage: <code>CorpusRunner &lt;corpusDir&gt; &lt;outputDir&gt; [workers] [checkpointFile] [hash]</code>
+    * </p>
+    */
+   public static void main(final String[] args) throws Exception {
+      if (args.length < 2) {
+         System.err.println("Usage: CorpusRunner <corpusDir> <outputDir> [workers] [checkpointFile] [hash]");
+         System.exit(1);
+      }
+      final File corpus = new File(args[0]);
+      final File output = new File(args[1]);
+      final int workers = args.length > 2
+            ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+      final File checkpointFile = args.length > 3
+            ? new File(args[3]) : new File(output, ".checkpoint");
+      final boolean useContentHash = args.length > 4 && "hash".equals(args[4]);
+
+      final CorpusRunner runner = new CorpusRunner(corpus, new FileFilter() {
+         public boolean accept(final File file) {
+            return file.getName().endsWith(".txt");
+         }
+      }, new CorpusCheckpoint(checkpointFile, useContentHash), DEFAULT_CHECKPOINT_INTERVAL);
+      System.out.println(runner.run(
+            new SentenceWriter(output, Charset.forName("UTF-8")), workers));
+   }
+
+}
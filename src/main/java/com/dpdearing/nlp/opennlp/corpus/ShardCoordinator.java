@@ -0,0 +1,600 @@
+package com.dpdearing.nlp.opennlp.corpus;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.dpdearing.nlp.opennlp.OpenNlpToolkit;
+import com.dpdearing.nlp.opennlp.corpus.CorpusRunner.DocumentProcessor;
+import com.dpdearing.nlp.opennlp.corpus.CorpusRunner.SentenceWriter;
+import com.dpdearing.util.LatencyRecorder;
+
+/**
+ * Processes every file in a directory tree across several local worker
+ * JVMs, so that no single process needs a heap large enough for every
+ * model and document in flight.
+ * <p>
+ * Like a {@link CorpusRunner}, the coordinator skips the files its
+ * {@link CorpusCheckpoint} has recorded as complete and checkpoints the
+ * others as they finish.  The unfinished files are split into one
+ * contiguous shard per worker, and each worker is a {@link ShardWorker}
+ * process with its own {@link OpenNlpToolkit} that is sent files from its
+ * shard over its standard input, a few at a time.  A worker that runs out
+ * of files steals from the tail of the largest remaining shard.
+ * </p>
+ * <p>
+ * A worker that exits unexpectedly is restarted, up to
+ * {@link #MAX_RESTARTS} times, and the files it had in flight are sent
+ * again; a file that {@link #MAX_ATTEMPTS} workers crashed while processing
+ * is given up on, since it's probably what crashes them.  The shard of a
+ * worker that isn't restarted is stolen by the others.  Files whose
+ * {@link DocumentProcessor} throws are logged and retried by the next run,
+ * as with a {@link CorpusRunner}.
+ * </p>
+ */
+public class ShardCoordinator {
+   static private final Logger logger = LoggerFactory.getLogger(ShardCoordinator.class);
+
+   static final public int MAX_ATTEMPTS = 3;
+   static final public int MAX_RESTARTS = 3;
+
+   static final private Charset UTF8 = Charset.forName("UTF-8");
+
+   /**
+    * The number of files sent to a worker ahead of its replies
+    */
+   static final private int PIPELINE_DEPTH = 2;
+
+   /**
+    * The result of a sharded corpus run
+    */
+   static public class Summary {
+      final public int processed;
+      final public int skipped;
+      final public int failed;
+      final public int restarts;
+      final public int stolen;
+      final public long elapsedMillis;
+      /**
+       * The number of files each worker processed
+       */
+      final public int[] workerProcessed;
+      /**
+       * The 50th and 99th percentile time a worker took to process a file
+       */
+      final public double p50Millis;
+      final public double p99Millis;
+
+      Summary(final int processed, final int skipped, final int failed, final int restarts,
+            final int stolen, final long elapsedMillis, final int[] workerProcessed,
+            final LatencyRecorder latency) {
+         this.processed = processed;
+         this.skipped = skipped;
+         this.failed = failed;
+         this.restarts = restarts;
+         this.stolen = stolen;
+         this.elapsedMillis = elapsedMillis;
+         this.workerProcessed = workerProcessed;
+         final long[] percentiles = latency.percentiles(50, 99);
+         this.p50Millis = percentiles[0] / 1e6;
+         this.p99Millis = percentiles[1] / 1e6;
+      }
+
+      /**
+       * @return the number of files processed per second
+       */
+      public double filesPerSecond() {
+         return elapsedMillis == 0 ? 0.0 : processed * 1000.0 / elapsedMillis;
+      }
+
+      @Override
+      public String toString() {
+         return String.format("processed=%d skipped=%d failed=%d restarts=%d stolen=%d"
+               + " elapsed_ms=%d files_per_sec=%.1f p50_ms=%.1f p99_ms=%.1f workers=%s",
+               processed, skipped, failed, restarts, stolen, elapsedMillis,
+               filesPerSecond(), p50Millis, p99Millis, Arrays.toString(workerProcessed));
+      }
+   }
+
+   /**
+    * A corpus file to process
+    */
+   static private class Task {
+      final int id;
+      final File file;
+      final String key;
+      int attempts = 0;
+
+      Task(final int id, final File file, final String key) {
+         this.id = id;
+         this.file = file;
+         this.key = key;
+      }
+   }
+
+   /**
+    * A worker process and its shard.  Guarded by the {@link Run}.
+    */
+   static private class Worker {
+      final int index;
+      final Deque<Task> shard = new ArrayDeque<Task>();
+      final Map<Integer, Task> inFlight = new LinkedHashMap<Integer, Task>();
+      Process process;
+      Writer in;
+      boolean alive = false;
+      int restarts = 0;
+      int processed = 0;
+
+      Worker(final int index) {
+         this.index = index;
+      }
+   }
+
+   final private File _root;
+   final private FileFilter _filter;
+   final private CorpusCheckpoint _checkpoint;
+   final private int _checkpointInterval;
+   final private List<String> _jvmOptions;
+
+   /**
+    * @param root
+    *           the corpus root directory
+    * @param filter
+    *           selects the corpus files; directories are always descended
+    * @param checkpoint
+    *           the checkpoint to resume from and record progress in
+    * @param checkpointInterval
+    *           how many files to complete between checkpoint saves
+    * @param jvmOptions
+    *           the options of the worker JVMs, e.g., <code>-Xmx2g</code>;
+    *           the workers get the class path of this JVM unless the options
+    *           include <code>-cp</code>
+    */
+   public ShardCoordinator(final File root, final FileFilter filter,
+         final CorpusCheckpoint checkpoint, final int checkpointInterval,
+         final List<String> jvmOptions) {
+      if (!root.isDirectory()) {
+         throw new IllegalArgumentException("root");
+      }
+      if (checkpointInterval < 1) {
+         throw new IllegalArgumentException("checkpointInterval");
+      }
+      _root = root;
+      _filter = filter;
+      _checkpoint = checkpoint;
+      _checkpointInterval = checkpointInterval;
+      _jvmOptions = new ArrayList<String>(jvmOptions);
+   }
+
+   /**
+    * Process every unfinished corpus file.
+    *
+    * @param processorClass
+    *           the {@link DocumentProcessor} each worker creates; see
+    *           {@link ShardWorker}
+    * @param processorArgs
+    *           the arguments of the processor constructor
+    * @param workers
+    *           the number of worker processes
+    * @return a summary of the run
+    * @throws IOException if the corpus can't be listed, no worker can be
+    *            started or the checkpoint can't be saved
+    * @throws InterruptedException if interrupted while waiting for the
+    *            workers, which are then destroyed
+    */
+   public Summary run(final String processorClass, final String[] processorArgs,
+         final int workers) throws IOException, InterruptedException {
+      if (workers < 1) {
+         throw new IllegalArgumentException("workers");
+      }
+      final long start = System.currentTimeMillis();
+
+      // find the unfinished files
+      final List<Task> pending = new ArrayList<Task>();
+      int skipped = 0;
+      for (final File file : CorpusRunner.listFiles(_root, _filter, new ArrayList<File>())) {
+         final String key = CorpusRunner.relativePath(_root, file);
+         if (key.indexOf('\n') != -1 || key.indexOf('\r') != -1) {
+            logger.warn("Skipping {}: line breaks in file names aren't supported", file);
+         } else if (_checkpoint.isComplete(key, file)) {
+            skipped++;
+         } else {
+            pending.add(new Task(pending.size(), file, key));
+         }
+      }
+      logger.info("{} files to process across {} workers, {} already complete",
+            new Object[] { pending.size(), workers, skipped });
+
+      final Run run = new Run(command(processorClass, processorArgs), workers, pending);
+      try {
+         run.await();
+      } catch (final InterruptedException e) {
+         run.destroy();
+         throw e;
+      } finally {
+         // always record what was completed
+         _checkpoint.save();
+      }
+
+      final Summary summary = run.summary(skipped, System.currentTimeMillis() - start);
+      logger.info("Sharded corpus run complete: {}", summary);
+      return summary;
+   }
+
+   /**
+    * @return the command that starts a worker process
+    */
+   private List<String> command(final String processorClass, final String[] processorArgs) {
+      final List<String> command = new ArrayList<String>();
+      command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+      command.addAll(_jvmOptions);
+      final String properties = System.getProperty(OpenNlpToolkit.OPENNLP_SYSTEM_PROPERTY);
+      if (properties != null) {
+         command.add("-D" + OpenNlpToolkit.OPENNLP_SYSTEM_PROPERTY + "=" + properties);
+      }
+      if (!_jvmOptions.contains("-cp") && !_jvmOptions.contains("-classpath")) {
+         command.add("-cp");
+         command.add(System.getProperty("java.class.path"));
+      }
+      command.add(ShardWorker.class.getName());
+      command.add(_root.getAbsolutePath());
+      command.add(processorClass);
+      command.addAll(Arrays.asList(processorArgs));
+      return command;
+   }
+
+   /**
+    * The state of a run, guarded by itself
+    */
+   private class Run {
+      final private List<String> _command;
+      final private List<Worker> _workers = new ArrayList<Worker>();
+      final private LatencyRecorder _latency = new LatencyRecorder();
+      private int _remaining;
+      private int _processed = 0;
+      private int _failed = 0;
+      private int _restarts = 0;
+      private int _stolen = 0;
+      private boolean _finished = false;
+
+      Run(final List<String> command, final int workers, final List<Task> pending)
+            throws IOException {
+         _command = command;
+         _remaining = pending.size();
+         final int size = pending.size();
+         for (int w = 0; w < workers; w++) {
+            final Worker worker = new Worker(w);
+            // contiguous shards keep neighbouring files together
+            worker.shard.addAll(pending.subList(
+                  (int) ((long) size * w / workers), (int) ((long) size * (w + 1) / workers)));
+            _workers.add(worker);
+         }
+         if (_remaining == 0) {
+            return;
+         }
+         synchronized (this) {
+            IOException failure = null;
+            for (final Worker worker : _workers) {
+               try {
+                  start(worker);
+               } catch (final IOException e) {
+                  logger.error("Unable to start worker " + worker.index, e);
+                  failure = e;
+               }
+            }
+            if (!anyAlive() && failure != null) {
+               throw failure;
+            }
+         }
+      }
+
+      /**
+       * Wait until every file is done or no worker is left, then stop the
+       * workers.
+       */
+      void await() throws InterruptedException {
+         synchronized (this) {
+            while (_remaining > 0 && anyAlive()) {
+               wait();
+            }
+            _finished = true;
+            if (_remaining > 0) {
+               logger.error("No workers left; {} files weren't processed", _remaining);
+               _failed += _remaining;
+               _remaining = 0;
+            }
+            for (final Worker worker : _workers) {
+               if (worker.alive) {
+                  try {
+                     worker.in.close();
+                  } catch (final IOException e) {
+                     logger.debug("Unable to close the input of worker " + worker.index, e);
+                  }
+               }
+            }
+         }
+         for (final Worker worker : _workers) {
+            final Process process;
+            synchronized (this) {
+               process = worker.process;
+            }
+            if (process != null) {
+               process.waitFor();
+            }
+         }
+      }
+
+      synchronized void destroy() {
+         _finished = true;
+         for (final Worker worker : _workers) {
+            if (worker.process != null) {
+               worker.process.destroy();
+            }
+         }
+      }
+
+      synchronized Summary summary(final int skipped, final long elapsedMillis) {
+         final int[] workerProcessed = new int[_workers.size()];
+         for (final Worker worker : _workers) {
+            workerProcessed[worker.index] = worker.processed;
+         }
+         return new Summary(_processed, skipped, _failed, _restarts, _stolen, elapsedMillis,
+               workerProcessed, _latency);
+      }
+
+      /**
+       * Launch a worker process and send it its first files.
+       */
+      private void start(final Worker worker) throws IOException {
+         final Process process = new ProcessBuilder(_command).start();
+         worker.process = process;
+         worker.in = new OutputStreamWriter(process.getOutputStream(), UTF8);
+         worker.alive = true;
+         logger.info("Started worker {} with {} files in its shard",
+               worker.index, worker.shard.size());
+
+         final Thread reader = new Thread(new Runnable() {
+            public void run() {
+               read(worker, process);
+            }
+         }, "shard-worker-" + worker.index);
+         reader.setDaemon(true);
+         reader.start();
+         final Thread errors = new Thread(new Runnable() {
+            public void run() {
+               forward(worker.index, process.getErrorStream());
+            }
+         }, "shard-worker-" + worker.index + "-stderr");
+         errors.setDaemon(true);
+         errors.start();
+
+         dispatch(worker);
+      }
+
+      /**
+       * Read a worker's replies until it exits.
+       */
+      private void read(final Worker worker, final Process process) {
+         try {
+            final BufferedReader replies = new BufferedReader(
+                  new InputStreamReader(process.getInputStream(), UTF8));
+            String line;
+            while ((line = replies.readLine()) != null) {
+               if (reply(worker, line)) {
+                  try {
+                     _checkpoint.save();
+                  } catch (final IOException e) {
+                     // keep going; the next checkpoint may succeed
+                     logger.error("Unable to save the checkpoint", e);
+                  }
+               }
+            }
+         } catch (final IOException e) {
+            logger.warn("Lost the output of worker " + worker.index, e);
+         }
+
+         int exitValue;
+         try {
+            exitValue = process.waitFor();
+         } catch (final InterruptedException e) {
+            exitValue = -1;
+         }
+         exited(worker, process, exitValue);
+      }
+
+      /**
+       * Handle a worker's reply and send it its next file.
+       *
+       * @return <code>true</code> if the checkpoint is due to be saved
+       */
+      private synchronized boolean reply(final Worker worker, final String line) {
+         final String[] fields = line.split("\t", 3);
+         final Task task = fields.length == 3
+               ? worker.inFlight.remove(Integer.valueOf(fields[1])) : null;
+         if (task == null) {
+            logger.warn("Unexpected reply from worker {}: {}", worker.index, line);
+            return false;
+         }
+
+         boolean save = false;
+         if (ShardWorker.DONE.equals(fields[0])) {
+            try {
+               _checkpoint.complete(task.key, task.file);
+               _latency.record(Long.parseLong(fields[2]));
+               worker.processed++;
+               save = ++_processed % _checkpointInterval == 0;
+            } catch (final IOException e) {
+               _failed++;
+               logger.warn("Unable to checkpoint " + task.file, e);
+            }
+         } else {
+            _failed++;
+            logger.warn("Worker {} failed to process {}: {}",
+                  new Object[] { worker.index, task.file, fields[2] });
+         }
+         _remaining--;
+
+         dispatch(worker);
+         if (_remaining == 0) {
+            notifyAll();
+         }
+         return save;
+      }
+
+      /**
+       * Reassign the files of a worker that exited and restart it.
+       */
+      private synchronized void exited(final Worker worker, final Process process,
+            final int exitValue) {
+         if (_finished || worker.process != process) {
+            return;
+         }
+         worker.alive = false;
+         logger.warn("Worker {} exited with {}; {} files were in flight",
+               new Object[] { worker.index, exitValue, worker.inFlight.size() });
+
+         // put the files back in their order at the head of the shard; the
+         // worker processes them in order, so only the first was started
+         final List<Task> inFlight = new ArrayList<Task>(worker.inFlight.values());
+         worker.inFlight.clear();
+         if (!inFlight.isEmpty() && ++inFlight.get(0).attempts >= MAX_ATTEMPTS) {
+            final Task task = inFlight.remove(0);
+            logger.error("Giving up on {} after {} workers crashed processing it",
+                  task.file, task.attempts);
+            _failed++;
+            _remaining--;
+         }
+         Collections.reverse(inFlight);
+         for (final Task task : inFlight) {
+            worker.shard.addFirst(task);
+         }
+
+         if (_remaining > 0 && worker.restarts < MAX_RESTARTS) {
+            worker.restarts++;
+            _restarts++;
+            try {
+               start(worker);
+            } catch (final IOException e) {
+               logger.error("Unable to restart worker " + worker.index, e);
+            }
+         }
+         // the others steal whatever this worker can't finish
+         for (final Worker other : _workers) {
+            dispatch(other);
+         }
+         notifyAll();
+      }
+
+      /**
+       * Send a worker files until it has enough in flight, from its own
+       * shard or else stolen from the largest other shard.
+       */
+      private void dispatch(final Worker worker) {
+         while (worker.alive && !_finished && worker.inFlight.size() < PIPELINE_DEPTH) {
+            Task task = worker.shard.pollFirst();
+            if (task == null) {
+               task = steal(worker);
+               if (task == null) {
+                  return;
+               }
+            }
+            worker.inFlight.put(task.id, task);
+            try {
+               worker.in.write(task.id + "\t" + task.key + "\n");
+               worker.in.flush();
+            } catch (final IOException e) {
+               // the worker is exiting; its files are reassigned when it has
+               logger.debug("Unable to send worker " + worker.index + " a file", e);
+               return;
+            }
+         }
+      }
+
+      private Task steal(final Worker thief) {
+         Worker victim = null;
+         for (final Worker worker : _workers) {
+            if (worker != thief && (victim == null || worker.shard.size() > victim.shard.size())) {
+               victim = worker;
+            }
+         }
+         if (victim == null || victim.shard.isEmpty()) {
+            return null;
+         }
+         _stolen++;
+         return victim.shard.pollLast();
+      }
+
+      private boolean anyAlive() {
+         for (final Worker worker : _workers) {
+            if (worker.alive) {
+               return true;
+            }
+         }
+         return false;
+      }
+   }
+
+   /**
+    * Copy a worker's standard error, i.e., its log, to ours.
+    */
+   private static void forward(final int index, final InputStream err) {
+      try {
+         final BufferedReader lines = new BufferedReader(new InputStreamReader(err, UTF8));
+         String line;
+         while ((line = lines.readLine()) != null) {
+            System.err.println("[worker-" + index + "] " + line);
+         }
+      } catch (final IOException e) {
+         logger.debug("Lost the log of worker " + index, e);
+      }
+   }
+
+   /**
+    * Detect the sentences of every <code>.txt</code> file in a corpus with
+    * several worker processes.
+    * <p>
+    * Usage: <code>ShardCoordinator &lt;corpusDir&gt; &lt;outputDir&gt; [workers] [checkpointFile] [jvmOption...]</code>
+    * </p>
+    */
+   public static void main(final String[] args) throws Exception {
+      if (args.length < 2) {
+         System.err.println("Usage: ShardCoordinator <corpusDir> <outputDir> [workers] [checkpointFile] [jvmOption...]");
+         System.exit(1);
+      }
+      final File corpus = new File(args[0]);
+      final File output = new File(args[1]);
+      final int workers = args.length > 2
+            ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+      final File checkpointFile = args.length > 3
+            ? new File(args[3]) : new File(output, ".checkpoint");
+      final List<String> jvmOptions = args.length > 4
+            ? Arrays.asList(args).subList(4, args.length) : Collections.<String>emptyList();
+
+      final ShardCoordinator coordinator = new ShardCoordinator(corpus, new FileFilter() {
+         public boolean accept(final File file) {
+            return file.getName().endsWith(".txt");
+         }
+      }, new CorpusCheckpoint(checkpointFile, false), CorpusRunner.DEFAULT_CHECKPOINT_INTERVAL,
+            jvmOptions);
+      System.out.println(coordinator.run(SentenceWriter.class.getName(),
+            new String[] { output.getAbsolutePath() }, workers));
+   }
+
+}
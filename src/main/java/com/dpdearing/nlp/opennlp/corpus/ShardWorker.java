@@ -0,0 +1,103 @@
+package com.dpdearing.nlp.opennlp.corpus;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.lang.reflect.Constructor;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.dpdearing.nlp.opennlp.OpenNlpToolkit;
+import com.dpdearing.nlp.opennlp.corpus.CorpusRunner.DocumentProcessor;
+
+/**
+ * A worker process launched by a {@link ShardCoordinator}: processes the
+ * corpus files the coordinator sends it with its own {@link OpenNlpToolkit}
+ * and reports each outcome back.
+ * <p>
+ * Usage: <code>ShardWorker &lt;corpusDir&gt; &lt;processorClass&gt; [processorArg...]</code>
+ * </p>
+ * <p>
+ * The processor class must be a public {@link DocumentProcessor} with a
+ * public constructor taking the <code>String[]</code> processor arguments, or
+ * a public no-argument constructor.  The worker reads one
+ * <code>id&lt;TAB&gt;relativePath</code> line per file from its standard
+ * input, processes the files in order, and writes one
+ * <code>DONE&lt;TAB&gt;id&lt;TAB&gt;nanos</code> or
+ * <code>FAIL&lt;TAB&gt;id&lt;TAB&gt;message</code> line per file to its
+ * standard output, which is reserved for the protocol: anything else printed
+ * to <code>System.out</code> goes to standard error.  It exits when its input
+ * is closed.
+ * </p>
+ */
+public class ShardWorker {
+   static private final Logger logger = LoggerFactory.getLogger(ShardWorker.class);
+
+   static final private Charset UTF8 = Charset.forName("UTF-8");
+
+   static final String DONE = "DONE";
+   static final String FAIL = "FAIL";
+
+   /**
+    * @return a new processor of the named class
+    * @throws Exception if the processor can't be created
+    */
+   static DocumentProcessor newProcessor(final String className, final String[] args)
+         throws Exception {
+      final Class<? extends DocumentProcessor> type =
+            Class.forName(className).asSubclass(DocumentProcessor.class);
+      try {
+         final Constructor<? extends DocumentProcessor> constructor =
+               type.getConstructor(String[].class);
+         return constructor.newInstance((Object) args);
+      } catch (final NoSuchMethodException e) {
+         return type.getConstructor().newInstance();
+      }
+   }
+
+   public static void main(final String[] args) throws Exception {
+      if (args.length < 2) {
+         System.err.println("Usage: ShardWorker <corpusDir> <processorClass> [processorArg...]");
+         System.exit(1);
+      }
+      // keep stray output out of the protocol
+      final PrintStream protocol = System.out;
+      System.setOut(System.err);
+
+      final File root = new File(args[0]);
+      final DocumentProcessor processor =
+            newProcessor(args[1], Arrays.copyOfRange(args, 2, args.length));
+      final OpenNlpToolkit toolkit = new OpenNlpToolkit();
+
+      final BufferedReader in = new BufferedReader(new InputStreamReader(System.in, UTF8));
+      final Writer out = new OutputStreamWriter(protocol, UTF8);
+      String line;
+      while ((line = in.readLine()) != null) {
+         final int tab = line.indexOf('\t');
+         final String id = line.substring(0, tab);
+         final String relativePath = line.substring(tab + 1);
+         final File file = new File(root, relativePath);
+
+         final long start = System.nanoTime();
+         String reply;
+         try {
+            processor.process(toolkit, file, relativePath);
+            reply = DONE + '\t' + id + '\t' + (System.nanoTime() - start);
+         } catch (final Exception e) {
+            logger.warn("Failed to process " + file, e);
+            reply = FAIL + '\t' + id + '\t' + String.valueOf(e).replaceAll("\\s+", " ");
+         }
+         out.write(reply);
+         out.write('\n');
+         out.flush();
+      }
+      logger.debug("Input closed; exiting");
+   }
+
+}
@@ -0,0 +1,124 @@
+package com.dpdearing.nlp.opennlp.fast;
+
+/**
+ * Builds a context of predicate ids for a {@link FastMaxentModel} in reused
+ * buffers.
+ * <p>
+ * Each feature label is assembled with {@link #start()} and the
+ * <code>append</code> methods and then looked up by {@link #add()}, so no
+ * strings are created for the features.  Not thread-safe.
+ * </p>
+ */
+class ContextBuilder {
+
+   final private FastMaxentModel _model;
+
+   /**
+    * The label being assembled
+    */
+   private char[] _label = new char[64];
+   private int _labelLength = 0;
+
+   /**
+    * The ids of the known predicates added so far
+    */
+   private int[] _context = new int[32];
+   private int _size = 0;
+
+   /**
+    * Scratch space for the evaluation
+    */
+   final private double[] _scores;
+   final private int[] _featureCounts;
+
+   ContextBuilder(final FastMaxentModel model) {
+      _model = model;
+      _scores = new double[model.outcomeCount()];
+      _featureCounts = new int[model.outcomeCount()];
+   }
+
+   /**
+    * Start a new context.
+    */
+   void clear() {
+      _size = 0;
+   }
+
+   /**
+    * Start a new feature label.
+    */
+   ContextBuilder start() {
+      _labelLength = 0;
+      return this;
+   }
+
+   ContextBuilder append(final char c) {
+      ensureLabel(1);
+      _label[_labelLength++] = c;
+      return this;
+   }
+
+   ContextBuilder append(final String s) {
+      return append(s, 0, s.length());
+   }
+
+   ContextBuilder append(final String s, final int from, final int to) {
+      ensureLabel(to - from);
+      s.getChars(from, to, _label, _labelLength);
+      _labelLength += to - from;
+      return this;
+   }
+
+   /**
+    * Append a non-negative number in decimal, as Integer.toString would.
+    */
+   ContextBuilder append(final int value) {
+      if (value >= 10) {
+         append(value / 10);
+      }
+      return append((char) ('0' + value % 10));
+   }
+
+   /**
+    * Add the feature whose label was just assembled.
+    */
+   void add() {
+      add(_model.predicate(_label, _labelLength));
+   }
+
+   /**
+    * Add a feature by id; unknown (negative) ids are ignored, as the model
+    * would.
+    */
+   void add(final int predicate) {
+      if (predicate < 0) {
+         return;
+      }
+      if (_size == _context.length) {
+         final int[] context = new int[_size * 2];
+         System.arraycopy(_context, 0, context, 0, _size);
+         _context = context;
+      }
+      _context[_size++] = predicate;
+   }
+
+   /**
+    * @return the index of the most probable outcome of the context
+    */
+   int best() {
+      return _model.best(_context, _size, _scores, _featureCounts);
+   }
+
+   FastMaxentModel model() {
+      return _model;
+   }
+
+   private void ensureLabel(final int more) {
+      if (_labelLength + more > _label.length) {
+         final char[] label = new char[Math.max(_label.length * 2, _labelLength + more)];
+         System.arraycopy(_label, 0, label, 0, _labelLength);
+         _label = label;
+      }
+   }
+
+}
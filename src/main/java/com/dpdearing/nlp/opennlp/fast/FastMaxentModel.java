@@ -0,0 +1,316 @@
+package com.dpdearing.nlp.opennlp.fast;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import opennlp.maxent.GISModel;
+import opennlp.model.Context;
+import opennlp.model.IndexHashTable;
+import opennlp.model.MaxentModel;
+
+/**
+ * A GIS maxent model flattened into primitive arrays.
+ * <p>
+ * The predicates are held in an open-addressing hash table over a single
+ * character pool, so a feature can be looked up straight from a reused
+ * character buffer without building a <code>String</code>, and the parameters
+ * of predicate <i>p</i> are the slice <code>[start[p], start[p+1])</code> of
+ * flat outcome and weight arrays.  {@link #best} evaluates a context exactly
+ * as {@link GISModel#eval(String[])} followed by
+ * {@link GISModel#getBestOutcome(double[])} does, in the same order and with
+ * the same (double precision) arithmetic, so both always pick the same
+ * outcome.
+ * </p>
+ * <p>
+ * A compiled model is immutable and thread-safe.
+ * </p>
+ */
+public class FastMaxentModel {
+
+   /**
+    * The compiled models, so that every component built from a model shares
+    * one compilation.  Weak keys so that unloaded models are collected.
+    */
+   static final private Map<MaxentModel, FastMaxentModel> compiled =
+         new WeakHashMap<MaxentModel, FastMaxentModel>();
+
+   /**
+    * The predicate hash table: each slot holds a predicate id or -1
+    */
+   final private int[] _slots;
+   final private int _mask;
+
+   /**
+    * The predicate labels, concatenated, indexed by predicate id
+    */
+   final private char[] _pool;
+   final private int[] _labelStart;
+   final private int[] _labelHash;
+
+   /**
+    * The parameters of each predicate, indexed by predicate id
+    */
+   final private int[] _paramStart;
+   final private int[] _outcomes;
+   final private double[] _weights;
+
+   final private String[] _outcomeNames;
+   final private double _logPrior;
+   final private double _correctionConstant;
+   final private double _correctionParam;
+   final private double _constantInverse;
+
+   @SuppressWarnings("unchecked")
+   private FastMaxentModel(final GISModel model) {
+      final Object[] data = model.getDataStructures();
+      final Context[] params = (Context[]) data[0];
+      final IndexHashTable<String> pmap = (IndexHashTable<String>) data[1];
+      _outcomeNames = ((String[]) data[2]).clone();
+      _correctionConstant = ((Integer) data[3]).intValue();
+      _correctionParam = ((Double) data[4]).doubleValue();
+      // as computed by EvalParameters and UniformPrior
+      _constantInverse = 1.0 / _correctionConstant;
+      _logPrior = Math.log(1.0 / _outcomeNames.length);
+
+      // the labels in predicate id order
+      final String[] labels = pmap.toArray(new String[pmap.size()]);
+      int chars = 0;
+      int parameters = 0;
+      for (int p = 0; p < labels.length; p++) {
+         chars += labels[p].length();
+         parameters += params[p].getOutcomes().length;
+      }
+
+      _pool = new char[chars];
+      _labelStart = new int[labels.length + 1];
+      _labelHash = new int[labels.length];
+      _paramStart = new int[labels.length + 1];
+      _outcomes = new int[parameters];
+      _weights = new double[parameters];
+
+      int capacity = 16;
+      while (capacity < labels.length * 2) {
+         capacity <<= 1;
+      }
+      _slots = new int[capacity];
+      _mask = capacity - 1;
+      Arrays.fill(_slots, -1);
+
+      for (int p = 0, c = 0, k = 0; p < labels.length; p++) {
+         final String label = labels[p];
+         label.getChars(0, label.length(), _pool, c);
+         _labelStart[p] = c;
+         c += label.length();
+         _labelStart[p + 1] = c;
+
+         _labelHash[p] = label.hashCode();
+         int slot = mix(_labelHash[p]) & _mask;
+         while (_slots[slot] != -1) {
+            slot = (slot + 1) & _mask;
+         }
+         _slots[slot] = p;
+
+         final int[] outcomes = params[p].getOutcomes();
+         final double[] weights = params[p].getParameters();
+         _paramStart[p] = k;
+         System.arraycopy(outcomes, 0, _outcomes, k, outcomes.length);
+         System.arraycopy(weights, 0, _weights, k, weights.length);
+         k += outcomes.length;
+         _paramStart[p + 1] = k;
+      }
+   }
+
+   /**
+    * @param model
+    *           a maxent model
+    * @return <code>true</code> if the model can be compiled, i.e., it's a
+    *         {@link GISModel}
+    */
+   public static boolean supports(final MaxentModel model) {
+      return model != null && model.getClass() == GISModel.class;
+   }
+
+   /**
+    * Get the compiled form of a model, compiling it on first use.
+    *
+    * @param model
+    *           a model for which {@link #supports(MaxentModel)}
+    * @return the compiled model
+    */
+   public static FastMaxentModel compile(final MaxentModel model) {
+      if (!supports(model)) {
+         throw new IllegalArgumentException(String.format(
+               "Unable to compile a %s", model == null ? null : model.getClass().getName()));
+      }
+      synchronized (compiled) {
+         FastMaxentModel fast = compiled.get(model);
+         if (fast == null) {
+            fast = new FastMaxentModel((GISModel) model);
+            compiled.put(model, fast);
+         }
+         return fast;
+      }
+   }
+
+   /**
+    * @param label
+    *           a predicate label
+    * @return the predicate's id, or -1 if the model has no such predicate
+    */
+   public int predicate(final String label) {
+      final char[] chars = label.toCharArray();
+      return predicate(chars, chars.length);
+   }
+
+   /**
+    * @param chars
+    *           holds a predicate label
+    * @param length
+    *           the length of the label
+    * @return the predicate's id, or -1 if the model has no such predicate
+    */
+   public int predicate(final char[] chars, final int length) {
+      // String.hashCode
+      int hash = 0;
+      for (int i = 0; i < length; i++) {
+         hash = 31 * hash + chars[i];
+      }
+
+      int slot = mix(hash) & _mask;
+      int p;
+      while ((p = _slots[slot]) != -1) {
+         if (_labelHash[p] == hash && matches(p, chars, length)) {
+            return p;
+         }
+         slot = (slot + 1) & _mask;
+      }
+      return -1;
+   }
+
+   /**
+    * @param name
+    *           an outcome name
+    * @return the outcome's index, or -1 if the model has no such outcome
+    */
+   public int outcome(final String name) {
+      for (int o = 0; o < _outcomeNames.length; o++) {
+         if (_outcomeNames[o].equals(name)) {
+            return o;
+         }
+      }
+      return -1;
+   }
+
+   /**
+    * @return the number of outcomes
+    */
+   public int outcomeCount() {
+      return _outcomeNames.length;
+   }
+
+   /**
+    * @return the number of predicates
+    */
+   public int predicateCount() {
+      return _labelHash.length;
+   }
+
+   /**
+    * @return the approximate retained size of the compiled arrays and
+    *         outcome names, in bytes, e.g., to count them in a model budget
+    *         along with the model they were compiled from
+    */
+   public long estimateSize() {
+      long size = array(_slots.length, 4) + array(_pool.length, 2)
+            + array(_labelStart.length, 4) + array(_labelHash.length, 4)
+            + array(_paramStart.length, 4) + array(_outcomes.length, 4)
+            + array(_weights.length, 8) + array(_outcomeNames.length, 4);
+      for (final String name : _outcomeNames) {
+         size += 24 + array(name.length(), 2);
+      }
+      return size;
+   }
+
+   /**
+    * Evaluate a context and pick the most probable outcome.
+    *
+    * @param context
+    *           the ids of the context's predicates, in the order the
+    *           context generator produced them; unknown predicates must be
+    *           left out
+    * @param size
+    *           the number of ids in the context
+    * @param scores
+    *           scratch space of at least {@link #outcomeCount()} elements
+    * @param featureCounts
+    *           scratch space of at least {@link #outcomeCount()} elements
+    * @return the index of the most probable outcome; the first on ties
+    */
+   public int best(final int[] context, final int size,
+         final double[] scores, final int[] featureCounts) {
+      final int outcomeCount = _outcomeNames.length;
+      for (int o = 0; o < outcomeCount; o++) {
+         scores[o] = _logPrior;
+         featureCounts[o] = 0;
+      }
+
+      for (int i = 0; i < size; i++) {
+         final int p = context[i];
+         for (int k = _paramStart[p], end = _paramStart[p + 1]; k < end; k++) {
+            final int o = _outcomes[k];
+            featureCounts[o]++;
+            scores[o] += _weights[k];
+         }
+      }
+
+      double normal = 0.0;
+      for (int o = 0; o < outcomeCount; o++) {
+         if (_correctionParam != 0) {
+            scores[o] = Math.exp(scores[o] * _constantInverse
+                  + ((1.0 - ((double) featureCounts[o] / _correctionConstant))
+                        * _correctionParam));
+         } else {
+            scores[o] = Math.exp(scores[o] * _constantInverse);
+         }
+         normal += scores[o];
+      }
+
+      int best = 0;
+      scores[0] /= normal;
+      for (int o = 1; o < outcomeCount; o++) {
+         scores[o] /= normal;
+         if (scores[o] > scores[best]) {
+            best = o;
+         }
+      }
+      return best;
+   }
+
+   private boolean matches(final int p, final char[] chars, final int length) {
+      final int start = _labelStart[p];
+      if (_labelStart[p + 1] - start != length) {
+         return false;
+      }
+      for (int i = 0; i < length; i++) {
+         if (_pool[start + i] != chars[i]) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   private static long array(final int length, final int elementSize) {
+      return 16 + (long) length * elementSize;
+   }
+
+   /**
+    * Spread the bits of String.hashCode, whose low bits cluster for the
+    * short, similar labels of the context generators
+    */
+   private static int mix(final int hash) {
+      final int h = hash * 0x9E3779B9;
+      return h ^ (h >>> 16);
+   }
+
+}
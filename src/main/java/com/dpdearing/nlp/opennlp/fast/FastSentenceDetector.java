@@ -0,0 +1,371 @@
+package com.dpdearing.nlp.opennlp.fast;
+
+import java.util.Collections;
+import java.util.Set;
+
+import opennlp.tools.dictionary.Dictionary;
+import opennlp.tools.sentdetect.DefaultEndOfSentenceScanner;
+import opennlp.tools.sentdetect.DefaultSDContextGenerator;
+import opennlp.tools.sentdetect.SentenceDetector;
+import opennlp.tools.sentdetect.SentenceDetectorFactory;
+import opennlp.tools.sentdetect.SentenceDetectorME;
+import opennlp.tools.sentdetect.SentenceModel;
+import opennlp.tools.util.Span;
+import opennlp.tools.util.StringUtil;
+
+/**
+ * A drop-in replacement for {@link SentenceDetectorME} that evaluates the
+ * model with a {@link FastMaxentModel}.
+ * <p>
+ * The features of {@link DefaultSDContextGenerator} are generated in the
+ * same order, but looked up as predicate ids straight from the text rather
+ * than built as strings, and the candidate positions are kept in a reused
+ * <code>int</code> array.  The sentences are always identical to those of
+ * {@link SentenceDetectorME} with the same model.  Only models that
+ * {@link #supports(SentenceModel)} can be used, and the sentence
+ * probabilities are not computed.
+ * </p>
+ * <p>
+ * Like {@link SentenceDetectorME}, a detector is not thread-safe, but any
+ * number of detectors may share a model.
+ * </p>
+ */
+public class FastSentenceDetector implements SentenceDetector {
+
+   final private ContextBuilder _context;
+   final private int _split;
+
+   /**
+    * The ids of the constant features
+    */
+   final private int _spaceBefore;
+   final private int _spaceAfter;
+   final private int _prefixCap;
+   final private int _prefixAbbreviation;
+   final private int _previousCap;
+   final private int _previousAbbreviation;
+   final private int _suffixCap;
+   final private int _suffixAbbreviation;
+   final private int _nextCap;
+   final private int _nextAbbreviation;
+
+   final private char[] _eosCharacters;
+   final private boolean _useTokenEnd;
+   final private Set<String> _abbreviations;
+
+   /**
+    * Scratch space for the candidate and sentence end positions
+    */
+   private int[] _candidates = new int[16];
+   private int[] _starts = new int[16];
+
+   /**
+    * @param model
+    *           a sentence model
+    * @return <code>true</code> if a {@link FastSentenceDetector} can be built
+    *         from the model, i.e., its maxent model is supported by
+    *         {@link FastMaxentModel} and it uses the default context generator
+    *         and end-of-sentence scanner
+    */
+   public static boolean supports(final SentenceModel model) {
+      final SentenceDetectorFactory factory = model.getFactory();
+      return FastMaxentModel.supports(model.getMaxentModel())
+            && factory.getSDContextGenerator().getClass() == DefaultSDContextGenerator.class
+            && factory.getEndOfSentenceScanner().getClass() == DefaultEndOfSentenceScanner.class;
+   }
+
+   /**
+    * @param model
+    *           a sentence model for which {@link #supports(SentenceModel)}
+    */
+   public FastSentenceDetector(final SentenceModel model) {
+      if (!supports(model)) {
+         throw new IllegalArgumentException("Unsupported sentence model");
+      }
+      final SentenceDetectorFactory factory = model.getFactory();
+      final FastMaxentModel maxent = FastMaxentModel.compile(model.getMaxentModel());
+      _context = new ContextBuilder(maxent);
+      _split = maxent.outcome(SentenceDetectorME.SPLIT);
+
+      _spaceBefore = maxent.predicate("sp");
+      _spaceAfter = maxent.predicate("sn");
+      _prefixCap = maxent.predicate("xcap");
+      _prefixAbbreviation = maxent.predicate("xabbrev");
+      _previousCap = maxent.predicate("vcap");
+      _previousAbbreviation = maxent.predicate("vabbrev");
+      _suffixCap = maxent.predicate("scap");
+      _suffixAbbreviation = maxent.predicate("sabbrev");
+      _nextCap = maxent.predicate("ncap");
+      _nextAbbreviation = maxent.predicate("nabbrev");
+
+      // the generator and the scanner are created with the same characters
+      _eosCharacters = factory.getEndOfSentenceScanner().getEndOfSentenceCharacters();
+      _useTokenEnd = factory.isUseTokenEnd();
+      final Dictionary abbreviations = factory.getAbbreviationDictionary();
+      _abbreviations = abbreviations == null
+            ? Collections.<String>emptySet() : abbreviations.asStringSet();
+   }
+
+   public String[] sentDetect(final String s) {
+      final Span[] spans = sentPosDetect(s);
+      final String[] sentences = new String[spans.length];
+      for (int si = 0; si < spans.length; si++) {
+         sentences[si] = s.substring(spans[si].getStart(), spans[si].getEnd());
+      }
+      return sentences;
+   }
+
+   public Span[] sentPosDetect(final String s) {
+      // the end-of-sentence candidates
+      int candidateCount = 0;
+      for (int i = 0, length = s.length(); i < length; i++) {
+         if (isEosCharacter(s.charAt(i))) {
+            if (candidateCount == _candidates.length) {
+               _candidates = grow(_candidates);
+            }
+            _candidates[candidateCount++] = i;
+         }
+      }
+
+      int startCount = 0;
+      for (int i = 0, index = 0; i < candidateCount; i++) {
+         final int cint = _candidates[i];
+         // skip over the leading parts of non-token final delimiters
+         final int fws = getFirstWS(s, cint + 1);
+         if (i + 1 < candidateCount && _candidates[i + 1] < fws) {
+            continue;
+         }
+
+         if (evaluate(s, cint) == _split) {
+            if (index != cint) {
+               if (startCount == _starts.length) {
+                  _starts = grow(_starts);
+               }
+               _starts[startCount++] = _useTokenEnd
+                     ? getFirstNonWS(s, getFirstWS(s, cint + 1))
+                     : getFirstNonWS(s, cint);
+            }
+            index = cint + 1;
+         }
+      }
+
+      // the string does not contain sentence end positions
+      if (startCount == 0) {
+         // remove leading and trailing whitespace
+         int start = 0;
+         int end = s.length();
+         while (start < s.length() && StringUtil.isWhitespace(s.charAt(start))) {
+            start++;
+         }
+         while (end > 0 && StringUtil.isWhitespace(s.charAt(end - 1))) {
+            end--;
+         }
+         return end - start > 0 ? new Span[] { new Span(start, end) } : new Span[0];
+      }
+
+      // convert the sentence ends to spans, exactly as SentenceDetectorME
+      final int[] starts = _starts;
+      final boolean leftover = starts[startCount - 1] != s.length();
+      final Span[] spans = new Span[leftover ? startCount + 1 : startCount];
+      for (int si = 0; si < startCount; si++) {
+         int start;
+         if (si == 0) {
+            start = 0;
+            while (si < startCount && StringUtil.isWhitespace(s.charAt(start))) {
+               start++;
+            }
+         } else {
+            start = starts[si - 1];
+         }
+         int end = starts[si];
+         while (end > 0 && StringUtil.isWhitespace(s.charAt(end - 1))) {
+            end--;
+         }
+         spans[si] = new Span(start, end);
+      }
+      if (leftover) {
+         spans[spans.length - 1] = new Span(starts[startCount - 1], s.length());
+      }
+      return spans;
+   }
+
+   /**
+    * Evaluate the context of {@link DefaultSDContextGenerator} for the
+    * end-of-sentence character at the given position.
+    *
+    * @return the index of the best outcome
+    */
+   private int evaluate(final String sb, final int position) {
+      final ContextBuilder context = _context;
+      context.clear();
+
+      final int lastIndex = sb.length() - 1;
+      if (position > 0 && StringUtil.isWhitespace(sb.charAt(position - 1))) {
+         context.add(_spaceBefore);
+      }
+      if (position < lastIndex && StringUtil.isWhitespace(sb.charAt(position + 1))) {
+         context.add(_spaceAfter);
+      }
+      final char eosChar = sb.charAt(position);
+      context.start().append("eos=").append(eosChar).add();
+
+      // the prefix stops at a preceding end-of-sentence character
+      int prefixStart = previousSpaceIndex(sb, position);
+      for (int c = position - 1; c > prefixStart; c--) {
+         if (isEosCharacter(sb.charAt(c))) {
+            prefixStart = c;
+            break;
+         }
+      }
+      final int prevStart = previousSpaceIndex(sb, prefixStart);
+
+      // the suffix stops at a following end-of-sentence character
+      int suffixEnd = nextSpaceIndex(sb, position, lastIndex);
+      for (int c = position + 1; c < suffixEnd; c++) {
+         if (isEosCharacter(sb.charAt(c))) {
+            suffixEnd = c;
+            break;
+         }
+      }
+      final int nextEnd = nextSpaceIndex(sb, suffixEnd + 1, lastIndex + 1);
+
+      // x=prefix
+      int from = trimStart(sb, prefixStart, position);
+      int to = trimEnd(sb, from, position);
+      context.start().append("x=").append(sb, from, to).add();
+      if (from < to) {
+         context.start().append(to - from).add();
+         if (Character.isUpperCase(sb.charAt(from))) {
+            context.add(_prefixCap);
+         }
+         if (!_abbreviations.isEmpty()
+               && _abbreviations.contains(sb.substring(from, to) + eosChar)) {
+            context.add(_prefixAbbreviation);
+         }
+      }
+
+      // v=previous
+      from = trimStart(sb, prevStart, prefixStart);
+      to = trimEnd(sb, from, prefixStart);
+      addToken("v=", sb, from, to, _previousCap, _previousAbbreviation);
+
+      if (position == lastIndex) {
+         addToken("s=", sb, 0, 0, _suffixCap, _suffixAbbreviation);
+         addToken("n=", sb, 0, 0, _nextCap, _nextAbbreviation);
+      } else {
+         // s=suffix
+         from = trimStart(sb, position + 1, suffixEnd);
+         to = trimEnd(sb, from, suffixEnd);
+         addToken("s=", sb, from, to, _suffixCap, _suffixAbbreviation);
+
+         // n=next
+         from = trimStart(sb, suffixEnd + 1, nextEnd);
+         to = trimEnd(sb, from, nextEnd);
+         addToken("n=", sb, from, to, _nextCap, _nextAbbreviation);
+      }
+      return context.best();
+   }
+
+   /**
+    * Add the features of the (trimmed) token <code>s[from, to)</code>
+    */
+   private void addToken(final String key, final String s, final int from, final int to,
+         final int cap, final int abbreviation) {
+      final ContextBuilder context = _context;
+      context.start().append(key).append(s, from, to).add();
+      if (from < to) {
+         if (Character.isUpperCase(s.charAt(from))) {
+            context.add(cap);
+         }
+         if (!_abbreviations.isEmpty() && _abbreviations.contains(s.substring(from, to))) {
+            context.add(abbreviation);
+         }
+      }
+   }
+
+   private boolean isEosCharacter(final char c) {
+      for (final char eos : _eosCharacters) {
+         if (c == eos) {
+            return true;
+         }
+      }
+      return false;
+   }
+
+   /**
+    * As String.trim, the start of <code>s[from, to)</code> without leading
+    * control characters and spaces
+    */
+   private static int trimStart(final String s, int from, final int to) {
+      while (from < to && s.charAt(from) <= ' ') {
+         from++;
+      }
+      return from;
+   }
+
+   /**
+    * As String.trim, the end of <code>s[from, to)</code> without trailing
+    * control characters and spaces
+    */
+   private static int trimEnd(final String s, final int from, int to) {
+      while (to > from && s.charAt(to - 1) <= ' ') {
+         to--;
+      }
+      return to;
+   }
+
+   private static int getFirstWS(final String s, int pos) {
+      while (pos < s.length() && !StringUtil.isWhitespace(s.charAt(pos))) {
+         pos++;
+      }
+      return pos;
+   }
+
+   private static int getFirstNonWS(final String s, int pos) {
+      while (pos < s.length() && StringUtil.isWhitespace(s.charAt(pos))) {
+         pos++;
+      }
+      return pos;
+   }
+
+   /**
+    * As DefaultSDContextGenerator.previousSpaceIndex
+    */
+   private static int previousSpaceIndex(final String sb, int seek) {
+      seek--;
+      while (seek > 0 && !StringUtil.isWhitespace(sb.charAt(seek))) {
+         seek--;
+      }
+      if (seek > 0 && StringUtil.isWhitespace(sb.charAt(seek))) {
+         while (seek > 0 && StringUtil.isWhitespace(sb.charAt(seek - 1))) {
+            seek--;
+         }
+         return seek;
+      }
+      return 0;
+   }
+
+   /**
+    * As DefaultSDContextGenerator.nextSpaceIndex
+    */
+   private static int nextSpaceIndex(final String sb, int seek, final int lastIndex) {
+      seek++;
+      while (seek < lastIndex) {
+         if (StringUtil.isWhitespace(sb.charAt(seek))) {
+            while (sb.length() > seek + 1 && StringUtil.isWhitespace(sb.charAt(seek + 1))) {
+               seek++;
+            }
+            return seek;
+         }
+         seek++;
+      }
+      return lastIndex;
+   }
+
+   private static int[] grow(final int[] array) {
+      final int[] grown = new int[array.length * 2];
+      System.arraycopy(array, 0, grown, 0, array.length);
+      return grown;
+   }
+
+}
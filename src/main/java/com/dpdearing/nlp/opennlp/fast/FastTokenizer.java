@@ -0,0 +1,272 @@
+package com.dpdearing.nlp.opennlp.fast;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import opennlp.tools.dictionary.Dictionary;
+import opennlp.tools.tokenize.DefaultTokenContextGenerator;
+import opennlp.tools.tokenize.Tokenizer;
+import opennlp.tools.tokenize.TokenizerFactory;
+import opennlp.tools.tokenize.TokenizerME;
+import opennlp.tools.tokenize.TokenizerModel;
+import opennlp.tools.tokenize.lang.Factory;
+import opennlp.tools.util.Span;
+import opennlp.tools.util.StringUtil;
+
+/**
+ * A drop-in replacement for {@link TokenizerME} that evaluates the model with
+ * a {@link FastMaxentModel}.
+ * <p>
+ * The features of {@link DefaultTokenContextGenerator} are generated in the
+ * same order, but looked up as predicate ids straight from the sentence
+ * rather than built as strings; the per-character features of ASCII
+ * characters are looked up once, up front.  The tokens are always identical
+ * to those of {@link TokenizerME} with the same model.  Only models that
+ * {@link #supports(TokenizerModel)} can be used, and the token
+ * probabilities are not computed.
+ * </p>
+ * <p>
+ * Like {@link TokenizerME}, a tokenizer is not thread-safe, but any number
+ * of tokenizers may share a model.
+ * </p>
+ */
+public class FastTokenizer implements Tokenizer {
+
+   /**
+    * The character feature keys: the two previous and next characters
+    */
+   static final private String[] KEYS = { "p1", "p2", "f1", "f2" };
+   static final private int P1 = 0;
+   static final private int P2 = 1;
+   static final private int F1 = 2;
+   static final private int F2 = 3;
+
+   /**
+    * The character class features, in the order of {@link #CATEGORIES}
+    */
+   static final private String[] CATEGORIES =
+         { "_alpha", "_caps", "_num", "_ws", "_eos", "_quote", "_lp", "_rp" };
+   static final private int ALPHA = 0;
+   static final private int CAPS = 1;
+   static final private int NUM = 2;
+   static final private int WS = 3;
+   static final private int EOS = 4;
+   static final private int QUOTE = 5;
+   static final private int LP = 6;
+   static final private int RP = 7;
+
+   static final private int ASCII = 128;
+
+   final private ContextBuilder _context;
+   final private int _split;
+
+   /**
+    * The ids of the <code>key=c</code> features of the ASCII characters and
+    * the character class features, by key
+    */
+   final private int[][] _charIds = new int[KEYS.length][ASCII];
+   final private int[][] _categoryIds = new int[KEYS.length][CATEGORIES.length];
+
+   /**
+    * The ids of the constant features
+    */
+   final private int _p1Bok;
+   final private int _p2Bok;
+   final private int _f2Bok;
+   final private int _characterCode;
+   final private int _abbreviation;
+
+   final private boolean _useAlphaNumericOptimization;
+   /**
+    * The alphanumeric pattern, or <code>null</code> for the default one,
+    * which is tested without a matcher
+    */
+   final private Pattern _alphanumeric;
+   final private Set<String> _abbreviations;
+
+   final private List<Span> _tokens = new ArrayList<Span>();
+
+   /**
+    * @param model
+    *           a tokenizer model
+    * @return <code>true</code> if a {@link FastTokenizer} can be built from
+    *         the model, i.e., its maxent model is supported by
+    *         {@link FastMaxentModel} and it uses the default context generator
+    */
+   public static boolean supports(final TokenizerModel model) {
+      return FastMaxentModel.supports(model.getMaxentModel())
+            && model.getFactory().getContextGenerator().getClass()
+                  == DefaultTokenContextGenerator.class;
+   }
+
+   /**
+    * @param model
+    *           a tokenizer model for which {@link #supports(TokenizerModel)}
+    */
+   public FastTokenizer(final TokenizerModel model) {
+      if (!supports(model)) {
+         throw new IllegalArgumentException("Unsupported tokenizer model");
+      }
+      final TokenizerFactory factory = model.getFactory();
+      final FastMaxentModel maxent = FastMaxentModel.compile(model.getMaxentModel());
+      _context = new ContextBuilder(maxent);
+      _split = maxent.outcome(TokenizerME.SPLIT);
+
+      for (int k = 0; k < KEYS.length; k++) {
+         for (char c = 0; c < ASCII; c++) {
+            _charIds[k][c] = maxent.predicate(KEYS[k] + "=" + c);
+         }
+         for (int category = 0; category < CATEGORIES.length; category++) {
+            _categoryIds[k][category] = maxent.predicate(KEYS[k] + CATEGORIES[category]);
+         }
+      }
+      _p1Bok = maxent.predicate("p1=bok");
+      _p2Bok = maxent.predicate("p2=bok");
+      _f2Bok = maxent.predicate("f2=bok");
+      _characterCode = maxent.predicate("cc");
+      _abbreviation = maxent.predicate("pabb");
+
+      _useAlphaNumericOptimization = factory.isUseAlphaNumericOptmization();
+      final Pattern alphanumeric = factory.getAlphaNumericPattern();
+      _alphanumeric = Factory.DEFAULT_ALPHANUMERIC.equals(alphanumeric.pattern())
+            ? null : alphanumeric;
+      final Dictionary abbreviations = factory.getAbbreviationDictionary();
+      _abbreviations = abbreviations == null
+            ? Collections.<String>emptySet() : abbreviations.asStringSet();
+   }
+
+   public String[] tokenize(final String s) {
+      return Span.spansToStrings(tokenizePos(s), s);
+   }
+
+   public Span[] tokenizePos(final String d) {
+      _tokens.clear();
+      final int length = d.length();
+      int tokenStart = -1;
+      for (int i = 0; i <= length; i++) {
+         if (i == length || StringUtil.isWhitespace(d.charAt(i))) {
+            if (tokenStart != -1) {
+               split(d, tokenStart, i, _tokens);
+               tokenStart = -1;
+            }
+         } else if (tokenStart == -1) {
+            tokenStart = i;
+         }
+      }
+      return _tokens.toArray(new Span[_tokens.size()]);
+   }
+
+   /**
+    * Split a whitespace-delimited token as {@link TokenizerME} does.
+    *
+    * @param tokens
+    *           receives the tokens
+    */
+   void split(final String d, final int tokenStart, final int tokenEnd, final List<Span> tokens) {
+      // can't tokenize single characters
+      if (tokenEnd - tokenStart < 2
+            || (_useAlphaNumericOptimization && isAlphanumeric(d, tokenStart, tokenEnd))) {
+         tokens.add(new Span(tokenStart, tokenEnd));
+         return;
+      }
+
+      int start = tokenStart;
+      for (int j = tokenStart + 1; j < tokenEnd; j++) {
+         if (evaluate(d, tokenStart, tokenEnd, j - tokenStart) == _split) {
+            tokens.add(new Span(start, j));
+            start = j;
+         }
+      }
+      tokens.add(new Span(start, tokenEnd));
+   }
+
+   private boolean isAlphanumeric(final String d, final int start, final int end) {
+      if (_alphanumeric != null) {
+         return _alphanumeric.matcher(d.substring(start, end)).matches();
+      }
+      for (int i = start; i < end; i++) {
+         final char c = d.charAt(i);
+         if (!((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9'))) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   /**
+    * Evaluate the context of {@link DefaultTokenContextGenerator} for the
+    * token <code>d[start, end)</code> at the given index.
+    *
+    * @return the index of the best outcome
+    */
+   private int evaluate(final String d, final int start, final int end, final int index) {
+      final ContextBuilder context = _context;
+      final int at = start + index;
+      context.clear();
+      context.start().append("p=").append(d, start, at).add();
+      context.start().append("s=").append(d, at, end).add();
+      if (index > 0) {
+         addCharFeatures(P1, d.charAt(at - 1));
+         if (index > 1) {
+            addCharFeatures(P2, d.charAt(at - 2));
+            context.start().append("p21=").append(d.charAt(at - 2)).append(d.charAt(at - 1)).add();
+         } else {
+            context.add(_p2Bok);
+         }
+         context.start().append("p1f1=").append(d.charAt(at - 1)).append(d.charAt(at)).add();
+      } else {
+         context.add(_p1Bok);
+      }
+      addCharFeatures(F1, d.charAt(at));
+      if (at + 1 < end) {
+         addCharFeatures(F2, d.charAt(at + 1));
+         context.start().append("f12=").append(d.charAt(at)).append(d.charAt(at + 1)).add();
+      } else {
+         context.add(_f2Bok);
+      }
+      if (d.charAt(start) == '&' && d.charAt(end - 1) == ';') {
+         context.add(_characterCode);
+      }
+      if (at == end - 1 && !_abbreviations.isEmpty()
+            && _abbreviations.contains(d.substring(start, end))) {
+         context.add(_abbreviation);
+      }
+      return context.best();
+   }
+
+   /**
+    * As DefaultTokenContextGenerator.addCharPreds
+    */
+   private void addCharFeatures(final int key, final char c) {
+      final ContextBuilder context = _context;
+      if (c < ASCII) {
+         context.add(_charIds[key][c]);
+      } else {
+         context.start().append(KEYS[key]).append('=').append(c).add();
+      }
+
+      final int[] categories = _categoryIds[key];
+      if (Character.isLetter(c)) {
+         context.add(categories[ALPHA]);
+         if (Character.isUpperCase(c)) {
+            context.add(categories[CAPS]);
+         }
+      } else if (Character.isDigit(c)) {
+         context.add(categories[NUM]);
+      } else if (StringUtil.isWhitespace(c)) {
+         context.add(categories[WS]);
+      } else if (c == '.' || c == '?' || c == '!') {
+         context.add(categories[EOS]);
+      } else if (c == '`' || c == '"' || c == '\'') {
+         context.add(categories[QUOTE]);
+      } else if (c == '[' || c == '{' || c == '(') {
+         context.add(categories[LP]);
+      } else if (c == ']' || c == '}' || c == ')') {
+         context.add(categories[RP]);
+      }
+   }
+
+}
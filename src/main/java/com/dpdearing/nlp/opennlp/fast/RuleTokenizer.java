@@ -0,0 +1,138 @@
+package com.dpdearing.nlp.opennlp.fast;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import opennlp.tools.tokenize.Tokenizer;
+import opennlp.tools.util.Span;
+import opennlp.tools.util.StringUtil;
+
+/**
+ * A tokenizer that splits the unambiguous whitespace-separated chunks of a
+ * sentence with character-class rules and only consults a model-based
+ * tokenizer for the ambiguous ones.
+ * <p>
+ * A chunk is unambiguous when it's made of letters and digits only, or when
+ * it's a word with a lower case letter followed by a comma, semicolon,
+ * colon, question or exclamation mark: e.g., <code>Vinken,</code> is split
+ * into <code>Vinken</code> and <code>,</code> without evaluating the model.
+ * Brackets and quotes are left to the model, which was trained on text where
+ * they aren't consistently split off.  Chunks with inner
+ * punctuation (<code>don't</code>, <code>N.V.</code>, <code>1,000</code>),
+ * periods (abbreviations, ellipses) or any other character are tokenized by
+ * the model on their own, which is exact since the model's features never
+ * look past the chunk.
+ * </p>
+ * <p>
+ * The rules usually agree with the model, but not always; use
+ * {@link TokenizerParityTool} to measure the disagreement on a corpus.  Not
+ * thread-safe.
+ * </p>
+ */
+public class RuleTokenizer implements Tokenizer {
+
+   final private Tokenizer _model;
+   /**
+    * The model tokenizer, if it can split a chunk in place
+    */
+   final private FastTokenizer _fast;
+
+   final private List<Span> _tokens = new ArrayList<Span>();
+
+   /**
+    * Statistics
+    */
+   private long _ruleChunks = 0;
+   private long _modelChunks = 0;
+
+   /**
+    * @param model
+    *           tokenizes the ambiguous chunks, e.g., a {@link FastTokenizer}
+    */
+   public RuleTokenizer(final Tokenizer model) {
+      _model = model;
+      _fast = model instanceof FastTokenizer ? (FastTokenizer) model : null;
+   }
+
+   public String[] tokenize(final String s) {
+      return Span.spansToStrings(tokenizePos(s), s);
+   }
+
+   public Span[] tokenizePos(final String d) {
+      _tokens.clear();
+      final int length = d.length();
+      int chunkStart = -1;
+      for (int i = 0; i <= length; i++) {
+         if (i == length || StringUtil.isWhitespace(d.charAt(i))) {
+            if (chunkStart != -1) {
+               split(d, chunkStart, i);
+               chunkStart = -1;
+            }
+         } else if (chunkStart == -1) {
+            chunkStart = i;
+         }
+      }
+      return _tokens.toArray(new Span[_tokens.size()]);
+   }
+
+   /**
+    * @return the number of chunks tokenized by the rules
+    */
+   public long ruleChunks() {
+      return _ruleChunks;
+   }
+
+   /**
+    * @return the number of chunks tokenized by the model
+    */
+   public long modelChunks() {
+      return _modelChunks;
+   }
+
+   private void split(final String d, final int start, final int end) {
+      if (end - start == 1 || isWord(d, start, end, false)) {
+         _ruleChunks++;
+         _tokens.add(new Span(start, end));
+      } else if (isClosing(d.charAt(end - 1)) && isWord(d, start, end - 1, true)) {
+         _ruleChunks++;
+         _tokens.add(new Span(start, end - 1));
+         _tokens.add(new Span(end - 1, end));
+      } else {
+         _modelChunks++;
+         if (_fast != null) {
+            _fast.split(d, start, end, _tokens);
+            return;
+         }
+         for (final Span token : _model.tokenizePos(d.substring(start, end))) {
+            _tokens.add(new Span(start + token.getStart(), start + token.getEnd()));
+         }
+      }
+   }
+
+   /**
+    * @param punctuated
+    *           whether the word is followed by punctuation, in which case it
+    *           must contain a lower case letter: the model keeps numbers
+    *           (<code>0,</code>) and, in some sentences, acronyms
+    *           (<code>PLC,</code>) together with the punctuation
+    * @return <code>true</code> if <code>d[start, end)</code> is made of
+    *         letters and digits only
+    */
+   private static boolean isWord(final String d, final int start, final int end,
+         final boolean punctuated) {
+      boolean lowerCase = false;
+      for (int i = start; i < end; i++) {
+         final char c = d.charAt(i);
+         if (!Character.isLetterOrDigit(c)) {
+            return false;
+         }
+         lowerCase |= Character.isLowerCase(c);
+      }
+      return !punctuated || lowerCase;
+   }
+
+   private static boolean isClosing(final char c) {
+      return c == ',' || c == ';' || c == ':' || c == '?' || c == '!';
+   }
+
+}
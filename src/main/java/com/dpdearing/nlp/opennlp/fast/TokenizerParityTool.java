@@ -0,0 +1,234 @@
+package com.dpdearing.nlp.opennlp.fast;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import opennlp.tools.tokenize.Tokenizer;
+import opennlp.tools.tokenize.TokenizerME;
+import opennlp.tools.tokenize.TokenizerModel;
+import opennlp.tools.util.Span;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.dpdearing.nlp.opennlp.OpenNlpToolkit;
+import com.dpdearing.util.FileUtilities;
+
+/**
+ * Measures how often {@link RuleTokenizer} disagrees with the pure model
+ * tokenizer, and how much faster it is, on a local corpus.
+ * <p>
+ * Usage: <code>TokenizerParityTool &lt;corpus&gt; [charset]</code>
+ * </p>
+ * <p>
+ * The corpus is a text file with one paragraph per line, broken into
+ * sentences by the toolkit's sentence detector and tokenized by both
+ * tokenizers with the model from the OpenNLP properties.  The report is
+ * printed as tab-separated <code>name value</code> rows: the number of
+ * sentences and chunks, the share of chunks the rules handled, the number
+ * of sentences whose tokens differ, the F-measure of the rule tokens
+ * against the model tokens and the throughput of both tokenizers, followed
+ * by the most frequent disagreeing chunks.
+ * </p>
+ */
+public class TokenizerParityTool {
+   static private final Logger logger = LoggerFactory.getLogger(TokenizerParityTool.class);
+
+   static final private Charset UTF8 = Charset.forName("UTF-8");
+   static final private int MEASURE_PASSES = 3;
+   static final private int MAX_EXAMPLES = 20;
+
+   final private Tokenizer _model;
+   final private RuleTokenizer _rules;
+
+   /**
+    * @param model
+    *           the tokenizer model
+    */
+   public TokenizerParityTool(final TokenizerModel model) {
+      _model = newModelTokenizer(model);
+      _rules = new RuleTokenizer(newModelTokenizer(model));
+   }
+
+   /**
+    * Compare and time the tokenizers on the sentences.
+    *
+    * @param sentences
+    *           the sentences to tokenize
+    * @param report
+    *           receives the tab-separated report
+    */
+   public void run(final List<String> sentences, final PrintWriter report) {
+      long expectedTokens = 0;
+      long actualTokens = 0;
+      long matchedTokens = 0;
+      final List<String> differing = new ArrayList<String>();
+      for (final String sentence : sentences) {
+         final Span[] expected = _model.tokenizePos(sentence);
+         final Span[] actual = _rules.tokenizePos(sentence);
+         expectedTokens += expected.length;
+         actualTokens += actual.length;
+         matchedTokens += matched(expected, actual);
+         if (!Arrays.equals(expected, actual)) {
+            differing.add(sentence);
+         }
+      }
+      final long ruleChunks = _rules.ruleChunks();
+      final long chunks = ruleChunks + _rules.modelChunks();
+
+      final Map<String, int[]> disagreements = new HashMap<String, int[]>();
+      for (final String sentence : differing) {
+         collectDisagreements(sentence, disagreements);
+      }
+
+      // the first pass also warms up both tokenizers
+      final double modelRate = throughput(_model, sentences);
+      final double rulesRate = throughput(_rules, sentences);
+
+      report.println(String.format("sentences\t%d", sentences.size()));
+      report.println(String.format("chunks\t%d", chunks));
+      report.println(String.format("rule_chunks\t%d", ruleChunks));
+      report.println(String.format("rule_chunk_share\t%.4f",
+            chunks == 0 ? 0.0 : (double) ruleChunks / chunks));
+      report.println(String.format("differing_sentences\t%d", differing.size()));
+      report.println(String.format("token_agreement\t%.6f",
+            expectedTokens + actualTokens == 0 ? 1.0
+                  : 2.0 * matchedTokens / (expectedTokens + actualTokens)));
+      report.println(String.format("model_sentences_per_sec\t%.1f", modelRate));
+      report.println(String.format("rule_sentences_per_sec\t%.1f", rulesRate));
+      report.println(String.format("speedup\t%.2f", modelRate == 0 ? 0.0 : rulesRate / modelRate));
+
+      final List<Map.Entry<String, int[]>> examples =
+            new ArrayList<Map.Entry<String, int[]>>(disagreements.entrySet());
+      Collections.sort(examples, new Comparator<Map.Entry<String, int[]>>() {
+         public int compare(final Map.Entry<String, int[]> a, final Map.Entry<String, int[]> b) {
+            return b.getValue()[0] - a.getValue()[0];
+         }
+      });
+      for (final Map.Entry<String, int[]> example : examples.subList(0,
+            Math.min(MAX_EXAMPLES, examples.size()))) {
+         final String chunk = example.getKey();
+         report.println(String.format("disagreement\t%d\t%s\t%s\t%s",
+               example.getValue()[0], chunk,
+               join(_model.tokenize(chunk)), join(_rules.tokenize(chunk))));
+      }
+      report.flush();
+   }
+
+   /**
+    * Count the disagreeing whitespace-separated chunks of a sentence; the
+    * tokenizers never look past a chunk, so they disagree on whole chunks.
+    */
+   private void collectDisagreements(final String sentence, final Map<String, int[]> counts) {
+      for (final String chunk : sentence.trim().split("\\s+")) {
+         if (!chunk.isEmpty()
+               && !Arrays.equals(_model.tokenizePos(chunk), _rules.tokenizePos(chunk))) {
+            final int[] count = counts.get(chunk);
+            if (count == null) {
+               counts.put(chunk, new int[] { 1 });
+            } else {
+               count[0]++;
+            }
+         }
+      }
+   }
+
+   /**
+    * @return the best of several passes, in sentences per second
+    */
+   private static double throughput(final Tokenizer tokenizer, final List<String> sentences) {
+      long best = Long.MAX_VALUE;
+      for (int pass = 0; pass < MEASURE_PASSES; pass++) {
+         final long start = System.nanoTime();
+         for (final String sentence : sentences) {
+            tokenizer.tokenizePos(sentence);
+         }
+         best = Math.min(best, System.nanoTime() - start);
+      }
+      return best == 0 ? 0.0 : sentences.size() / (best / 1e9);
+   }
+
+   /**
+    * @return the number of spans in both sorted arrays
+    */
+   private static int matched(final Span[] expected, final Span[] actual) {
+      int matched = 0;
+      for (int e = 0, a = 0; e < expected.length && a < actual.length;) {
+         final int cmp = expected[e].getStart() != actual[a].getStart()
+               ? expected[e].getStart() - actual[a].getStart()
+               : expected[e].getEnd() - actual[a].getEnd();
+         if (cmp == 0) {
+            matched++;
+            e++;
+            a++;
+         } else if (cmp < 0) {
+            e++;
+         } else {
+            a++;
+         }
+      }
+      return matched;
+   }
+
+   private static Tokenizer newModelTokenizer(final TokenizerModel model) {
+      return FastTokenizer.supports(model) ? new FastTokenizer(model) : new TokenizerME(model);
+   }
+
+   private static String join(final String[] tokens) {
+      final StringBuilder buf = new StringBuilder();
+      for (final String token : tokens) {
+         if (buf.length() > 0) {
+            buf.append(' ');
+         }
+         buf.append(token);
+      }
+      return buf.toString();
+   }
+
+   public static void main(final String[] args) throws IOException {
+      if (args.length < 1) {
+         System.err.println("Usage: TokenizerParityTool <corpus> [charset]");
+         System.exit(1);
+      }
+      final File corpus = new File(args[0]);
+      final Charset cs = args.length > 1 ? Charset.forName(args[1]) : UTF8;
+
+      final OpenNlpToolkit toolkit = new OpenNlpToolkit();
+      final List<String> sentences = new ArrayList<String>();
+      for (final String line : FileUtilities.loadLines(corpus, cs)) {
+         if (!line.trim().isEmpty()) {
+            sentences.addAll(Arrays.asList(toolkit.detectSentences(line)));
+         }
+      }
+
+      final String resourceName = toolkit.getProperties().getProperty("opennlp.tokenizer");
+      final InputStream in = resourceName == null
+            ? null : OpenNlpToolkit.class.getResourceAsStream(resourceName);
+      if (in == null) {
+         throw new IOException(String.format(
+               "Unable to find the tokenizer model resource '%s'", resourceName));
+      }
+      final TokenizerModel model;
+      try {
+         model = new TokenizerModel(in);
+      } finally {
+         in.close();
+      }
+      logger.info("Comparing the tokenizers on {} sentences", sentences.size());
+
+      new TokenizerParityTool(model).run(sentences,
+            new PrintWriter(new OutputStreamWriter(System.out, UTF8)));
+   }
+
+}
@@ -0,0 +1,377 @@
+package com.dpdearing.nlp.opennlp.gazetteer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import opennlp.tools.tokenize.Tokenizer;
+import opennlp.tools.util.Span;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Finds the known names of dictionaries in tokenized sentences.
+ * <p>
+ * The dictionary entries of every type are compiled into a single
+ * Aho-Corasick automaton over tokens: each distinct dictionary token gets an
+ * integer id, the trie transitions are held in an open-addressing table keyed
+ * by state and token id, and the failure and output links let
+ * {@link #find(String[])} report every entry ending at each token in a
+ * single pass over the sentence, whatever the number of entries.  The
+ * matches are returned as typed token spans, like those of a
+ * {@link opennlp.tools.namefind.NameFinderME}.
+ * </p>
+ * <p>
+ * A gazetteer is immutable and thread-safe; build one with a
+ * {@link Builder}.
+ * </p>
+ */
+public class Gazetteer {
+   static private final Logger logger = LoggerFactory.getLogger(Gazetteer.class);
+
+   static final private Charset UTF8 = Charset.forName("UTF-8");
+   static final private int ROOT = 0;
+
+   /**
+    * Collects the dictionary entries and compiles the automaton.  Not
+    * thread-safe.
+    */
+   static public class Builder {
+      final private boolean _ignoreCase;
+      final private List<String> _types = new ArrayList<String>();
+      final private Map<String, Integer> _vocabulary = new HashMap<String, Integer>();
+
+      /**
+       * The trie, by state
+       */
+      final private Map<Long, Integer> _transitions = new HashMap<Long, Integer>();
+      private int[] _parent = new int[16];
+      private int[] _token = new int[16];
+      private int[] _depth = new int[16];
+      private int[] _type = new int[16];
+      private int _states = 1;
+      private int _entries = 0;
+
+      /**
+       * @param ignoreCase
+       *           whether to match tokens regardless of case
+       */
+      public Builder(final boolean ignoreCase) {
+         _ignoreCase = ignoreCase;
+         _type[ROOT] = -1;
+      }
+
+      /**
+       * Add an entry.  An entry already added with another type keeps its
+       * first type.
+       *
+       * @param type
+       *           the entity type, e.g., <code>organization</code>
+       * @param tokens
+       *           the tokens of the name
+       * @return this builder
+       */
+      public Builder add(final String type, final String[] tokens) {
+         if (tokens.length == 0) {
+            return this;
+         }
+         int typeIndex = _types.indexOf(type);
+         if (typeIndex == -1) {
+            typeIndex = _types.size();
+            _types.add(type);
+         }
+
+         int state = ROOT;
+         for (final String token : tokens) {
+            final String normalized = normalize(token, _ignoreCase);
+            Integer id = _vocabulary.get(normalized);
+            if (id == null) {
+               id = _vocabulary.size();
+               _vocabulary.put(normalized, id);
+            }
+            final Long key = key(state, id);
+            final Integer next = _transitions.get(key);
+            if (next != null) {
+               state = next;
+            } else {
+               state = newState(state, id);
+               _transitions.put(key, state);
+            }
+         }
+
+         if (_type[state] == -1) {
+            _type[state] = typeIndex;
+            _entries++;
+         } else if (_type[state] != typeIndex) {
+            logger.debug("Keeping the {} type of '{}' rather than {}", new Object[] {
+                  _types.get(_type[state]), Arrays.toString(tokens), type });
+         }
+         return this;
+      }
+
+      /**
+       * Add the entries of a dictionary file: UTF-8 text with one name per
+       * line.  Blank lines and lines starting with <code>#</code> are
+       * ignored.
+       *
+       * @param type
+       *           the entity type of the names
+       * @param in
+       *           the dictionary
+       * @param tokenizer
+       *           tokenizes each name as the sentences to search are tokenized
+       * @return this builder
+       * @throws IOException if the dictionary can't be read
+       */
+      public Builder load(final String type, final InputStream in, final Tokenizer tokenizer)
+            throws IOException {
+         final BufferedReader reader = new BufferedReader(new InputStreamReader(in, UTF8));
+         String line;
+         while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (!line.isEmpty() && !line.startsWith("#")) {
+               add(type, tokenizer.tokenize(line));
+            }
+         }
+         return this;
+      }
+
+      /**
+       * @return the compiled gazetteer
+       */
+      public Gazetteer build() {
+         return new Gazetteer(this);
+      }
+
+      private int newState(final int parent, final int token) {
+         if (_states == _parent.length) {
+            final int capacity = _states * 2;
+            _parent = Arrays.copyOf(_parent, capacity);
+            _token = Arrays.copyOf(_token, capacity);
+            _depth = Arrays.copyOf(_depth, capacity);
+            _type = Arrays.copyOf(_type, capacity);
+         }
+         final int state = _states++;
+         _parent[state] = parent;
+         _token[state] = token;
+         _depth[state] = _depth[parent] + 1;
+         _type[state] = -1;
+         return state;
+      }
+   }
+
+   final private boolean _ignoreCase;
+   final private String[] _types;
+   final private Map<String, Integer> _vocabulary;
+   final private int _entries;
+
+   /**
+    * The transitions: an open-addressing table from (state, token id) keys
+    * to states; empty slots have a -1 key
+    */
+   final private long[] _keys;
+   final private int[] _targets;
+   final private int _mask;
+
+   /**
+    * By state: the failure link, the nearest state on the failure chain that
+    * ends an entry (or -1), and the length and type of the entry ending at
+    * the state (or -1)
+    */
+   final private int[] _fail;
+   final private int[] _output;
+   final private int[] _length;
+   final private int[] _type;
+
+   private Gazetteer(final Builder builder) {
+      _ignoreCase = builder._ignoreCase;
+      _types = builder._types.toArray(new String[builder._types.size()]);
+      _vocabulary = new HashMap<String, Integer>(builder._vocabulary);
+      _entries = builder._entries;
+      final int states = builder._states;
+
+      int capacity = 16;
+      while (capacity < builder._transitions.size() * 2) {
+         capacity <<= 1;
+      }
+      _keys = new long[capacity];
+      _targets = new int[capacity];
+      _mask = capacity - 1;
+      Arrays.fill(_keys, -1L);
+      for (final Map.Entry<Long, Integer> transition : builder._transitions.entrySet()) {
+         final long key = transition.getKey();
+         int slot = slot(key);
+         while (_keys[slot] != -1L) {
+            slot = (slot + 1) & _mask;
+         }
+         _keys[slot] = key;
+         _targets[slot] = transition.getValue();
+      }
+
+      _type = Arrays.copyOf(builder._type, states);
+      _length = new int[states];
+      _fail = new int[states];
+      _output = new int[states];
+      _output[ROOT] = -1;
+
+      // the failure links, breadth first so that shallower states are done
+      final Integer[] order = new Integer[states];
+      for (int s = 0; s < states; s++) {
+         order[s] = s;
+      }
+      final int[] depth = builder._depth;
+      Arrays.sort(order, new Comparator<Integer>() {
+         public int compare(final Integer a, final Integer b) {
+            return depth[a] - depth[b];
+         }
+      });
+      for (final int state : order) {
+         if (state == ROOT) {
+            continue;
+         }
+         _length[state] = _type[state] == -1 ? 0 : depth[state];
+         final int parent = builder._parent[state];
+         final int token = builder._token[state];
+         int fail = ROOT;
+         if (parent != ROOT) {
+            int f = _fail[parent];
+            int next;
+            while ((next = transition(f, token)) == -1 && f != ROOT) {
+               f = _fail[f];
+            }
+            fail = next == -1 ? ROOT : next;
+         }
+         _fail[state] = fail;
+         _output[state] = _type[fail] != -1 ? fail : _output[fail];
+      }
+      logger.info("Compiled {} gazetteer entries of types {} into {} states",
+            new Object[] { _entries, Arrays.toString(_types), states });
+   }
+
+   /**
+    * Find the known names in a sentence, preferring the leftmost and then
+    * the longest of overlapping names.
+    *
+    * @param tokens
+    *           the sentence tokens
+    * @return the non-overlapping name spans, in order, typed by the
+    *         dictionary type
+    */
+   public List<Span> find(final String[] tokens) {
+      final List<Span> all = findAll(tokens);
+      if (all.size() < 2) {
+         return all;
+      }
+      Collections.sort(all);
+      final List<Span> names = new ArrayList<Span>(all.size());
+      int end = 0;
+      for (final Span span : all) {
+         if (span.getStart() >= end) {
+            names.add(span);
+            end = span.getEnd();
+         }
+      }
+      return names;
+   }
+
+   /**
+    * Find every occurrence of a known name in a sentence, including those
+    * overlapping or nested in others.
+    *
+    * @param tokens
+    *           the sentence tokens
+    * @return the name spans, in order of their end
+    */
+   public List<Span> findAll(final String[] tokens) {
+      final List<Span> names = new ArrayList<Span>();
+      int state = ROOT;
+      for (int i = 0; i < tokens.length; i++) {
+         final Integer id = _vocabulary.get(normalize(tokens[i], _ignoreCase));
+         if (id == null) {
+            state = ROOT;
+            continue;
+         }
+         int next;
+         while ((next = transition(state, id)) == -1 && state != ROOT) {
+            state = _fail[state];
+         }
+         state = next == -1 ? ROOT : next;
+
+         for (int s = _type[state] != -1 ? state : _output[state]; s > ROOT; s = _output[s]) {
+            names.add(new Span(i + 1 - _length[s], i + 1, _types[_type[s]]));
+         }
+      }
+      return names;
+   }
+
+   /**
+    * @return the entity types, in the order they were added
+    */
+   public String[] getTypes() {
+      return _types.clone();
+   }
+
+   /**
+    * @return the number of distinct entries
+    */
+   public int entryCount() {
+      return _entries;
+   }
+
+   /**
+    * @return the approximate retained size of the gazetteer in bytes
+    */
+   public long estimateSize() {
+      long size = 16 + (long) _keys.length * 8 + 16 + (long) _targets.length * 4
+            + 4 * (16 + (long) _fail.length * 4);
+      for (final String token : _vocabulary.keySet()) {
+         // the string, its boxed id and the hash map entry
+         size += 24 + 16 + 2L * token.length() + 16 + 32;
+      }
+      return size;
+   }
+
+   @Override
+   public String toString() {
+      return String.format("Gazetteer types=%s entries=%d states=%d tokens=%d",
+            Arrays.toString(_types), _entries, _fail.length, _vocabulary.size());
+   }
+
+   private int transition(final int state, final int token) {
+      final long key = key(state, token);
+      int slot = slot(key);
+      long k;
+      while ((k = _keys[slot]) != -1L) {
+         if (k == key) {
+            return _targets[slot];
+         }
+         slot = (slot + 1) & _mask;
+      }
+      return -1;
+   }
+
+   private int slot(final long key) {
+      final long h = key * 0x9E3779B97F4A7C15L;
+      return (int) (h ^ (h >>> 32)) & _mask;
+   }
+
+   private static long key(final int state, final int token) {
+      return ((long) state << 32) | (token & 0xFFFFFFFFL);
+   }
+
+   private static String normalize(final String token, final boolean ignoreCase) {
+      return ignoreCase ? token.toLowerCase(Locale.ENGLISH) : token;
+   }
+
+}
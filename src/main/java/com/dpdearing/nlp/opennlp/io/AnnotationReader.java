@@ -0,0 +1,125 @@
+package com.dpdearing.nlp.opennlp.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Reads a file written by {@link AnnotationWriter} through a read-only memory
+ * mapping, or from a buffer the file was already read into.
+ * <p>
+ * Opening the file only indexes the document records; each
+ * {@link DocumentView} and {@link SentenceView} reads its values directly out
+ * of the mapped file, so text is exposed as {@link CharSequence} views and
+ * nothing is copied until it is asked for.  Views are cheap to create and may
+ * be used from several threads.  There is nothing to close: the mapping is
+ * released when the reader and all of its views are garbage collected.
+ * </p>
+ */
+public class AnnotationReader {
+
+   final private String _name;
+   final private ByteBuffer _buffer;
+   final private int[] _offsets;
+   final private int _count;
+
+   /**
+    * Map and index the file.
+    *
+    * @param file
+    *           the file to read
+    * @throws IOException if the file can't be read, is larger than 2GB, or
+    *            isn't a supported annotation file
+    */
+   public AnnotationReader(final File file) throws IOException {
+      this(file.getPath(), map(file));
+   }
+
+   /**
+    * Index the contents of an annotation file, e.g., one too small to be
+    * worth mapping.
+    *
+    * @param name
+    *           the name of the file, for messages
+    * @param buffer
+    *           the contents of the file, from position zero to the limit
+    * @throws IOException if the contents aren't a supported annotation file
+    */
+   public AnnotationReader(final String name, final ByteBuffer buffer) throws IOException {
+      _name = name;
+      _buffer = buffer;
+
+      if (_buffer.limit() < AnnotationWriter.HEADER_SIZE
+            || _buffer.getInt(0) != AnnotationWriter.MAGIC) {
+         throw new IOException(name + " is not an annotation file");
+      }
+      final short version = _buffer.getShort(4);
+      if (version != AnnotationWriter.VERSION) {
+         throw new IOException(String.format(
+               "%s has unsupported annotation format version %d", name, version));
+      }
+
+      // index the length-prefixed document records
+      int[] offsets = new int[16];
+      int count = 0;
+      int pos = AnnotationWriter.HEADER_SIZE;
+      while (pos < _buffer.limit()) {
+         if (pos + 4 > _buffer.limit()) {
+            throw new IOException(name + " is truncated at byte " + pos);
+         }
+         final int length = _buffer.getInt(pos);
+         if (length < 0 || (long) pos + 4 + length > _buffer.limit()) {
+            throw new IOException(name + " is truncated at byte " + pos);
+         }
+         if (count == offsets.length) {
+            offsets = Arrays.copyOf(offsets, count * 2);
+         }
+         offsets[count++] = pos + 4;
+         pos += 4 + length;
+      }
+      _offsets = offsets;
+      _count = count;
+   }
+
+   private static ByteBuffer map(final File file) throws IOException {
+      final RandomAccessFile raf = new RandomAccessFile(file, "r");
+      try {
+         final FileChannel channel = raf.getChannel();
+         if (channel.size() > Integer.MAX_VALUE) {
+            throw new IOException(file + " is too large to map; write fewer documents per file");
+         }
+         // the mapping remains valid after the channel is closed
+         return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      } finally {
+         raf.close();
+      }
+   }
+
+   /**
+    * @return the number of documents in the file
+    */
+   public int documentCount() {
+      return _count;
+   }
+
+   /**
+    * @param index
+    *           the document index
+    * @return a view of the document
+    */
+   public DocumentView document(final int index) {
+      if (index < 0 || index >= _count) {
+         throw new IndexOutOfBoundsException(index + " of " + _count + " documents");
+      }
+      return new DocumentView(_buffer, _offsets[index]);
+   }
+
+   @Override
+   public String toString() {
+      return _name + " (" + _count + " documents)";
+   }
+
+}
@@ -0,0 +1,263 @@
+package com.dpdearing.nlp.opennlp.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import opennlp.tools.parser.Parse;
+import opennlp.tools.util.Span;
+
+/**
+ * Writes {@link DocumentAnnotation}s to a file in the versioned,
+ * length-prefixed binary annotation format read by {@link AnnotationReader}.
+ * <p>
+ * The file starts with a header (the <code>NLPA</code> magic number and the
+ * format version), followed by one record per document.  Each record is
+ * prefixed with its length in bytes and is self-contained:
+ * </p>
+ * <pre>
+ * document := stringCount (string)* sentenceCount sentenceOffset* chainsOffset
+ *             sentence* chains
+ * string   := charCount char*
+ * sentence := charCount char*
+ *             tokenCount (start end)*
+ *             tagCount tagId*
+ *             entityCount (start end typeId)*
+ *             nodeCount (typeId start end headIndex childCount head prob)*
+ * chains   := chainCount chainOffset* (mentionCount (sentence start end)*)*
+ * </pre>
+ * <p>
+ * All values are big-endian <code>int</code>s, except parse probabilities,
+ * which are <code>double</code>s, and all characters UTF-16
+ * <code>char</code>s, so readers can view the text in place.  Offsets are
+ * relative to the start of the document record.  Tags, entity types and parse
+ * labels are ids into the document's string table, with <code>-1</code> for
+ * none.  Token offsets are characters within the sentence, entity offsets are
+ * token indices and parse nodes are stored in pre-order, each with the
+ * pre-order index of its head node (its own index if it is its own head).
+ * </p>
+ */
+public class AnnotationWriter implements Closeable {
+
+   static final int MAGIC = 0x4E4C5041; // "NLPA"
+   static final short VERSION = 2;
+   static final int HEADER_SIZE = 8;
+   static final int NO_STRING = -1;
+
+   final private FileOutputStream _out;
+   final private FileChannel _channel;
+
+   /**
+    * Create (or replace) the file and write the format header.
+    *
+    * @param file
+    *           the file to write
+    * @throws IOException if the file can't be created or written
+    */
+   public AnnotationWriter(final File file) throws IOException {
+      _out = new FileOutputStream(file);
+      _channel = _out.getChannel();
+
+      final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      header.putInt(MAGIC).putShort(VERSION).putShort((short) 0).flip();
+      writeFully(header);
+   }
+
+   /**
+    * Append a document record.
+    *
+    * @param document
+    *           the document to write
+    * @throws IOException if the document can't be written
+    */
+   public void write(final DocumentAnnotation document) throws IOException {
+      final StringTable strings = new StringTable();
+
+      // serialize each section first to know the offsets
+      final List<byte[]> sentences = new ArrayList<byte[]>();
+      for (final SentenceAnnotation sentence : document.getSentences()) {
+         sentences.add(sentence(sentence, strings));
+      }
+      final byte[] chains = chains(document.getChains());
+      final byte[] table = strings.toBytes();
+
+      final int count = sentences.size();
+      int offset = table.length + 4 + 4 * count + 4;
+      final ByteBuffer index = ByteBuffer.allocate(4 + 4 * count + 4);
+      index.putInt(count);
+      for (final byte[] sentence : sentences) {
+         index.putInt(offset);
+         offset += sentence.length;
+      }
+      index.putInt(offset);
+      index.flip();
+      offset += chains.length;
+
+      final ByteBuffer[] record = new ByteBuffer[count + 4];
+      record[0] = (ByteBuffer) ByteBuffer.allocate(4).putInt(offset).flip();
+      record[1] = ByteBuffer.wrap(table);
+      record[2] = index;
+      for (int i = 0; i < count; i++) {
+         record[3 + i] = ByteBuffer.wrap(sentences.get(i));
+      }
+      record[count + 3] = ByteBuffer.wrap(chains);
+
+      // gathering write
+      long remaining = 4L + offset;
+      while (remaining > 0) {
+         remaining -= _channel.write(record);
+      }
+   }
+
+   public void close() throws IOException {
+      _out.close();
+   }
+
+   private static byte[] sentence(final SentenceAnnotation sentence,
+         final StringTable strings) throws IOException {
+      final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      final DataOutputStream out = new DataOutputStream(bytes);
+
+      writeChars(out, sentence.getText());
+
+      final Span[] tokens = sentence.getTokens();
+      out.writeInt(tokens.length);
+      for (final Span token : tokens) {
+         out.writeInt(token.getStart());
+         out.writeInt(token.getEnd());
+      }
+
+      final String[] tags = sentence.getTags();
+      if (tags == null) {
+         out.writeInt(0);
+      } else {
+         out.writeInt(tags.length);
+         for (final String tag : tags) {
+            out.writeInt(strings.id(tag));
+         }
+      }
+
+      final List<Span> entities = sentence.getEntities();
+      out.writeInt(entities.size());
+      for (final Span entity : entities) {
+         out.writeInt(entity.getStart());
+         out.writeInt(entity.getEnd());
+         out.writeInt(strings.id(entity.getType()));
+      }
+
+      final Parse parse = sentence.getParse();
+      if (parse == null) {
+         out.writeInt(0);
+      } else {
+         final List<Parse> nodes = new ArrayList<Parse>();
+         preorder(parse, nodes);
+         final Map<Parse, Integer> indices = new IdentityHashMap<Parse, Integer>();
+         for (int i = 0; i < nodes.size(); i++) {
+            indices.put(nodes.get(i), i);
+         }
+         out.writeInt(nodes.size());
+         for (int i = 0; i < nodes.size(); i++) {
+            final Parse node = nodes.get(i);
+            final Integer head = indices.get(node.getHead());
+            out.writeInt(strings.id(node.getType()));
+            out.writeInt(node.getSpan().getStart());
+            out.writeInt(node.getSpan().getEnd());
+            out.writeInt(node.getHeadIndex());
+            out.writeInt(node.getChildCount());
+            // a head outside the tree isn't kept
+            out.writeInt(head == null || head < i ? i : head);
+            out.writeDouble(node.getProb());
+         }
+      }
+
+      out.flush();
+      return bytes.toByteArray();
+   }
+
+   private static byte[] chains(final List<List<DocumentAnnotation.Mention>> chains)
+         throws IOException {
+      final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      final DataOutputStream out = new DataOutputStream(bytes);
+
+      out.writeInt(chains.size());
+      // chain offsets relative to the start of the chains section
+      int offset = 4 + 4 * chains.size();
+      for (final List<DocumentAnnotation.Mention> chain : chains) {
+         out.writeInt(offset);
+         offset += 4 + 12 * chain.size();
+      }
+      for (final List<DocumentAnnotation.Mention> chain : chains) {
+         out.writeInt(chain.size());
+         for (final DocumentAnnotation.Mention mention : chain) {
+            out.writeInt(mention.getSentence());
+            out.writeInt(mention.getSpan().getStart());
+            out.writeInt(mention.getSpan().getEnd());
+         }
+      }
+
+      out.flush();
+      return bytes.toByteArray();
+   }
+
+   private static void preorder(final Parse node, final List<Parse> nodes) {
+      nodes.add(node);
+      for (final Parse child : node.getChildren()) {
+         preorder(child, nodes);
+      }
+   }
+
+   private static void writeChars(final DataOutputStream out, final String value)
+         throws IOException {
+      out.writeInt(value.length());
+      out.writeChars(value);
+   }
+
+   private void writeFully(final ByteBuffer buffer) throws IOException {
+      while (buffer.hasRemaining()) {
+         _channel.write(buffer);
+      }
+   }
+
+   /**
+    * Assigns each distinct string of a document an id
+    */
+   static private class StringTable {
+      final private Map<String, Integer> _ids = new HashMap<String, Integer>();
+      final private List<String> _strings = new ArrayList<String>();
+
+      int id(final String value) {
+         if (value == null) {
+            return NO_STRING;
+         }
+         Integer id = _ids.get(value);
+         if (id == null) {
+            id = _strings.size();
+            _ids.put(value, id);
+            _strings.add(value);
+         }
+         return id;
+      }
+
+      byte[] toBytes() throws IOException {
+         final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+         final DataOutputStream out = new DataOutputStream(bytes);
+         out.writeInt(_strings.size());
+         for (final String value : _strings) {
+            writeChars(out, value);
+         }
+         out.flush();
+         return bytes.toByteArray();
+      }
+   }
+
+}
@@ -0,0 +1,238 @@
+package com.dpdearing.nlp.opennlp.io;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import opennlp.tools.util.Span;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An on-disk, content-addressed store of {@link DocumentAnnotation}s.
+ * <p>
+ * Each entry is stored in its own binary annotation file named by its key,
+ * typically a content hash such as
+ * {@link com.dpdearing.util.ContentHash#sha1(String...)}, under a
+ * subdirectory named by the first two characters of the key.  Entries are
+ * written to a temporary file that is then renamed into place, so readers
+ * never see a partially written entry and concurrent writers of the same key
+ * are harmless.  An entry that can't be read, e.g., one truncated by a crash,
+ * is deleted and treated as missing.
+ * </p>
+ * <p>
+ * A segment entry packs several annotations, such as those of the lines of a
+ * document, into one file under their own keys.  Its first document record
+ * lists the keys, as the texts of its sentences, and is followed by the
+ * record of each annotation in the same order.
+ * </p>
+ * <p>
+ * Small entries are read into memory with a plain stream rather than
+ * mapped; only large entries are mapped.
+ * </p>
+ */
+public class ContentStore {
+   static private final Logger logger = LoggerFactory.getLogger(ContentStore.class);
+
+   static final private String SUFFIX = ".nlpa";
+
+   /**
+    * Entries up to this size are read rather than mapped
+    */
+   static final private int MAP_THRESHOLD = 64 * 1024;
+
+   final private File _root;
+
+   /**
+    * @param root
+    *           the store directory, created if necessary
+    * @throws IOException if the directory can't be created
+    */
+   public ContentStore(final File root) throws IOException {
+      if (!root.isDirectory() && !root.mkdirs() && !root.isDirectory()) {
+         throw new IOException("Unable to create the content store " + root);
+      }
+      _root = root;
+   }
+
+   /**
+    * @param key
+    *           the entry key
+    * @return the stored annotation, or <code>null</code> if there is none
+    *         or it can't be read
+    */
+   public DocumentAnnotation get(final String key) {
+      final File file = file(key);
+      if (!file.isFile()) {
+         return null;
+      }
+      try {
+         final AnnotationReader reader = read(file);
+         if (reader.documentCount() != 1) {
+            throw new IOException(reader + " isn't a single annotation");
+         }
+         return reader.document(0).toAnnotation();
+      } catch (final IOException e) {
+         discard(file, e);
+      } catch (final RuntimeException e) {
+         // invalid offsets
+         discard(file, e);
+      }
+      return null;
+   }
+
+   /**
+    * @param key
+    *           the segment key
+    * @return the annotations of the segment by their keys, in the order they
+    *         were stored, or <code>null</code> if there is no segment or it
+    *         can't be read
+    */
+   public Map<String, DocumentAnnotation> getSegment(final String key) {
+      final File file = file(key);
+      if (!file.isFile()) {
+         return null;
+      }
+      try {
+         final AnnotationReader reader = read(file);
+         final DocumentView keys = reader.documentCount() > 0 ? reader.document(0) : null;
+         if (keys == null || keys.sentenceCount() != reader.documentCount() - 1) {
+            throw new IOException(reader + " isn't a segment");
+         }
+         final Map<String, DocumentAnnotation> annotations =
+               new LinkedHashMap<String, DocumentAnnotation>();
+         for (int i = 0; i < keys.sentenceCount(); i++) {
+            annotations.put(keys.sentence(i).text().toString(),
+                  reader.document(i + 1).toAnnotation());
+         }
+         return annotations;
+      } catch (final IOException e) {
+         discard(file, e);
+      } catch (final RuntimeException e) {
+         // invalid offsets
+         discard(file, e);
+      }
+      return null;
+   }
+
+   /**
+    * @param key
+    *           the entry key
+    * @return <code>true</code> if the store has an entry for the key
+    */
+   public boolean contains(final String key) {
+      return file(key).isFile();
+   }
+
+   /**
+    * Store the annotation, replacing any existing entry for the key.
+    *
+    * @param key
+    *           the entry key
+    * @param annotation
+    *           the annotation to store
+    * @throws IOException if the entry can't be written
+    */
+   public void put(final String key, final DocumentAnnotation annotation) throws IOException {
+      write(key, Arrays.asList(annotation));
+   }
+
+   /**
+    * Store the annotations in one segment, replacing any existing entry for
+    * the key.
+    *
+    * @param key
+    *           the segment key
+    * @param annotations
+    *           the annotations to store by their keys
+    * @throws IOException if the segment can't be written
+    */
+   public void putSegment(final String key, final Map<String, DocumentAnnotation> annotations)
+         throws IOException {
+      final DocumentAnnotation keys = new DocumentAnnotation();
+      final List<DocumentAnnotation> documents = new ArrayList<DocumentAnnotation>();
+      documents.add(keys);
+      for (final Map.Entry<String, DocumentAnnotation> entry : annotations.entrySet()) {
+         keys.addSentence(new SentenceAnnotation(entry.getKey(), new Span[0], null, null, null));
+         documents.add(entry.getValue());
+      }
+      write(key, documents);
+   }
+
+   private void write(final String key, final List<DocumentAnnotation> documents)
+         throws IOException {
+      final File file = file(key);
+      final File dir = file.getParentFile();
+      if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory()) {
+         throw new IOException("Unable to create " + dir);
+      }
+
+      final File tmp = File.createTempFile(key, ".tmp", dir);
+      try {
+         final AnnotationWriter writer = new AnnotationWriter(tmp);
+         try {
+            for (final DocumentAnnotation document : documents) {
+               writer.write(document);
+            }
+         } finally {
+            writer.close();
+         }
+         if (!tmp.renameTo(file)) {
+            // e.g., another writer got there first on a platform that won't replace
+            if (!file.isFile()) {
+               throw new IOException("Unable to store " + file);
+            }
+         }
+      } finally {
+         if (tmp.exists() && !tmp.delete()) {
+            logger.warn("Unable to delete {}", tmp);
+         }
+      }
+   }
+
+   /**
+    * Delete an entry that can't be read, so that it's stored again.
+    */
+   private static void discard(final File file, final Exception e) {
+      logger.warn("Discarding the unreadable content store entry " + file, e);
+      if (!file.delete() && file.exists()) {
+         logger.warn("Unable to delete {}", file);
+      }
+   }
+
+   /**
+    * @return a reader of the entry file, read into memory if it is small
+    */
+   private static AnnotationReader read(final File file) throws IOException {
+      // the size of the opened file, in case the entry is being replaced
+      final FileInputStream in = new FileInputStream(file);
+      try {
+         final long length = in.getChannel().size();
+         if (length > MAP_THRESHOLD) {
+            return new AnnotationReader(file);
+         }
+         final byte[] contents = new byte[(int) length];
+         new DataInputStream(in).readFully(contents);
+         return new AnnotationReader(file.getPath(), ByteBuffer.wrap(contents));
+      } finally {
+         in.close();
+      }
+   }
+
+   private File file(final String key) {
+      if (key.length() < 3 || key.indexOf('/') >= 0 || key.indexOf('\\') >= 0
+            || key.indexOf('.') >= 0) {
+         throw new IllegalArgumentException("key");
+      }
+      return new File(new File(_root, key.substring(0, 2)), key.substring(2) + SUFFIX);
+   }
+
+}
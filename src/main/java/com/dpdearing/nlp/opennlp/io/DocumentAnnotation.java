@@ -0,0 +1,102 @@
+package com.dpdearing.nlp.opennlp.io;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import opennlp.tools.coref.DiscourseEntity;
+import opennlp.tools.coref.mention.MentionContext;
+import opennlp.tools.util.Span;
+
+/**
+ * The full annotations of a document: its sentences and coreference chains.
+ */
+public class DocumentAnnotation {
+
+   /**
+    * A single coreference mention: a character span within a sentence
+    */
+   static public class Mention {
+      final private int _sentence;
+      final private Span _span;
+
+      /**
+       * @param sentence
+       *           the index of the sentence containing the mention
+       * @param span
+       *           the character offsets of the mention within the sentence
+       */
+      public Mention(final int sentence, final Span span) {
+         _sentence = sentence;
+         _span = span;
+      }
+
+      public int getSentence() {
+         return _sentence;
+      }
+
+      public Span getSpan() {
+         return _span;
+      }
+   }
+
+   final private List<SentenceAnnotation> _sentences = new ArrayList<SentenceAnnotation>();
+   final private List<List<Mention>> _chains = new ArrayList<List<Mention>>();
+
+   /**
+    * @param sentence
+    *           the next sentence of the document
+    * @return this document
+    */
+   public DocumentAnnotation addSentence(final SentenceAnnotation sentence) {
+      _sentences.add(sentence);
+      return this;
+   }
+
+   /**
+    * @param chain
+    *           the mentions of a single discourse entity
+    * @return this document
+    */
+   public DocumentAnnotation addChain(final List<Mention> chain) {
+      _chains.add(chain);
+      return this;
+   }
+
+   /**
+    * Add a coreference chain for each of the discourse entities, e.g., from
+    * {@link com.dpdearing.nlp.opennlp.OpenNlpToolkit#findEntityMentions(String[])}.
+    *
+    * @param entities
+    *           the document's discourse entities
+    * @return this document
+    */
+   public DocumentAnnotation addChains(final DiscourseEntity[] entities) {
+      for (final DiscourseEntity entity : entities) {
+         final List<Mention> chain = new ArrayList<Mention>(entity.getNumMentions());
+         final Iterator<MentionContext> mentions = entity.getMentions();
+         while (mentions.hasNext()) {
+            final MentionContext mention = mentions.next();
+            chain.add(new Mention(mention.getSentenceNumber(), mention.getSpan()));
+         }
+         addChain(chain);
+      }
+      return this;
+   }
+
+   /**
+    * @return the sentences
+    */
+   public List<SentenceAnnotation> getSentences() {
+      return Collections.unmodifiableList(_sentences);
+   }
+
+   /**
+    * @return the coreference chains
+    */
+   public List<List<Mention>> getChains() {
+      return Collections.unmodifiableList(_chains);
+   }
+
+}
@@ -0,0 +1,164 @@
+package com.dpdearing.nlp.opennlp.io;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import opennlp.tools.util.Span;
+
+/**
+ * A read-only view of a document record in a memory-mapped annotation file.
+ *
+ * @see AnnotationReader
+ */
+public class DocumentView {
+
+   final private ByteBuffer _buffer;
+   final private int _base;
+   final private String[] _strings;
+   final private int _sentenceCount;
+   final private int _sentenceIndex;
+   final private int _chains;
+
+   DocumentView(final ByteBuffer buffer, final int base) {
+      _buffer = buffer;
+      _base = base;
+
+      // the string table is small and shared by every sentence, so decode it once
+      int pos = base;
+      final int stringCount = buffer.getInt(pos);
+      pos += 4;
+      _strings = new String[stringCount];
+      for (int i = 0; i < stringCount; i++) {
+         final int length = buffer.getInt(pos);
+         _strings[i] = SentenceView.chars(buffer, pos + 4, length).toString();
+         pos += 4 + 2 * length;
+      }
+
+      _sentenceCount = buffer.getInt(pos);
+      _sentenceIndex = pos + 4;
+      _chains = base + buffer.getInt(_sentenceIndex + 4 * _sentenceCount);
+   }
+
+   /**
+    * @return the number of sentences
+    */
+   public int sentenceCount() {
+      return _sentenceCount;
+   }
+
+   /**
+    * @param index
+    *           the sentence index
+    * @return a view of the sentence
+    */
+   public SentenceView sentence(final int index) {
+      if (index < 0 || index >= _sentenceCount) {
+         throw new IndexOutOfBoundsException(index + " of " + _sentenceCount + " sentences");
+      }
+      return new SentenceView(this, _buffer,
+            _base + _buffer.getInt(_sentenceIndex + 4 * index));
+   }
+
+   /**
+    * @return the number of coreference chains
+    */
+   public int chainCount() {
+      return _buffer.getInt(_chains);
+   }
+
+   /**
+    * @param chain
+    *           the chain index
+    * @return the number of mentions in the chain
+    */
+   public int mentionCount(final int chain) {
+      return _buffer.getInt(chain(chain));
+   }
+
+   /**
+    * @param chain
+    *           the chain index
+    * @param mention
+    *           the mention index within the chain
+    * @return the index of the sentence containing the mention
+    */
+   public int mentionSentence(final int chain, final int mention) {
+      return _buffer.getInt(mention(chain, mention));
+   }
+
+   /**
+    * @param chain
+    *           the chain index
+    * @param mention
+    *           the mention index within the chain
+    * @return the character offsets of the mention within its sentence
+    */
+   public Span mentionSpan(final int chain, final int mention) {
+      final int pos = mention(chain, mention);
+      return new Span(_buffer.getInt(pos + 4), _buffer.getInt(pos + 8));
+   }
+
+   /**
+    * @param id
+    *           a tag, entity type or parse label id
+    * @return the string, or <code>null</code> for no string
+    */
+   public String string(final int id) {
+      return id == AnnotationWriter.NO_STRING ? null : _strings[id];
+   }
+
+   /**
+    * @param value
+    *           a tag, entity type or parse label
+    * @return the id of the string in this document, or <code>-1</code> if
+    *         the document doesn't use it
+    */
+   public int stringId(final String value) {
+      for (int i = 0; i < _strings.length; i++) {
+         if (_strings[i].equals(value)) {
+            return i;
+         }
+      }
+      return AnnotationWriter.NO_STRING;
+   }
+
+   /**
+    * Copy the document out of the file.
+    *
+    * @return the document annotation
+    */
+   public DocumentAnnotation toAnnotation() {
+      final DocumentAnnotation document = new DocumentAnnotation();
+      for (int s = 0; s < _sentenceCount; s++) {
+         document.addSentence(sentence(s).toAnnotation());
+      }
+      for (int c = 0; c < chainCount(); c++) {
+         final List<DocumentAnnotation.Mention> chain =
+               new ArrayList<DocumentAnnotation.Mention>();
+         for (int m = 0; m < mentionCount(c); m++) {
+            chain.add(new DocumentAnnotation.Mention(
+                  mentionSentence(c, m), mentionSpan(c, m)));
+         }
+         document.addChain(chain);
+      }
+      return document;
+   }
+
+   private int chain(final int chain) {
+      if (chain < 0 || chain >= chainCount()) {
+         throw new IndexOutOfBoundsException(chain + " of " + chainCount() + " chains");
+      }
+      return _chains + _buffer.getInt(_chains + 4 + 4 * chain);
+   }
+
+   private int mention(final int chain, final int mention) {
+      final int pos = chain(chain);
+      final int count = _buffer.getInt(pos);
+      if (mention < 0 || mention >= count) {
+         throw new IndexOutOfBoundsException(mention + " of " + count + " mentions");
+      }
+      return pos + 4 + 12 * mention;
+   }
+
+}
@@ -0,0 +1,210 @@
+package com.dpdearing.nlp.opennlp.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import opennlp.tools.parser.Parse;
+import opennlp.tools.util.Span;
+
+import com.dpdearing.nlp.opennlp.OpenNlpToolkit;
+import com.dpdearing.util.ContentHash;
+import com.dpdearing.util.FileUtilities;
+import com.dpdearing.util.MappedLineReader.LineHandler;
+
+/**
+ * Annotates documents incrementally, only re-annotating the lines that
+ * changed since the document was last annotated.
+ * <p>
+ * The unit of work is a line, the same unit that
+ * {@link OpenNlpToolkit#detectSentences(File, Charset)} iterates over.  The
+ * sentence-level results for each line (sentences, tokens and, optionally,
+ * part-of-speech tags and parse trees) are stored under the hash of the
+ * line's content in one {@link ContentStore} segment per document, keyed by
+ * the path of the file, and reused whenever an identical line is seen again
+ * in the document.  The segment is only written when lines changed.
+ * Document-level steps depend on the
+ * whole document and are always re-run: named entity recognition, because
+ * its adaptive data carries over from sentence to sentence, and coreference
+ * resolution.
+ * </p>
+ * <p>
+ * Segments are also keyed by the toolkit's
+ * {@link OpenNlpToolkit#getModelVersions() model versions}, so lines are
+ * annotated again once the toolkit is reloaded with different models (or a
+ * model file was replaced between runs); the segments of the old models remain
+ * until the store is cleared.  Instances are not thread-safe.
+ * </p>
+ */
+public class IncrementalAnnotator {
+
+   /**
+    * The optional annotation steps
+    */
+   public enum Step {
+      /** part-of-speech tags; cached per line */
+      TAGS,
+      /** parse trees; cached per line */
+      PARSE,
+      /** named entities; re-run for the whole document */
+      ENTITIES,
+      /** coreference chains; re-run for the whole document */
+      COREF
+   }
+
+   final private OpenNlpToolkit _toolkit;
+   final private ContentStore _store;
+   final private Set<Step> _steps;
+   /**
+    * Identifies the cached steps so that documents annotated with different
+    * steps don't share segments; the model versions are added per document
+    */
+   final private String _namespace;
+
+   /**
+    * Statistics
+    */
+   final private AtomicLong _reused = new AtomicLong();
+   final private AtomicLong _annotated = new AtomicLong();
+
+   /**
+    * @param toolkit
+    *           the toolkit to annotate changed lines with
+    * @param store
+    *           the store of previously annotated lines
+    * @param steps
+    *           the optional steps to run in addition to sentence detection and
+    *           tokenization
+    */
+   public IncrementalAnnotator(final OpenNlpToolkit toolkit, final ContentStore store,
+         final Set<Step> steps) {
+      _toolkit = toolkit;
+      _store = store;
+      _steps = steps.isEmpty() ? EnumSet.noneOf(Step.class) : EnumSet.copyOf(steps);
+      _namespace = "lines:v2:tags=" + _steps.contains(Step.TAGS)
+            + ":parse=" + _steps.contains(Step.PARSE);
+   }
+
+   /**
+    * Annotate the file, reusing the stored results of unchanged lines.
+    *
+    * @param file
+    *           the file to annotate
+    * @param cs
+    *           the file charset
+    * @return the document annotation
+    * @throws IOException if an I/O error occurs while reading the file or
+    *            the store, or loading a model resource
+    */
+   public DocumentAnnotation annotate(final File file, final Charset cs) throws IOException {
+      final String key = ContentHash.sha1(
+            _namespace + ":models=" + _toolkit.getModelVersions(), file.getCanonicalPath());
+      final Map<String, DocumentAnnotation> stored = _store.getSegment(key);
+      final Map<String, DocumentAnnotation> previous = stored == null
+            ? Collections.<String, DocumentAnnotation>emptyMap()
+            : stored;
+
+      // the annotations of the current lines by their hashes
+      final Map<String, DocumentAnnotation> lines =
+            new LinkedHashMap<String, DocumentAnnotation>();
+      final List<SentenceAnnotation> sentences = new ArrayList<SentenceAnnotation>();
+      final long annotated = _annotated.get();
+      FileUtilities.forEachLine(file, cs, new LineHandler() {
+         public boolean handle(final String line) throws IOException {
+            final String hash = ContentHash.sha1(line);
+            DocumentAnnotation annotation = lines.get(hash);
+            if (annotation == null) {
+               annotation = previous.get(hash);
+               if (annotation == null) {
+                  annotation = line(line);
+               } else {
+                  _reused.incrementAndGet();
+               }
+               lines.put(hash, annotation);
+            } else {
+               _reused.incrementAndGet();
+            }
+            sentences.addAll(annotation.getSentences());
+            return true;
+         }
+      });
+
+      if (_annotated.get() != annotated || !lines.keySet().equals(previous.keySet())) {
+         _store.putSegment(key, lines);
+      }
+      return document(sentences);
+   }
+
+   /**
+    * @return the number of lines whose stored results were reused
+    */
+   public long reusedCount() {
+      return _reused.get();
+   }
+
+   /**
+    * @return the number of lines that were annotated
+    */
+   public long annotatedCount() {
+      return _annotated.get();
+   }
+
+   /**
+    * @return the sentence-level annotations of a single line
+    */
+   private DocumentAnnotation line(final String line) throws IOException {
+      _annotated.incrementAndGet();
+      final DocumentAnnotation annotated = new DocumentAnnotation();
+      for (final String sentence : _toolkit.detectLineSentences(line)) {
+         final Span[] tokens = _toolkit.tokenizePos(sentence);
+         final String[] tags = _steps.contains(Step.TAGS)
+               ? _toolkit.tagPartOfSpeech(Span.spansToStrings(tokens, sentence))
+               : null;
+         final Parse parse = _steps.contains(Step.PARSE)
+               ? _toolkit.parseSentence(sentence)
+               : null;
+         annotated.addSentence(new SentenceAnnotation(sentence, tokens, tags, null, parse));
+      }
+      return annotated;
+   }
+
+   /**
+    * Run the document-level steps over the sentences.
+    */
+   private DocumentAnnotation document(final List<SentenceAnnotation> sentences)
+         throws IOException {
+      final DocumentAnnotation document = new DocumentAnnotation();
+      final String[] texts = new String[sentences.size()];
+      try {
+         for (int i = 0; i < sentences.size(); i++) {
+            final SentenceAnnotation sentence = sentences.get(i);
+            texts[i] = sentence.getText();
+            List<Span> entities = null;
+            if (_steps.contains(Step.ENTITIES)) {
+               entities = _toolkit.findNamedEntities(sentence.getText(),
+                     Span.spansToStrings(sentence.getTokens(), sentence.getText()));
+            }
+            document.addSentence(new SentenceAnnotation(sentence.getText(),
+                  sentence.getTokens(), sentence.getTags(), entities, sentence.getParse()));
+         }
+      } finally {
+         if (_steps.contains(Step.ENTITIES)) {
+            _toolkit.clearNamedEntityAdaptiveData();
+         }
+      }
+
+      if (_steps.contains(Step.COREF)) {
+         document.addChains(_toolkit.findEntityMentions(texts));
+      }
+      return document;
+   }
+
+}
@@ -0,0 +1,87 @@
+package com.dpdearing.nlp.opennlp.io;
+
+import java.util.Collections;
+import java.util.List;
+
+import opennlp.tools.parser.Parse;
+import opennlp.tools.util.Span;
+
+/**
+ * The annotations of a single sentence: its tokens and, optionally, their
+ * part-of-speech tags, the named entities and the parse tree.
+ */
+public class SentenceAnnotation {
+
+   final private String _text;
+   final private Span[] _tokens;
+   final private String[] _tags;
+   final private List<Span> _entities;
+   final private Parse _parse;
+
+   /**
+    * @param text
+    *           the sentence text
+    * @param tokens
+    *           the token character offsets within the text, e.g., from
+    *           {@link opennlp.tools.tokenize.Tokenizer#tokenizePos(String)}
+    * @param tags
+    *           the part-of-speech tag of each token, or <code>null</code>
+    * @param entities
+    *           the named entity token spans, or <code>null</code>
+    * @param parse
+    *           the parse tree, or <code>null</code>
+    */
+   public SentenceAnnotation(final String text, final Span[] tokens,
+         final String[] tags, final List<Span> entities, final Parse parse) {
+      if (text == null) {
+         throw new IllegalArgumentException("text");
+      }
+      if (tokens == null) {
+         throw new IllegalArgumentException("tokens");
+      }
+      if (tags != null && tags.length != tokens.length) {
+         throw new IllegalArgumentException("tags");
+      }
+      _text = text;
+      _tokens = tokens;
+      _tags = tags;
+      _entities = entities == null ? Collections.<Span>emptyList() : entities;
+      _parse = parse;
+   }
+
+   /**
+    * @return the sentence text
+    */
+   public String getText() {
+      return _text;
+   }
+
+   /**
+    * @return the token character offsets within the text
+    */
+   public Span[] getTokens() {
+      return _tokens;
+   }
+
+   /**
+    * @return the part-of-speech tag of each token, or <code>null</code>
+    */
+   public String[] getTags() {
+      return _tags;
+   }
+
+   /**
+    * @return the named entity token spans
+    */
+   public List<Span> getEntities() {
+      return _entities;
+   }
+
+   /**
+    * @return the parse tree, or <code>null</code>
+    */
+   public Parse getParse() {
+      return _parse;
+   }
+
+}
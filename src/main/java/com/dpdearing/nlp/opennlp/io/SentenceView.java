@@ -0,0 +1,274 @@
+package com.dpdearing.nlp.opennlp.io;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import opennlp.tools.parser.Parse;
+import opennlp.tools.util.Span;
+
+/**
+ * A read-only view of a sentence record in a memory-mapped annotation file.
+ * <p>
+ * Values are read directly from the mapped file on each call; use
+ * {@link #toAnnotation()} to copy the whole sentence out.
+ * </p>
+ *
+ * @see AnnotationReader
+ */
+public class SentenceView {
+
+   static final private int NODE_SIZE = 32;
+
+   final private DocumentView _document;
+   final private ByteBuffer _buffer;
+
+   /**
+    * Absolute offsets of each section of the sentence record
+    */
+   final private int _text;
+   final private int _tokens;
+   final private int _tags;
+   final private int _entities;
+   final private int _nodes;
+
+   SentenceView(final DocumentView document, final ByteBuffer buffer, final int base) {
+      _document = document;
+      _buffer = buffer;
+      _text = base;
+      _tokens = _text + 4 + 2 * buffer.getInt(_text);
+      _tags = _tokens + 4 + 8 * buffer.getInt(_tokens);
+      _entities = _tags + 4 + 4 * buffer.getInt(_tags);
+      _nodes = _entities + 4 + 12 * buffer.getInt(_entities);
+   }
+
+   /**
+    * @return a zero-copy view of the sentence text
+    */
+   public CharSequence text() {
+      return chars(_buffer, _text + 4, _buffer.getInt(_text));
+   }
+
+   /**
+    * @return the number of tokens
+    */
+   public int tokenCount() {
+      return _buffer.getInt(_tokens);
+   }
+
+   /**
+    * @param token
+    *           the token index
+    * @return the character offset of the start of the token
+    */
+   public int tokenStart(final int token) {
+      return _buffer.getInt(element(_tokens, 8, token));
+   }
+
+   /**
+    * @param token
+    *           the token index
+    * @return the character offset of the end of the token
+    */
+   public int tokenEnd(final int token) {
+      return _buffer.getInt(element(_tokens, 8, token) + 4);
+   }
+
+   /**
+    * @param token
+    *           the token index
+    * @return a zero-copy view of the token text
+    */
+   public CharSequence token(final int token) {
+      return text().subSequence(tokenStart(token), tokenEnd(token));
+   }
+
+   /**
+    * @return <code>true</code> if the tokens have part-of-speech tags
+    */
+   public boolean hasTags() {
+      return _buffer.getInt(_tags) > 0;
+   }
+
+   /**
+    * @param token
+    *           the token index
+    * @return the id of the token's part-of-speech tag in the document
+    */
+   public int tagId(final int token) {
+      return _buffer.getInt(element(_tags, 4, token));
+   }
+
+   /**
+    * @param token
+    *           the token index
+    * @return the token's part-of-speech tag
+    */
+   public String tag(final int token) {
+      return _document.string(tagId(token));
+   }
+
+   /**
+    * @return the number of named entities
+    */
+   public int entityCount() {
+      return _buffer.getInt(_entities);
+   }
+
+   /**
+    * @param entity
+    *           the entity index
+    * @return the entity's token span, with its type
+    */
+   public Span entity(final int entity) {
+      final int pos = element(_entities, 12, entity);
+      return new Span(_buffer.getInt(pos), _buffer.getInt(pos + 4),
+            _document.string(_buffer.getInt(pos + 8)));
+   }
+
+   /**
+    * @return the number of parse tree nodes, 0 if the sentence wasn't parsed
+    */
+   public int parseNodeCount() {
+      return _buffer.getInt(_nodes);
+   }
+
+   /**
+    * @param node
+    *           the pre-order node index
+    * @return the node's label
+    */
+   public String parseType(final int node) {
+      return _document.string(_buffer.getInt(element(_nodes, NODE_SIZE, node)));
+   }
+
+   /**
+    * @param node
+    *           the pre-order node index
+    * @return the node's character span
+    */
+   public Span parseSpan(final int node) {
+      final int pos = element(_nodes, NODE_SIZE, node);
+      return new Span(_buffer.getInt(pos + 4), _buffer.getInt(pos + 8));
+   }
+
+   /**
+    * @param node
+    *           the pre-order node index
+    * @return the node's number of children
+    */
+   public int parseChildCount(final int node) {
+      return _buffer.getInt(element(_nodes, NODE_SIZE, node) + 16);
+   }
+
+   /**
+    * @param node
+    *           the pre-order node index
+    * @return the pre-order index of the node's head, the node itself if it is
+    *         its own head
+    */
+   public int parseHead(final int node) {
+      return _buffer.getInt(element(_nodes, NODE_SIZE, node) + 20);
+   }
+
+   /**
+    * @param node
+    *           the pre-order node index
+    * @return the node's probability
+    */
+   public double parseProbability(final int node) {
+      return _buffer.getDouble(element(_nodes, NODE_SIZE, node) + 24);
+   }
+
+   /**
+    * Rebuild the parse tree.
+    *
+    * @return the parse tree, or <code>null</code> if the sentence wasn't parsed
+    */
+   public Parse toParse() {
+      final int count = parseNodeCount();
+      if (count == 0) {
+         return null;
+      }
+      final String text = text().toString();
+      final int[] next = new int[] { 0 };
+      return node(text, new Parse[count], next);
+   }
+
+   /**
+    * Copy the sentence out of the file.
+    *
+    * @return the sentence annotation
+    */
+   public SentenceAnnotation toAnnotation() {
+      final Span[] tokens = new Span[tokenCount()];
+      for (int i = 0; i < tokens.length; i++) {
+         tokens[i] = new Span(tokenStart(i), tokenEnd(i));
+      }
+      String[] tags = null;
+      if (hasTags()) {
+         tags = new String[tokens.length];
+         for (int i = 0; i < tags.length; i++) {
+            tags[i] = tag(i);
+         }
+      }
+      final List<Span> entities = new ArrayList<Span>(entityCount());
+      for (int i = 0; i < entityCount(); i++) {
+         entities.add(entity(i));
+      }
+      return new SentenceAnnotation(text().toString(), tokens, tags, entities, toParse());
+   }
+
+   /**
+    * Rebuild the pre-order node at <code>next[0]</code> and its subtree.
+    * The subtree is rebuilt first, since the node's head is in it; the
+    * children are then inserted in order, so {@link Parse#insert(Parse)}
+    * appends each.
+    */
+   private Parse node(final String text, final Parse[] nodes, final int[] next) {
+      final int index = next[0]++;
+      final int pos = element(_nodes, NODE_SIZE, index);
+      final Parse[] children = new Parse[_buffer.getInt(pos + 16)];
+      for (int c = 0; c < children.length; c++) {
+         children[c] = node(text, nodes, next);
+      }
+
+      final Span span = new Span(_buffer.getInt(pos + 4), _buffer.getInt(pos + 8));
+      final String type = _document.string(_buffer.getInt(pos));
+      final double prob = _buffer.getDouble(pos + 24);
+      final int head = _buffer.getInt(pos + 20);
+      final Parse node;
+      if (head == index) {
+         node = new Parse(text, span, type, prob, _buffer.getInt(pos + 12));
+      } else if (head > index && head < next[0]) {
+         node = new Parse(text, span, type, prob, nodes[head]);
+      } else {
+         throw new IndexOutOfBoundsException(String.format(
+               "Head %d of parse node %d isn't in its subtree", head, index));
+      }
+      nodes[index] = node;
+      for (final Parse child : children) {
+         node.insert(child);
+      }
+      return node;
+   }
+
+   private int element(final int section, final int size, final int index) {
+      final int count = _buffer.getInt(section);
+      if (index < 0 || index >= count) {
+         throw new IndexOutOfBoundsException(index + " of " + count);
+      }
+      return section + 4 + size * index;
+   }
+
+   /**
+    * @return a zero-copy view of the UTF-16 characters at the given offset
+    */
+   static CharSequence chars(final ByteBuffer buffer, final int offset, final int length) {
+      final ByteBuffer slice = buffer.duplicate();
+      slice.limit(offset + 2 * length);
+      slice.position(offset);
+      return slice.slice().asCharBuffer();
+   }
+
+}
@@ -0,0 +1,253 @@
+package com.dpdearing.nlp.opennlp.prune;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import opennlp.maxent.GISModel;
+import opennlp.model.AbstractModel;
+import opennlp.model.BinaryFileDataReader;
+import opennlp.model.Context;
+import opennlp.model.GenericModelReader;
+import opennlp.model.IndexHashTable;
+import opennlp.perceptron.PerceptronModel;
+import opennlp.tools.util.model.ModelUtil;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Removes low-weight features from maxent models.
+ * <p>
+ * Every predicate (feature) of a model has one parameter per outcome it was
+ * observed with.  Parameters whose absolute weight is below the threshold
+ * are removed, and predicates left without any parameters are removed
+ * entirely.  Removed features no longer contribute to the outcome
+ * probabilities, so the pruned model is smaller and faster to load and
+ * evaluate at the cost of (usually small) differences in its output.
+ * </p>
+ * <p>
+ * Model packages (e.g., <code>en-token.bin</code>) are rewritten with every
+ * maxent model they contain pruned and all other artifacts copied, so the
+ * result can be loaded by {@link com.dpdearing.nlp.opennlp.OpenNlpToolkit}
+ * in place of the original.  Pruning is not thread-safe.
+ * </p>
+ */
+public class ModelPruner {
+   static private final Logger logger = LoggerFactory.getLogger(ModelPruner.class);
+
+   /**
+    * The manifest property recording the threshold a model was pruned with
+    */
+   static final public String MANIFEST_THRESHOLD = "Pruning-Threshold";
+
+   static final private String MANIFEST_ENTRY = "manifest.properties";
+   static final private String MODEL_EXTENSION = ".model";
+
+   final private double _threshold;
+
+   /**
+    * Statistics, before and after pruning
+    */
+   private long _predicatesBefore = 0;
+   private long _predicatesAfter = 0;
+   private long _parametersBefore = 0;
+   private long _parametersAfter = 0;
+
+   /**
+    * @param threshold
+    *           the minimum absolute weight of the parameters to keep
+    */
+   public ModelPruner(final double threshold) {
+      if (threshold < 0) {
+         throw new IllegalArgumentException("threshold");
+      }
+      _threshold = threshold;
+   }
+
+   /**
+    * Prune every maxent model in a model package.
+    *
+    * @param in
+    *           the model package, e.g., the content of <code>en-token.bin</code>
+    * @param out
+    *           receives the pruned model package
+    * @throws IOException if the package can't be read or written
+    */
+   public void prune(final InputStream in, final OutputStream out) throws IOException {
+      final ZipInputStream zipIn = new ZipInputStream(in);
+      final ZipOutputStream zipOut = new ZipOutputStream(out);
+      ZipEntry entry;
+      while ((entry = zipIn.getNextEntry()) != null) {
+         final String name = entry.getName();
+         zipOut.putNextEntry(new ZipEntry(name));
+         if (name.endsWith(MODEL_EXTENSION)) {
+            final AbstractModel model =
+                  new GenericModelReader(new BinaryFileDataReader(zipIn)).getModel();
+            // buffer since the model writer writes one byte at a time
+            final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ModelUtil.writeModel(prune(model), bytes);
+            bytes.writeTo(zipOut);
+         } else if (name.equals(MANIFEST_ENTRY)) {
+            final Properties manifest = new Properties();
+            manifest.load(zipIn);
+            manifest.setProperty(MANIFEST_THRESHOLD, String.valueOf(_threshold));
+            manifest.store(zipOut, null);
+         } else {
+            copy(zipIn, zipOut);
+         }
+         zipOut.closeEntry();
+      }
+      zipOut.finish();
+   }
+
+   /**
+    * Prune every maxent model in a model package.
+    *
+    * @param modelPackage
+    *           the model package, e.g., the content of <code>en-token.bin</code>
+    * @return the pruned model package
+    * @throws IOException if the package can't be read
+    */
+   public byte[] prune(final byte[] modelPackage) throws IOException {
+      final ByteArrayOutputStream out = new ByteArrayOutputStream(modelPackage.length);
+      prune(new ByteArrayInputStream(modelPackage), out);
+      return out.toByteArray();
+   }
+
+   /**
+    * Prune a maxent model.  Models of types that can't be pruned are returned
+    * unchanged.
+    *
+    * @param model
+    *           the model to prune
+    * @return the pruned model
+    */
+   @SuppressWarnings("unchecked")
+   public AbstractModel prune(final AbstractModel model) {
+      final Object[] data = model.getDataStructures();
+      final Context[] params = (Context[]) data[0];
+      final IndexHashTable<String> pmap = (IndexHashTable<String>) data[1];
+      final String[] outcomes = (String[]) data[2];
+      final String[] predicates = pmap.toArray(new String[pmap.size()]);
+
+      if (!(model instanceof GISModel || model instanceof PerceptronModel)) {
+         logger.warn("Unable to prune a {}; copying it unchanged", model.getClass().getName());
+         final int parameters = parameterCount(params);
+         _predicatesBefore += params.length;
+         _predicatesAfter += params.length;
+         _parametersBefore += parameters;
+         _parametersAfter += parameters;
+         return model;
+      }
+
+      final Context[] keptParams = new Context[params.length];
+      final String[] keptPredicates = new String[params.length];
+      int kept = 0;
+      for (int p = 0; p < params.length; p++) {
+         final int[] outcomeIds = params[p].getOutcomes();
+         final double[] weights = params[p].getParameters();
+         _parametersBefore += weights.length;
+
+         int count = 0;
+         for (final double weight : weights) {
+            if (Math.abs(weight) >= _threshold) {
+               count++;
+            }
+         }
+         if (count == 0) {
+            continue;
+         }
+
+         final int[] keptOutcomes = new int[count];
+         final double[] keptWeights = new double[count];
+         for (int o = 0, k = 0; o < weights.length; o++) {
+            if (Math.abs(weights[o]) >= _threshold) {
+               keptOutcomes[k] = outcomeIds[o];
+               keptWeights[k++] = weights[o];
+            }
+         }
+         keptParams[kept] = new Context(keptOutcomes, keptWeights);
+         keptPredicates[kept++] = predicates[p];
+         _parametersAfter += count;
+      }
+      _predicatesBefore += params.length;
+      _predicatesAfter += kept;
+
+      final Context[] prunedParams = new Context[kept];
+      System.arraycopy(keptParams, 0, prunedParams, 0, kept);
+      final String[] prunedPredicates = new String[kept];
+      System.arraycopy(keptPredicates, 0, prunedPredicates, 0, kept);
+
+      if (model instanceof PerceptronModel) {
+         return new PerceptronModel(prunedParams, prunedPredicates, outcomes);
+      }
+      return new GISModel(prunedParams, prunedPredicates, outcomes,
+            ((Integer) data[3]).intValue(), ((Double) data[4]).doubleValue());
+   }
+
+   /**
+    * @return the minimum absolute weight of the parameters kept
+    */
+   public double getThreshold() {
+      return _threshold;
+   }
+
+   /**
+    * @return the number of predicates in the models before pruning
+    */
+   public long predicatesBefore() {
+      return _predicatesBefore;
+   }
+
+   /**
+    * @return the number of predicates kept
+    */
+   public long predicatesAfter() {
+      return _predicatesAfter;
+   }
+
+   /**
+    * @return the number of parameters in the models before pruning
+    */
+   public long parametersBefore() {
+      return _parametersBefore;
+   }
+
+   /**
+    * @return the number of parameters kept
+    */
+   public long parametersAfter() {
+      return _parametersAfter;
+   }
+
+   @Override
+   public String toString() {
+      return String.format("threshold=%s predicates=%d/%d parameters=%d/%d",
+            _threshold, _predicatesAfter, _predicatesBefore,
+            _parametersAfter, _parametersBefore);
+   }
+
+   private static int parameterCount(final Context[] params) {
+      int count = 0;
+      for (final Context context : params) {
+         count += context.getParameters().length;
+      }
+      return count;
+   }
+
+   private static void copy(final InputStream in, final OutputStream out) throws IOException {
+      final byte[] buf = new byte[8192];
+      int n;
+      while ((n = in.read(buf)) != -1) {
+         out.write(buf, 0, n);
+      }
+   }
+
+}
@@ -0,0 +1,522 @@
+package com.dpdearing.nlp.opennlp.prune;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import opennlp.tools.namefind.NameFinderME;
+import opennlp.tools.namefind.TokenNameFinderModel;
+import opennlp.tools.postag.POSModel;
+import opennlp.tools.postag.POSTaggerME;
+import opennlp.tools.sentdetect.SentenceDetectorME;
+import opennlp.tools.sentdetect.SentenceModel;
+import opennlp.tools.tokenize.TokenizerME;
+import opennlp.tools.tokenize.TokenizerModel;
+import opennlp.tools.tokenize.WhitespaceTokenizer;
+import opennlp.tools.util.Span;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.dpdearing.nlp.opennlp.ModelManager;
+import com.dpdearing.nlp.opennlp.OpenNlpToolkit;
+import com.dpdearing.util.FileUtilities;
+
+/**
+ * Prunes the sentence, tokenizer, part-of-speech and named entity models
+ * referenced by the OpenNLP properties and reports how pruning affects model
+ * size, load time, throughput and agreement with the unpruned models.
+ * <p>
+ * Usage: <code>ModelPruningTool &lt;evaluationCorpus&gt; &lt;outputDir&gt; [threshold...]</code>
+ * </p>
+ * <p>
+ * The evaluation corpus is a UTF-8 text file with one paragraph per line.
+ * Each model is evaluated in isolation on the same inputs, the sentences and
+ * tokens produced by the unpruned models; agreement is the F-measure of the
+ * pruned model's decisions (sentence and token spans, tags, entity spans)
+ * against the unpruned model's.
+ * </p>
+ * <p>
+ * For each threshold the pruned models are written under
+ * <code>outputDir/pruned-&lt;threshold&gt;/</code>, mirroring their resource
+ * paths, along with an <code>opennlp-pruned-&lt;threshold&gt;.properties</code>
+ * resource referencing them.  With <code>outputDir</code> on the classpath, the
+ * toolkit loads the pruned models with, e.g.,
+ * <code>-Dopennlp.properties=opennlp-pruned-0.05.properties</code> or
+ * {@link OpenNlpToolkit#reload(String)}.  The report is printed as
+ * tab-separated values and written to <code>outputDir/pruning-report.tsv</code>.
+ * </p>
+ */
+public class ModelPruningTool {
+   static private final Logger logger = LoggerFactory.getLogger(ModelPruningTool.class);
+
+   static final public double[] DEFAULT_THRESHOLDS = { 0.01, 0.05, 0.1, 0.25 };
+
+   /**
+    * The minimum time to measure the throughput of each model
+    */
+   static final private long MIN_MEASURE_MILLIS = 1000;
+   static final private long WARMUP_MILLIS = 500;
+   static final private int LOAD_REPETITIONS = 3;
+
+   static final private Charset UTF8 = Charset.forName("UTF-8");
+   static final private String REPORT_HEADER =
+         "model\tthreshold\tpredicates\tparameters\tfile_bytes\theap_bytes"
+         + "\tload_ms\tinputs_per_sec\tagreement";
+
+   final private Properties _properties;
+   final private List<Evaluation<?>> _evaluations = new ArrayList<Evaluation<?>>();
+
+   /**
+    * Prepare the evaluation inputs from the corpus with the unpruned models.
+    *
+    * @param toolkit
+    *           the toolkit with the unpruned models
+    * @param paragraphs
+    *           the evaluation corpus
+    * @throws IOException if the unpruned models can't be loaded
+    */
+   public ModelPruningTool(final OpenNlpToolkit toolkit, final List<String> paragraphs)
+         throws IOException {
+      _properties = toolkit.getProperties();
+
+      // the inputs of each model are the outputs of the unpruned models
+      final List<String> sentences = new ArrayList<String>();
+      for (final String paragraph : paragraphs) {
+         if (hasModel("opennlp.sentence")) {
+            sentences.addAll(Arrays.asList(toolkit.detectSentences(paragraph)));
+         } else {
+            sentences.add(paragraph);
+         }
+      }
+      final List<String[]> tokens = new ArrayList<String[]>(sentences.size());
+      for (final String sentence : sentences) {
+         tokens.add(hasModel("opennlp.tokenizer")
+               ? toolkit.tokenize(sentence)
+               : WhitespaceTokenizer.INSTANCE.tokenize(sentence));
+      }
+      logger.info("Evaluating on {} paragraphs, {} sentences", paragraphs.size(), sentences.size());
+
+      addSentenceEvaluation(paragraphs);
+      addTokenizerEvaluation(sentences);
+      addPosEvaluation(tokens);
+      addNameFinderEvaluations(tokens);
+   }
+
+   /**
+    * Prune each model at each threshold, write the pruned models and their
+    * properties resource, and report the results.
+    *
+    * @param outputDir
+    *           the directory to write the pruned models, properties and report
+    * @param thresholds
+    *           the pruning thresholds
+    * @param report
+    *           receives the tab-separated report, one row per model and
+    *           threshold, the unpruned model first
+    * @throws IOException if a model can't be read or written
+    */
+   public void run(final File outputDir, final double[] thresholds, final PrintWriter report)
+         throws IOException {
+      report.println(REPORT_HEADER);
+      final Map<Evaluation<?>, Result> baselines = new HashMap<Evaluation<?>, Result>();
+      for (final Evaluation<?> evaluation : _evaluations) {
+         final Result baseline = evaluation.evaluate(evaluation.original, null);
+         // nothing is pruned at 0, but everything is counted
+         final ModelPruner counter = new ModelPruner(0);
+         counter.prune(evaluation.original);
+         baseline.predicates = counter.predicatesBefore();
+         baseline.parameters = counter.parametersBefore();
+         baselines.put(evaluation, baseline);
+         report.println(baseline.toRow(evaluation.name, "none"));
+         report.flush();
+      }
+
+      for (final double threshold : thresholds) {
+         final String label = String.valueOf(threshold);
+         final String prefix = "/pruned-" + label;
+         final Properties pruned = new Properties();
+         pruned.putAll(_properties);
+
+         for (final Evaluation<?> evaluation : _evaluations) {
+            final ModelPruner pruner = new ModelPruner(threshold);
+            final byte[] bytes = pruner.prune(evaluation.original);
+            write(new File(outputDir, prefix + evaluation.resourceName), bytes);
+
+            final Result result = evaluation.evaluate(bytes, baselines.get(evaluation));
+            result.predicates = pruner.predicatesAfter();
+            result.parameters = pruner.parametersAfter();
+            report.println(result.toRow(evaluation.name, label));
+            report.flush();
+
+            if (evaluation.property != null) {
+               pruned.setProperty(evaluation.property, prefix + evaluation.resourceName);
+            }
+         }
+         if (allNameFindersPruned()) {
+            pruned.setProperty("opennlp.namefinder.format",
+                  prefix + _properties.getProperty("opennlp.namefinder.format"));
+         }
+
+         final File properties = new File(outputDir, String.format(
+               "com/dpdearing/nlp/opennlp/opennlp-pruned-%s.properties", label));
+         properties.getParentFile().mkdirs();
+         final OutputStream out = new FileOutputStream(properties);
+         try {
+            pruned.store(out, "Models pruned with a threshold of " + label);
+         } finally {
+            out.close();
+         }
+      }
+   }
+
+   private void addSentenceEvaluation(final List<String> paragraphs) throws IOException {
+      add(new Evaluation<SentenceModel>("sentence", "opennlp.sentence",
+            _properties.getProperty("opennlp.sentence"), paragraphs.size()) {
+         SentenceModel load(final InputStream in) throws IOException {
+            return new SentenceModel(in);
+         }
+
+         Annotator annotator(final SentenceModel model) {
+            final SentenceDetectorME detector = new SentenceDetectorME(model);
+            return new Annotator() {
+               public String[] annotate(final int input) {
+                  return spans(detector.sentPosDetect(paragraphs.get(input)));
+               }
+            };
+         }
+      });
+   }
+
+   private void addTokenizerEvaluation(final List<String> sentences) throws IOException {
+      add(new Evaluation<TokenizerModel>("tokenizer", "opennlp.tokenizer",
+            _properties.getProperty("opennlp.tokenizer"), sentences.size()) {
+         TokenizerModel load(final InputStream in) throws IOException {
+            return new TokenizerModel(in);
+         }
+
+         Annotator annotator(final TokenizerModel model) {
+            final TokenizerME tokenizer = new TokenizerME(model);
+            return new Annotator() {
+               public String[] annotate(final int input) {
+                  return spans(tokenizer.tokenizePos(sentences.get(input)));
+               }
+            };
+         }
+      });
+   }
+
+   private void addPosEvaluation(final List<String[]> tokens) throws IOException {
+      add(new Evaluation<POSModel>("pos", "opennlp.pos",
+            _properties.getProperty("opennlp.pos"), tokens.size()) {
+         POSModel load(final InputStream in) throws IOException {
+            return new POSModel(in);
+         }
+
+         Annotator annotator(final POSModel model) {
+            final POSTaggerME tagger = new POSTaggerME(model);
+            return new Annotator() {
+               public String[] annotate(final int input) {
+                  final String[] tags = tagger.tag(tokens.get(input));
+                  // position-wise, so agreement is tag accuracy
+                  for (int i = 0; i < tags.length; i++) {
+                     tags[i] = i + ":" + tags[i];
+                  }
+                  return tags;
+               }
+            };
+         }
+      });
+   }
+
+   private void addNameFinderEvaluations(final List<String[]> tokens) throws IOException {
+      final String format = _properties.getProperty("opennlp.namefinder.format");
+      final String types = _properties.getProperty("opennlp.namefinder.types");
+      if (format == null || types == null) {
+         return;
+      }
+      for (final String value : types.split(",")) {
+         final String type = value.trim();
+         if (type.isEmpty()) {
+            continue;
+         }
+         add(new Evaluation<TokenNameFinderModel>("namefinder:" + type, null,
+               String.format(format, type), tokens.size()) {
+            TokenNameFinderModel load(final InputStream in) throws IOException {
+               return new TokenNameFinderModel(in);
+            }
+
+            Annotator annotator(final TokenNameFinderModel model) {
+               final NameFinderME finder = new NameFinderME(model);
+               return new Annotator() {
+                  public String[] annotate(final int input) {
+                     // each sentence is its own document
+                     final Span[] names = finder.find(tokens.get(input));
+                     finder.clearAdaptiveData();
+                     return spans(names);
+                  }
+               };
+            }
+         });
+      }
+   }
+
+   /**
+    * Add the evaluation if its model resource exists.
+    */
+   private void add(final Evaluation<?> evaluation) throws IOException {
+      if (evaluation.resourceName == null) {
+         logger.warn("Skipping the {} model; it has no property", evaluation.name);
+         return;
+      }
+      final InputStream in = OpenNlpToolkit.class.getResourceAsStream(evaluation.resourceName);
+      if (in == null) {
+         logger.warn("Skipping the {} model; '{}' isn't on the classpath",
+               evaluation.name, evaluation.resourceName);
+         return;
+      }
+      try {
+         evaluation.original = readFully(in);
+      } finally {
+         in.close();
+      }
+      _evaluations.add(evaluation);
+   }
+
+   private boolean hasModel(final String property) {
+      final String resourceName = _properties.getProperty(property);
+      return resourceName != null
+            && OpenNlpToolkit.class.getResource(resourceName) != null;
+   }
+
+   private boolean allNameFindersPruned() {
+      int count = 0;
+      for (final Evaluation<?> evaluation : _evaluations) {
+         if (evaluation.name.startsWith("namefinder:")) {
+            count++;
+         }
+      }
+      int types = 0;
+      final String value = _properties.getProperty("opennlp.namefinder.types", "");
+      for (final String type : value.split(",")) {
+         if (!type.trim().isEmpty()) {
+            types++;
+         }
+      }
+      return types > 0 && count == types;
+   }
+
+   /**
+    * Annotates an evaluation input, returning its decisions
+    */
+   private interface Annotator {
+      String[] annotate(int input);
+   }
+
+   /**
+    * Loads a model and evaluates it on fixed inputs
+    */
+   static private abstract class Evaluation<M> {
+      final String name;
+      final String property;
+      final String resourceName;
+      final int inputCount;
+      byte[] original;
+
+      /**
+       * The unpruned model's decisions, for agreement
+       */
+      List<String[]> expected;
+
+      Evaluation(final String name, final String property, final String resourceName,
+            final int inputCount) {
+         this.name = name;
+         this.property = property;
+         this.resourceName = resourceName;
+         this.inputCount = inputCount;
+      }
+
+      abstract M load(InputStream in) throws IOException;
+
+      abstract Annotator annotator(M model);
+
+      /**
+       * @param bytes
+       *           the model package
+       * @param baseline
+       *           the unpruned result, or <code>null</code> to evaluate the
+       *           unpruned model
+       */
+      Result evaluate(final byte[] bytes, final Result baseline) throws IOException {
+         final Result result = new Result();
+         result.fileBytes = bytes.length;
+
+         // best of several loads from memory, excluding disk
+         M model = null;
+         long best = Long.MAX_VALUE;
+         for (int i = 0; i < LOAD_REPETITIONS; i++) {
+            final long start = System.nanoTime();
+            model = load(new ByteArrayInputStream(bytes));
+            best = Math.min(best, System.nanoTime() - start);
+         }
+         result.loadMillis = best / 1e6;
+         result.heapBytes = ModelManager.estimateSize(model);
+
+         // the first pass warms up and collects the decisions
+         final Annotator annotator = annotator(model);
+         final List<String[]> decisions = new ArrayList<String[]>(inputCount);
+         for (int i = 0; i < inputCount; i++) {
+            decisions.add(annotator.annotate(i));
+         }
+         if (baseline == null) {
+            expected = decisions;
+            result.agreement = 1.0;
+         } else {
+            result.agreement = agreement(expected, decisions);
+         }
+
+         // let the JIT settle before measuring
+         final long warmup = System.nanoTime() + WARMUP_MILLIS * 1000000L;
+         while (System.nanoTime() < warmup && inputCount > 0) {
+            for (int i = 0; i < inputCount; i++) {
+               annotator.annotate(i);
+            }
+         }
+
+         long inputs = 0;
+         final long start = System.nanoTime();
+         long elapsed;
+         do {
+            for (int i = 0; i < inputCount; i++) {
+               annotator.annotate(i);
+            }
+            inputs += inputCount;
+            elapsed = System.nanoTime() - start;
+         } while (elapsed < MIN_MEASURE_MILLIS * 1000000L && inputCount > 0);
+         result.inputsPerSecond = elapsed == 0 ? 0 : inputs * 1e9 / elapsed;
+         return result;
+      }
+   }
+
+   /**
+    * A report row
+    */
+   static private class Result {
+      long predicates = -1;
+      long parameters = -1;
+      long fileBytes;
+      long heapBytes;
+      double loadMillis;
+      double inputsPerSecond;
+      double agreement;
+
+      String toRow(final String model, final String threshold) {
+         return String.format("%s\t%s\t%d\t%d\t%d\t%d\t%.1f\t%.1f\t%.5f",
+               model, threshold, predicates, parameters, fileBytes, heapBytes,
+               loadMillis, inputsPerSecond, agreement);
+      }
+   }
+
+   /**
+    * @return the F-measure of the actual decisions against the expected ones
+    */
+   static double agreement(final List<String[]> expected, final List<String[]> actual) {
+      long matched = 0;
+      long total = 0;
+      for (int i = 0; i < expected.size(); i++) {
+         final Map<String, Integer> counts = new HashMap<String, Integer>();
+         for (final String decision : expected.get(i)) {
+            final Integer count = counts.get(decision);
+            counts.put(decision, count == null ? 1 : count + 1);
+         }
+         for (final String decision : actual.get(i)) {
+            final Integer count = counts.get(decision);
+            if (count != null && count > 0) {
+               counts.put(decision, count - 1);
+               matched++;
+            }
+         }
+         total += expected.get(i).length + actual.get(i).length;
+      }
+      return total == 0 ? 1.0 : 2.0 * matched / total;
+   }
+
+   static private String[] spans(final Span[] spans) {
+      final String[] decisions = new String[spans.length];
+      for (int i = 0; i < spans.length; i++) {
+         decisions[i] = spans[i].getStart() + "-" + spans[i].getEnd()
+               + (spans[i].getType() == null ? "" : ":" + spans[i].getType());
+      }
+      return decisions;
+   }
+
+   static private byte[] readFully(final InputStream in) throws IOException {
+      final ByteArrayOutputStream out = new ByteArrayOutputStream();
+      final byte[] buf = new byte[8192];
+      int n;
+      while ((n = in.read(buf)) != -1) {
+         out.write(buf, 0, n);
+      }
+      return out.toByteArray();
+   }
+
+   static private void write(final File file, final byte[] bytes) throws IOException {
+      file.getParentFile().mkdirs();
+      final OutputStream out = new FileOutputStream(file);
+      try {
+         out.write(bytes);
+      } finally {
+         out.close();
+      }
+   }
+
+   /**
+    * Usage: <code>ModelPruningTool &lt;evaluationCorpus&gt; &lt;outputDir&gt; [threshold...]</code>
+    */
+   public static void main(final String[] args) throws IOException {
+      if (args.length < 2) {
+         System.err.println("Usage: ModelPruningTool <evaluationCorpus> <outputDir> [threshold...]");
+         System.exit(1);
+      }
+      final File corpus = new File(args[0]);
+      final File outputDir = new File(args[1]);
+      double[] thresholds = DEFAULT_THRESHOLDS;
+      if (args.length > 2) {
+         thresholds = new double[args.length - 2];
+         for (int i = 2; i < args.length; i++) {
+            thresholds[i - 2] = Double.parseDouble(args[i]);
+         }
+      }
+
+      final List<String> paragraphs = new ArrayList<String>();
+      for (final String line : FileUtilities.loadLines(corpus, UTF8)) {
+         if (!line.trim().isEmpty()) {
+            paragraphs.add(line);
+         }
+      }
+
+      outputDir.mkdirs();
+      final ModelPruningTool tool = new ModelPruningTool(new OpenNlpToolkit(), paragraphs);
+      final ByteArrayOutputStream report = new ByteArrayOutputStream();
+      final PrintWriter writer = new PrintWriter(new OutputStreamWriter(report, UTF8));
+      tool.run(outputDir, thresholds, writer);
+      writer.flush();
+
+      write(new File(outputDir, "pruning-report.tsv"), report.toByteArray());
+      System.out.print(new String(report.toByteArray(), UTF8));
+   }
+
+}
@@ -0,0 +1,427 @@
+package com.dpdearing.nlp.opennlp.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import opennlp.tools.coref.DiscourseEntity;
+import opennlp.tools.coref.mention.MentionContext;
+import opennlp.tools.parser.Parse;
+import opennlp.tools.util.Span;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.dpdearing.nlp.opennlp.ModelManager;
+import com.dpdearing.nlp.opennlp.OpenNlpToolkit;
+import com.dpdearing.nlp.opennlp.server.MicroBatcher.BatchProcessor;
+import com.dpdearing.nlp.opennlp.server.MicroBatcher.Results;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A standalone, local HTTP server that keeps the OpenNLP models resident so
+ * that many short-lived jobs can share one warm process.
+ * <p>
+ * Each stage is exposed as a <code>POST</code> endpoint accepting a UTF-8
+ * <code>text/plain</code> body and responding with one result per line:
+ * </p>
+ * <ul>
+ * <li><code>/sentences</code> - document text; one sentence per line</li>
+ * <li><code>/tokens</code> - a sentence; one token per line</li>
+ * <li><code>/pos</code> - a sentence; one <code>token&lt;TAB&gt;tag</code> per line</li>
+ * <li><code>/entities</code> - a sentence; one
+ * <code>start&lt;TAB&gt;end&lt;TAB&gt;text</code> token span per line</li>
+ * <li><code>/parse</code> - a sentence; the bracketed parse tree</li>
+ * <li><code>/mentions</code> - one sentence per line; one discourse entity per
+ * line with its mentions separated by tabs</li>
+ * <li><code>/reload</code> - an optional properties resource name; switches
+ * every stage to the new properties, or to replaced model files, without
+ * interrupting requests in progress (see {@link OpenNlpToolkit#reload(String)});
+ * one <code>model&lt;TAB&gt;bytes</code> resident model per line</li>
+ * </ul>
+ * <p>
+ * Each stage owns its own {@link OpenNlpToolkit}, since the OpenNLP
+ * components are not thread-safe, but the toolkits share one
+ * {@link ModelManager}, so each model is loaded once however many stages use
+ * it.  Concurrent requests to a stage are queued by a {@link MicroBatcher}
+ * and processed one after the other on the stage's own thread: the batching
+ * serializes the requests onto the stage's components without locking, and
+ * hands them over a batch at a time, but the OpenNLP components still
+ * process each request on its own.  The server only binds to the loopback
+ * address.
+ * </p>
+ */
+public class AnnotationServer {
+   static private final Logger logger = LoggerFactory.getLogger(AnnotationServer.class);
+
+   static final public int DEFAULT_PORT = 8117;
+   static final public int DEFAULT_MAX_BATCH_SIZE = 32;
+   static final public long DEFAULT_MAX_DELAY_MILLIS = 2;
+
+   static final private Charset UTF8 = Charset.forName("UTF-8");
+
+   final private HttpServer _server;
+   final private ExecutorService _httpExecutor;
+   final private Map<String, MicroBatcher<String, String>> _stages =
+         new LinkedHashMap<String, MicroBatcher<String, String>>();
+   final private Map<String, OpenNlpToolkit> _toolkits =
+         new LinkedHashMap<String, OpenNlpToolkit>();
+
+   final private String _resourceName;
+
+   /**
+    * Shared by the toolkits of every stage
+    */
+   private ModelManager _models;
+
+   /**
+    * Create a server for the default OpenNLP properties resource.
+    *
+    * @param port
+    *           the local port to listen on
+    * @param maxBatchSize
+    *           the maximum number of requests per stage batch
+    * @param maxDelayMillis
+    *           how long a stage waits to fill a batch
+    * @throws IOException if the server socket cannot be bound or the
+    *            properties resource cannot be loaded
+    */
+   public AnnotationServer(final int port, final int maxBatchSize,
+         final long maxDelayMillis) throws IOException {
+      this(System.getProperty(OpenNlpToolkit.OPENNLP_SYSTEM_PROPERTY,
+            OpenNlpToolkit.DEFAULT_PROPERTIES_RESOURCE), port, maxBatchSize, maxDelayMillis);
+   }
+
+   /**
+    * @param resourceName
+    *           the OpenNLP properties resource
+    * @param port
+    *           the local port to listen on, or 0 for any free port
+    * @param maxBatchSize
+    *           the maximum number of requests per stage batch
+    * @param maxDelayMillis
+    *           how long a stage waits to fill a batch
+    * @throws IOException if the server socket cannot be bound or the
+    *            properties resource cannot be loaded
+    */
+   public AnnotationServer(final String resourceName, final int port,
+         final int maxBatchSize, final long maxDelayMillis) throws IOException {
+      _resourceName = resourceName;
+      _server = HttpServer.create(
+            new InetSocketAddress(InetAddress.getByName("127.0.0.1"), port), 0);
+      _httpExecutor = Executors.newCachedThreadPool();
+      _server.setExecutor(_httpExecutor);
+
+      addStage("sentences", new StageProcessor() {
+         String process(final OpenNlpToolkit toolkit, final String input)
+               throws IOException {
+            return lines(toolkit.detectSentences(input));
+         }
+      }, maxBatchSize, maxDelayMillis);
+
+      addStage("tokens", new StageProcessor() {
+         String process(final OpenNlpToolkit toolkit, final String input)
+               throws IOException {
+            return lines(toolkit.tokenize(input));
+         }
+      }, maxBatchSize, maxDelayMillis);
+
+      addStage("pos", new StageProcessor() {
+         String process(final OpenNlpToolkit toolkit, final String input)
+               throws IOException {
+            final String[] tokens = toolkit.tokenize(input);
+            final String[] tags = toolkit.tagPartOfSpeech(tokens);
+            final StringBuilder buf = new StringBuilder();
+            for (int i = 0; i < tokens.length; i++) {
+               buf.append(tokens[i]).append('\t').append(tags[i]).append('\n');
+            }
+            return buf.toString();
+         }
+      }, maxBatchSize, maxDelayMillis);
+
+      addStage("entities", new StageProcessor() {
+         String process(final OpenNlpToolkit toolkit, final String input)
+               throws IOException {
+            final String[] tokens = toolkit.tokenize(input);
+            final List<Span> spans = toolkit.findNamedEntities(input, tokens);
+            // every request is its own document
+            toolkit.clearNamedEntityAdaptiveData();
+            final StringBuilder buf = new StringBuilder();
+            for (final Span span : spans) {
+               buf.append(span.getStart()).append('\t')
+                  .append(span.getEnd()).append('\t');
+               for (int i = span.getStart(); i < span.getEnd(); i++) {
+                  if (i > span.getStart()) {
+                     buf.append(' ');
+                  }
+                  buf.append(tokens[i]);
+               }
+               buf.append('\n');
+            }
+            return buf.toString();
+         }
+      }, maxBatchSize, maxDelayMillis);
+
+      addStage("parse", new StageProcessor() {
+         String process(final OpenNlpToolkit toolkit, final String input)
+               throws IOException {
+            final Parse parse = toolkit.parseSentence(input);
+            final StringBuffer buf = new StringBuffer();
+            parse.show(buf);
+            return buf.append('\n').toString();
+         }
+      }, maxBatchSize, maxDelayMillis);
+
+      addStage("mentions", new StageProcessor() {
+         String process(final OpenNlpToolkit toolkit, final String input)
+               throws IOException {
+            final DiscourseEntity[] entities =
+                  toolkit.findEntityMentions(splitLines(input));
+            final StringBuilder buf = new StringBuilder();
+            for (final DiscourseEntity entity : entities) {
+               final Iterator<MentionContext> mentions = entity.getMentions();
+               while (mentions.hasNext()) {
+                  buf.append(mentions.next().toString().trim());
+                  if (mentions.hasNext()) {
+                     buf.append('\t');
+                  }
+               }
+               buf.append('\n');
+            }
+            return buf.toString();
+         }
+      }, maxBatchSize, maxDelayMillis);
+
+      _server.createContext("/reload", new ReloadHandler());
+   }
+
+   /**
+    * Switch every stage to a new properties resource, or to replaced model
+    * files.  Requests keep being served by the current models while the new
+    * ones load.
+    *
+    * @param resourceName
+    *           the new properties resource, or <code>null</code> to reload
+    *           the current ones
+    * @throws IOException if the properties or a model can't be loaded
+    */
+   public void reload(final String resourceName) throws IOException {
+      for (final Map.Entry<String, OpenNlpToolkit> stage : _toolkits.entrySet()) {
+         logger.info("Reloading the {} stage", stage.getKey());
+         if (resourceName == null) {
+            stage.getValue().reload();
+         } else {
+            stage.getValue().reload(resourceName);
+         }
+      }
+   }
+
+   /**
+    * Start accepting requests.
+    */
+   public void start() {
+      _server.start();
+      logger.info("Annotation server listening on {}", _server.getAddress());
+   }
+
+   /**
+    * Stop accepting requests, waiting up to the given delay for exchanges in
+    * progress to finish.
+    *
+    * @param delaySeconds
+    *           the maximum time to wait for exchanges to finish
+    */
+   public void stop(final int delaySeconds) {
+      _server.stop(delaySeconds);
+      for (final MicroBatcher<String, String> stage : _stages.values()) {
+         stage.shutdown();
+      }
+      _httpExecutor.shutdown();
+   }
+
+   /**
+    * @return the address the server is bound to
+    */
+   public InetSocketAddress getAddress() {
+      return _server.getAddress();
+   }
+
+   /**
+    * @return the model manager shared by the stages
+    */
+   public ModelManager getModelManager() {
+      return _models;
+   }
+
+   /**
+    * Adds a micro-batched stage, with its own toolkit, at <code>/name</code>
+    */
+   private void addStage(final String name, final StageProcessor processor,
+         final int maxBatchSize, final long maxDelayMillis) throws IOException {
+      // the first toolkit creates the manager with the budget of the properties
+      processor.toolkit = new OpenNlpToolkit(_resourceName, _models);
+      _models = processor.toolkit.getModelManager();
+      _toolkits.put(name, processor.toolkit);
+      final MicroBatcher<String, String> batcher = new MicroBatcher<String, String>(
+            name, processor, maxBatchSize, maxDelayMillis);
+      _stages.put(name, batcher);
+      _server.createContext("/" + name, new StageHandler(batcher));
+   }
+
+   /**
+    * Processes the requests of a batch one at a time, in order, with the
+    * stage's own toolkit; a request that fails only fails itself
+    */
+   static private abstract class StageProcessor implements BatchProcessor<String, String> {
+      OpenNlpToolkit toolkit;
+
+      public void process(final List<String> batch, final Results<String> results) {
+         for (int i = 0; i < batch.size(); i++) {
+            try {
+               results.set(i, process(toolkit, batch.get(i)));
+            } catch (final Exception e) {
+               results.fail(i, e);
+            }
+         }
+      }
+
+      abstract String process(OpenNlpToolkit toolkit, String input) throws IOException;
+   }
+
+   /**
+    * Hands a request body to a stage and writes back its result
+    */
+   static private class StageHandler implements HttpHandler {
+      final private MicroBatcher<String, String> _batcher;
+
+      StageHandler(final MicroBatcher<String, String> batcher) {
+         _batcher = batcher;
+      }
+
+      public void handle(final HttpExchange exchange) throws IOException {
+         try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+               respond(exchange, 405, "POST required\n");
+               return;
+            }
+            final String input = read(exchange.getRequestBody());
+            respond(exchange, 200, _batcher.process(input));
+         } catch (final Exception e) {
+            logger.warn("Request to " + exchange.getRequestURI() + " failed", e);
+            respond(exchange, 500, String.valueOf(e.getMessage()) + "\n");
+         } finally {
+            exchange.close();
+         }
+      }
+   }
+
+   /**
+    * Reloads the models and responds with the resident models and their
+    * estimated sizes
+    */
+   private class ReloadHandler implements HttpHandler {
+      public void handle(final HttpExchange exchange) throws IOException {
+         try {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+               respond(exchange, 405, "POST required\n");
+               return;
+            }
+            final String resourceName = read(exchange.getRequestBody()).trim();
+            reload(resourceName.isEmpty() ? null : resourceName);
+
+            final StringBuilder buf = new StringBuilder();
+            for (final Map.Entry<String, Long> model : _models.residency().entrySet()) {
+               buf.append(model.getKey()).append('\t')
+                  .append(model.getValue()).append('\n');
+            }
+            respond(exchange, 200, buf.toString());
+         } catch (final Exception e) {
+            logger.warn("Reload failed", e);
+            respond(exchange, 500, String.valueOf(e.getMessage()) + "\n");
+         } finally {
+            exchange.close();
+         }
+      }
+   }
+
+   static private String read(final InputStream in) throws IOException {
+      final ByteArrayOutputStream out = new ByteArrayOutputStream();
+      final byte[] buf = new byte[8192];
+      int n;
+      while ((n = in.read(buf)) != -1) {
+         out.write(buf, 0, n);
+      }
+      return new String(out.toByteArray(), UTF8);
+   }
+
+   static private void respond(final HttpExchange exchange, final int status,
+         final String body) throws IOException {
+      final byte[] bytes = body.getBytes(UTF8);
+      exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+      exchange.sendResponseHeaders(status, bytes.length);
+      final OutputStream out = exchange.getResponseBody();
+      out.write(bytes);
+      out.close();
+   }
+
+   static private String lines(final String[] values) {
+      final StringBuilder buf = new StringBuilder();
+      for (final String value : values) {
+         buf.append(value).append('\n');
+      }
+      return buf.toString();
+   }
+
+   static private String[] splitLines(final String text) {
+      final List<String> lines = new ArrayList<String>();
+      for (final String line : text.split("\r?\n")) {
+         if (!line.trim().isEmpty()) {
+            lines.add(line.trim());
+         }
+      }
+      return lines.toArray(new String[lines.size()]);
+   }
+
+   /**
+    * Run the server until the JVM is terminated.
+    * <p>
+    * Usage: <code>AnnotationServer [port] [maxBatchSize] [maxDelayMillis]</code>
+    * </p>
+    */
+   public static void main(final String[] args) throws IOException {
+      final int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+      final int maxBatchSize = args.length > 1
+            ? Integer.parseInt(args[1]) : DEFAULT_MAX_BATCH_SIZE;
+      final long maxDelayMillis = args.length > 2
+            ? Long.parseLong(args[2]) : DEFAULT_MAX_DELAY_MILLIS;
+
+      // without TCP_NODELAY small responses stall on delayed ACKs (~40ms)
+      if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+         System.setProperty("sun.net.httpserver.nodelay", "true");
+      }
+
+      final AnnotationServer server =
+            new AnnotationServer(port, maxBatchSize, maxDelayMillis);
+      Runtime.getRuntime().addShutdownHook(new Thread() {
+         @Override
+         public void run() {
+            server.stop(1);
+         }
+      });
+      server.start();
+   }
+
+}
@@ -0,0 +1,157 @@
+package com.dpdearing.nlp.opennlp.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.dpdearing.util.FileUtilities;
+import com.dpdearing.util.LatencyRecorder;
+
+/**
+ * A local load-generator client for the {@link AnnotationServer} that
+ * measures throughput and latency of a single stage.
+ * <p>
+ * Usage: <code>LoadGenerator &lt;inputFile&gt; [stage] [concurrency] [requests] [port]</code>
+ * </p>
+ * <p>
+ * Every non-empty line of the UTF-8 input file is a request body; the lines
+ * are sent round-robin until the requested number of requests has completed.
+ * </p>
+ */
+public class LoadGenerator {
+
+   static final private Charset UTF8 = Charset.forName("UTF-8");
+
+   final private URL _url;
+   final private List<String> _inputs;
+   final private LatencyRecorder _latencies = new LatencyRecorder();
+   final private AtomicLong _errors = new AtomicLong();
+
+   /**
+    * @param url
+    *           the stage endpoint
+    * @param inputs
+    *           the request bodies to cycle through
+    */
+   public LoadGenerator(final URL url, final List<String> inputs) {
+      if (inputs.isEmpty()) {
+         throw new IllegalArgumentException("inputs");
+      }
+      _url = url;
+      _inputs = inputs;
+   }
+
+   /**
+    * Send the given number of requests from the given number of concurrent
+    * clients and print a summary.
+    *
+    * @param concurrency
+    *           the number of concurrent clients
+    * @param requests
+    *           the total number of requests to send
+    * @throws InterruptedException if interrupted while waiting for the clients
+    */
+   public void run(final int concurrency, final int requests)
+         throws InterruptedException {
+      final AtomicInteger next = new AtomicInteger();
+      final CountDownLatch done = new CountDownLatch(concurrency);
+
+      final long start = System.nanoTime();
+      for (int c = 0; c < concurrency; c++) {
+         final Thread client = new Thread(new Runnable() {
+            public void run() {
+               try {
+                  int i;
+                  while ((i = next.getAndIncrement()) < requests) {
+                     send(_inputs.get(i % _inputs.size()));
+                  }
+               } finally {
+                  done.countDown();
+               }
+            }
+         }, "load-client-" + c);
+         client.start();
+      }
+      done.await();
+      final long elapsed = System.nanoTime() - start;
+
+      final long[] p = _latencies.percentiles(50, 90, 99, 99.9);
+      System.out.println(String.format("url=%s", _url));
+      System.out.println(String.format("concurrency=%d", concurrency));
+      System.out.println(String.format("requests=%d", _latencies.count()));
+      System.out.println(String.format("errors=%d", _errors.get()));
+      System.out.println(String.format("elapsed_ms=%d",
+            TimeUnit.NANOSECONDS.toMillis(elapsed)));
+      System.out.println(String.format("throughput_rps=%.1f",
+            _latencies.count() / (elapsed / 1e9)));
+      System.out.println(String.format("latency_p50_ms=%.3f", p[0] / 1e6));
+      System.out.println(String.format("latency_p90_ms=%.3f", p[1] / 1e6));
+      System.out.println(String.format("latency_p99_ms=%.3f", p[2] / 1e6));
+      System.out.println(String.format("latency_p999_ms=%.3f", p[3] / 1e6));
+   }
+
+   private void send(final String body) {
+      final long start = System.nanoTime();
+      HttpURLConnection connection = null;
+      try {
+         connection = (HttpURLConnection) _url.openConnection();
+         connection.setRequestMethod("POST");
+         connection.setDoOutput(true);
+         connection.setRequestProperty("Content-Type", "text/plain; charset=UTF-8");
+         final OutputStream out = connection.getOutputStream();
+         out.write(body.getBytes(UTF8));
+         out.close();
+
+         if (connection.getResponseCode() != 200) {
+            _errors.incrementAndGet();
+         }
+         // drain the response so the connection can be reused
+         final InputStream in = connection.getResponseCode() == 200
+               ? connection.getInputStream() : connection.getErrorStream();
+         if (in != null) {
+            final byte[] buf = new byte[8192];
+            while (in.read(buf) != -1) {
+               // discard
+            }
+            in.close();
+         }
+         _latencies.record(System.nanoTime() - start);
+      } catch (final IOException e) {
+         _errors.incrementAndGet();
+      }
+   }
+
+   public static void main(final String[] args) throws Exception {
+      if (args.length < 1) {
+         System.err.println("Usage: LoadGenerator <inputFile> [stage] [concurrency] [requests] [port]");
+         System.exit(1);
+      }
+      final File input = new File(args[0]);
+      final String stage = args.length > 1 ? args[1] : "sentences";
+      final int concurrency = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+      final int requests = args.length > 3 ? Integer.parseInt(args[3]) : 1000;
+      final int port = args.length > 4
+            ? Integer.parseInt(args[4]) : AnnotationServer.DEFAULT_PORT;
+
+      final List<String> inputs = new ArrayList<String>();
+      for (final String line : FileUtilities.loadLines(input, UTF8)) {
+         if (!line.trim().isEmpty()) {
+            inputs.add(line);
+         }
+      }
+
+      final URL url = new URL("http", "127.0.0.1", port, "/" + stage);
+      new LoadGenerator(url, inputs).run(concurrency, requests);
+   }
+
+}
@@ -0,0 +1,291 @@
+package com.dpdearing.nlp.opennlp.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Coalesces concurrently submitted requests into micro-batches that are
+ * processed on a single, dedicated worker thread.
+ * <p>
+ * OpenNLP components are not thread-safe, so each stage owns its components
+ * and only ever touches them from its worker thread.  Requests that arrive
+ * while a batch is being processed queue up and are drained together, up to
+ * a maximum batch size, as soon as the worker is free.
+ * </p>
+ *
+ * @param <I> the request input type
+ * @param <O> the request output type
+ */
+public class MicroBatcher<I, O> {
+   static private final Logger logger = LoggerFactory.getLogger(MicroBatcher.class);
+
+   /**
+    * Processes a batch of inputs, completing the result of each.
+    */
+   public interface BatchProcessor<I, O> {
+      /**
+       * @param batch
+       *           the inputs
+       * @param results
+       *           completed with the output, or the exception, of each
+       *           input by its index in the batch
+       * @throws Exception if the batch failed as a whole; the inputs not
+       *            yet completed fail with the exception
+       */
+      void process(List<I> batch, Results<O> results) throws Exception;
+   }
+
+   /**
+    * The results of the inputs of a batch, so that one failed input doesn't
+    * fail the others.  Inputs left without a result fail.
+    */
+   public interface Results<O> {
+      /**
+       * @param index
+       *           the index of the input in the batch
+       * @param output
+       *           its output
+       */
+      void set(int index, O output);
+
+      /**
+       * @param index
+       *           the index of the input in the batch
+       * @param e
+       *           the exception processing it threw
+       */
+      void fail(int index, Exception e);
+   }
+
+   /**
+    * A single queued request and the future to complete with its result
+    */
+   static private class Pending<I, O> {
+      final I input;
+      final Result<O> result = new Result<O>();
+
+      Pending(final I input) {
+         this.input = input;
+      }
+   }
+
+   /**
+    * A future that is completed directly by the batch worker
+    */
+   static private class Result<O> extends FutureTask<O> {
+      @SuppressWarnings("unchecked")
+      Result() {
+         super((Callable<O>) NO_OP);
+      }
+
+      @Override
+      public void set(final O value) {
+         super.set(value);
+      }
+
+      @Override
+      public void setException(final Throwable t) {
+         super.setException(t);
+      }
+   }
+
+   static private final Callable<Object> NO_OP = new Callable<Object>() {
+      public Object call() {
+         return null;
+      }
+   };
+
+   final private String _name;
+   final private BatchProcessor<I, O> _processor;
+   final private int _maxBatchSize;
+   final private long _maxDelayNanos;
+   final private BlockingQueue<Pending<I, O>> _queue =
+         new LinkedBlockingQueue<Pending<I, O>>();
+   final private Thread _worker;
+   private volatile boolean _running = true;
+
+   /**
+    * Statistics
+    */
+   final private AtomicLong _requests = new AtomicLong();
+   final private AtomicLong _batches = new AtomicLong();
+
+   /**
+    * @param name
+    *           the stage name, used for the worker thread and logging
+    * @param processor
+    *           the batch processor, only ever invoked on the worker thread
+    * @param maxBatchSize
+    *           the maximum number of requests in a single batch
+    * @param maxDelayMillis
+    *           how long to wait for more requests to fill a batch once the
+    *           first one arrives; 0 to process whatever is already queued
+    */
+   public MicroBatcher(final String name, final BatchProcessor<I, O> processor,
+         final int maxBatchSize, final long maxDelayMillis) {
+      if (maxBatchSize < 1) {
+         throw new IllegalArgumentException("maxBatchSize");
+      }
+      _name = name;
+      _processor = processor;
+      _maxBatchSize = maxBatchSize;
+      _maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+      _worker = new Thread(new Runnable() {
+         public void run() {
+            work();
+         }
+      }, "batcher-" + name);
+      _worker.setDaemon(true);
+      _worker.start();
+   }
+
+   /**
+    * Queue the input for processing in the next available batch.
+    *
+    * @param input
+    *           the request input
+    * @return the future result
+    * @throws RejectedExecutionException if the batcher has been shut down
+    */
+   public Future<O> submit(final I input) {
+      if (!_running) {
+         throw new RejectedExecutionException(_name + " batcher is shut down");
+      }
+      final Pending<I, O> pending = new Pending<I, O>(input);
+      _queue.add(pending);
+      // the worker may have drained the queue and stopped in the meantime
+      if (!_running && _queue.remove(pending)) {
+         throw new RejectedExecutionException(_name + " batcher is shut down");
+      }
+      _requests.incrementAndGet();
+      return pending.result;
+   }
+
+   /**
+    * Queue the input and wait for its result.
+    *
+    * @param input
+    *           the request input
+    * @return the result
+    * @throws Exception the exception thrown while processing the batch
+    */
+   public O process(final I input) throws Exception {
+      try {
+         return submit(input).get();
+      } catch (final ExecutionException e) {
+         if (e.getCause() instanceof Exception) {
+            throw (Exception) e.getCause();
+         }
+         throw e;
+      }
+   }
+
+   /**
+    * @return the number of requests submitted
+    */
+   public long requestCount() {
+      return _requests.get();
+   }
+
+   /**
+    * @return the number of batches processed
+    */
+   public long batchCount() {
+      return _batches.get();
+   }
+
+   /**
+    * Stop accepting requests and stop the worker once the queue is drained.
+    */
+   public void shutdown() {
+      _running = false;
+      _worker.interrupt();
+   }
+
+   private void work() {
+      final List<Pending<I, O>> batch = new ArrayList<Pending<I, O>>(_maxBatchSize);
+      while (_running || !_queue.isEmpty()) {
+         try {
+            // block for the first request, then fill the batch
+            final Pending<I, O> first = _running ? _queue.take() : _queue.poll();
+            if (first == null) {
+               break;
+            }
+            batch.add(first);
+            fill(batch);
+         } catch (final InterruptedException e) {
+            // shutting down; process what we have and drain what is left
+            if (batch.isEmpty()) {
+               continue;
+            }
+         }
+         processBatch(batch);
+         batch.clear();
+      }
+      logger.info("{} batcher stopped after {} requests in {} batches",
+            new Object[] { _name, _requests.get(), _batches.get() });
+   }
+
+   private void fill(final List<Pending<I, O>> batch) throws InterruptedException {
+      _queue.drainTo(batch, _maxBatchSize - batch.size());
+      final long deadline = System.nanoTime() + _maxDelayNanos;
+      while (batch.size() < _maxBatchSize) {
+         final long remaining = deadline - System.nanoTime();
+         if (remaining <= 0) {
+            break;
+         }
+         final Pending<I, O> next = _queue.poll(remaining, TimeUnit.NANOSECONDS);
+         if (next == null) {
+            break;
+         }
+         batch.add(next);
+         _queue.drainTo(batch, _maxBatchSize - batch.size());
+      }
+   }
+
+   private void processBatch(final List<Pending<I, O>> batch) {
+      _batches.incrementAndGet();
+      final List<I> inputs = new ArrayList<I>(batch.size());
+      for (final Pending<I, O> pending : batch) {
+         inputs.add(pending.input);
+      }
+
+      try {
+         _processor.process(inputs, new Results<O>() {
+            public void set(final int index, final O output) {
+               batch.get(index).result.set(output);
+            }
+
+            public void fail(final int index, final Exception e) {
+               batch.get(index).result.setException(e);
+            }
+         });
+      } catch (final Throwable t) {
+         logger.warn(_name + " batch of " + batch.size() + " requests failed", t);
+         // completed results are kept
+         for (final Pending<I, O> pending : batch) {
+            pending.result.setException(t);
+         }
+      }
+
+      for (final Pending<I, O> pending : batch) {
+         if (!pending.result.isDone()) {
+            pending.result.setException(new IllegalStateException(
+                  _name + " batch left a request without a result"));
+         }
+      }
+   }
+
+}
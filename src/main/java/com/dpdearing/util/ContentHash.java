@@ -0,0 +1,85 @@
+package com.dpdearing.util;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Content hashing helper methods
+ */
+public class ContentHash {
+
+   static final private Charset UTF8 = Charset.forName("UTF-8");
+   static final private char[] HEX = "0123456789abcdef".toCharArray();
+
+   /**
+    * Private constructor to prevent instantiation.
+    */
+   private ContentHash() { // this class is not to be instantiated
+   }
+
+   /**
+    * Hash the given strings.  The hash distinguishes between different
+    * splits of the same characters, i.e., <code>{"ab", "c"}</code> and
+    * <code>{"a", "bc"}</code> hash differently.
+    *
+    * @param values
+    *           the strings to hash
+    * @return the lower-case hexadecimal SHA-1 digest of the UTF-8 encoded
+    *         strings
+    */
+   public static String sha1(final String... values) {
+      final MessageDigest digest = newDigest();
+      for (final String value : values) {
+         final byte[] bytes = value.getBytes(UTF8);
+         update(digest, bytes.length);
+         digest.update(bytes);
+      }
+      return toHex(digest.digest());
+   }
+
+   /**
+    * Hash the given bytes.
+    *
+    * @param bytes
+    *           the bytes to hash
+    * @return the lower-case hexadecimal SHA-1 digest of the bytes
+    */
+   public static String sha1(final byte[] bytes) {
+      return toHex(newDigest().digest(bytes));
+   }
+
+   /**
+    * @return a new SHA-1 message digest
+    */
+   public static MessageDigest newDigest() {
+      try {
+         return MessageDigest.getInstance("SHA-1");
+      } catch (final NoSuchAlgorithmException e) {
+         // every Java platform is required to support SHA-1
+         throw new IllegalStateException(e);
+      }
+   }
+
+   /**
+    * @param bytes
+    *           the bytes to convert
+    * @return the lower-case hexadecimal representation of the bytes
+    */
+   public static String toHex(final byte[] bytes) {
+      final char[] chars = new char[bytes.length * 2];
+      for (int i = 0; i < bytes.length; i++) {
+         chars[2 * i] = HEX[(bytes[i] >> 4) & 0xf];
+         chars[2 * i + 1] = HEX[bytes[i] & 0xf];
+      }
+      return new String(chars);
+   }
+
+   private static void update(final MessageDigest digest, final int value) {
+      digest.update((byte) (value >>> 24));
+      digest.update((byte) (value >>> 16));
+      digest.update((byte) (value >>> 8));
+      digest.update((byte) value);
+   }
+
+}
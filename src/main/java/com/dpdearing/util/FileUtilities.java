@@ -3,13 +3,16 @@ package com.dpdearing.util;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.LinkedList;
 import java.util.List;
 
+import com.dpdearing.util.MappedLineReader.LineHandler;
+
 /**
  * File utilities helper methods
  */
@@ -38,7 +41,7 @@ public class FileUtilities {
     */
    public static List<String> loadLines(final File file, final Charset cs)
          throws IOException {
-      return loadLines(file, new LinkedList<String>(), cs);
+      return loadLines(file, new ArrayList<String>(), cs);
    }
 
    /**
@@ -66,17 +69,63 @@ public class FileUtilities {
       checkNotNull(file, "file");
       checkNotNull(lines, "lines");
       checkNotNull(cs, "cs");
-      
+
+      forEachLine(file, cs, new LineHandler() {
+         public boolean handle(final String line) {
+            lines.add(line);
+            return true;
+         }
+      });
+
+      return lines;
+   }
+
+   /**
+    * Streams the lines of a file to the given handler without materializing
+    * them.  Files in charsets supported by {@link MappedLineReader} are read
+    * through memory-mapped windows; all others through a
+    * {@link BufferedReader}.
+    * 
+    * @param file
+    *           The file to read.
+    * @param cs
+    *           A charset.
+    * @param handler
+    *           Receives each line; returns <code>false</code> to stop reading.
+    * @return The number of lines handed to the handler.
+    * @throws {@link IOException}
+    *            If the file can't be opened or read.
+    * @throws {@link java.io.FileNotFoundException}
+    *            If the file can't be found.
+    * @throws {@link IllegalArgumentException}
+    *            If any argument is null.
+    */
+   public static long forEachLine(final File file, final Charset cs,
+         final LineHandler handler) throws IOException {
+      checkNotNull(file, "file");
+      checkNotNull(cs, "cs");
+      checkNotNull(handler, "handler");
+
+      if (MappedLineReader.supports(cs)) {
+         if (!file.isFile()) {
+            throw new FileNotFoundException(file.getPath());
+         }
+         return new MappedLineReader(file, cs).read(handler);
+      }
+
+      long count = 0;
       BufferedReader bread = null;
       try {
          final InputStreamReader isReader =
             new InputStreamReader(new FileInputStream(file), cs);
          bread = new BufferedReader(isReader);
 
-         // read the file into the words list, one word per line:
          String line = null;
          while (null != (line = bread.readLine())) {
-            lines.add(line);
+            count++;
+            if (!handler.handle(line)) {
+               break;
+            }
          }
       } finally {
          if (null != bread) {
@@ -84,7 +133,7 @@ public class FileUtilities {
          }
       }
 
-      return lines;
+      return count;
    }
 
    private static <T> T checkNotNull(final T reference, final String fieldName) {
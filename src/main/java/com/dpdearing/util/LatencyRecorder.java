@@ -0,0 +1,97 @@
+package com.dpdearing.util;
+
+import java.util.Arrays;
+
+/**
+ * Thread-safe recorder of latency samples (in nanoseconds) that reports
+ * simple summary statistics and percentiles.
+ */
+public class LatencyRecorder {
+
+   /**
+    * The recorded samples, grown as necessary
+    */
+   private long[] _samples = new long[1024];
+   private int _count = 0;
+
+   /**
+    * Record a single latency sample.
+    *
+    * @param nanos
+    *           the latency in nanoseconds
+    */
+   public synchronized void record(final long nanos) {
+      if (_count == _samples.length) {
+         _samples = Arrays.copyOf(_samples, _samples.length * 2);
+      }
+      _samples[_count++] = nanos;
+   }
+
+   /**
+    * @return the number of recorded samples
+    */
+   public synchronized int count() {
+      return _count;
+   }
+
+   /**
+    * @return the sum of all recorded samples, in nanoseconds
+    */
+   public synchronized long total() {
+      long total = 0;
+      for (int i = 0; i < _count; i++) {
+         total += _samples[i];
+      }
+      return total;
+   }
+
+   /**
+    * Get the sample at the given percentile using the nearest-rank method.
+    *
+    * @param percentile
+    *           the percentile of interest, between 0 and 100
+    * @return the latency at the percentile in nanoseconds, or 0 if no
+    *         samples have been recorded
+    */
+   public long percentile(final double percentile) {
+      return percentiles(percentile)[0];
+   }
+
+   /**
+    * Get the samples at each of the given percentiles using the nearest-rank
+    * method.  The samples are only sorted once.
+    *
+    * @param percentiles
+    *           the percentiles of interest, each between 0 and 100
+    * @return the latencies at each percentile in nanoseconds, or 0 if no
+    *         samples have been recorded
+    */
+   public long[] percentiles(final double... percentiles) {
+      final long[] sorted;
+      synchronized (this) {
+         sorted = Arrays.copyOf(_samples, _count);
+      }
+      Arrays.sort(sorted);
+
+      final long[] result = new long[percentiles.length];
+      if (sorted.length == 0) {
+         return result;
+      }
+      for (int i = 0; i < percentiles.length; i++) {
+         if (percentiles[i] < 0 || percentiles[i] > 100) {
+            throw new IllegalArgumentException("percentile");
+         }
+         final int rank = (int) Math.ceil(percentiles[i] / 100.0 * sorted.length);
+         result[i] = sorted[Math.max(0, rank - 1)];
+      }
+      return result;
+   }
+
+   /**
+    * Discard all recorded samples.
+    */
+   public synchronized void reset() {
+      _count = 0;
+   }
+
+}
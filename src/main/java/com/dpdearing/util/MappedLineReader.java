@@ -0,0 +1,401 @@
+package com.dpdearing.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the lines of a file through memory-mapped windows, decoding each line
+ * with a single reusable {@link CharsetDecoder}.
+ * <p>
+ * Lines are terminated the same way as {@link java.io.BufferedReader#readLine()},
+ * i.e., by <code>\n</code>, <code>\r</code> or <code>\r\n</code>, and
+ * malformed input is replaced rather than reported.  Lines are handed to a
+ * {@link LineHandler} as they are decoded so the whole file never needs to be
+ * materialized, and a file can be {@link #split(File, int) split} at line
+ * boundaries into {@link Range}s that are read independently, e.g., in
+ * parallel.
+ * </p>
+ * <p>
+ * Only charsets that encode <code>\n</code> and <code>\r</code> as the single
+ * ASCII bytes can be scanned this way (e.g., UTF-8 and the ISO-8859 family);
+ * see {@link #supports(Charset)}.  Instances are not thread-safe.
+ * </p>
+ */
+public class MappedLineReader {
+
+   /**
+    * The default size of each memory-mapped window
+    */
+   static final public int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+   /**
+    * Receives each line as it is read.
+    */
+   public interface LineHandler {
+      /**
+       * @param line
+       *           the line, without its terminator
+       * @return <code>true</code> to continue reading, <code>false</code> to
+       *         stop
+       * @throws IOException to abort reading
+       */
+      boolean handle(String line) throws IOException;
+   }
+
+   /**
+    * A range of bytes in a file, starting at the beginning of a line and
+    * ending at the beginning of a line or the end of the file.
+    */
+   static public class Range {
+      final private long _start;
+      final private long _end;
+
+      public Range(final long start, final long end) {
+         if (start < 0 || end < start) {
+            throw new IllegalArgumentException(start + "-" + end);
+         }
+         _start = start;
+         _end = end;
+      }
+
+      /**
+       * @return the inclusive start byte offset
+       */
+      public long getStart() {
+         return _start;
+      }
+
+      /**
+       * @return the exclusive end byte offset
+       */
+      public long getEnd() {
+         return _end;
+      }
+
+      @Override
+      public String toString() {
+         return "[" + _start + ".." + _end + ")";
+      }
+   }
+
+   static final private Charset LATIN1 = Charset.forName("ISO-8859-1");
+
+   final private File _file;
+   final private CharsetDecoder _decoder;
+   final private int _windowSize;
+   /**
+    * Whether the charset encodes every ASCII character as the same single
+    * byte, in which case pure ASCII lines skip the decoder
+    */
+   final private boolean _asciiCompatible;
+
+   /**
+    * Reusable scratch buffers for decoding a line
+    */
+   private byte[] _bytes = new byte[256];
+   private CharBuffer _chars = CharBuffer.allocate(256);
+
+   /**
+    * @param file
+    *           the file to read
+    * @param cs
+    *           the file charset
+    * @throws IllegalArgumentException if the charset is not
+    *            {@link #supports(Charset) supported}
+    */
+   public MappedLineReader(final File file, final Charset cs) {
+      this(file, cs, DEFAULT_WINDOW_SIZE);
+   }
+
+   /**
+    * @param file
+    *           the file to read
+    * @param cs
+    *           the file charset
+    * @param windowSize
+    *           the initial size, in bytes, of each memory-mapped window; a
+    *           window is grown as necessary to hold a single long line
+    * @throws IllegalArgumentException if the charset is not
+    *            {@link #supports(Charset) supported}
+    */
+   public MappedLineReader(final File file, final Charset cs, final int windowSize) {
+      if (file == null) {
+         throw new IllegalArgumentException("file");
+      }
+      if (cs == null || !supports(cs)) {
+         throw new IllegalArgumentException("cs");
+      }
+      if (windowSize < 2) {
+         throw new IllegalArgumentException("windowSize");
+      }
+      _file = file;
+      _decoder = cs.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+      _windowSize = windowSize;
+      _asciiCompatible = isAsciiCompatible(cs);
+   }
+
+   /**
+    * Determine whether lines in the given charset can be found by scanning
+    * for the ASCII line terminator bytes.
+    *
+    * @param cs
+    *           the charset
+    * @return <code>true</code> if the charset can be read by this class
+    */
+   public static boolean supports(final Charset cs) {
+      if (!cs.canEncode()) {
+         return false;
+      }
+      try {
+         final CharsetEncoder encoder = cs.newEncoder();
+         final ByteBuffer encoded = encoder.encode(CharBuffer.wrap("\n\r"));
+         return encoded.remaining() == 2
+               && encoded.get(0) == '\n' && encoded.get(1) == '\r';
+      } catch (final CharacterCodingException e) {
+         return false;
+      }
+   }
+
+   /**
+    * Read every line in the file.
+    *
+    * @param handler
+    *           receives each line
+    * @return the number of lines handed to the handler
+    * @throws IOException if the file can't be opened or read, or the
+    *            handler throws
+    */
+   public long read(final LineHandler handler) throws IOException {
+      return read(new Range(0, _file.length()), handler);
+   }
+
+   /**
+    * Read the lines in the given range of the file.
+    *
+    * @param range
+    *           the range to read, typically from {@link #split(File, int)}
+    * @param handler
+    *           receives each line
+    * @return the number of lines handed to the handler
+    * @throws IOException if the file can't be opened or read, or the
+    *            handler throws
+    */
+   public long read(final Range range, final LineHandler handler) throws IOException {
+      final RandomAccessFile raf = new RandomAccessFile(_file, "r");
+      try {
+         final FileChannel channel = raf.getChannel();
+         final long end = Math.min(range.getEnd(), channel.size());
+         long pos = range.getStart();
+         long count = 0;
+         int window = _windowSize;
+
+         while (pos < end) {
+            final int length = (int) Math.min(window, end - pos);
+            final boolean last = pos + length >= end;
+            final MappedByteBuffer buf =
+                  channel.map(FileChannel.MapMode.READ_ONLY, pos, length);
+
+            int lineStart = 0;
+            int i = 0;
+            // the bitwise-or of the line's bytes; negative if any is non-ASCII
+            int bits = 0;
+            while (i < length) {
+               final byte b = buf.get(i);
+               if (b != '\n' && b != '\r') {
+                  bits |= b;
+                  i++;
+                  continue;
+               }
+               int terminator = 1;
+               if (b == '\r') {
+                  if (i + 1 < length) {
+                     if (buf.get(i + 1) == '\n') {
+                        terminator = 2;
+                     }
+                  } else if (!last) {
+                     // a possible \r\n split across windows; remap from the line start
+                     break;
+                  }
+               }
+               count++;
+               if (!handler.handle(decode(buf, lineStart, i, bits >= 0))) {
+                  return count;
+               }
+               i += terminator;
+               lineStart = i;
+               bits = 0;
+            }
+
+            if (last) {
+               if (lineStart < length) {
+                  // final line without a terminator
+                  count++;
+                  handler.handle(decode(buf, lineStart, length, bits >= 0));
+               }
+               break;
+            }
+            if (lineStart == 0) {
+               // a single line fills the window; grow it
+               if (window > Integer.MAX_VALUE / 2) {
+                  throw new IOException("Line too long in " + _file + " at byte " + pos);
+               }
+               window *= 2;
+            }
+            pos += lineStart;
+         }
+         return count;
+      } finally {
+         raf.close();
+      }
+   }
+
+   /**
+    * Read every line in the file into a list.
+    *
+    * @return the lines
+    * @throws IOException if the file can't be opened or read
+    */
+   public List<String> readLines() throws IOException {
+      final List<String> lines = new ArrayList<String>();
+      read(new LineHandler() {
+         public boolean handle(final String line) {
+            lines.add(line);
+            return true;
+         }
+      });
+      return lines;
+   }
+
+   /**
+    * Split a file into at most the given number of ranges of roughly equal
+    * size, each starting and ending at a line boundary.
+    *
+    * @param file
+    *           the file to split
+    * @param parts
+    *           the desired number of ranges
+    * @return the contiguous ranges covering the whole file, in file order;
+    *         empty for an empty file
+    * @throws IOException if the file can't be opened or read
+    */
+   public static List<Range> split(final File file, final int parts) throws IOException {
+      if (parts < 1) {
+         throw new IllegalArgumentException("parts");
+      }
+      final List<Range> ranges = new ArrayList<Range>(parts);
+      final RandomAccessFile raf = new RandomAccessFile(file, "r");
+      try {
+         final long size = raf.length();
+         final long target = size / parts;
+         long start = 0;
+         for (int p = 1; p < parts && start < size; p++) {
+            final long boundary = nextLineStart(raf, Math.max(start, p * target), size);
+            if (boundary > start && boundary < size) {
+               ranges.add(new Range(start, boundary));
+               start = boundary;
+            }
+         }
+         if (start < size) {
+            ranges.add(new Range(start, size));
+         }
+      } finally {
+         raf.close();
+      }
+      return ranges;
+   }
+
+   /**
+    * @return the offset of the first line start after the terminator at or
+    *         following the given offset
+    */
+   private static long nextLineStart(final RandomAccessFile raf, final long offset,
+         final long size) throws IOException {
+      final byte[] buf = new byte[8192];
+      long pos = offset;
+      while (pos < size) {
+         raf.seek(pos);
+         final int n = raf.read(buf, 0, (int) Math.min(buf.length, size - pos));
+         if (n <= 0) {
+            break;
+         }
+         for (int i = 0; i < n; i++) {
+            if (buf[i] == '\n') {
+               return pos + i + 1;
+            } else if (buf[i] == '\r') {
+               // check for \r\n, possibly in the next buffer
+               final long next = pos + i + 1;
+               if (next < size) {
+                  raf.seek(next);
+                  if (raf.read() == '\n') {
+                     return next + 1;
+                  }
+               }
+               return next;
+            }
+         }
+         pos += n;
+      }
+      return size;
+   }
+
+   /**
+    * Decode the given bytes of the window, reusing the decoder and the
+    * scratch buffers.
+    */
+   private String decode(final ByteBuffer window, final int from, final int to,
+         final boolean ascii) throws CharacterCodingException {
+      final int length = to - from;
+      if (length == 0) {
+         return "";
+      }
+      // bulk copy out of the mapped window
+      if (_bytes.length < length) {
+         _bytes = new byte[Math.max(length, _bytes.length * 2)];
+      }
+      final ByteBuffer in = window.duplicate();
+      in.position(from);
+      in.get(_bytes, 0, length);
+
+      if (ascii && _asciiCompatible) {
+         // every byte is its own character
+         return new String(_bytes, 0, length, LATIN1);
+      }
+
+      final int max = (int) Math.ceil(length * (double) _decoder.maxCharsPerByte());
+      if (_chars.capacity() < max) {
+         _chars = CharBuffer.allocate(Math.max(max, _chars.capacity() * 2));
+      }
+      _chars.clear();
+      _decoder.reset();
+      _decoder.decode(ByteBuffer.wrap(_bytes, 0, length), _chars, true);
+      _decoder.flush(_chars);
+      _chars.flip();
+      return _chars.toString();
+   }
+
+   /**
+    * @return whether the charset decodes each ASCII byte to the same character
+    */
+   private static boolean isAsciiCompatible(final Charset cs) {
+      final byte[] ascii = new byte[128];
+      for (int i = 0; i < ascii.length; i++) {
+         ascii[i] = (byte) i;
+      }
+      return new String(ascii, LATIN1).equals(new String(ascii, cs));
+   }
+
+}
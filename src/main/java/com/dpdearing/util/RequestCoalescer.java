@@ -0,0 +1,178 @@
+package com.dpdearing.util;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single-flight de-duplication of concurrent requests.
+ * <p>
+ * The first caller to request a key computes the value on its own thread;
+ * any caller requesting the same key while that computation is in flight
+ * waits for, and shares, its result instead of computing it again.  Results
+ * are not cached: once a computation completes, the next request for the
+ * key starts a new one.
+ * </p>
+ *
+ * @param <K> the request key type
+ * @param <V> the result type
+ */
+public class RequestCoalescer<K, V> {
+
+   /**
+    * A computation that measures its own compute time, e.g., to leave out
+    * the time it waits for a resource
+    */
+   public interface Timed {
+      /**
+       * @return the compute time, in nanoseconds, of the completed call
+       */
+      long durationNanos();
+   }
+
+   /**
+    * An in-flight computation and how long it took to complete
+    */
+   static private class Flight<V> {
+      final FutureTask<V> task;
+
+      /**
+       * Set before the task completes, so that it's visible to every caller
+       * the task's result is
+       */
+      volatile long durationNanos;
+
+      Flight(final Callable<V> computation) {
+         task = new FutureTask<V>(new Callable<V>() {
+            public V call() throws Exception {
+               final long start = System.nanoTime();
+               try {
+                  return computation.call();
+               } finally {
+                  durationNanos = computation instanceof Timed
+                        ? ((Timed) computation).durationNanos()
+                        : System.nanoTime() - start;
+               }
+            }
+         });
+      }
+   }
+
+   final private ConcurrentMap<K, Flight<V>> _inFlight =
+         new ConcurrentHashMap<K, Flight<V>>();
+
+   /**
+    * Statistics
+    */
+   final private AtomicLong _requests = new AtomicLong();
+   final private AtomicLong _computations = new AtomicLong();
+   final private AtomicLong _coalesced = new AtomicLong();
+   final private AtomicLong _savedNanos = new AtomicLong();
+
+   /**
+    * Get the result for the given key, computing it unless an identical
+    * request is already in flight.
+    *
+    * @param key
+    *           the request key; requests with equal keys are coalesced
+    * @param computation
+    *           computes the result if no identical request is in flight
+    * @return the result
+    * @throws Exception the exception thrown by the computation, which is
+    *            seen by every coalesced caller; an
+    *            {@link InterruptedException} is only thrown to the caller
+    *            that was interrupted, the others get an
+    *            {@link ExecutionException} caused by it
+    */
+   public V get(final K key, final Callable<V> computation) throws Exception {
+      _requests.incrementAndGet();
+
+      final Flight<V> flight = new Flight<V>(computation);
+      final Flight<V> existing = _inFlight.putIfAbsent(key, flight);
+      if (existing != null) {
+         // join the in-flight computation
+         _coalesced.incrementAndGet();
+         final V value = await(existing, false);
+         _savedNanos.addAndGet(existing.durationNanos);
+         return value;
+      }
+
+      // we are the leader
+      _computations.incrementAndGet();
+      try {
+         flight.task.run();
+      } finally {
+         _inFlight.remove(key, flight);
+      }
+      return await(flight, true);
+   }
+
+   /**
+    * @param leader
+    *           whether the caller ran the computation
+    */
+   private V await(final Flight<V> flight, final boolean leader) throws Exception {
+      try {
+         return flight.task.get();
+      } catch (final ExecutionException e) {
+         final Throwable cause = e.getCause();
+         if (cause instanceof InterruptedException && !leader) {
+            // the leader was interrupted, not this caller
+            throw e;
+         } else if (cause instanceof Exception) {
+            throw (Exception) cause;
+         } else if (cause instanceof Error) {
+            throw (Error) cause;
+         }
+         throw e;
+      }
+   }
+
+   /**
+    * @return the total number of requests
+    */
+   public long requestCount() {
+      return _requests.get();
+   }
+
+   /**
+    * @return the number of requests that were actually computed
+    */
+   public long computationCount() {
+      return _computations.get();
+   }
+
+   /**
+    * @return the number of requests that shared an in-flight computation
+    */
+   public long coalescedCount() {
+      return _coalesced.get();
+   }
+
+   /**
+    * @return the total compute time, in nanoseconds, of the computations
+    *         shared by coalesced requests (the work that was saved)
+    */
+   public long savedNanos() {
+      return _savedNanos.get();
+   }
+
+   /**
+    * @return the number of computations currently in flight
+    */
+   public int inFlightCount() {
+      return _inFlight.size();
+   }
+
+   @Override
+   public String toString() {
+      return String.format(
+            "requests=%d computations=%d coalesced=%d saved_ms=%d",
+            requestCount(), computationCount(), coalescedCount(),
+            savedNanos() / 1000000);
+   }
+
+}
@@ -0,0 +1,231 @@
+package com.dpdearing.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread-safe, bounded pool that interns strings and encodes them as dense
+ * integer ids.
+ * <p>
+ * Each distinct string is assigned the next id, from 0, the first time it's
+ * interned and keeps it for the life of the pool, so ids can be compared and
+ * grouped in place of the strings and decoded back with {@link #get(int)}.
+ * Lookups of interned strings, and decoding, don't lock; only assigning a
+ * new id does.  Once the pool holds its capacity, strings that aren't
+ * already interned are no longer added and are encoded as {@link #NO_ID},
+ * also without locking.
+ * </p>
+ */
+public class StringPool {
+
+   /**
+    * The id of a string the full pool couldn't intern
+    */
+   static final public int NO_ID = -1;
+
+   static final private int CHUNK_BITS = 12;
+   static final private int CHUNK_SIZE = 1 << CHUNK_BITS;
+   static final private int CHUNK_MASK = CHUNK_SIZE - 1;
+
+   final private int _capacity;
+   final private ConcurrentMap<String, Integer> _ids;
+
+   /**
+    * The interned strings by id, allocated a chunk at a time.  Written under
+    * the pool's lock before {@link #_size} is incremented, so any id below
+    * the size read is safely published.
+    */
+   final private String[][] _strings;
+   private volatile int _size = 0;
+
+   /**
+    * Statistics
+    */
+   final private AtomicLong _rejected = new AtomicLong();
+
+   /**
+    * @param capacity
+    *           the maximum number of distinct strings
+    */
+   public StringPool(final int capacity) {
+      if (capacity < 1) {
+         throw new IllegalArgumentException(String.format(
+               "The capacity must be positive, not %d", capacity));
+      }
+      _capacity = capacity;
+      _ids = new ConcurrentHashMap<String, Integer>(Math.min(capacity, CHUNK_SIZE));
+      _strings = new String[(capacity + CHUNK_MASK) >>> CHUNK_BITS][];
+   }
+
+   /**
+    * Intern a string, assigning it the next id if it's new.
+    *
+    * @param s
+    *           the string
+    * @return its id, or {@link #NO_ID} if it's new and the pool is full
+    */
+   public int id(final String s) {
+      final Integer id = _ids.get(s);
+      if (id != null) {
+         return id;
+      }
+      if (_size == _capacity) {
+         // full, so don't contend for the lock
+         _rejected.incrementAndGet();
+         return NO_ID;
+      }
+      return add(s);
+   }
+
+   /**
+    * @param s
+    *           the string
+    * @return its id, or {@link #NO_ID} if it isn't interned; never adds it
+    */
+   public int find(final String s) {
+      final Integer id = _ids.get(s);
+      return id != null ? id : NO_ID;
+   }
+
+   /**
+    * @param id
+    *           a string id
+    * @return the interned string, or <code>null</code> for {@link #NO_ID}
+    * @throws IllegalArgumentException if the id wasn't assigned by this pool
+    */
+   public String get(final int id) {
+      if (id == NO_ID) {
+         return null;
+      }
+      if (id < 0 || id >= _size) {
+         throw new IllegalArgumentException(String.format(
+               "Unknown string id %d; the pool holds %d strings", id, _size));
+      }
+      return _strings[id >>> CHUNK_BITS][id & CHUNK_MASK];
+   }
+
+   /**
+    * Intern a string, returning the pooled instance.
+    *
+    * @param s
+    *           the string
+    * @return the equal pooled string, or <code>s</code> itself if the pool is
+    *         full and it isn't interned
+    */
+   public String intern(final String s) {
+      final int id = id(s);
+      return id == NO_ID ? s : get(id);
+   }
+
+   /**
+    * Intern each string.
+    *
+    * @param strings
+    *           the strings, e.g., the tokens of a sentence
+    * @return their ids, {@link #NO_ID} for those the full pool couldn't
+    *         intern
+    */
+   public int[] encode(final String[] strings) {
+      final int[] ids = new int[strings.length];
+      for (int i = 0; i < strings.length; i++) {
+         ids[i] = id(strings[i]);
+      }
+      return ids;
+   }
+
+   /**
+    * @param ids
+    *           string ids of this pool
+    * @return the interned strings, <code>null</code> for {@link #NO_ID}
+    */
+   public String[] decode(final int[] ids) {
+      final String[] strings = new String[ids.length];
+      for (int i = 0; i < ids.length; i++) {
+         strings[i] = get(ids[i]);
+      }
+      return strings;
+   }
+
+   /**
+    * Replace each string with the equal pooled instance, in place.
+    *
+    * @param strings
+    *           the strings
+    * @return the same array
+    */
+   public String[] internAll(final String[] strings) {
+      for (int i = 0; i < strings.length; i++) {
+         strings[i] = intern(strings[i]);
+      }
+      return strings;
+   }
+
+   /**
+    * @return the number of interned strings, which is also the next id
+    */
+   public int size() {
+      return _size;
+   }
+
+   /**
+    * @return the maximum number of interned strings
+    */
+   public int capacity() {
+      return _capacity;
+   }
+
+   /**
+    * @return the number of times a new string wasn't interned because the
+    *         pool was full
+    */
+   public long rejected() {
+      return _rejected.get();
+   }
+
+   /**
+    * @return the approximate retained size of the pool in bytes
+    */
+   public long estimateSize() {
+      final int size = _size;
+      long bytes = 16 + 4L * _strings.length;
+      for (int chunk = 0; chunk < _strings.length && _strings[chunk] != null; chunk++) {
+         bytes += 16 + 4L * CHUNK_SIZE;
+      }
+      for (int id = 0; id < size; id++) {
+         // the string, its boxed id and the hash map entry
+         bytes += 24 + 16 + 2L * get(id).length() + 16 + 32;
+      }
+      return bytes;
+   }
+
+   @Override
+   public String toString() {
+      return String.format("StringPool size=%d capacity=%d rejected=%d",
+            _size, _capacity, _rejected.get());
+   }
+
+   private synchronized int add(final String s) {
+      final Integer existing = _ids.get(s);
+      if (existing != null) {
+         return existing;
+      }
+      final int id = _size;
+      if (id == _capacity) {
+         _rejected.incrementAndGet();
+         return NO_ID;
+      }
+      final int chunk = id >>> CHUNK_BITS;
+      if (_strings[chunk] == null) {
+         _strings[chunk] = new String[CHUNK_SIZE];
+      }
+      // copied, since a token may be a substring sharing its sentence's chars
+      final String pooled = new String(s);
+      _strings[chunk][id & CHUNK_MASK] = pooled;
+      // sized before the id can be found, so that it can always be decoded
+      _size = id + 1;
+      _ids.put(pooled, id);
+      return id;
+   }
+
+}
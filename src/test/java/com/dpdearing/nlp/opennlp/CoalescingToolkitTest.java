@@ -0,0 +1,81 @@
+package com.dpdearing.nlp.opennlp;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+/**
+ * Test fixture for {@link CoalescingToolkit}
+ */
+public class CoalescingToolkitTest {
+
+   static final private String TEXT =
+         "Pierre Vinken, 61 years old, will join the board as a nonexecutive director Nov. 29. "
+         + "Mr. Vinken is chairman of Elsevier N.V., the Dutch publishing group.";
+
+   /**
+    * The results match the toolkit's, and each caller gets its own copy.
+    */
+   @Test
+   public void testResults() throws IOException {
+      final OpenNlpToolkit toolkit = new OpenNlpToolkit();
+      final CoalescingToolkit coalescing =
+            new CoalescingToolkit(OpenNlpToolkit.DEFAULT_PROPERTIES_RESOURCE, 2);
+      assertEquals(2, coalescing.size());
+
+      final String[] sentences = coalescing.detectSentences(TEXT);
+      assertArrayEquals(toolkit.detectSentences(TEXT), sentences);
+      assertNotSame(sentences, coalescing.detectSentences(TEXT));
+      for (final String sentence : sentences) {
+         assertArrayEquals(toolkit.tokenize(sentence), coalescing.tokenize(sentence));
+      }
+      assertEquals(2 + sentences.length, coalescing.statistics().requestCount());
+   }
+
+   /**
+    * Many threads making overlapping requests through a pool of toolkits all
+    * get the right results, and identical requests are computed at most
+    * once each at a time.
+    */
+   @Test
+   public void testConcurrent() throws Exception {
+      final OpenNlpToolkit toolkit = new OpenNlpToolkit();
+      final String[] sentences = toolkit.detectSentences(TEXT);
+      final CoalescingToolkit coalescing =
+            new CoalescingToolkit(OpenNlpToolkit.DEFAULT_PROPERTIES_RESOURCE, 3);
+
+      final ExecutorService executor = Executors.newFixedThreadPool(8);
+      try {
+         final List<Future<String[]>> results = new ArrayList<Future<String[]>>();
+         for (int i = 0; i < 400; i++) {
+            final String sentence = sentences[i % sentences.length];
+            results.add(executor.submit(new Callable<String[]>() {
+               public String[] call() throws IOException {
+                  return coalescing.tokenize(sentence);
+               }
+            }));
+         }
+         for (int i = 0; i < results.size(); i++) {
+            assertArrayEquals(toolkit.tokenize(sentences[i % sentences.length]),
+                  results.get(i).get());
+         }
+      } finally {
+         executor.shutdown();
+      }
+      assertEquals(400, coalescing.statistics().requestCount());
+      assertEquals(400, coalescing.statistics().computationCount()
+            + coalescing.statistics().coalescedCount());
+      assertEquals(0, coalescing.statistics().inFlightCount());
+   }
+
+}
@@ -0,0 +1,42 @@
+package com.dpdearing.nlp.opennlp;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import com.dpdearing.nlp.opennlp.fast.FastTokenizer;
+
+/**
+ * Test fixture for {@link OpenNlpToolkit} with the fast maxent
+ * implementations, which must meet the expectations of
+ * {@link OpenNlpToolkitTest}
+ */
+public class FastOpenNlpToolkitTest {
+
+   static final private String PROPERTIES = "opennlp-fast-test.properties";
+
+   @Test
+   public void testSentenceDetectionAndTokenization() throws IOException {
+      final OpenNlpToolkit toolkit = new OpenNlpToolkit(PROPERTIES);
+      assertTrue(toolkit.tokenizer() instanceof FastTokenizer);
+      OpenNlpToolkitTest.assertSentenceDetectionAndTokenization(toolkit);
+   }
+
+   @Test
+   public void testDetectSentences() throws IOException {
+      OpenNlpToolkitTest.assertDetectSentences(new OpenNlpToolkit(PROPERTIES));
+   }
+
+   @Test
+   public void testTokenize() throws IOException {
+      OpenNlpToolkitTest.assertTokenize(new OpenNlpToolkit(PROPERTIES));
+   }
+
+   @Test
+   public void testPartOfSpeechTagger() throws IOException {
+      OpenNlpToolkitTest.assertPartOfSpeechTagger(new OpenNlpToolkit(PROPERTIES));
+   }
+
+}
@@ -0,0 +1,167 @@
+package com.dpdearing.nlp.opennlp;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.dpdearing.nlp.opennlp.fast.FastMaxentModel;
+
+/**
+ * Test fixture for {@link ModelManager}
+ */
+public class ModelManagerTest {
+
+   /**
+    * A loader of fixed-size placeholder models
+    */
+   static private class SizedLoader extends ModelManager.Loader<Object> {
+      final private long _size;
+      int loads = 0;
+
+      SizedLoader(final long size) {
+         _size = size;
+      }
+
+      @Override
+      public Object load() {
+         loads++;
+         return new Object();
+      }
+
+      @Override
+      public long estimateSize(final Object model) {
+         return _size;
+      }
+   }
+
+   /**
+    * Loading past the budget must unload the least-recently-used models, and
+    * an unloaded model must be reloaded on demand.
+    */
+   @Test
+   public void testUnloadsLeastRecentlyUsed() throws IOException {
+      final ModelManager manager = new ModelManager(250);
+      final List<String> unloaded = new ArrayList<String>();
+      final ModelManager.UnloadListener listener = new ModelManager.UnloadListener() {
+         public void unloaded(final String key) {
+            unloaded.add(key);
+         }
+      };
+      manager.addUnloadListener(listener);
+
+      final SizedLoader a = new SizedLoader(100);
+      final SizedLoader b = new SizedLoader(100);
+      final SizedLoader c = new SizedLoader(100);
+      final Object modelA = manager.get("a", a);
+      manager.get("b", b);
+      // touch a so that b is the least recently used
+      assertSame(modelA, manager.get("a", a));
+      manager.get("c", c);
+
+      assertEquals(Arrays.asList("b"), unloaded);
+      assertArrayEquals(new String[] { "a", "c" },
+            manager.residency().keySet().toArray(new String[0]));
+      assertEquals(200, manager.residentBytes());
+
+      // b is reloaded, unloading a
+      manager.get("b", b);
+      assertEquals(2, b.loads);
+      assertEquals(1, a.loads);
+      assertEquals(Arrays.asList("b", "a"), unloaded);
+      assertNotSame(modelA, manager.get("a", a));
+      assertEquals(5, manager.loadCount());
+      assertEquals(3, manager.unloadCount());
+   }
+
+   /**
+    * A model larger than the whole budget is still loaded, unloading
+    * everything else.
+    */
+   @Test
+   public void testOversizedModel() throws IOException {
+      final ModelManager manager = new ModelManager(100);
+      manager.get("small", new SizedLoader(50));
+      manager.get("large", new SizedLoader(500));
+
+      assertFalse(manager.residency().containsKey("small"));
+      assertTrue(manager.residency().containsKey("large"));
+
+      manager.unloadAll();
+      assertEquals(0, manager.residentBytes());
+      assertTrue(manager.residency().isEmpty());
+   }
+
+   /**
+    * A retained model is only unloaded once its last user releases it.
+    */
+   @Test
+   public void testRetainRelease() throws IOException {
+      final ModelManager manager = new ModelManager(ModelManager.UNLIMITED);
+      final SizedLoader loader = new SizedLoader(100);
+      manager.retain("a");
+      manager.retain("a");
+      manager.get("a", loader);
+
+      manager.release("a");
+      assertEquals(100, manager.residentBytes());
+      manager.release("a");
+      assertEquals(0, manager.residentBytes());
+      assertEquals(1, manager.unloadCount());
+
+      try {
+         manager.release("a");
+         fail("Expected the unretained model to be rejected");
+      } catch (final IllegalStateException e) {
+         // expected
+      }
+   }
+
+   /**
+    * The toolkit must transparently reload models that were unloaded.
+    */
+   @Test
+   public void testToolkitReloadsUnloadedModels() throws IOException {
+      final ModelManager manager = new ModelManager(1);
+      final OpenNlpToolkit toolkit = new OpenNlpToolkit("opennlp-1.5-en.properties", manager);
+      final String text = "This is a sentence. This is another one.";
+
+      final String[] sentences = toolkit.detectSentences(text);
+      final String[] tokens = toolkit.tokenize(sentences[0]);
+      // the tokenizer model unloaded the sentence model
+      assertEquals(1, manager.residency().size());
+      assertTrue(ModelManager.estimateSize(toolkit.sentenceModel()) > 0);
+
+      assertArrayEquals(sentences, toolkit.detectSentences(text));
+      assertArrayEquals(tokens, toolkit.tokenize(sentences[0]));
+      assertTrue(manager.loadCount() >= 4);
+   }
+
+   /**
+    * The models compiled for the fast implementations count towards the
+    * budget with the model they were compiled from.
+    */
+   @Test
+   public void testCompiledModelsAreCounted() throws IOException {
+      final ModelManager manager = new ModelManager(ModelManager.UNLIMITED);
+      final OpenNlpToolkit toolkit = new OpenNlpToolkit("opennlp-fast-test.properties", manager);
+      toolkit.detectSentences("This is a sentence. This is another one.");
+
+      final long compiled =
+            FastMaxentModel.compile(toolkit.sentenceModel().getMaxentModel()).estimateSize();
+      assertTrue(compiled > 0);
+      assertEquals(ModelManager.estimateSize(toolkit.sentenceModel()) + compiled,
+            manager.residentBytes());
+   }
+
+}
@@ -1,17 +1,37 @@
 package com.dpdearing.nlp.opennlp;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.net.URISyntaxException;
 import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
 import opennlp.tools.coref.DiscourseEntity;
 import opennlp.tools.coref.mention.MentionContext;
+import opennlp.tools.namefind.NameFinderME;
+import opennlp.tools.namefind.NameSampleDataStream;
+import opennlp.tools.namefind.TokenNameFinderModel;
 import opennlp.tools.parser.Parse;
+import opennlp.tools.tokenize.Tokenizer;
+import opennlp.tools.util.PlainTextByLineStream;
 import opennlp.tools.util.Span;
+import opennlp.tools.util.TrainingParameters;
+import opennlp.tools.util.featuregen.AdaptiveFeatureGenerator;
 
 import org.junit.Test;
 
@@ -25,8 +45,13 @@ public class OpenNlpToolkitTest {
     */
    @Test
    public void testSentenceDetectionAndTokenization() throws IOException {
-      final OpenNlpToolkit toolkit = new OpenNlpToolkit();
-      
+      assertSentenceDetectionAndTokenization(new OpenNlpToolkit());
+   }
+
+   /**
+    * Assert the expectations of sentence detection and tokenization with the toolkit
+    */
+   static void assertSentenceDetectionAndTokenization(final OpenNlpToolkit toolkit) throws IOException {
       // Example taken from:
       // http://sourceforge.net/apps/mediawiki/opennlp/index.php?title=Sentence_Detector
       // http://sourceforge.net/apps/mediawiki/opennlp/index.php?title=Tokenizer
@@ -81,8 +106,13 @@ public class OpenNlpToolkitTest {
     */
    @Test
    public void testDetectSentences() throws IOException {
-      final OpenNlpToolkit toolkit = new OpenNlpToolkit();
-      
+      assertDetectSentences(new OpenNlpToolkit());
+   }
+
+   /**
+    * Assert the expectations of sentence detection with the toolkit
+    */
+   static void assertDetectSentences(final OpenNlpToolkit toolkit) throws IOException {
       // Example taken from:
       // http://sourceforge.net/apps/mediawiki/opennlp/index.php?title=Sentence_Detector
       final String content =
@@ -145,13 +175,165 @@ public class OpenNlpToolkitTest {
       }
    }
 
+   /**
+    * Test method for {@link OpenNlpToolkit#detectSentences(File, Charset, int)}.
+    */
+   @Test
+   public void testDetectSentencesInParallel() throws IOException {
+      final OpenNlpToolkit toolkit = new OpenNlpToolkit();
+      final Charset utf8 = Charset.forName("UTF-8");
+
+      // the same expectations as sequential detection
+      final File testFile = new File(
+            getClass().getResource("/text_with_title.txt").getFile());
+      assertArrayEquals("Unexpected sentences",
+            toolkit.detectSentences(testFile, utf8),
+            toolkit.detectSentences(testFile, utf8, 4));
+
+      // enough lines for every worker to get a chunk
+      final File file = File.createTempFile("sentences", ".txt");
+      file.deleteOnExit();
+      final Writer writer = new OutputStreamWriter(new FileOutputStream(file), utf8);
+      try {
+         for (int i = 0; i < 200; i++) {
+            writer.write("Line " + i + " has a title without punctuation\n");
+            writer.write("Mr. Vinken is chairman of Elsevier N.V., the Dutch"
+                  + " publishing group. Sentence " + i + " is short.\r\n");
+         }
+      } finally {
+         writer.close();
+      }
+
+      final String[] expected = toolkit.detectSentences(file, utf8);
+      assertEquals("Incorrect number of sentences detected.", 600, expected.length);
+      for (int workers = 2; workers <= 8; workers *= 2) {
+         assertArrayEquals("Unexpected sentences with " + workers + " workers",
+               expected, toolkit.detectSentences(file, utf8, workers));
+      }
+
+      // an empty file has no sentences, however many workers
+      final File empty = File.createTempFile("empty", ".txt");
+      empty.deleteOnExit();
+      assertArrayEquals("Unexpected sentences", new String[0],
+            toolkit.detectSentences(empty, utf8));
+      assertArrayEquals("Unexpected sentences", new String[0],
+            toolkit.detectSentences(empty, utf8, 4));
+   }
+
+   /**
+    * Test method for {@link OpenNlpToolkit#reload()}: only replaced models are
+    * loaded again, and a tokenizer in use keeps working after the switch.
+    */
+   @Test
+   public void testReload() throws IOException {
+      final OpenNlpToolkit toolkit = new OpenNlpToolkit();
+      final ModelManager models = toolkit.getModelManager();
+      final String sentence = "Mr. Vinken is chairman of Elsevier N.V., the Dutch publishing group.";
+      final String[] expected = toolkit.tokenize(sentence);
+      toolkit.detectSentences(sentence);
+      final long loads = models.loadCount();
+
+      // nothing changed
+      toolkit.reload();
+      assertEquals("Unchanged models were reloaded", loads, models.loadCount());
+
+      // replace the tokenizer model
+      final File model = new File(
+            getClass().getResource("/model-1.5-en/en-token.bin").getFile());
+      final long lastModified = model.lastModified();
+      try {
+         final Tokenizer inUse = toolkit.tokenizer();
+         assertTrue(model.setLastModified(lastModified + 2000));
+         toolkit.reload();
+
+         assertEquals("Only the replaced model should be reloaded",
+               loads + 1, models.loadCount());
+         assertEquals("The old tokenizer model should be unloaded",
+               2, models.residency().size());
+         assertNotSame(inUse, toolkit.tokenizer());
+         assertArrayEquals(expected, inUse.tokenize(sentence));
+         assertArrayEquals(expected, toolkit.tokenize(sentence));
+      } finally {
+         model.setLastModified(lastModified);
+      }
+   }
+
+   /**
+    * Test method for {@link OpenNlpToolkit#reload(String)}: properties that
+    * leave out a model in use switch without it.
+    */
+   @Test
+   public void testReloadFewerModels() throws IOException {
+      final OpenNlpToolkit toolkit = new OpenNlpToolkit();
+      final ModelManager models = toolkit.getModelManager();
+      final String text = "Mr. Vinken is chairman. He is Dutch.";
+      final String[] expected = toolkit.detectSentences(text);
+      toolkit.tokenize(text);
+      assertEquals(2, models.residency().size());
+
+      toolkit.reload("opennlp-sentence-test.properties");
+      assertEquals("The tokenizer model should be unloaded", 1, models.residency().size());
+      assertArrayEquals(expected, toolkit.detectSentences(text));
+      try {
+         toolkit.tokenize(text);
+         fail("Expected no tokenizer model");
+      } catch (final IllegalArgumentException e) {
+         // expected
+      }
+   }
+
+   /**
+    * Test method for {@link OpenNlpToolkit#reload()}: a toolkit switching to a
+    * replaced model doesn't unload the old one while another toolkit sharing
+    * the model manager still uses it.
+    */
+   @Test
+   public void testReloadSharedModels() throws IOException {
+      final OpenNlpToolkit first = new OpenNlpToolkit();
+      final OpenNlpToolkit second = new OpenNlpToolkit(
+            OpenNlpToolkit.DEFAULT_PROPERTIES_RESOURCE, first.getModelManager());
+      final ModelManager models = first.getModelManager();
+      final String sentence = "Mr. Vinken is chairman of Elsevier N.V., the Dutch publishing group.";
+      final String[] expected = first.tokenize(sentence);
+      second.tokenize(sentence);
+      assertEquals(1, models.residency().size());
+
+      // replace the tokenizer model
+      final File model = new File(
+            getClass().getResource("/model-1.5-en/en-token.bin").getFile());
+      final long lastModified = model.lastModified();
+      try {
+         assertTrue(model.setLastModified(lastModified + 2000));
+         first.reload();
+         assertEquals("The old tokenizer model is still used",
+               2, models.residency().size());
+         final long loads = models.loadCount();
+         assertArrayEquals(expected, second.tokenize(sentence));
+         assertEquals("The old tokenizer model was reloaded", loads, models.loadCount());
+
+         second.reload();
+         assertEquals("The old tokenizer model should be unloaded",
+               1, models.residency().size());
+         assertEquals("The new tokenizer model should be shared", loads, models.loadCount());
+         assertArrayEquals(expected, first.tokenize(sentence));
+         assertArrayEquals(expected, second.tokenize(sentence));
+      } finally {
+         model.setLastModified(lastModified);
+      }
+   }
+
    /**
     * Test method for {@link OpenNlpToolkit#tokenize(String)}.
     */
    @Test
    public void testTokenize() throws IOException {
-      final OpenNlpToolkit toolkit = new OpenNlpToolkit();
+      assertTokenize(new OpenNlpToolkit());
+   }
 
+   /**
+    * Assert the expectations of tokenization with the toolkit
+    */
+   static void assertTokenize(final OpenNlpToolkit toolkit) throws IOException {
       // Example taken (and corrected) from:
       // http://sourceforge.net/apps/mediawiki/opennlp/index.php?title=Tokenizer
       final String[] sentences = new String[] {
@@ -192,13 +374,33 @@ public class OpenNlpToolkitTest {
       }
    }
 
+   /**
+    * Test method for {@link OpenNlpToolkit#tokenizeIds(String)}.
+    */
+   @Test
+   public void testTokenizeIds() throws IOException {
+      final OpenNlpToolkit toolkit = new OpenNlpToolkit();
+      final String sentence = "The board, the director and the board.";
+
+      final int[] ids = toolkit.tokenizeIds(sentence);
+      assertArrayEquals(new int[] { 0, 1, 2, 3, 4, 5, 3, 1, 6 }, ids);
+      assertArrayEquals(toolkit.tokenize(sentence), toolkit.getTokenPool().decode(ids));
+      assertArrayEquals(ids, toolkit.tokenizeIds(sentence));
+      assertEquals(7, toolkit.getTokenPool().size());
+   }
+
    /**
     * Test method for {@link OpenNlpToolkit#tagPartOfSpeech(String[])}.
     */
    @Test
    public void testPartOfSpeechTagger() throws IOException {
-      final OpenNlpToolkit toolkit = new OpenNlpToolkit();
+      assertPartOfSpeechTagger(new OpenNlpToolkit());
+   }
 
+   /**
+    * Assert the expectations of part-of-speech tagging with the toolkit
+    */
+   static void assertPartOfSpeechTagger(final OpenNlpToolkit toolkit) throws IOException {
       // Example taken (and corrected) from:
       // http://sourceforge.net/apps/mediawiki/opennlp/index.php?title=POS_Tagger
       final String[][] tokens = new String[][] {
@@ -303,6 +505,117 @@ public class OpenNlpToolkitTest {
       }
    }
 
+   /**
+    * Test method for {@link OpenNlpToolkit#findNamedEntities(String, String[])}
+    * with a short-circuiting gazetteer: the name finders of types matched in
+    * the dictionaries aren't run.
+    */
+   @Test
+   public void testFindNamedEntitiesWithGazetteer() throws IOException {
+      final OpenNlpToolkit toolkit = new OpenNlpToolkit("opennlp-gazetteer-test.properties");
+
+      final String sentence =
+            "Mr. Vinken is chairman of Elsevier N.V. in Amsterdam, The Netherlands.";
+      final String[] tokens = toolkit.tokenize(sentence);
+
+      final List<Span> spans = toolkit.findNamedEntities(sentence, tokens);
+      assertEquals(3, spans.size());
+      assertEquals(new Span(5, 7, "organization"), spans.get(0));
+      assertEquals(new Span(8, 9, "location"), spans.get(1));
+      assertEquals(new Span(10, 12, "location"), spans.get(2));
+
+      final int[] typeIds = toolkit.namedEntityTypeIds(spans);
+      assertArrayEquals(new int[] { 0, 1, 1 }, typeIds);
+      assertEquals("location", toolkit.getLabelPool().get(typeIds[2]));
+   }
+
+   /**
+    * Test method for {@link OpenNlpToolkit#findNamedEntities(String, String[])}
+    * with a merging gazetteer: the name finders always run, but their names
+    * that overlap the dictionary names are dropped.
+    */
+   @Test
+   public void testFindNamedEntitiesWithMergingGazetteer() throws Exception {
+      final File model = trainOrganizationModel();
+      try {
+         assertMergingGazetteer();
+      } finally {
+         assertTrue("Couldn't delete " + model, model.delete());
+      }
+   }
+
+   private void assertMergingGazetteer() throws IOException {
+      final OpenNlpToolkit toolkit = new OpenNlpToolkit("opennlp-gazetteer-merge-test.properties");
+
+      final String sentence =
+            "Mr. Vinken is chairman of Elsevier N.V. in Amsterdam and of Acme.";
+      final String[] tokens = toolkit.tokenize(sentence);
+      final Span gazetteerName = new Span(5, 7, "organization");
+      final Span modelName = new Span(11, 12, "organization");
+
+      // the name finder alone finds an overlapping name
+      final List<Span> found = Arrays.asList(toolkit.nameFinders()[0].find(tokens));
+      toolkit.clearNamedEntityAdaptiveData();
+      assertTrue("Expected the model to find " + modelName, found.contains(modelName));
+      Span overlapping = null;
+      for (final Span span : found) {
+         if (span.intersects(gazetteerName)) {
+            overlapping = span;
+         }
+      }
+      assertTrue("Expected the model to find a name overlapping " + gazetteerName,
+            overlapping != null);
+
+      final List<Span> spans = toolkit.findNamedEntities(sentence, tokens);
+      assertEquals(Arrays.asList(gazetteerName, new Span(8, 9, "location"), modelName), spans);
+      assertFalse(spans.contains(overlapping));
+   }
+
+   /**
+    * Test method for {@link OpenNlpToolkit#OpenNlpToolkit(String)}: a gazetteer
+    * mode other than <code>merge</code> or <code>shortcircuit</code> is
+    * rejected.
+    */
+   @Test(expected = IllegalArgumentException.class)
+   public void testInvalidGazetteerMode() throws IOException {
+      new OpenNlpToolkit("opennlp-gazetteer-invalid-test.properties");
+   }
+
+   /**
+    * Train a small organization name finder model into the test classes,
+    * where the merge gazetteer properties expect it.
+    *
+    * @return the model file, which the caller deletes
+    */
+   private File trainOrganizationModel() throws IOException, URISyntaxException {
+      final StringBuilder samples = new StringBuilder();
+      for (int i = 0; i < 20; i++) {
+         samples.append("<START:organization> Elsevier <END> is a publisher .\n")
+               .append("He works for <START:organization> Elsevier <END> in Amsterdam .\n")
+               .append("<START:organization> Acme <END> makes anvils .\n")
+               .append("She is chairman of <START:organization> Acme <END> .\n")
+               .append("Mr. Vinken is chairman of the board .\n");
+      }
+      final TrainingParameters parameters = TrainingParameters.defaultParams();
+      parameters.put(TrainingParameters.CUTOFF_PARAM, "1");
+      final TokenNameFinderModel model = NameFinderME.train("en", "organization",
+            new NameSampleDataStream(new PlainTextByLineStream(
+                  new StringReader(samples.toString()))),
+            parameters, (AdaptiveFeatureGenerator) null,
+            Collections.<String, Object>emptyMap());
+
+      final File dir = new File(getClass().getResource("/gazetteer/organization.txt").toURI())
+            .getParentFile();
+      final File file = new File(dir, "en-ner-organization.bin");
+      final OutputStream out = new FileOutputStream(file);
+      try {
+         model.serialize(out);
+      } finally {
+         out.close();
+      }
+      return file;
+   }
+
    /**
     * Test method for {@link OpenNlpToolkit#findEntityMentions(String[])}.
     * <p>
@@ -0,0 +1,148 @@
+package com.dpdearing.nlp.opennlp.corpus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.dpdearing.util.FileUtilities;
+
+/**
+ * Test fixture for {@link CorpusCheckpoint}
+ */
+public class CorpusCheckpointTest {
+
+   static final private Charset UTF8 = Charset.forName("UTF-8");
+
+   private File _dir;
+   private File _checkpointFile;
+
+   @Before
+   public void setUp() throws IOException {
+      _dir = File.createTempFile("checkpoint", "");
+      if (!_dir.delete() || !_dir.mkdir()) {
+         throw new IOException("Unable to create " + _dir);
+      }
+      _checkpointFile = new File(_dir, ".checkpoint");
+   }
+
+   @After
+   public void tearDown() {
+      delete(_dir);
+   }
+
+   /**
+    * By default, a file changes when its size or modification time does.
+    */
+   @Test
+   public void testModifiedTime() throws IOException {
+      final File a = write("a.txt", "Some text.");
+      final File b = write("b.txt", "More text.");
+      final CorpusCheckpoint checkpoint = new CorpusCheckpoint(_checkpointFile, false);
+      assertFalse(checkpoint.isComplete("a.txt", a));
+      checkpoint.complete("a.txt", a);
+      checkpoint.complete("b.txt", b);
+      checkpoint.save();
+
+      final CorpusCheckpoint reopened = new CorpusCheckpoint(_checkpointFile, false);
+      assertEquals(2, reopened.size());
+      assertTrue(reopened.isComplete("a.txt", a));
+      assertTrue(reopened.isComplete("b.txt", b));
+
+      assertTrue(a.setLastModified(a.lastModified() - 60000));
+      assertFalse(reopened.isComplete("a.txt", a));
+      write("b.txt", "More text, longer.");
+      assertFalse(reopened.isComplete("b.txt", b));
+   }
+
+   /**
+    * With content hashes, a file only changes when its content does.
+    */
+   @Test
+   public void testContentHash() throws IOException {
+      final File a = write("a.txt", "Some text.");
+      final CorpusCheckpoint checkpoint = new CorpusCheckpoint(_checkpointFile, true);
+      checkpoint.complete("a.txt", a);
+      checkpoint.save();
+
+      final CorpusCheckpoint reopened = new CorpusCheckpoint(_checkpointFile, true);
+      assertTrue(a.setLastModified(a.lastModified() - 60000));
+      assertTrue("Touched but unchanged", reopened.isComplete("a.txt", a));
+
+      // the same size and modification time, but different content
+      final long lastModified = a.lastModified();
+      write("a.txt", "Same size.");
+      assertTrue(a.setLastModified(lastModified));
+      assertFalse(reopened.isComplete("a.txt", a));
+   }
+
+   /**
+    * Saves append only the newly completed files, and opening the
+    * checkpoint compacts it, ignoring malformed lines.
+    */
+   @Test
+   public void testLog() throws IOException {
+      final File a = write("a.txt", "Some text.");
+      final File b = write("b.txt", "More text.");
+      final CorpusCheckpoint checkpoint = new CorpusCheckpoint(_checkpointFile, false);
+      checkpoint.complete("a.txt", a);
+      checkpoint.save();
+      checkpoint.save();
+      assertEquals(1, lines().size());
+      checkpoint.complete("b.txt", b);
+      checkpoint.complete("a.txt", a);
+      checkpoint.save();
+      assertEquals(3, lines().size());
+
+      // a torn line from a crash while saving
+      final Writer writer = new OutputStreamWriter(new FileOutputStream(_checkpointFile, true), UTF8);
+      try {
+         writer.write("not a number\t1\t-\tc.txt\n12\t34");
+      } finally {
+         writer.close();
+      }
+
+      final CorpusCheckpoint reopened = new CorpusCheckpoint(_checkpointFile, false);
+      assertEquals(2, reopened.size());
+      assertTrue(reopened.isComplete("a.txt", a));
+      assertTrue(reopened.isComplete("b.txt", b));
+      assertEquals(2, lines().size());
+   }
+
+   private List<String> lines() throws IOException {
+      return FileUtilities.loadLines(_checkpointFile, UTF8);
+   }
+
+   private File write(final String name, final String content) throws IOException {
+      final File file = new File(_dir, name);
+      final Writer writer = new OutputStreamWriter(new FileOutputStream(file), UTF8);
+      try {
+         writer.write(content);
+      } finally {
+         writer.close();
+      }
+      return file;
+   }
+
+   static void delete(final File file) {
+      final File[] children = file.listFiles();
+      if (children != null) {
+         for (final File child : children) {
+            delete(child);
+         }
+      }
+      file.delete();
+   }
+
+}
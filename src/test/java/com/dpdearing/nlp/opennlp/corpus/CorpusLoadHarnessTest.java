@@ -0,0 +1,75 @@
+package com.dpdearing.nlp.opennlp.corpus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.dpdearing.nlp.opennlp.OpenNlpToolkit;
+import com.dpdearing.nlp.opennlp.corpus.CorpusLoadHarness.Stage;
+
+/**
+ * Test fixture for {@link CorpusLoadHarness}
+ */
+public class CorpusLoadHarnessTest {
+
+   static final private String SEED =
+         "OpenNLP doesn't naturally treat end-of-lines as sentence boundaries\n\n"
+         + "OpenNLP is poorly documented.\n";
+
+   /**
+    * The generated corpus only depends on the seeds.
+    */
+   @Test
+   public void testGenerate() {
+      final List<String> corpus = CorpusLoadHarness.generate(SEED, 50, 4, 10, 0.5, new Random(7));
+      assertEquals(50, corpus.size());
+      assertEquals(corpus, CorpusLoadHarness.generate(SEED, 50, 4, 10, 0.5, new Random(7)));
+      for (final String document : corpus) {
+         assertTrue(document, Character.isUpperCase(document.charAt(0)));
+         assertTrue(document, document.endsWith("."));
+         // the seed punctuation is stripped
+         assertFalse(document, document.contains(".."));
+      }
+   }
+
+   /**
+    * The report has a row per measurement, and every sentence is tokenized.
+    */
+   @Test
+   public void testRun() throws Exception {
+      final List<String> corpus = CorpusLoadHarness.generate(SEED, 40, 4, 10, 0.5, new Random(7));
+      final CorpusLoadHarness harness = new CorpusLoadHarness(corpus,
+            EnumSet.of(Stage.TOKENS), OpenNlpToolkit.DEFAULT_PROPERTIES_RESOURCE, 2);
+      final StringWriter out = new StringWriter();
+      harness.run(5, new PrintWriter(out));
+
+      final Map<String, String> report = new HashMap<String, String>();
+      for (final String row : out.toString().split("\n")) {
+         final String[] fields = row.split("\t");
+         assertEquals(row, 2, fields.length);
+         report.put(fields[0], fields[1]);
+      }
+      assertEquals("40", report.get("documents"));
+      assertEquals("sentences,tokens", report.get("stages"));
+      assertEquals("0", report.get("errors"));
+      assertEquals("40", report.get("document_calls"));
+      assertEquals("40", report.get("stage_sentences_calls"));
+      assertEquals(report.get("sentences"), report.get("stage_tokens_calls"));
+      assertTrue(Long.parseLong(report.get("tokens")) > Long.parseLong(report.get("sentences")));
+      assertTrue(Double.parseDouble(report.get("tokens_per_sec")) > 0);
+      assertTrue(report.containsKey("stage_tokens_p999_ms"));
+      assertTrue(report.containsKey("gc_time_ms"));
+      assertFalse(report.containsKey("stage_parse_calls"));
+   }
+
+}
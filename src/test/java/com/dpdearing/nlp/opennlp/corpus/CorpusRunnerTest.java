@@ -0,0 +1,159 @@
+package com.dpdearing.nlp.opennlp.corpus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.dpdearing.nlp.opennlp.OpenNlpToolkit;
+import com.dpdearing.nlp.opennlp.corpus.CorpusRunner.DocumentProcessor;
+import com.dpdearing.nlp.opennlp.corpus.CorpusRunner.SentenceWriter;
+import com.dpdearing.util.FileUtilities;
+
+/**
+ * Test fixture for {@link CorpusRunner}
+ */
+public class CorpusRunnerTest {
+
+   static final private Charset UTF8 = Charset.forName("UTF-8");
+
+   static final private FileFilter TEXT_FILES = new FileFilter() {
+      public boolean accept(final File file) {
+         return file.getName().endsWith(".txt");
+      }
+   };
+
+   /**
+    * Fails the files it's told to, and records the others
+    */
+   static private class FailingProcessor implements DocumentProcessor {
+      final Set<String> failing = new HashSet<String>();
+      final Set<String> processed = Collections.synchronizedSet(new HashSet<String>());
+
+      public void process(final OpenNlpToolkit toolkit, final File file,
+            final String relativePath) throws IOException {
+         if (failing.contains(relativePath)) {
+            throw new IOException("Failing " + relativePath);
+         }
+         processed.add(relativePath);
+      }
+   }
+
+   private File _corpus;
+   private File _output;
+
+   @Before
+   public void setUp() throws IOException {
+      _corpus = createTempDir("corpus");
+      _output = createTempDir("output");
+      for (int i = 0; i < 10; i++) {
+         write(new File(_corpus, String.format("doc%02d.txt", i)),
+               "Mr. Vinken is chairman. Sentence " + i + " is short.\n");
+      }
+      write(new File(_corpus, "nested/deeper.txt"), "A title\nIt is nested.\n");
+      write(new File(_corpus, "ignored.dat"), "Not a text file.\n");
+   }
+
+   @After
+   public void tearDown() {
+      CorpusCheckpointTest.delete(_corpus);
+      CorpusCheckpointTest.delete(_output);
+   }
+
+   /**
+    * A run that fails part way through is resumed by the next, which only
+    * processes the files that weren't completed and the changed ones.
+    */
+   @Test
+   public void testResume() throws Exception {
+      final File checkpointFile = new File(_output, ".checkpoint");
+      final FailingProcessor first = new FailingProcessor();
+      first.failing.addAll(Arrays.asList("doc03.txt", "nested/deeper.txt"));
+      final CorpusRunner.Summary partial = new CorpusRunner(_corpus, TEXT_FILES,
+            new CorpusCheckpoint(checkpointFile, false), 3).run(first, 3);
+      assertEquals(9, partial.processed);
+      assertEquals(2, partial.failed);
+      assertEquals(0, partial.skipped);
+
+      final File changed = new File(_corpus, "doc07.txt");
+      write(changed, "Mr. Vinken is chairman. It changed.\n");
+      final FailingProcessor second = new FailingProcessor();
+      final CorpusRunner.Summary resumed = new CorpusRunner(_corpus, TEXT_FILES,
+            new CorpusCheckpoint(checkpointFile, false), 3).run(second, 2);
+      assertEquals(3, resumed.processed);
+      assertEquals(0, resumed.failed);
+      assertEquals(8, resumed.skipped);
+      assertEquals(new HashSet<String>(Arrays.asList("doc03.txt", "doc07.txt",
+            "nested/deeper.txt")), second.processed);
+   }
+
+   /**
+    * The sentence writer mirrors the corpus tree.
+    */
+   @Test
+   public void testSentenceWriter() throws Exception {
+      final CorpusRunner.Summary summary = new CorpusRunner(_corpus, TEXT_FILES,
+            new CorpusCheckpoint(new File(_output, ".checkpoint"), true), 100)
+            .run(new SentenceWriter(_output, UTF8), 2);
+      assertEquals(11, summary.processed);
+      assertEquals(Arrays.asList("A title.", "It is nested."), FileUtilities.loadLines(
+            new File(_output, "nested/deeper.txt.sentences"), UTF8));
+   }
+
+   /**
+    * A toolkit that can't be created fails the run rather than leaving every
+    * file unprocessed.
+    */
+   @Test
+   public void testToolkitFailure() throws Exception {
+      final String previous = System.getProperty(OpenNlpToolkit.OPENNLP_SYSTEM_PROPERTY);
+      System.setProperty(OpenNlpToolkit.OPENNLP_SYSTEM_PROPERTY, "missing.properties");
+      try {
+         new CorpusRunner(_corpus, TEXT_FILES,
+               new CorpusCheckpoint(new File(_output, ".checkpoint"), false), 3)
+               .run(new FailingProcessor(), 2);
+         fail("Expected the toolkit to fail");
+      } catch (final IOException e) {
+         // expected
+      } finally {
+         if (previous == null) {
+            System.clearProperty(OpenNlpToolkit.OPENNLP_SYSTEM_PROPERTY);
+         } else {
+            System.setProperty(OpenNlpToolkit.OPENNLP_SYSTEM_PROPERTY, previous);
+         }
+      }
+   }
+
+   private static File createTempDir(final String prefix) throws IOException {
+      final File dir = File.createTempFile(prefix, "");
+      if (!dir.delete() || !dir.mkdir()) {
+         throw new IOException("Unable to create " + dir);
+      }
+      return dir;
+   }
+
+   private static void write(final File file, final String content) throws IOException {
+      file.getParentFile().mkdirs();
+      final Writer writer = new OutputStreamWriter(new FileOutputStream(file), UTF8);
+      try {
+         writer.write(content);
+      } finally {
+         writer.close();
+      }
+   }
+
+}
@@ -0,0 +1,151 @@
+package com.dpdearing.nlp.opennlp.corpus;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.URISyntaxException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.dpdearing.nlp.opennlp.OpenNlpToolkit;
+import com.dpdearing.nlp.opennlp.corpus.CorpusRunner.DocumentProcessor;
+import com.dpdearing.util.FileUtilities;
+
+/**
+ * Test fixture for {@link ShardCoordinator}
+ */
+public class ShardCoordinatorTest {
+
+   static final private Charset UTF8 = Charset.forName("UTF-8");
+
+   /**
+    * Writes the number of sentences in each file, and misbehaves on
+    * request: <code>crash*</code> files crash the worker the first time
+    * they're processed, <code>poison*</code> files every time, and
+    * <code>fail*</code> files throw.
+    */
+   static public class TestProcessor implements DocumentProcessor {
+      final private File _outputDir;
+
+      public TestProcessor(final String[] args) {
+         _outputDir = new File(args[0]);
+      }
+
+      public void process(final OpenNlpToolkit toolkit, final File file,
+            final String relativePath) throws IOException {
+         final String name = file.getName();
+         if (name.startsWith("poison")
+               || (name.startsWith("crash")
+                     && new File(_outputDir, name + ".crashed").createNewFile())) {
+            Runtime.getRuntime().halt(3);
+         }
+         if (name.startsWith("fail")) {
+            throw new IOException("Failing " + name);
+         }
+         write(new File(_outputDir, relativePath + ".count"),
+               String.valueOf(toolkit.detectSentences(file, UTF8).length));
+      }
+   }
+
+   private File _corpus;
+   private File _output;
+
+   @Before
+   public void setUp() throws IOException {
+      _corpus = createTempDir("corpus");
+      _output = createTempDir("output");
+   }
+
+   @After
+   public void tearDown() {
+      CorpusCheckpointTest.delete(_corpus);
+      CorpusCheckpointTest.delete(_output);
+   }
+
+   @Test
+   public void testRun() throws Exception {
+      for (int i = 0; i < 12; i++) {
+         write(new File(_corpus, String.format("doc%02d.txt", i)),
+               "Mr. Vinken is chairman. Sentence " + i + " is short.\n");
+      }
+      write(new File(_corpus, "crash.txt"), "It crashes once.\n");
+      write(new File(_corpus, "poison.txt"), "It always crashes.\n");
+      write(new File(_corpus, "fail.txt"), "It fails.\n");
+
+      final File checkpointFile = new File(_output, ".checkpoint");
+      final ShardCoordinator coordinator = new ShardCoordinator(_corpus, null,
+            new CorpusCheckpoint(checkpointFile, false), 5, jvmOptions());
+      final String[] args = { _output.getAbsolutePath() };
+      final ShardCoordinator.Summary summary =
+            coordinator.run(TestProcessor.class.getName(), args, 2);
+
+      assertEquals(13, summary.processed);
+      assertEquals(2, summary.failed);
+      assertEquals(0, summary.skipped);
+      // four crashes; the last needs no restart if nothing is left
+      assertTrue(summary.restarts >= ShardCoordinator.MAX_ATTEMPTS);
+      assertTrue(summary.restarts <= 1 + ShardCoordinator.MAX_ATTEMPTS);
+      assertEquals(13, summary.workerProcessed[0] + summary.workerProcessed[1]);
+      for (int i = 0; i < 12; i++) {
+         assertEquals(Arrays.asList("2"), FileUtilities.loadLines(
+               new File(_output, String.format("doc%02d.txt.count", i)), UTF8));
+      }
+      assertTrue(new File(_output, "crash.txt.count").isFile());
+      assertFalse(new File(_output, "poison.txt.count").exists());
+
+      // a second run resumes from the checkpoint
+      new File(_corpus, "poison.txt").delete();
+      new File(_corpus, "fail.txt").delete();
+      final ShardCoordinator.Summary resumed = new ShardCoordinator(_corpus, null,
+            new CorpusCheckpoint(checkpointFile, false), 5, jvmOptions()).run(TestProcessor.class.getName(), args, 2);
+      assertEquals(0, resumed.processed);
+      assertEquals(13, resumed.skipped);
+   }
+
+   /**
+    * @return the class path of the workers: the test class path, which
+    *         surefire passes separately when <code>java.class.path</code> is
+    *         only its own (e.g., when it doesn't fork), plus the main and
+    *         test classes in case the runner loads them otherwise
+    */
+   private static List<String> jvmOptions() throws URISyntaxException {
+      final String classPath = System.getProperty("surefire.test.class.path",
+            System.getProperty("java.class.path"))
+            + File.pathSeparator + location(ShardWorker.class)
+            + File.pathSeparator + location(TestProcessor.class);
+      return Arrays.asList("-Xmx256m", "-cp", classPath);
+   }
+
+   private static String location(final Class<?> type) throws URISyntaxException {
+      return new File(type.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath();
+   }
+
+   private static File createTempDir(final String prefix) throws IOException {
+      final File dir = File.createTempFile(prefix, "");
+      if (!dir.delete() || !dir.mkdir()) {
+         throw new IOException("Unable to create " + dir);
+      }
+      return dir;
+   }
+
+   private static void write(final File file, final String content) throws IOException {
+      final Writer writer = new OutputStreamWriter(new FileOutputStream(file), UTF8);
+      try {
+         writer.write(content);
+      } finally {
+         writer.close();
+      }
+   }
+
+}
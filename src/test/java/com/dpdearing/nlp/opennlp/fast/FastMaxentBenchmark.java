@@ -0,0 +1,102 @@
+package com.dpdearing.nlp.opennlp.fast;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+
+import opennlp.tools.sentdetect.SentenceDetector;
+import opennlp.tools.sentdetect.SentenceDetectorME;
+import opennlp.tools.sentdetect.SentenceModel;
+import opennlp.tools.tokenize.Tokenizer;
+import opennlp.tools.tokenize.TokenizerME;
+import opennlp.tools.tokenize.TokenizerModel;
+
+import com.dpdearing.util.MappedLineReader;
+
+/**
+ * Compares the throughput of {@link SentenceDetectorME} and
+ * {@link TokenizerME} against {@link FastSentenceDetector} and
+ * {@link FastTokenizer} on the lines of a file, and counts the lines on
+ * which their output differs (which should be none).
+ * <p>
+ * Usage: <code>FastMaxentBenchmark &lt;file&gt; [charset] [iterations]</code>
+ * </p>
+ */
+public class FastMaxentBenchmark {
+
+   public static void main(final String[] args) throws Exception {
+      if (args.length < 1) {
+         System.err.println("Usage: FastMaxentBenchmark <file> [charset] [iterations]");
+         System.exit(1);
+      }
+      final File file = new File(args[0]);
+      final Charset cs = Charset.forName(args.length > 1 ? args[1] : "UTF-8");
+      final int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+      final List<String> lines = new MappedLineReader(file, cs).readLines();
+
+      final SentenceModel sentenceModel = load(SentenceModel.class, "/model-1.5-en/en-sent.bin");
+      final TokenizerModel tokenizerModel = load(TokenizerModel.class, "/model-1.5-en/en-token.bin");
+      final SentenceDetector detectorME = new SentenceDetectorME(sentenceModel);
+      final SentenceDetector detectorFast = new FastSentenceDetector(sentenceModel);
+      final Tokenizer tokenizerME = new TokenizerME(tokenizerModel);
+      final Tokenizer tokenizerFast = new FastTokenizer(tokenizerModel);
+
+      int sentenceDifferences = 0;
+      int tokenDifferences = 0;
+      for (final String line : lines) {
+         if (!Arrays.equals(detectorME.sentPosDetect(line), detectorFast.sentPosDetect(line))) {
+            sentenceDifferences++;
+         }
+         if (!Arrays.equals(tokenizerME.tokenizePos(line), tokenizerFast.tokenizePos(line))) {
+            tokenDifferences++;
+         }
+      }
+      System.out.println(String.format("lines=%d\tsentence_differences=%d\ttoken_differences=%d",
+            lines.size(), sentenceDifferences, tokenDifferences));
+
+      for (int i = 0; i < iterations; i++) {
+         report("sentence_me", detect(detectorME, lines), file);
+         report("sentence_fast", detect(detectorFast, lines), file);
+         report("tokenize_me", tokenize(tokenizerME, lines), file);
+         report("tokenize_fast", tokenize(tokenizerFast, lines), file);
+      }
+   }
+
+   private static long detect(final SentenceDetector detector, final List<String> lines) {
+      final long start = System.nanoTime();
+      for (final String line : lines) {
+         detector.sentPosDetect(line);
+      }
+      return System.nanoTime() - start;
+   }
+
+   private static long tokenize(final Tokenizer tokenizer, final List<String> lines) {
+      final long start = System.nanoTime();
+      for (final String line : lines) {
+         tokenizer.tokenizePos(line);
+      }
+      return System.nanoTime() - start;
+   }
+
+   private static <T> T load(final Class<T> type, final String resourceName) throws Exception {
+      final InputStream in = FastMaxentBenchmark.class.getResourceAsStream(resourceName);
+      if (in == null) {
+         throw new IOException(String.format("Unable to find the '%s' resource", resourceName));
+      }
+      try {
+         return type.getConstructor(InputStream.class).newInstance(in);
+      } finally {
+         in.close();
+      }
+   }
+
+   private static void report(final String name, final long nanos, final File file) {
+      final double seconds = nanos / 1e9;
+      System.out.println(String.format("%s\tms=%.1f\tMB/s=%.2f",
+            name, seconds * 1000, file.length() / 1e6 / seconds));
+   }
+
+}
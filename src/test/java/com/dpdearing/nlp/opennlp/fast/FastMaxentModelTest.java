@@ -0,0 +1,167 @@
+package com.dpdearing.nlp.opennlp.fast;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import opennlp.model.MaxentModel;
+import opennlp.tools.sentdetect.SentenceDetectorME;
+import opennlp.tools.sentdetect.SentenceModel;
+import opennlp.tools.tokenize.TokenizerME;
+import opennlp.tools.tokenize.TokenizerModel;
+
+import org.junit.Test;
+
+/**
+ * Test fixture for {@link FastMaxentModel}, {@link FastTokenizer} and
+ * {@link FastSentenceDetector}, which must always agree with the OpenNLP
+ * implementations
+ */
+public class FastMaxentModelTest {
+
+   static final private String TEXT =
+         "Pierre Vinken, 61 years old, will join the board as a nonexecutive"
+         + " director Nov. 29. Mr. Vinken is chairman of Elsevier N.V., the"
+         + " Dutch publishing group. Rudolph Agnew, 55 years old and former"
+         + " chairman of Consolidated Gold Fields PLC, was named a director"
+         + " of this British industrial conglomerate."
+         + " Those contraction-less sentences don't have boundary/odd"
+         + " cases...this one does.";
+
+   static final private String[] EDGE_CASES = {
+         "", " ", "\t \n", ".", "..", " . ", "a.", ".a", "?!", "a", "ab", "!x!",
+         "\u00a0Hello.\u00a0World.\u00a0", "He said \"Stop.\" Then left.",
+         "&amp; &lt;b&gt; (see [1]) {x}", "caf\u00e9 \u201cquoted.\u201d Na\u00efve!",
+         "U.S.A. e.g. i.e. 3.14 $1,000.00 50% A-1",
+   };
+
+   /**
+    * Pieces of text mixed by the random tests
+    */
+   static final private String[] PIECES = {
+         "Mr.", "Dr", "U.S.", "N.V.,", "don't", "can't", "&amp;", "e.g.",
+         "3.14", "1,000", "(", ")", "[a]", "{b}", "\"", "'", "`", "...",
+         "?!", "end.", "End.", "x", "the", "Vinken", "caf\u00e9",
+         "\u201cquoted\u201d", "\u00c9t\u00e9.", "a-b", "a/b", "#1", "$5", "42%",
+         ".", "!", "?", ";", ":", ",",
+   };
+   static final private String[] SPACES = { " ", " ", " ", "  ", "\t", "\n", "\u00a0" };
+
+   /**
+    * The flattened model must pick the same outcome as the model itself.
+    */
+   @Test
+   public void testBestOutcome() throws IOException {
+      final TokenizerModel model = tokenizerModel();
+      final MaxentModel maxent = model.getMaxentModel();
+      final FastMaxentModel fast = FastMaxentModel.compile(maxent);
+
+      assertTrue(fast == FastMaxentModel.compile(maxent));
+      assertEquals(maxent.getNumOutcomes(), fast.outcomeCount());
+      assertEquals(-1, fast.predicate("no such predicate"));
+
+      final String[][] contexts = {
+            {}, { "p=a", "s=b" }, { "p1=bok", "f1=a", "f1_alpha", "f2=." },
+            { "p1=bok", "p1=bok", "unknown" }, { "f1=.", "f1_eos", "p1=s", "p1_alpha" },
+      };
+      for (final String[] context : contexts) {
+         final ContextBuilder builder = new ContextBuilder(fast);
+         for (final String predicate : context) {
+            builder.add(fast.predicate(predicate));
+         }
+         final String expected = maxent.getBestOutcome(maxent.eval(context));
+         assertEquals(maxent.getIndex(expected), builder.best());
+      }
+   }
+
+   /**
+    * The tokens must be identical to those of {@link TokenizerME}.
+    */
+   @Test
+   public void testTokenizerParity() throws IOException {
+      final TokenizerModel model = tokenizerModel();
+      assertTrue(FastTokenizer.supports(model));
+      final TokenizerME expected = new TokenizerME(model);
+      final FastTokenizer actual = new FastTokenizer(model);
+
+      for (final String text : texts()) {
+         assertArrayEquals(text, expected.tokenizePos(text), actual.tokenizePos(text));
+         assertArrayEquals(text, expected.tokenize(text), actual.tokenize(text));
+      }
+   }
+
+   /**
+    * The sentences must be identical to those of {@link SentenceDetectorME}.
+    */
+   @Test
+   public void testSentenceDetectorParity() throws IOException {
+      final SentenceModel model = sentenceModel();
+      assertTrue(FastSentenceDetector.supports(model));
+      final SentenceDetectorME expected = new SentenceDetectorME(model);
+      final FastSentenceDetector actual = new FastSentenceDetector(model);
+
+      assertEquals(4, actual.sentDetect(TEXT).length);
+      for (final String text : texts()) {
+         assertArrayEquals(text, expected.sentPosDetect(text), actual.sentPosDetect(text));
+         assertArrayEquals(text, expected.sentDetect(text), actual.sentDetect(text));
+      }
+   }
+
+   /**
+    * @return the example text, its sentences, the edge cases and random
+    *         mixtures of tricky pieces of text
+    */
+   private static List<String> texts() {
+      final List<String> texts = new ArrayList<String>();
+      texts.add(TEXT);
+      for (final String sentence : TEXT.split("(?<=\\.) ")) {
+         texts.add(sentence);
+      }
+      for (final String text : EDGE_CASES) {
+         texts.add(text);
+      }
+
+      final Random random = new Random(36);
+      for (int t = 0; t < 2000; t++) {
+         final StringBuilder text = new StringBuilder();
+         final int pieces = random.nextInt(12);
+         for (int p = 0; p < pieces; p++) {
+            if (p > 0 || random.nextInt(4) == 0) {
+               text.append(SPACES[random.nextInt(SPACES.length)]);
+            }
+            text.append(PIECES[random.nextInt(PIECES.length)]);
+            // glue pieces together, too
+            while (random.nextInt(3) == 0) {
+               text.append(PIECES[random.nextInt(PIECES.length)]);
+            }
+         }
+         texts.add(text.toString());
+      }
+      return texts;
+   }
+
+   private TokenizerModel tokenizerModel() throws IOException {
+      final InputStream in = getClass().getResourceAsStream("/model-1.5-en/en-token.bin");
+      try {
+         return new TokenizerModel(in);
+      } finally {
+         in.close();
+      }
+   }
+
+   private SentenceModel sentenceModel() throws IOException {
+      final InputStream in = getClass().getResourceAsStream("/model-1.5-en/en-sent.bin");
+      try {
+         return new SentenceModel(in);
+      } finally {
+         in.close();
+      }
+   }
+
+}
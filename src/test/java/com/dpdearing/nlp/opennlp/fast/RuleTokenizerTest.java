@@ -0,0 +1,78 @@
+package com.dpdearing.nlp.opennlp.fast;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import opennlp.tools.tokenize.Tokenizer;
+import opennlp.tools.tokenize.TokenizerME;
+import opennlp.tools.tokenize.TokenizerModel;
+
+import org.junit.Test;
+
+/**
+ * Test fixture for {@link RuleTokenizer}
+ */
+public class RuleTokenizerTest {
+
+   static final private String[] SENTENCES = {
+         "Pierre Vinken, 61 years old, will join the board as a nonexecutive"
+               + " director Nov. 29.",
+         "Mr. Vinken is chairman of Elsevier N.V., the Dutch publishing group.",
+         "Rudolph Agnew, 55 years old and former chairman of Consolidated Gold"
+               + " Fields PLC, was named a director of this British industrial"
+               + " conglomerate.",
+         "Those contraction-less sentences don't have boundary/odd cases...this"
+               + " one does.",
+         "Really? Yes: twice; \"quoted\" (bracketed) caf\u00e9, na\u00efve!",
+   };
+
+   /**
+    * The rules must agree with the model on the example sentences, and only
+    * ambiguous chunks may reach the model.
+    */
+   @Test
+   public void testAgreesWithModel() throws IOException {
+      final TokenizerModel model = tokenizerModel();
+      final Tokenizer expected = new TokenizerME(model);
+      final RuleTokenizer fast = new RuleTokenizer(new FastTokenizer(model));
+      final RuleTokenizer me = new RuleTokenizer(new TokenizerME(model));
+
+      for (final String sentence : SENTENCES) {
+         assertArrayEquals(sentence, expected.tokenizePos(sentence), fast.tokenizePos(sentence));
+         assertArrayEquals(sentence, expected.tokenize(sentence), me.tokenize(sentence));
+      }
+      assertEquals(fast.ruleChunks(), me.ruleChunks());
+      assertEquals(fast.modelChunks(), me.modelChunks());
+   }
+
+   /**
+    * Plain words and words followed by punctuation are split by the rules;
+    * everything else is left to the model.
+    */
+   @Test
+   public void testRules() throws IOException {
+      final RuleTokenizer tokenizer = new RuleTokenizer(new FastTokenizer(tokenizerModel()));
+      assertArrayEquals(new String[] { "Vinken", ",", "is", "here", "!" },
+            tokenizer.tokenize(" Vinken,  is\u00a0here! "));
+      assertEquals(3, tokenizer.ruleChunks());
+      assertEquals(0, tokenizer.modelChunks());
+
+      // contractions, abbreviations, numbers and acronyms
+      tokenizer.tokenize("don't N.V. 1,000 PLC,");
+      assertEquals(3, tokenizer.ruleChunks());
+      assertEquals(4, tokenizer.modelChunks());
+   }
+
+   private TokenizerModel tokenizerModel() throws IOException {
+      final InputStream in = getClass().getResourceAsStream("/model-1.5-en/en-token.bin");
+      try {
+         return new TokenizerModel(in);
+      } finally {
+         in.close();
+      }
+   }
+
+}
@@ -0,0 +1,137 @@
+package com.dpdearing.nlp.opennlp.gazetteer;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import opennlp.tools.tokenize.WhitespaceTokenizer;
+import opennlp.tools.util.Span;
+
+import org.junit.Test;
+
+/**
+ * Test fixture for {@link Gazetteer}
+ */
+public class GazetteerTest {
+
+   /**
+    * Overlapping and nested names, including those only reached through the
+    * failure links.
+    */
+   @Test
+   public void testFindAll() {
+      final Gazetteer gazetteer = new Gazetteer.Builder(false)
+            .add("location", tokens("New York"))
+            .add("location", tokens("York"))
+            .add("organization", tokens("York University"))
+            .add("organization", tokens("New York University Press"))
+            .build();
+      assertEquals(4, gazetteer.entryCount());
+
+      final String[] sentence = tokens("He studied at New York University in York .");
+      assertEquals(Arrays.asList(
+            new Span(3, 5, "location"),
+            new Span(4, 5, "location"),
+            new Span(4, 6, "organization"),
+            new Span(7, 8, "location")), gazetteer.findAll(sentence));
+   }
+
+   /**
+    * Overlapping names resolve to the leftmost, then the longest.
+    */
+   @Test
+   public void testFind() {
+      final Gazetteer gazetteer = new Gazetteer.Builder(false)
+            .add("location", tokens("New York"))
+            .add("location", tokens("York"))
+            .add("organization", tokens("York University"))
+            .add("organization", tokens("New York Stock Exchange"))
+            .build();
+
+      assertEquals(Arrays.asList(new Span(3, 5, "location"), new Span(7, 8, "location")),
+            gazetteer.find(tokens("He studied at New York University in York .")));
+      assertEquals(Arrays.asList(new Span(0, 4, "organization")),
+            gazetteer.find(tokens("New York Stock Exchange")));
+      assertEquals(Arrays.asList(new Span(1, 3, "location")),
+            gazetteer.find(tokens("the New York Stock market")));
+      assertEquals(Collections.<Span>emptyList(), gazetteer.find(tokens("new york")));
+   }
+
+   /**
+    * Case-insensitive matching, dictionary loading and duplicate entries
+    */
+   @Test
+   public void testLoad() throws IOException {
+      final String dictionary = "# organizations\n\nElsevier N.V.\n  Gold Fields PLC \n";
+      final Gazetteer gazetteer = new Gazetteer.Builder(true)
+            .load("organization", new ByteArrayInputStream(dictionary.getBytes("UTF-8")),
+                  WhitespaceTokenizer.INSTANCE)
+            .add("location", tokens("elsevier n.v."))
+            .build();
+      assertEquals(2, gazetteer.entryCount());
+      assertEquals(Arrays.asList("organization", "location"),
+            Arrays.asList(gazetteer.getTypes()));
+
+      assertEquals(Arrays.asList(new Span(1, 3, "organization"), new Span(4, 7, "organization")),
+            gazetteer.find(tokens("At ELSEVIER N.V. and gold fields plc")));
+   }
+
+   /**
+    * The automaton finds the same names as trying every entry at every token.
+    */
+   @Test
+   public void testAgreesWithBruteForce() {
+      final String[] vocabulary = { "a", "b", "c", "d" };
+      final Random random = new Random(38);
+      final Gazetteer.Builder builder = new Gazetteer.Builder(false);
+      final List<String[]> entries = new ArrayList<String[]>();
+      for (int e = 0; e < 40; e++) {
+         final String[] entry = randomTokens(random, vocabulary, 1 + random.nextInt(4));
+         entries.add(entry);
+         builder.add("t", entry);
+      }
+      final Gazetteer gazetteer = builder.build();
+
+      for (int n = 0; n < 500; n++) {
+         final String[] sentence = randomTokens(random, vocabulary, random.nextInt(30));
+         final List<Span> expected = new ArrayList<Span>();
+         for (int end = 1; end <= sentence.length; end++) {
+            for (int start = 0; start < end; start++) {
+               if (contains(entries, Arrays.copyOfRange(sentence, start, end))) {
+                  expected.add(new Span(start, end, "t"));
+               }
+            }
+         }
+         assertEquals(expected, gazetteer.findAll(sentence));
+      }
+   }
+
+   private static boolean contains(final List<String[]> entries, final String[] tokens) {
+      for (final String[] entry : entries) {
+         if (Arrays.equals(entry, tokens)) {
+            return true;
+         }
+      }
+      return false;
+   }
+
+   private static String[] randomTokens(final Random random, final String[] vocabulary,
+         final int length) {
+      final String[] tokens = new String[length];
+      for (int i = 0; i < length; i++) {
+         tokens[i] = vocabulary[random.nextInt(vocabulary.length)];
+      }
+      return tokens;
+   }
+
+   private static String[] tokens(final String text) {
+      return WhitespaceTokenizer.INSTANCE.tokenize(text);
+   }
+
+}
@@ -0,0 +1,212 @@
+package com.dpdearing.nlp.opennlp.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import opennlp.tools.parser.AbstractBottomUpParser;
+import opennlp.tools.parser.Parse;
+import opennlp.tools.util.Span;
+
+import org.junit.Test;
+
+/**
+ * Test fixture for {@link AnnotationWriter} and {@link AnnotationReader}
+ */
+public class AnnotationFormatTest {
+
+   /**
+    * Test that every annotation survives a round trip through a file.
+    */
+   @Test
+   public void testRoundTrip() throws IOException {
+      final String first = "The dog barks.";
+      final Span[] firstTokens = new Span[] {
+            new Span(0, 3), new Span(4, 7), new Span(8, 13), new Span(13, 14) };
+      final String[] firstTags = new String[] { "DT", "NN", "VBZ", "." };
+      final Parse parse = parse(first, firstTokens, firstTags);
+
+      final String second = "Pierre Vinken sleeps.";
+      final Span[] secondTokens = new Span[] {
+            new Span(0, 6), new Span(7, 13), new Span(14, 20), new Span(20, 21) };
+
+      final DocumentAnnotation document = new DocumentAnnotation()
+            .addSentence(new SentenceAnnotation(first, firstTokens, firstTags,
+                  null, parse))
+            .addSentence(new SentenceAnnotation(second, secondTokens, null,
+                  Arrays.asList(new Span(0, 2, "person")), null))
+            .addChain(Arrays.asList(
+                  new DocumentAnnotation.Mention(0, new Span(0, 7)),
+                  new DocumentAnnotation.Mention(1, new Span(0, 13))));
+
+      final File file = File.createTempFile("annotations", ".bin");
+      file.deleteOnExit();
+      final AnnotationWriter writer = new AnnotationWriter(file);
+      try {
+         writer.write(document);
+         writer.write(new DocumentAnnotation());
+         writer.write(document);
+      } finally {
+         writer.close();
+      }
+
+      final AnnotationReader reader = new AnnotationReader(file);
+      assertEquals("Unexpected number of documents", 3, reader.documentCount());
+      assertEquals("Unexpected empty document", 0, reader.document(1).sentenceCount());
+
+      final DocumentView view = reader.document(2);
+      assertEquals("Unexpected number of sentences", 2, view.sentenceCount());
+
+      // first sentence: tokens, tags and parse
+      final SentenceView s0 = view.sentence(0);
+      assertEquals("Unexpected text", first, s0.text().toString());
+      assertEquals("Unexpected token count", 4, s0.tokenCount());
+      assertEquals("Unexpected token", "barks", s0.token(2).toString());
+      assertTrue("Expected tags", s0.hasTags());
+      assertEquals("Unexpected tag", "VBZ", s0.tag(2));
+      assertEquals("Tag ids must be shared", s0.tagId(3), view.stringId("."));
+      assertEquals("Unexpected entity count", 0, s0.entityCount());
+      assertParse(parse, s0.toParse());
+      assertEquals("Unexpected root label", "TOP", s0.parseType(0));
+      assertEquals("Unexpected root head", 8, s0.parseHead(0));
+      assertEquals("Unexpected root probability", 0.5, s0.parseProbability(0), 0);
+
+      // second sentence: typed entities and no tags or parse
+      final SentenceView s1 = view.sentence(1);
+      assertFalse("Unexpected tags", s1.hasTags());
+      assertEquals("Unexpected entity count", 1, s1.entityCount());
+      assertEquals("Unexpected entity", new Span(0, 2, "person"), s1.entity(0));
+      assertEquals("Unexpected entity type", "person", s1.entity(0).getType());
+      assertNull("Unexpected parse", s1.toParse());
+
+      // coreference chains
+      assertEquals("Unexpected chain count", 1, view.chainCount());
+      assertEquals("Unexpected mention count", 2, view.mentionCount(0));
+      assertEquals("Unexpected mention sentence", 1, view.mentionSentence(0, 1));
+      assertEquals("Unexpected mention span", new Span(0, 13), view.mentionSpan(0, 1));
+
+      // copied annotations
+      final DocumentAnnotation copy = view.toAnnotation();
+      assertEquals("Unexpected copied text", second,
+            copy.getSentences().get(1).getText());
+      assertParse(parse, copy.getSentences().get(0).getParse());
+   }
+
+   /**
+    * Test that a file read into memory reads as it does mapped.
+    */
+   @Test
+   public void testBuffer() throws IOException {
+      final File file = File.createTempFile("annotations", ".bin");
+      file.deleteOnExit();
+      final AnnotationWriter writer = new AnnotationWriter(file);
+      try {
+         writer.write(new DocumentAnnotation().addSentence(new SentenceAnnotation(
+               "It barks.", new Span[] { new Span(0, 2), new Span(3, 8), new Span(8, 9) },
+               null, null, null)));
+      } finally {
+         writer.close();
+      }
+
+      final byte[] contents = new byte[(int) file.length()];
+      final RandomAccessFile raf = new RandomAccessFile(file, "r");
+      try {
+         raf.readFully(contents);
+      } finally {
+         raf.close();
+      }
+      final AnnotationReader reader =
+            new AnnotationReader(file.getPath(), ByteBuffer.wrap(contents));
+      assertEquals("Unexpected number of documents", 1, reader.documentCount());
+      final SentenceView sentence = reader.document(0).sentence(0);
+      assertEquals("Unexpected text", "It barks.", sentence.text().toString());
+      assertEquals("Unexpected token", "barks", sentence.token(1).toString());
+   }
+
+   /**
+    * Test that files in other formats are rejected.
+    */
+   @Test(expected = IOException.class)
+   public void testRejectsOtherFiles() throws IOException {
+      new AnnotationReader(new File(
+            getClass().getResource("/text_with_title.txt").getFile()));
+   }
+
+   /**
+    * (TOP (S (NP (DT The) (NN dog)) (VP (VBZ barks)) (. .))), headed by the
+    * tag nodes as the parser's head rules would
+    */
+   private static Parse parse(final String text, final Span[] tokens, final String[] tags) {
+      final Parse[] tagNodes = new Parse[tokens.length];
+      for (int i = 0; i < tokens.length; i++) {
+         tagNodes[i] = new Parse(text, tokens[i], tags[i], 0.9, i);
+         tagNodes[i].insert(new Parse(text, tokens[i], AbstractBottomUpParser.TOK_NODE, 1, i));
+      }
+      final Parse np = new Parse(text, new Span(0, 7), "NP", 0.8, tagNodes[1]);
+      np.insert(tagNodes[0]);
+      np.insert(tagNodes[1]);
+      final Parse vp = new Parse(text, new Span(8, 13), "VP", 0.7, tagNodes[2]);
+      vp.insert(tagNodes[2]);
+      final Parse s = new Parse(text, new Span(0, text.length()), "S", 0.6, vp.getHead());
+      s.insert(np);
+      s.insert(vp);
+      s.insert(tagNodes[3]);
+      final Parse top = new Parse(text, new Span(0, text.length()),
+            AbstractBottomUpParser.TOP_NODE, 0.5, s.getHead());
+      top.insert(s);
+      return top;
+   }
+
+   /**
+    * Assert that the trees have the same nodes, with the same heads and
+    * probabilities.
+    */
+   private static void assertParse(final Parse expected, final Parse actual) {
+      assertEquals("Unexpected parse", show(expected), show(actual));
+      final List<Parse> expectedNodes = preorder(expected, new ArrayList<Parse>());
+      final List<Parse> actualNodes = preorder(actual, new ArrayList<Parse>());
+      assertEquals("Unexpected node count", expectedNodes.size(), actualNodes.size());
+      for (int i = 0; i < expectedNodes.size(); i++) {
+         final Parse e = expectedNodes.get(i);
+         final Parse a = actualNodes.get(i);
+         assertEquals("Unexpected probability of node " + i, e.getProb(), a.getProb(), 0);
+         assertEquals("Unexpected head index of node " + i,
+               e.getHeadIndex(), a.getHeadIndex());
+         assertEquals("Unexpected head of node " + i,
+               indexOf(expectedNodes, e.getHead()), indexOf(actualNodes, a.getHead()));
+      }
+   }
+
+   private static List<Parse> preorder(final Parse node, final List<Parse> nodes) {
+      nodes.add(node);
+      for (final Parse child : node.getChildren()) {
+         preorder(child, nodes);
+      }
+      return nodes;
+   }
+
+   private static int indexOf(final List<Parse> nodes, final Parse node) {
+      for (int i = 0; i < nodes.size(); i++) {
+         if (nodes.get(i) == node) {
+            return i;
+         }
+      }
+      return -1;
+   }
+
+   private static String show(final Parse parse) {
+      final StringBuffer buf = new StringBuffer();
+      parse.show(buf);
+      return buf.toString();
+   }
+
+}
@@ -0,0 +1,164 @@
+package com.dpdearing.nlp.opennlp.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.dpdearing.nlp.opennlp.OpenNlpToolkit;
+import com.dpdearing.nlp.opennlp.io.IncrementalAnnotator.Step;
+
+/**
+ * Test fixture for {@link IncrementalAnnotator}
+ */
+public class IncrementalAnnotatorTest {
+
+   static final private Charset UTF8 = Charset.forName("UTF-8");
+
+   /**
+    * Test that only changed lines are re-annotated and that the results match
+    * annotating from scratch.
+    */
+   @Test
+   public void testOnlyChangedLinesAreAnnotated() throws IOException {
+      final OpenNlpToolkit toolkit = new OpenNlpToolkit();
+      final File storeDir = File.createTempFile("store", "");
+      storeDir.delete();
+      final IncrementalAnnotator annotator = new IncrementalAnnotator(toolkit,
+            new ContentStore(storeDir), EnumSet.noneOf(Step.class));
+
+      final File file = File.createTempFile("document", ".txt");
+      file.deleteOnExit();
+
+      write(file, "A title without punctuation\n"
+            + "Mr. Vinken is chairman of Elsevier N.V., the Dutch publishing group.\n"
+            + "Pierre Vinken will join the board. He is 61 years old.\n");
+      final DocumentAnnotation first = annotator.annotate(file, UTF8);
+      assertEquals("Unexpected annotated lines", 3, annotator.annotatedCount());
+      assertEquals("Unexpected reused lines", 0, annotator.reusedCount());
+      assertEquals("Unexpected sentence count", 4, first.getSentences().size());
+
+      // edit one line
+      write(file, "A title without punctuation\n"
+            + "Mr. Vinken is chairman of Elsevier N.V., the Dutch publishing group.\n"
+            + "Pierre Vinken will join the board. He is 62 years old.\n");
+      final DocumentAnnotation second = annotator.annotate(file, UTF8);
+      assertEquals("Unexpected annotated lines", 4, annotator.annotatedCount());
+      assertEquals("Unexpected reused lines", 2, annotator.reusedCount());
+
+      final String[] expected = toolkit.detectSentences(file, UTF8);
+      final List<SentenceAnnotation> sentences = second.getSentences();
+      assertEquals("Unexpected sentence count", expected.length, sentences.size());
+      for (int i = 0; i < expected.length; i++) {
+         assertEquals("Unexpected sentence", expected[i], sentences.get(i).getText());
+         assertEquals("Unexpected token count",
+               toolkit.tokenize(expected[i]).length, sentences.get(i).getTokens().length);
+      }
+      assertEquals("Expected one segment for the document", 1, entries(storeDir).size());
+   }
+
+   /**
+    * Test that a truncated segment is treated as missing and replaced.
+    */
+   @Test
+   public void testTruncatedSegment() throws IOException {
+      final OpenNlpToolkit toolkit = new OpenNlpToolkit();
+      final File storeDir = File.createTempFile("store", "");
+      storeDir.delete();
+      final IncrementalAnnotator annotator = new IncrementalAnnotator(toolkit,
+            new ContentStore(storeDir), EnumSet.noneOf(Step.class));
+
+      final File file = File.createTempFile("document", ".txt");
+      file.deleteOnExit();
+      write(file, "A title without punctuation\n"
+            + "Pierre Vinken will join the board. He is 61 years old.\n");
+      final DocumentAnnotation first = annotator.annotate(file, UTF8);
+
+      final File segment = entries(storeDir).get(0);
+      final RandomAccessFile raf = new RandomAccessFile(segment, "rw");
+      try {
+         raf.setLength(raf.length() - 3);
+      } finally {
+         raf.close();
+      }
+      final DocumentAnnotation second = annotator.annotate(file, UTF8);
+      assertEquals("Unexpected annotated lines", 4, annotator.annotatedCount());
+      assertEquals("Unexpected sentence count",
+            first.getSentences().size(), second.getSentences().size());
+
+      annotator.annotate(file, UTF8);
+      assertEquals("Unexpected reused lines", 2, annotator.reusedCount());
+   }
+
+   /**
+    * Test that lines are annotated again once the toolkit is reloaded with a
+    * replaced model, rather than served from the store.
+    */
+   @Test
+   public void testReloadedModels() throws IOException {
+      final OpenNlpToolkit toolkit = new OpenNlpToolkit();
+      final File storeDir = File.createTempFile("store", "");
+      storeDir.delete();
+      final IncrementalAnnotator annotator = new IncrementalAnnotator(toolkit,
+            new ContentStore(storeDir), EnumSet.noneOf(Step.class));
+
+      final File file = File.createTempFile("document", ".txt");
+      file.deleteOnExit();
+      write(file, "A title without punctuation\n"
+            + "Pierre Vinken will join the board. He is 61 years old.\n");
+      annotator.annotate(file, UTF8);
+      annotator.annotate(file, UTF8);
+      assertEquals("Unexpected annotated lines", 2, annotator.annotatedCount());
+      assertEquals("Unexpected reused lines", 2, annotator.reusedCount());
+
+      // replace the tokenizer model
+      final File model = new File(
+            getClass().getResource("/model-1.5-en/en-token.bin").getFile());
+      final long lastModified = model.lastModified();
+      final String versions = toolkit.getModelVersions();
+      try {
+         assertTrue(model.setLastModified(lastModified + 2000));
+         toolkit.reload();
+         assertFalse("Unexpected model versions", versions.equals(toolkit.getModelVersions()));
+         annotator.annotate(file, UTF8);
+         assertEquals("Unexpected annotated lines", 4, annotator.annotatedCount());
+         assertEquals("Unexpected reused lines", 2, annotator.reusedCount());
+      } finally {
+         model.setLastModified(lastModified);
+      }
+   }
+
+   /**
+    * @return the entry files of the store
+    */
+   private static List<File> entries(final File storeDir) {
+      final List<File> entries = new ArrayList<File>();
+      for (final File dir : storeDir.listFiles()) {
+         entries.addAll(Arrays.asList(dir.listFiles()));
+      }
+      return entries;
+   }
+
+   private static void write(final File file, final String content) throws IOException {
+      final Writer writer = new OutputStreamWriter(new FileOutputStream(file), UTF8);
+      try {
+         writer.write(content);
+      } finally {
+         writer.close();
+      }
+   }
+
+}
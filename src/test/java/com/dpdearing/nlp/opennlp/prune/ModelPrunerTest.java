@@ -0,0 +1,80 @@
+package com.dpdearing.nlp.opennlp.prune;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import opennlp.tools.sentdetect.SentenceDetectorME;
+import opennlp.tools.sentdetect.SentenceModel;
+
+import org.junit.Test;
+
+/**
+ * Test fixture for {@link ModelPruner}
+ */
+public class ModelPrunerTest {
+
+   static final private String TEXT =
+         "Pierre Vinken, 61 years old, will join the board as a nonexecutive"
+         + " director Nov. 29. Mr. Vinken is chairman of Elsevier N.V., the"
+         + " Dutch publishing group.";
+
+   /**
+    * A threshold of 0 keeps every feature and the model's output.
+    */
+   @Test
+   public void testZeroThresholdKeepsEverything() throws IOException {
+      final byte[] original = load("/model-1.5-en/en-sent.bin");
+      final ModelPruner pruner = new ModelPruner(0);
+      final byte[] pruned = pruner.prune(original);
+
+      assertEquals(pruner.predicatesBefore(), pruner.predicatesAfter());
+      assertEquals(pruner.parametersBefore(), pruner.parametersAfter());
+      assertArrayEquals(detect(original), detect(pruned));
+   }
+
+   /**
+    * A pruned model is smaller, loads as a model package and records its
+    * threshold in its manifest.
+    */
+   @Test
+   public void testPrunedModelLoads() throws IOException {
+      final byte[] original = load("/model-1.5-en/en-sent.bin");
+      final ModelPruner pruner = new ModelPruner(0.5);
+      final byte[] pruned = pruner.prune(original);
+
+      assertTrue(pruner.predicatesAfter() < pruner.predicatesBefore());
+      assertTrue(pruner.parametersAfter() < pruner.parametersBefore());
+      assertTrue(pruned.length < original.length);
+
+      final SentenceModel model = new SentenceModel(new ByteArrayInputStream(pruned));
+      assertEquals("0.5", model.getManifestProperty(ModelPruner.MANIFEST_THRESHOLD));
+      assertEquals(2, new SentenceDetectorME(model).sentDetect(TEXT).length);
+   }
+
+   private static String[] detect(final byte[] model) throws IOException {
+      return new SentenceDetectorME(new SentenceModel(new ByteArrayInputStream(model)))
+            .sentDetect(TEXT);
+   }
+
+   private byte[] load(final String resourceName) throws IOException {
+      final InputStream in = getClass().getResourceAsStream(resourceName);
+      try {
+         final ByteArrayOutputStream out = new ByteArrayOutputStream();
+         final byte[] buf = new byte[8192];
+         int n;
+         while ((n = in.read(buf)) != -1) {
+            out.write(buf, 0, n);
+         }
+         return out.toByteArray();
+      } finally {
+         in.close();
+      }
+   }
+
+}
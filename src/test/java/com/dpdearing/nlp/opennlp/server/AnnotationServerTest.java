@@ -0,0 +1,130 @@
+package com.dpdearing.nlp.opennlp.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.Charset;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.dpdearing.nlp.opennlp.ModelManager;
+import com.dpdearing.nlp.opennlp.OpenNlpToolkit;
+
+/**
+ * Test fixture for {@link AnnotationServer}
+ */
+public class AnnotationServerTest {
+
+   static final private Charset UTF8 = Charset.forName("UTF-8");
+
+   static final private String TEXT =
+         "Pierre Vinken, 61 years old, will join the board. Mr. Vinken is chairman.";
+
+   private AnnotationServer _server;
+
+   @Before
+   public void setUp() throws IOException {
+      _server = new AnnotationServer(OpenNlpToolkit.DEFAULT_PROPERTIES_RESOURCE, 0, 8, 1);
+      _server.start();
+   }
+
+   @After
+   public void tearDown() {
+      _server.stop(0);
+   }
+
+   /**
+    * The stages respond as the toolkit does.
+    */
+   @Test
+   public void testStages() throws IOException {
+      final OpenNlpToolkit toolkit = new OpenNlpToolkit();
+      assertEquals(lines(toolkit.detectSentences(TEXT)), post("/sentences", TEXT, 200));
+      final String sentence = toolkit.detectSentences(TEXT)[0];
+      assertEquals(lines(toolkit.tokenize(sentence)), post("/tokens", sentence, 200));
+   }
+
+   /**
+    * The stages share their models, so a model used by several stages is
+    * only loaded once.
+    */
+   @Test
+   public void testSharedModels() throws IOException {
+      post("/tokens", TEXT, 200);
+      post("/sentences", TEXT, 200);
+      // also tokenizes; the other models may not be installed
+      send("POST", "/pos", TEXT);
+
+      final ModelManager models = _server.getModelManager();
+      assertTrue(models.residency().size() >= 2);
+      assertEquals(models.residency().size(), models.loadCount());
+   }
+
+   @Test
+   public void testPostRequired() throws IOException {
+      final HttpURLConnection connection = send("GET", "/tokens", null);
+      assertEquals(405, connection.getResponseCode());
+      assertEquals("POST required\n", read(connection.getErrorStream()));
+   }
+
+   private String post(final String path, final String body, final int status)
+         throws IOException {
+      final HttpURLConnection connection = send("POST", path, body);
+      try {
+         assertEquals(status, connection.getResponseCode());
+         return read(connection.getInputStream());
+      } finally {
+         connection.disconnect();
+      }
+   }
+
+   private HttpURLConnection send(final String method, final String path, final String body)
+         throws IOException {
+      final URL url = new URL("http", "127.0.0.1", _server.getAddress().getPort(), path);
+      final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+      connection.setRequestMethod(method);
+      if (body != null) {
+         connection.setDoOutput(true);
+         connection.setRequestProperty("Content-Type", "text/plain; charset=UTF-8");
+         final OutputStream out = connection.getOutputStream();
+         try {
+            out.write(body.getBytes(UTF8));
+         } finally {
+            out.close();
+         }
+      }
+      connection.getResponseCode();
+      return connection;
+   }
+
+   private static String read(final InputStream in) throws IOException {
+      try {
+         final ByteArrayOutputStream out = new ByteArrayOutputStream();
+         final byte[] buf = new byte[8192];
+         int n;
+         while ((n = in.read(buf)) != -1) {
+            out.write(buf, 0, n);
+         }
+         return new String(out.toByteArray(), UTF8);
+      } finally {
+         in.close();
+      }
+   }
+
+   private static String lines(final String[] values) {
+      final StringBuilder buf = new StringBuilder();
+      for (final String value : values) {
+         buf.append(value).append('\n');
+      }
+      return buf.toString();
+   }
+
+}
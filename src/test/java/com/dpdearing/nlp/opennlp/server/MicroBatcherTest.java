@@ -0,0 +1,215 @@
+package com.dpdearing.nlp.opennlp.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.dpdearing.nlp.opennlp.server.MicroBatcher.BatchProcessor;
+import com.dpdearing.nlp.opennlp.server.MicroBatcher.Results;
+
+/**
+ * Test fixture for {@link MicroBatcher}
+ */
+public class MicroBatcherTest {
+
+   /**
+    * Upper-cases its inputs and records the size of each batch.  The first
+    * batch waits for the gate to open.  Fails the input "fail", and the rest
+    * of the batch from the input "throw".
+    */
+   static private class RecordingProcessor implements BatchProcessor<String, String> {
+      final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<Integer>());
+      final CountDownLatch started = new CountDownLatch(1);
+      final CountDownLatch gate = new CountDownLatch(1);
+
+      public void process(final List<String> batch, final Results<String> results)
+            throws Exception {
+         started.countDown();
+         gate.await();
+         batchSizes.add(batch.size());
+         for (int i = 0; i < batch.size(); i++) {
+            final String input = batch.get(i);
+            if (input.equals("fail")) {
+               results.fail(i, new IllegalStateException("Failing " + input));
+            } else if (input.equals("throw")) {
+               throw new IllegalStateException("Failing the batch");
+            } else {
+               results.set(i, input.toUpperCase());
+            }
+         }
+      }
+   }
+
+   /**
+    * Requests that queue up while a batch is processed are drained together,
+    * up to the maximum batch size, and each gets its own result.
+    */
+   @Test
+   public void testBatchSize() throws Exception {
+      final RecordingProcessor processor = new RecordingProcessor();
+      final MicroBatcher<String, String> batcher =
+            new MicroBatcher<String, String>("test", processor, 4, 0);
+      try {
+         final List<Future<String>> results = new ArrayList<Future<String>>();
+         results.add(batcher.submit("r0"));
+         assertTrue(processor.started.await(5, TimeUnit.SECONDS));
+         for (int i = 1; i <= 10; i++) {
+            results.add(batcher.submit("r" + i));
+         }
+         processor.gate.countDown();
+
+         for (int i = 0; i < results.size(); i++) {
+            assertEquals("R" + i, results.get(i).get(5, TimeUnit.SECONDS));
+         }
+         assertEquals(Arrays.asList(1, 4, 4, 2), processor.batchSizes);
+         assertEquals(11, batcher.requestCount());
+         assertEquals(4, batcher.batchCount());
+      } finally {
+         batcher.shutdown();
+      }
+   }
+
+   /**
+    * A batch that isn't filled is processed once the maximum delay expires.
+    */
+   @Test
+   public void testFlushOnTimeout() throws Exception {
+      final RecordingProcessor processor = new RecordingProcessor();
+      processor.gate.countDown();
+      final MicroBatcher<String, String> batcher =
+            new MicroBatcher<String, String>("test", processor, 100, 50);
+      try {
+         final long start = System.nanoTime();
+         assertEquals("ALONE", batcher.submit("alone").get(5, TimeUnit.SECONDS));
+         assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+         assertEquals(Arrays.asList(1), processor.batchSizes);
+      } finally {
+         batcher.shutdown();
+      }
+   }
+
+   /**
+    * Requests submitted concurrently from many threads each get the result
+    * of their own input.
+    */
+   @Test
+   public void testOrdering() throws Exception {
+      final RecordingProcessor processor = new RecordingProcessor();
+      processor.gate.countDown();
+      final MicroBatcher<String, String> batcher =
+            new MicroBatcher<String, String>("test", processor, 8, 1);
+      final List<String> errors = Collections.synchronizedList(new ArrayList<String>());
+      try {
+         final Thread[] threads = new Thread[8];
+         for (int t = 0; t < threads.length; t++) {
+            final int thread = t;
+            threads[t] = new Thread() {
+               @Override
+               public void run() {
+                  for (int i = 0; i < 100; i++) {
+                     final String input = "t" + thread + "r" + i;
+                     try {
+                        final String result = batcher.process(input);
+                        if (!result.equals(input.toUpperCase())) {
+                           errors.add(input + " -> " + result);
+                        }
+                     } catch (final Exception e) {
+                        errors.add(input + " -> " + e);
+                     }
+                  }
+               }
+            };
+            threads[t].start();
+         }
+         for (final Thread thread : threads) {
+            thread.join();
+         }
+      } finally {
+         batcher.shutdown();
+      }
+      assertEquals(Collections.<String>emptyList(), errors);
+      assertEquals(800, batcher.requestCount());
+      int processed = 0;
+      for (final int size : processor.batchSizes) {
+         assertTrue(size <= 8);
+         processed += size;
+      }
+      assertEquals(800, processed);
+   }
+
+   /**
+    * A failed request fails only itself.
+    */
+   @Test
+   public void testFailure() throws Exception {
+      final RecordingProcessor processor = new RecordingProcessor();
+      final MicroBatcher<String, String> batcher =
+            new MicroBatcher<String, String>("test", processor, 4, 0);
+      try {
+         batcher.submit("first");
+         assertTrue(processor.started.await(5, TimeUnit.SECONDS));
+         final Future<String> failing = batcher.submit("fail");
+         final Future<String> ok = batcher.submit("ok");
+         processor.gate.countDown();
+         assertEquals("OK", ok.get(5, TimeUnit.SECONDS));
+         assertFailed(failing);
+      } finally {
+         batcher.shutdown();
+      }
+   }
+
+   /**
+    * A failed batch fails the requests it hadn't completed, and keeps the
+    * results of those it had.
+    */
+   @Test
+   public void testBatchFailure() throws Exception {
+      final RecordingProcessor processor = new RecordingProcessor();
+      final MicroBatcher<String, String> batcher =
+            new MicroBatcher<String, String>("test", processor, 4, 0);
+      try {
+         batcher.submit("first");
+         assertTrue(processor.started.await(5, TimeUnit.SECONDS));
+         final Future<String> ok = batcher.submit("ok");
+         final Future<String> throwing = batcher.submit("throw");
+         final Future<String> after = batcher.submit("after");
+         processor.gate.countDown();
+         assertEquals("OK", ok.get(5, TimeUnit.SECONDS));
+         assertFailed(throwing);
+         assertFailed(after);
+      } finally {
+         batcher.shutdown();
+      }
+   }
+
+   static private void assertFailed(final Future<String> result) throws Exception {
+      try {
+         result.get(5, TimeUnit.SECONDS);
+         fail("Expected the request to fail");
+      } catch (final ExecutionException e) {
+         assertTrue(e.getCause() instanceof IllegalStateException);
+      }
+   }
+
+   @Test(expected = RejectedExecutionException.class)
+   public void testShutdown() {
+      final RecordingProcessor processor = new RecordingProcessor();
+      final MicroBatcher<String, String> batcher =
+            new MicroBatcher<String, String>("test", processor, 4, 0);
+      batcher.shutdown();
+      batcher.submit("late");
+   }
+
+}
@@ -0,0 +1,42 @@
+package com.dpdearing.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Test;
+
+/**
+ * Test fixture for {@link ContentHash}
+ */
+public class ContentHashTest {
+
+   /**
+    * The digest of bytes is the standard SHA-1 (FIPS 180-2 test vector).
+    */
+   @Test
+   public void testBytes() throws Exception {
+      assertEquals("a9993e364706816aba3e25717850c26c9cd0d89d",
+            ContentHash.sha1("abc".getBytes("UTF-8")));
+   }
+
+   /**
+    * Strings are hashed with their lengths, so the same characters split
+    * differently hash differently, while equal strings always hash equally.
+    */
+   @Test
+   public void testStrings() {
+      assertEquals(ContentHash.sha1("ab", "c"), ContentHash.sha1("ab", "c"));
+      assertFalse(ContentHash.sha1("ab", "c").equals(ContentHash.sha1("a", "bc")));
+      assertFalse(ContentHash.sha1("abc").equals(ContentHash.sha1("abc", "")));
+      assertEquals(40, ContentHash.sha1("caf\u00e9").length());
+      assertFalse(ContentHash.sha1("caf\u00e9").equals(ContentHash.sha1("cafe")));
+   }
+
+   @Test
+   public void testToHex() {
+      assertEquals("", ContentHash.toHex(new byte[0]));
+      assertEquals("00017f80ff", ContentHash.toHex(
+            new byte[] { 0, 1, 0x7f, (byte) 0x80, (byte) 0xff }));
+   }
+
+}
@@ -0,0 +1,71 @@
+package com.dpdearing.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Test fixture for {@link LatencyRecorder}
+ */
+public class LatencyRecorderTest {
+
+   /**
+    * Nearest-rank percentiles of the samples 1 to 100, recorded out of order
+    */
+   @Test
+   public void testPercentiles() {
+      final LatencyRecorder recorder = new LatencyRecorder();
+      for (int i = 100; i >= 1; i--) {
+         recorder.record(i);
+      }
+      assertEquals(100, recorder.count());
+      assertEquals(5050, recorder.total());
+      assertArrayEquals(new long[] { 1, 1, 50, 51, 99, 100 },
+            recorder.percentiles(0, 1, 50, 50.5, 99, 100));
+      assertEquals(90, recorder.percentile(90));
+   }
+
+   /**
+    * The nearest rank rounds up, so a high percentile of few samples is
+    * their maximum.
+    */
+   @Test
+   public void testFewSamples() {
+      final LatencyRecorder recorder = new LatencyRecorder();
+      assertArrayEquals(new long[] { 0, 0 }, recorder.percentiles(50, 99));
+
+      recorder.record(7);
+      assertArrayEquals(new long[] { 7, 7, 7 }, recorder.percentiles(0, 50, 99.9));
+
+      recorder.record(3);
+      recorder.record(5);
+      assertArrayEquals(new long[] { 3, 5, 7 }, recorder.percentiles(33, 50, 99.9));
+   }
+
+   /**
+    * The samples grow beyond the initial capacity, and reset discards them.
+    */
+   @Test
+   public void testGrowAndReset() {
+      final LatencyRecorder recorder = new LatencyRecorder();
+      for (int i = 0; i < 5000; i++) {
+         recorder.record(i);
+      }
+      assertEquals(5000, recorder.count());
+      assertEquals(4999, recorder.percentile(100));
+      assertEquals(2499, recorder.percentile(50));
+
+      recorder.reset();
+      assertEquals(0, recorder.count());
+      assertEquals(0, recorder.percentile(50));
+   }
+
+   @Test(expected = IllegalArgumentException.class)
+   public void testInvalidPercentile() {
+      final LatencyRecorder recorder = new LatencyRecorder();
+      recorder.record(1);
+      recorder.percentile(101);
+   }
+
+}
@@ -0,0 +1,117 @@
+package com.dpdearing.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.dpdearing.util.MappedLineReader.LineHandler;
+import com.dpdearing.util.MappedLineReader.Range;
+
+/**
+ * Compares the original {@link BufferedReader}/{@link LinkedList} line loading
+ * against {@link MappedLineReader}, both materialized and streamed, and a
+ * parallel read of split ranges.
+ * <p>
+ * Usage: <code>LineReaderBenchmark &lt;file&gt; [charset] [iterations]</code>
+ * </p>
+ */
+public class LineReaderBenchmark {
+
+   public static void main(final String[] args) throws Exception {
+      if (args.length < 1) {
+         System.err.println("Usage: LineReaderBenchmark <file> [charset] [iterations]");
+         System.exit(1);
+      }
+      final File file = new File(args[0]);
+      final Charset cs = Charset.forName(args.length > 1 ? args[1] : "UTF-8");
+      final int iterations = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+      final int threads = Runtime.getRuntime().availableProcessors();
+
+      for (int i = 0; i < iterations; i++) {
+         long start = System.nanoTime();
+         final int linked = loadLinkedList(file, cs).size();
+         report("buffered_reader_linked_list", start, linked, file);
+
+         start = System.nanoTime();
+         final int mapped = new MappedLineReader(file, cs).readLines().size();
+         report("mapped_list", start, mapped, file);
+
+         start = System.nanoTime();
+         final AtomicLong chars = new AtomicLong();
+         final long streamed = new MappedLineReader(file, cs).read(new LineHandler() {
+            public boolean handle(final String line) {
+               chars.addAndGet(line.length());
+               return true;
+            }
+         });
+         report("mapped_stream", start, streamed, file);
+
+         start = System.nanoTime();
+         report("mapped_parallel_" + threads, start,
+               readParallel(file, cs, threads), file);
+      }
+   }
+
+   private static long readParallel(final File file, final Charset cs, final int threads)
+         throws Exception {
+      final ExecutorService executor = Executors.newFixedThreadPool(threads);
+      try {
+         final List<Future<Long>> counts = new LinkedList<Future<Long>>();
+         for (final Range range : MappedLineReader.split(file, threads)) {
+            counts.add(executor.submit(new Callable<Long>() {
+               public Long call() throws IOException {
+                  return new MappedLineReader(file, cs).read(range, new LineHandler() {
+                     public boolean handle(final String line) {
+                        return true;
+                     }
+                  });
+               }
+            }));
+         }
+         long total = 0;
+         for (final Future<Long> count : counts) {
+            total += count.get();
+         }
+         return total;
+      } finally {
+         executor.shutdown();
+      }
+   }
+
+   /**
+    * The original FileUtilities implementation
+    */
+   private static List<String> loadLinkedList(final File file, final Charset cs)
+         throws IOException {
+      final List<String> lines = new LinkedList<String>();
+      final BufferedReader bread = new BufferedReader(
+            new InputStreamReader(new FileInputStream(file), cs));
+      try {
+         String line = null;
+         while (null != (line = bread.readLine())) {
+            lines.add(line);
+         }
+      } finally {
+         bread.close();
+      }
+      return lines;
+   }
+
+   private static void report(final String name, final long start, final long lines,
+         final File file) {
+      final double seconds = (System.nanoTime() - start) / 1e9;
+      System.out.println(String.format("%s\tlines=%d\tms=%.1f\tMB/s=%.1f",
+            name, lines, seconds * 1000, file.length() / 1e6 / seconds));
+   }
+
+}
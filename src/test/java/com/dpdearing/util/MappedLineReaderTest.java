@@ -0,0 +1,146 @@
+package com.dpdearing.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.dpdearing.util.MappedLineReader.LineHandler;
+import com.dpdearing.util.MappedLineReader.Range;
+
+/**
+ * Test fixture for {@link MappedLineReader}
+ */
+public class MappedLineReaderTest {
+
+   static final private Charset UTF8 = Charset.forName("UTF-8");
+
+   // mixed terminators, empty lines, multi-byte characters and no final terminator
+   static final private String CONTENT =
+         "first line\nsecond\r\nthird\rfourth \u00e9\u00e8 \u4e2d\u6587\n\n\r\n"
+         + "after blanks\r\rlast without terminator";
+
+   /**
+    * The mapped reader must produce the same lines as a BufferedReader,
+    * including when lines and \r\n terminators straddle window boundaries.
+    */
+   @Test
+   public void testMatchesBufferedReader() throws IOException {
+      final File file = write(CONTENT);
+      final List<String> expected = readWithBufferedReader(file);
+
+      for (int window = 2; window < 20; window++) {
+         final List<String> actual = new ArrayList<String>();
+         new MappedLineReader(file, UTF8, window).read(collect(actual));
+         assertEquals("Unexpected lines with a window of " + window,
+               expected, actual);
+      }
+      assertEquals("Unexpected lines from FileUtilities",
+            expected, FileUtilities.loadLines(file, UTF8));
+   }
+
+   /**
+    * Reading every range of a split file in order must produce every line
+    * exactly once.
+    */
+   @Test
+   public void testSplitRanges() throws IOException {
+      final File file = write(CONTENT);
+      final List<String> expected = readWithBufferedReader(file);
+
+      for (int parts = 1; parts < 12; parts++) {
+         final List<Range> ranges = MappedLineReader.split(file, parts);
+         assertTrue("Too many ranges", ranges.size() <= parts);
+         assertEquals("Ranges must start at 0", 0, ranges.get(0).getStart());
+         assertEquals("Ranges must end at the end of the file",
+               file.length(), ranges.get(ranges.size() - 1).getEnd());
+
+         final List<String> actual = new ArrayList<String>();
+         final MappedLineReader reader = new MappedLineReader(file, UTF8);
+         for (int i = 0; i < ranges.size(); i++) {
+            if (i > 0) {
+               assertEquals("Ranges must be contiguous",
+                     ranges.get(i - 1).getEnd(), ranges.get(i).getStart());
+            }
+            reader.read(ranges.get(i), collect(actual));
+         }
+         assertEquals("Unexpected lines with " + parts + " parts", expected, actual);
+      }
+   }
+
+   /**
+    * The handler can stop reading early.
+    */
+   @Test
+   public void testStopReading() throws IOException {
+      final File file = write(CONTENT);
+      final List<String> lines = new ArrayList<String>();
+      final long count = new MappedLineReader(file, UTF8).read(new LineHandler() {
+         public boolean handle(final String line) {
+            lines.add(line);
+            return lines.size() < 2;
+         }
+      });
+      assertEquals("Unexpected line count", 2, count);
+      assertEquals("Unexpected lines read", 2, lines.size());
+   }
+
+   /**
+    * Only ASCII-compatible line terminators can be scanned.
+    */
+   @Test
+   public void testSupports() {
+      assertTrue(MappedLineReader.supports(UTF8));
+      assertTrue(MappedLineReader.supports(Charset.forName("ISO-8859-1")));
+      assertFalse(MappedLineReader.supports(Charset.forName("UTF-16")));
+      assertFalse(MappedLineReader.supports(Charset.forName("UTF-16LE")));
+   }
+
+   private static LineHandler collect(final List<String> lines) {
+      return new LineHandler() {
+         public boolean handle(final String line) {
+            lines.add(line);
+            return true;
+         }
+      };
+   }
+
+   private static File write(final String content) throws IOException {
+      final File file = File.createTempFile("lines", ".txt");
+      file.deleteOnExit();
+      final FileOutputStream out = new FileOutputStream(file);
+      try {
+         out.write(content.getBytes(UTF8));
+      } finally {
+         out.close();
+      }
+      return file;
+   }
+
+   private static List<String> readWithBufferedReader(final File file) throws IOException {
+      final List<String> lines = new ArrayList<String>();
+      final BufferedReader reader = new BufferedReader(
+            new InputStreamReader(new FileInputStream(file), UTF8));
+      try {
+         String line;
+         while ((line = reader.readLine()) != null) {
+            lines.add(line);
+         }
+      } finally {
+         reader.close();
+      }
+      return lines;
+   }
+
+}
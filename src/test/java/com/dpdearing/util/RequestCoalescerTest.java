@@ -0,0 +1,224 @@
+package com.dpdearing.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Test fixture for {@link RequestCoalescer}
+ */
+public class RequestCoalescerTest {
+
+   static final private int CALLERS = 8;
+
+   final private ExecutorService _executor = Executors.newFixedThreadPool(CALLERS);
+
+   @After
+   public void tearDown() {
+      _executor.shutdownNow();
+   }
+
+   /**
+    * Concurrent requests for one key share a single computation, and the
+    * time it took is counted as saved for each of them.
+    */
+   @Test
+   public void testCoalesced() throws Exception {
+      final RequestCoalescer<String, Object> coalescer = new RequestCoalescer<String, Object>();
+      final AtomicInteger computations = new AtomicInteger();
+      final CountDownLatch gate = new CountDownLatch(1);
+      final Object result = new Object();
+
+      final List<Future<Object>> results = submit(coalescer, "key", new Callable<Object>() {
+         public Object call() throws InterruptedException {
+            computations.incrementAndGet();
+            gate.await();
+            Thread.sleep(10);
+            return result;
+         }
+      });
+      awaitCoalesced(coalescer, CALLERS - 1);
+      gate.countDown();
+
+      for (final Future<Object> future : results) {
+         assertSame(result, future.get(5, TimeUnit.SECONDS));
+      }
+      assertEquals(1, computations.get());
+      assertEquals(CALLERS, coalescer.requestCount());
+      assertEquals(1, coalescer.computationCount());
+      assertEquals(CALLERS - 1, coalescer.coalescedCount());
+      assertTrue(coalescer.savedNanos()
+            >= (CALLERS - 1) * TimeUnit.MILLISECONDS.toNanos(10));
+   }
+
+   /**
+    * The exception of a computation is seen by every coalesced caller.
+    */
+   @Test
+   public void testException() throws Exception {
+      final RequestCoalescer<String, Object> coalescer = new RequestCoalescer<String, Object>();
+      final CountDownLatch gate = new CountDownLatch(1);
+
+      final List<Future<Object>> results = submit(coalescer, "key", new Callable<Object>() {
+         public Object call() throws Exception {
+            gate.await();
+            throw new IOException("Failed");
+         }
+      });
+      awaitCoalesced(coalescer, CALLERS - 1);
+      gate.countDown();
+
+      for (final Future<Object> future : results) {
+         try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("Expected the computation to fail");
+         } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+            assertEquals("Failed", e.getCause().getMessage());
+         }
+      }
+      assertEquals(1, coalescer.computationCount());
+      assertEquals(0, coalescer.inFlightCount());
+   }
+
+   /**
+    * A computation that measures itself is counted with its own duration.
+    */
+   @Test
+   public void testTimed() throws Exception {
+      final RequestCoalescer<String, Object> coalescer = new RequestCoalescer<String, Object>();
+      final CountDownLatch gate = new CountDownLatch(1);
+
+      final List<Future<Object>> results = submit(coalescer, "key", new TimedCallable() {
+         public Object call() throws InterruptedException {
+            // waiting doesn't count
+            gate.await();
+            return "result";
+         }
+
+         public long durationNanos() {
+            return 1000;
+         }
+      });
+      awaitCoalesced(coalescer, CALLERS - 1);
+      gate.countDown();
+
+      for (final Future<Object> future : results) {
+         assertEquals("result", future.get(5, TimeUnit.SECONDS));
+      }
+      assertEquals((CALLERS - 1) * 1000L, coalescer.savedNanos());
+   }
+
+   /**
+    * When the computing caller is interrupted, only it sees the interruption;
+    * the coalesced callers fail with an {@link ExecutionException} and aren't
+    * interrupted themselves.
+    */
+   @Test
+   public void testLeaderInterrupted() throws Exception {
+      final RequestCoalescer<String, Object> coalescer = new RequestCoalescer<String, Object>();
+      final CountDownLatch computing = new CountDownLatch(1);
+      final Thread[] leader = new Thread[1];
+
+      final List<Future<Object>> results = new ArrayList<Future<Object>>();
+      for (int i = 0; i < CALLERS; i++) {
+         results.add(_executor.submit(new Callable<Object>() {
+            public Object call() {
+               try {
+                  return coalescer.get("key", new Callable<Object>() {
+                     public Object call() throws InterruptedException {
+                        leader[0] = Thread.currentThread();
+                        computing.countDown();
+                        new CountDownLatch(1).await();
+                        return null;
+                     }
+                  });
+               } catch (final Exception e) {
+                  return e.getClass().getSimpleName()
+                        + (Thread.currentThread().isInterrupted() ? " interrupted" : "");
+               }
+            }
+         }));
+      }
+      assertTrue(computing.await(5, TimeUnit.SECONDS));
+      awaitCoalesced(coalescer, CALLERS - 1);
+      leader[0].interrupt();
+
+      int interrupted = 0;
+      for (final Future<Object> future : results) {
+         final Object result = future.get(5, TimeUnit.SECONDS);
+         if (result.equals("InterruptedException")) {
+            interrupted++;
+         } else {
+            assertEquals("ExecutionException", result);
+         }
+      }
+      assertEquals(1, interrupted);
+   }
+
+   /**
+    * Results aren't cached: once a computation completes, its key is
+    * released and the next request computes again.
+    */
+   @Test
+   public void testReleased() throws Exception {
+      final RequestCoalescer<String, Object> coalescer = new RequestCoalescer<String, Object>();
+      final AtomicInteger computations = new AtomicInteger();
+      final Callable<Object> computation = new Callable<Object>() {
+         public Object call() {
+            return computations.incrementAndGet();
+         }
+      };
+      assertEquals(1, coalescer.get("key", computation));
+      assertEquals(0, coalescer.inFlightCount());
+      assertEquals(2, coalescer.get("key", computation));
+      assertEquals(3, coalescer.get("other", computation));
+      assertEquals(3, coalescer.computationCount());
+      assertEquals(0, coalescer.coalescedCount());
+   }
+
+   static private abstract class TimedCallable
+         implements Callable<Object>, RequestCoalescer.Timed {
+   }
+
+   private List<Future<Object>> submit(final RequestCoalescer<String, Object> coalescer,
+         final String key, final Callable<Object> computation) {
+      final List<Future<Object>> results = new ArrayList<Future<Object>>();
+      for (int i = 0; i < CALLERS; i++) {
+         results.add(_executor.submit(new Callable<Object>() {
+            public Object call() throws Exception {
+               return coalescer.get(key, computation);
+            }
+         }));
+      }
+      return results;
+   }
+
+   private static void awaitCoalesced(final RequestCoalescer<?, ?> coalescer,
+         final long count) throws InterruptedException {
+      final long deadline = System.currentTimeMillis() + 5000;
+      while (coalescer.coalescedCount() < count) {
+         if (System.currentTimeMillis() > deadline) {
+            fail("Only " + coalescer.coalescedCount() + " requests were coalesced");
+         }
+         Thread.sleep(1);
+      }
+   }
+
+}
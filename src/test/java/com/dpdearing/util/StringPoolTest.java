@@ -0,0 +1,112 @@
+package com.dpdearing.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+/**
+ * Test fixture for {@link StringPool}
+ */
+public class StringPoolTest {
+
+   /**
+    * Ids are dense, stable and decode to the pooled instances.
+    */
+   @Test
+   public void testEncode() {
+      final StringPool pool = new StringPool(100);
+      final int[] ids = pool.encode(new String[] { "the", ",", "the", "NN" });
+      assertArrayEquals(new int[] { 0, 1, 0, 2 }, ids);
+      assertEquals(3, pool.size());
+      assertEquals(1, pool.find(","));
+      assertEquals(StringPool.NO_ID, pool.find("VB"));
+      assertEquals(3, pool.size());
+
+      assertArrayEquals(new String[] { "the", ",", "the", "NN" }, pool.decode(ids));
+      final String the = new String("the");
+      assertSame(pool.get(0), pool.intern(the));
+      final String[] tokens = { new String("NN"), new String("the") };
+      pool.internAll(tokens);
+      assertSame(pool.get(2), tokens[0]);
+      assertSame(pool.get(0), tokens[1]);
+   }
+
+   /**
+    * A full pool keeps its strings but doesn't add new ones.
+    */
+   @Test
+   public void testBounded() {
+      final StringPool pool = new StringPool(2);
+      assertArrayEquals(new int[] { 0, 1, StringPool.NO_ID, 0 },
+            pool.encode(new String[] { "a", "b", "c", "a" }));
+      assertEquals(2, pool.size());
+      assertEquals(1, pool.rejected());
+      assertNull(pool.get(StringPool.NO_ID));
+
+      final String c = "c";
+      assertSame(c, pool.intern(c));
+      assertEquals(2, pool.rejected());
+   }
+
+   @Test(expected = IllegalArgumentException.class)
+   public void testUnknownId() {
+      new StringPool(10).get(0);
+   }
+
+   /**
+    * Concurrent threads interning overlapping strings agree on the ids, and
+    * the ids are dense.
+    */
+   @Test
+   public void testConcurrent() throws Exception {
+      final int threads = 8;
+      final int strings = 10000;
+      final StringPool pool = new StringPool(strings);
+      final ExecutorService executor = Executors.newFixedThreadPool(threads);
+      try {
+         final List<Future<int[]>> results = new ArrayList<Future<int[]>>();
+         for (int t = 0; t < threads; t++) {
+            final int offset = t * 997;
+            results.add(executor.submit(new Callable<int[]>() {
+               public int[] call() {
+                  final int[] ids = new int[strings];
+                  for (int i = 0; i < strings; i++) {
+                     final int s = (i + offset) % strings;
+                     ids[s] = pool.id("token" + s);
+                     assertEquals("token" + s, pool.get(ids[s]));
+                  }
+                  return ids;
+               }
+            }));
+         }
+         final int[] expected = results.get(0).get();
+         for (final Future<int[]> result : results) {
+            assertArrayEquals(expected, result.get());
+         }
+      } finally {
+         executor.shutdown();
+      }
+      assertEquals(strings, pool.size());
+      assertEquals(0, pool.rejected());
+      final boolean[] seen = new boolean[strings];
+      for (int id = 0; id < strings; id++) {
+         final String s = pool.get(id);
+         assertEquals(id, pool.find(s));
+         seen[Integer.parseInt(s.substring("token".length()))] = true;
+      }
+      for (final boolean b : seen) {
+         assertEquals(true, b);
+      }
+   }
+
+}